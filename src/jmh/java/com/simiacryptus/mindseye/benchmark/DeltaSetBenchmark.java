@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.benchmark;
+
+import com.simiacryptus.mindseye.lang.DeltaSet;
+import org.openjdk.jmh.annotations.*;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Times the DeltaSet vector operations used by the optimizers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeltaSetBenchmark {
+
+  /**
+   * The number of weight buffers in each set.
+   */
+  @Param({"4", "64"})
+  public int buffers;
+
+  /**
+   * The length of each weight buffer.
+   */
+  @Param({"1000", "100000"})
+  public int length;
+
+  @Nullable
+  private DeltaSet<UUID> left;
+  @Nullable
+  private DeltaSet<UUID> right;
+  @Nullable
+  private DeltaSet<UUID> sum;
+
+  /**
+   * Builds two delta sets over the same weights.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    final Random random = new Random(0);
+    left = new DeltaSet<>();
+    right = new DeltaSet<>();
+    sum = new DeltaSet<>();
+    IntStream.range(0, buffers).forEach(i -> {
+      @Nonnull final UUID key = UUID.randomUUID();
+      @Nonnull final double[] target = new double[length];
+      left.get(key, target).addInPlace(random.doubles(length).toArray()).freeRef();
+      right.get(key, target).addInPlace(random.doubles(length).toArray()).freeRef();
+      sum.get(key, target).freeRef();
+    });
+  }
+
+  /**
+   * Releases the delta sets.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    left.freeRef();
+    right.freeRef();
+    sum.freeRef();
+    left = null;
+    right = null;
+    sum = null;
+  }
+
+  /**
+   * Dot product of two sets.
+   *
+   * @return the double
+   */
+  @Benchmark
+  public double dot() {
+    return left.dot(right);
+  }
+
+  /**
+   * Sum of two sets into a new set.
+   *
+   * @return the int
+   */
+  @Benchmark
+  public int add() {
+    @Nonnull final DeltaSet<UUID> result = left.add(right);
+    final int size = result.getMap().size();
+    result.freeRef();
+    return size;
+  }
+
+  /**
+   * Accumulation of one set into another.
+   *
+   * @return the int
+   */
+  @Benchmark
+  public int addInPlace() {
+    return sum.addInPlace(right).getMap().size();
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.benchmark;
+
+import com.simiacryptus.mindseye.lang.*;
+import com.simiacryptus.mindseye.test.unit.StandardLayerTests;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Times the forward and backward passes of each layers.java layer across batch sizes. Each layer is configured by its
+ * unit test (the class named by {@link #layer}, in the layers.java test package), using the test's large input
+ * dimensions, so the benchmark covers exactly the configurations the test suite validates. When the named test is an
+ * abstract base, its nested Basic case (or the first concrete nested case) is used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayerBenchmark {
+
+  /**
+   * The layer test class, relative to the layers.java package. A nested case may be named directly, e.g.
+   * "FullyConnectedLayerTest$Batched".
+   */
+  @Param({
+      "AbsActivationLayerTest", "AssertDimensionsLayerTest", "AutoEntropyLayerTest", "AvgMetaLayerTest",
+      "AvgPoolingLayerTest", "AvgReducerLayerTest", "BiasLayerTest", "BiasMetaLayerTest",
+      "BinaryEntropyActivationLayerTest", "BinaryNoiseLayerTest", "CheckpointLayerTest",
+      "CrossDifferenceLayerTest", "CrossDotMetaLayerTest", "CrossProductLayerTest", "DropoutNoiseLayerTest",
+      "EntropyLayerTest", "EntropyLossLayerTest", "FullyConnectedLayerTest", "FullyConnectedReferenceLayerTest",
+      "GaussianActivationLayerTest", "GaussianNoiseLayerTest", "HyperbolicActivationLayerTest",
+      "ImgBandBiasLayerTest", "ImgBandScaleLayerTest", "ImgBandSelectLayerTest", "ImgConcatLayerTest",
+      "ImgCropLayerTest", "ImgPixelGateLayerTest", "ImgPixelSoftmaxLayerTest", "ImgPixelSumLayerTest",
+      "ImgReshapeLayerTest", "ImgTileAssemblyLayerTest", "ImgTileSelectLayerTest", "ImgTileSubnetLayerTest",
+      "ImgZeroPaddingLayerTest", "L1NormalizationLayerTest", "LinearActivationLayerTest", "LogActivationLayerTest",
+      "LoggingWrapperLayerTest", "MaxConstLayerTest", "MaxDropoutNoiseLayerTest", "MaxImageBandLayerTest",
+      "MaxMetaLayerTest", "MaxPoolingLayerTest", "MeanSqLossLayerTest", "MonitoringSynapseTest",
+      "MonitoringWrapperTest", "NormalizationMetaLayerTest", "NthPowerActivationLayerTest",
+      "ProductInputsLayerTest", "ProductLayerTest", "ReLuActivationLayerTest", "RescaledSubnetLayerTest",
+      "ReshapeLayerTest", "ScaleMetaLayerTest", "SigmoidActivationLayerTest", "SignReducerLayerTest",
+      "SinewaveActivationLayerTest", "SoftmaxActivationLayerTest", "SqActivationLayerTest",
+      "StaticScalarLossLayerTest", "StdDevMetaLayerTest", "StochasticBinaryNoiseLayerTest",
+      "StochasticSamplingSubnetLayerTest", "SumInputsLayerTest", "SumMetaLayerTest", "SumReducerLayerTest",
+      "TargetValueLayerTest", "TensorConcatLayerTest", "ValueLayerTest", "VariableLayerTest"
+  })
+  public String layer;
+
+  /**
+   * The batch size.
+   */
+  @Param({"1", "16", "128"})
+  public int batchSize;
+
+  @Nullable
+  private Layer component;
+  @Nullable
+  private TensorList[] inputData;
+
+  /**
+   * Resolves the layer test class for a name.
+   *
+   * @param name the name
+   * @return the concrete test class
+   * @throws ClassNotFoundException the class not found exception
+   */
+  @Nonnull
+  static Class<? extends StandardLayerTests> resolve(@Nonnull final String name) throws ClassNotFoundException {
+    final Class<?> testClass = Class.forName("com.simiacryptus.mindseye.layers.java." + name);
+    if (!Modifier.isAbstract(testClass.getModifiers()) && StandardLayerTests.class.isAssignableFrom(testClass)) {
+      return testClass.asSubclass(StandardLayerTests.class);
+    }
+    return Arrays.stream(testClass.getDeclaredClasses())
+        .filter(x -> !Modifier.isAbstract(x.getModifiers()) && Modifier.isStatic(x.getModifiers()))
+        .filter(x -> StandardLayerTests.class.isAssignableFrom(x))
+        .sorted(Comparator.comparing((Class<?> x) -> !x.getSimpleName().equals("Basic")).thenComparing(Class::getSimpleName))
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("No concrete test case in " + name))
+        .asSubclass(StandardLayerTests.class);
+  }
+
+  /**
+   * Builds the layer and a batch of random inputs.
+   *
+   * @throws Exception the exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    final StandardLayerTests test = resolve(layer).newInstance();
+    final Random random = new Random(StandardLayerTests.seed);
+    final int[][] dims = test.getLargeDims(random);
+    component = test.getLayer(dims, random);
+    inputData = IntStream.range(0, dims.length).mapToObj(i -> TensorArray.wrap(IntStream.range(0, batchSize)
+        .mapToObj(b -> new Tensor(dims[i]).set(() -> test.random(random)))
+        .toArray(j -> new Tensor[j]))).toArray(i -> new TensorList[i]);
+  }
+
+  /**
+   * Releases the layer and inputs.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Arrays.stream(inputData).forEach(ReferenceCounting::freeRef);
+    component.freeRef();
+    inputData = null;
+    component = null;
+  }
+
+  /**
+   * Forward pass only.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  public void eval(@Nonnull final Blackhole blackhole) {
+    @Nullable final Result result = evalInputs();
+    blackhole.consume(result.getData().length());
+    result.getData().freeRef();
+    result.freeRef();
+  }
+
+  /**
+   * Forward pass followed by a backward pass of a unit delta into live inputs.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  public void evalAndBackprop(@Nonnull final Blackhole blackhole) {
+    @Nullable final Result result = evalInputs();
+    @Nonnull final DeltaSet<UUID> buffer = new DeltaSet<UUID>();
+    try {
+      result.accumulate(buffer, TensorArray.wrap(result.getData().stream()
+          .map(x -> x.mapAndFree(v -> 1.0)).toArray(i -> new Tensor[i])));
+      blackhole.consume(buffer.getMap().size());
+    } finally {
+      buffer.freeRef();
+      result.getData().freeRef();
+      result.freeRef();
+    }
+  }
+
+  /**
+   * Wraps benchmark input data as a live result which discards its gradient, so layers compute their input deltas as
+   * they would inside a network.
+   *
+   * @param data the data
+   * @return the result
+   */
+  @Nonnull
+  static Result liveInput(@Nonnull final TensorList data) {
+    data.addRef();
+    return new Result(data, (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList delta) -> {
+    }) {
+      @Override
+      protected void _free() {
+        data.freeRef();
+      }
+    };
+  }
+
+  @Nullable
+  private Result evalInputs() {
+    final Result[] inputs = Arrays.stream(inputData).map(LayerBenchmark::liveInput).toArray(i -> new Result[i]);
+    try {
+      return component.eval(inputs);
+    } finally {
+      Arrays.stream(inputs).forEach(ReferenceCounting::freeRef);
+    }
+  }
+}
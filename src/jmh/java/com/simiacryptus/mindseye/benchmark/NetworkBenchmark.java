@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.benchmark;
+
+import com.simiacryptus.mindseye.lang.*;
+import com.simiacryptus.mindseye.layers.java.*;
+import com.simiacryptus.mindseye.network.PipelineNetwork;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Times DAGNetwork evaluation and backpropagation on representative pipelines built from layers.java components.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkBenchmark {
+
+  /**
+   * The network: "mlp" is a two-layer fully connected classifier on 784 inputs, "image" is a bias/activation/pooling
+   * stack on 32x32x3 images.
+   */
+  @Param({"mlp", "image"})
+  public String network;
+
+  /**
+   * The batch size.
+   */
+  @Param({"1", "16", "128"})
+  public int batchSize;
+
+  /**
+   * Whether the network releases intermediate results at their last use.
+   */
+  @Param({"false", "true"})
+  public boolean freeAtLastUse;
+
+  @Nullable
+  private PipelineNetwork component;
+  @Nullable
+  private TensorList inputData;
+
+  /**
+   * Builds a representative network.
+   *
+   * @param name the name
+   * @return the pipeline network
+   */
+  @Nonnull
+  static PipelineNetwork build(@Nonnull final String name) {
+    switch (name) {
+      case "mlp":
+        return PipelineNetwork.wrap(1,
+            new FullyConnectedLayer(new int[]{784}, new int[]{256}),
+            new BiasLayer(256),
+            new ReLuActivationLayer(),
+            new FullyConnectedLayer(new int[]{256}, new int[]{10}),
+            new BiasLayer(10),
+            new SoftmaxActivationLayer());
+      case "image":
+        return PipelineNetwork.wrap(1,
+            new ImgBandBiasLayer(3),
+            new ReLuActivationLayer(),
+            new MaxPoolingLayer(2, 2, 1),
+            new ImgBandScaleLayer(1.0, 1.0, 1.0),
+            new SigmoidActivationLayer(),
+            new AvgPoolingLayer(2, 2, 1));
+      default:
+        throw new IllegalArgumentException(name);
+    }
+  }
+
+  /**
+   * Gets the input dims of a representative network.
+   *
+   * @param name the name
+   * @return the int [ ]
+   */
+  @Nonnull
+  static int[] inputDims(@Nonnull final String name) {
+    switch (name) {
+      case "mlp":
+        return new int[]{784};
+      case "image":
+        return new int[]{32, 32, 3};
+      default:
+        throw new IllegalArgumentException(name);
+    }
+  }
+
+  /**
+   * Builds the network and a batch of random inputs.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    component = build(network);
+    component.setFreeAtLastUse(freeAtLastUse);
+    final Random random = new Random(0);
+    final int[] dims = inputDims(network);
+    inputData = TensorArray.wrap(IntStream.range(0, batchSize)
+        .mapToObj(b -> new Tensor(dims).set(() -> random.nextGaussian()))
+        .toArray(j -> new Tensor[j]));
+  }
+
+  /**
+   * Releases the network and inputs.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    inputData.freeRef();
+    component.freeRef();
+    inputData = null;
+    component = null;
+  }
+
+  /**
+   * Forward pass only.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  public void eval(@Nonnull final Blackhole blackhole) {
+    @Nullable final Result result = evalInputs();
+    blackhole.consume(result.getData().length());
+    result.getData().freeRef();
+    result.freeRef();
+  }
+
+  /**
+   * Forward pass followed by a backward pass of a unit delta.
+   *
+   * @param blackhole the blackhole
+   */
+  @Benchmark
+  public void evalAndBackprop(@Nonnull final Blackhole blackhole) {
+    @Nullable final Result result = evalInputs();
+    @Nonnull final DeltaSet<UUID> buffer = new DeltaSet<UUID>();
+    try {
+      result.accumulate(buffer, TensorArray.wrap(result.getData().stream()
+          .map(x -> x.mapAndFree(v -> 1.0)).toArray(i -> new Tensor[i])));
+      blackhole.consume(buffer.getMap().size());
+    } finally {
+      buffer.freeRef();
+      result.getData().freeRef();
+      result.freeRef();
+    }
+  }
+
+  @Nullable
+  private Result evalInputs() {
+    @Nonnull final Result input = LayerBenchmark.liveInput(inputData);
+    try {
+      return component.eval(input);
+    } finally {
+      input.freeRef();
+    }
+  }
+}
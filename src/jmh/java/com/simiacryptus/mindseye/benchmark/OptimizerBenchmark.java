@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.benchmark;
+
+import com.simiacryptus.mindseye.eval.ArrayTrainable;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.layers.java.*;
+import com.simiacryptus.mindseye.network.PipelineNetwork;
+import com.simiacryptus.mindseye.opt.IterativeTrainer;
+import com.simiacryptus.mindseye.opt.line.ArmijoWolfeSearch;
+import com.simiacryptus.mindseye.opt.line.QuadraticSearch;
+import com.simiacryptus.mindseye.opt.orient.LBFGS;
+import com.simiacryptus.mindseye.opt.orient.QQN;
+import org.openjdk.jmh.annotations.*;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Times single optimizer iterations (orientation plus line search) on a small regression problem. The trainer is
+ * rebuilt for every measurement iteration so that L-BFGS history is warm but the problem never converges to a
+ * degenerate state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimizerBenchmark {
+
+  /**
+   * The orientation strategy.
+   */
+  @Param({"LBFGS", "QQN"})
+  public String orientation;
+
+  /**
+   * The number of training examples.
+   */
+  @Param({"100", "1000"})
+  public int samples;
+
+  @Nullable
+  private Tensor[][] data;
+  @Nullable
+  private ArrayTrainable trainable;
+  @Nullable
+  private IterativeTrainer trainer;
+
+  /**
+   * Builds a random regression data set.
+   */
+  @Setup(Level.Trial)
+  public void setupData() {
+    final Random random = new Random(0);
+    data = IntStream.range(0, samples).mapToObj(i -> new Tensor[]{
+        new Tensor(64).set(() -> random.nextGaussian()),
+        new Tensor(8).set(() -> random.nextGaussian())
+    }).toArray(i -> new Tensor[i][]);
+  }
+
+  /**
+   * Builds a fresh network and trainer.
+   */
+  @Setup(Level.Iteration)
+  public void setupTrainer() {
+    @Nonnull final PipelineNetwork network = new PipelineNetwork(2);
+    network.wrap(new MeanSqLossLayer(),
+        network.wrap(new FullyConnectedLayer(new int[]{32}, new int[]{8}),
+            network.wrap(new SigmoidActivationLayer(),
+                network.wrap(new BiasLayer(32),
+                    network.wrap(new FullyConnectedLayer(new int[]{64}, new int[]{32}), network.getInput(0))))),
+        network.getInput(1)).freeRef();
+    trainable = new ArrayTrainable(data, network);
+    network.freeRef();
+    trainer = new IterativeTrainer(trainable);
+    switch (orientation) {
+      case "LBFGS":
+        trainer.setOrientation(new LBFGS()).setLineSearchFactory(label -> new ArmijoWolfeSearch());
+        break;
+      case "QQN":
+        trainer.setOrientation(new QQN())
+            .setLineSearchFactory(n -> new QuadraticSearch().setCurrentRate(n.equals(QQN.CURSOR_NAME) ? 1.0 : 1e-4));
+        break;
+      default:
+        throw new IllegalArgumentException(orientation);
+    }
+    trainer.setIterationsPerSample(Integer.MAX_VALUE).setTerminateThreshold(Double.NEGATIVE_INFINITY);
+  }
+
+  /**
+   * Releases the trainer.
+   */
+  @TearDown(Level.Iteration)
+  public void tearDownTrainer() {
+    trainer.freeRef();
+    trainable.freeRef();
+    trainer = null;
+    trainable = null;
+  }
+
+  /**
+   * Releases the data set.
+   */
+  @TearDown(Level.Trial)
+  public void tearDownData() {
+    Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    data = null;
+  }
+
+  /**
+   * Runs one optimizer iteration.
+   *
+   * @return the fitness after the iteration
+   */
+  @Benchmark
+  public double iteration() {
+    trainer.setMaxIterations(trainer.getCurrentIteration().get() + 1);
+    return trainer.run();
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.benchmark;
+
+import com.simiacryptus.mindseye.lang.RecycleBin;
+import org.openjdk.jmh.annotations.*;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times a RecycleBin obtain/recycle round trip, the allocation path behind every Tensor. Run with -t to measure
+ * contention between threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecycleBinBenchmark {
+
+  /**
+   * The buffer length.
+   */
+  @Param({"16", "1024", "65536", "1048576"})
+  public int length;
+
+  /**
+   * Obtains a buffer and returns it to the bin.
+   *
+   * @return the int
+   */
+  @Benchmark
+  public int obtainRecycle() {
+    @Nonnull final double[] data = RecycleBin.DOUBLES.obtain(length);
+    final int result = data.length;
+    RecycleBin.DOUBLES.recycle(data, length);
+    return result;
+  }
+
+  /**
+   * Obtains a buffer and drops it, for comparison against plain allocation.
+   *
+   * @return the int
+   */
+  @Benchmark
+  public int obtainOnly() {
+    return RecycleBin.DOUBLES.obtain(length).length;
+  }
+}
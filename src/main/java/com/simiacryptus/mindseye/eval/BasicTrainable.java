@@ -195,6 +195,20 @@ public class BasicTrainable extends ReferenceCountingBase implements DataTrainab
     return this;
   }
 
+  /**
+   * Creates an independent evaluation context: a new trainable sharing this one's network, mask and verbosity, but
+   * holding its own data, so several batches may be measured concurrently.
+   *
+   * @return the basic trainable
+   */
+  @Nonnull
+  public BasicTrainable fork() {
+    @Nonnull final BasicTrainable fork = new BasicTrainable(network);
+    fork.mask = mask;
+    fork.verbosity = verbosity;
+    return fork;
+  }
+
   /**
    * Sets verbose.
    *
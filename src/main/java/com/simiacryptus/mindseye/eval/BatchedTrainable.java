@@ -20,6 +20,8 @@
 package com.simiacryptus.mindseye.eval;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.simiacryptus.lang.TimedResult;
 import com.simiacryptus.mindseye.lang.Layer;
 import com.simiacryptus.mindseye.lang.PointSample;
@@ -27,20 +29,41 @@ import com.simiacryptus.mindseye.lang.Tensor;
 import com.simiacryptus.mindseye.opt.TrainingMonitor;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Base class to manage batched execution, where a data setByCoord is executed in segments in order to manage execution
  * memory requirements.
+ * <p>
+ * By default the batches are evaluated one after another through the inner trainable. When the inner trainable is a
+ * {@link BasicTrainable} and {@link #setMaxParallelism(int)} is above one, batches are instead evaluated concurrently,
+ * each in its own {@link BasicTrainable#fork()}, and their samples are combined by a pairwise tree reduction. The
+ * number of batches in flight is further limited so their estimated footprint fits the memory budget.
  */
 public abstract class BatchedTrainable extends TrainableWrapper<DataTrainable> implements DataTrainable {
 
+  private static final ExecutorService pool = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("batch-eval-%d").build());
+
   /**
    * The Batch size.
    */
   protected final int batchSize;
   private boolean verbose = false;
+  private int maxParallelism = 1;
+  private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+  private double memoryFactor = 16;
 
   /**
    * Instantiates a new Batched trainable.
@@ -82,13 +105,17 @@ public abstract class BatchedTrainable extends TrainableWrapper<DataTrainable> i
         final int batches = (int) Math.ceil(tensors.size() * 1.0 / batchSize);
         final int evenBatchSize = (int) Math.ceil(tensors.size() * 1.0 / batches);
         @Nonnull final List<List<Tensor[]>> collection = Lists.partition(tensors, evenBatchSize);
-        return collection.stream().map(trainingData -> {
+        final int parallelism = getParallelism(collection.get(0));
+        if (1 < parallelism && getInner() instanceof BasicTrainable) {
+          return reduce(measureConcurrently(collection, parallelism, monitor));
+        }
+        return reduce(collection.stream().map(trainingData -> {
           if (batchSize < trainingData.size()) {
             throw new RuntimeException();
           }
           getInner().setData(trainingData);
           return super.measure(monitor);
-        }).reduce((a, b) -> a.add(b)).get();
+        }).collect(Collectors.toList()));
       } else {
         getInner().setData(tensors);
         return super.measure(monitor);
@@ -100,6 +127,166 @@ public abstract class BatchedTrainable extends TrainableWrapper<DataTrainable> i
     return timedResult.result;
   }
 
+  /**
+   * Measures the batches concurrently. If any batch fails, the batches not yet started are skipped, the caller waits
+   * for those still running, and every sample already produced is freed before the failure is rethrown.
+   */
+  @Nonnull
+  private List<PointSample> measureConcurrently(@Nonnull final List<List<Tensor[]>> batches, final int parallelism, final TrainingMonitor monitor) {
+    @Nonnull final BasicTrainable inner = (BasicTrainable) getInner();
+    @Nonnull final Semaphore permits = new Semaphore(parallelism);
+    @Nonnull final AtomicBoolean cancelled = new AtomicBoolean(false);
+    @Nonnull final List<Future<PointSample>> futures = new ArrayList<>();
+    @Nonnull final List<PointSample> results = new ArrayList<>();
+    try {
+      for (@Nonnull final List<Tensor[]> trainingData : batches) {
+        permits.acquire();
+        futures.add(pool.submit(() -> {
+          try {
+            if (cancelled.get()) return null;
+            @Nonnull final BasicTrainable context = inner.fork();
+            try {
+              context.setData(trainingData);
+              return context.measure(monitor);
+            } finally {
+              context.freeRef();
+            }
+          } finally {
+            permits.release();
+          }
+        }));
+      }
+      for (@Nonnull final Future<PointSample> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      discard(cancelled, futures, results);
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      discard(cancelled, futures, results);
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private static void discard(@Nonnull final AtomicBoolean cancelled, @Nonnull final List<Future<PointSample>> futures,
+                              @Nonnull final List<PointSample> results) {
+    cancelled.set(true);
+    results.forEach(PointSample::freeRef);
+    for (@Nonnull final Future<PointSample> future : futures.subList(results.size(), futures.size())) {
+      try {
+        @Nullable final PointSample sample = Uninterruptibles.getUninterruptibly(future);
+        if (null != sample) sample.freeRef();
+      } catch (ExecutionException e) {
+        // The first failure is the one rethrown
+      }
+    }
+  }
+
+  /**
+   * Combines point samples by adding them pairwise, level by level, freeing the inputs. Each level's additions run in
+   * parallel, so combining n samples takes log2(n) sequential steps.
+   *
+   * @param samples the samples
+   * @return the combined point sample
+   */
+  @Nonnull
+  protected static PointSample reduce(@Nonnull List<PointSample> samples) {
+    if (samples.isEmpty()) throw new IllegalArgumentException();
+    while (1 < samples.size()) {
+      @Nonnull final List<PointSample> level = samples;
+      samples = IntStream.range(0, (level.size() + 1) / 2).parallel().mapToObj(i -> {
+        if (2 * i + 1 >= level.size()) return level.get(2 * i);
+        @Nonnull final PointSample left = level.get(2 * i);
+        @Nonnull final PointSample right = level.get(2 * i + 1);
+        @Nonnull final PointSample sum = left.add(right);
+        left.freeRef();
+        right.freeRef();
+        return sum;
+      }).collect(Collectors.toList());
+    }
+    return samples.get(0);
+  }
+
+  /**
+   * Gets the number of batches to evaluate concurrently: at most {@link #getMaxParallelism()}, and no more than the
+   * memory budget allows given the estimated footprint of one batch.
+   *
+   * @param batch a representative batch
+   * @return the parallelism
+   */
+  protected int getParallelism(@Nonnull final List<Tensor[]> batch) {
+    if (1 >= maxParallelism) return 1;
+    final long inputBytes = batch.stream().flatMap(Arrays::stream).mapToLong(x -> 8L * x.length()).sum();
+    final long batchBytes = Math.max(1, (long) (inputBytes * memoryFactor));
+    return (int) Math.max(1, Math.min(maxParallelism, memoryBudget / batchBytes));
+  }
+
+  /**
+   * Gets the maximum number of batches evaluated concurrently.
+   *
+   * @return the max parallelism
+   */
+  public int getMaxParallelism() {
+    return maxParallelism;
+  }
+
+  /**
+   * Sets the maximum number of batches evaluated concurrently. The default of 1 evaluates batches sequentially.
+   *
+   * @param maxParallelism the max parallelism
+   * @return the max parallelism
+   */
+  @Nonnull
+  public BatchedTrainable setMaxParallelism(final int maxParallelism) {
+    this.maxParallelism = maxParallelism;
+    return this;
+  }
+
+  /**
+   * Gets the memory budget, in bytes, shared by concurrently evaluated batches.
+   *
+   * @return the memory budget
+   */
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * Sets the memory budget, in bytes, shared by concurrently evaluated batches. Defaults to half the maximum heap.
+   *
+   * @param memoryBudget the memory budget
+   * @return the memory budget
+   */
+  @Nonnull
+  public BatchedTrainable setMemoryBudget(final long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+    return this;
+  }
+
+  /**
+   * Gets the memory factor.
+   *
+   * @return the memory factor
+   */
+  public double getMemoryFactor() {
+    return memoryFactor;
+  }
+
+  /**
+   * Sets the ratio of a batch's evaluation footprint (activations, deltas and gradients) to the size of its input data,
+   * used to estimate how many batches fit in the memory budget.
+   *
+   * @param memoryFactor the memory factor
+   * @return the memory factor
+   */
+  @Nonnull
+  public BatchedTrainable setMemoryFactor(final double memoryFactor) {
+    this.memoryFactor = memoryFactor;
+    return this;
+  }
+
   /**
    * Is verbose boolean.
    *
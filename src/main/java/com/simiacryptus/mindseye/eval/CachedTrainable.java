@@ -20,24 +20,36 @@
 package com.simiacryptus.mindseye.eval;
 
 import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.State;
+import com.simiacryptus.mindseye.lang.StateSet;
 import com.simiacryptus.mindseye.opt.TrainingMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
-import java.util.List;
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * A wrapper which maintains a hisotry of N prior evaluations. If a detectable repeated evaluation is requested, the
  * cached result is used.
+ * <p>
+ * Evaluations are keyed by a 64-bit fingerprint of the weight buffers' contents, so a lookup costs one pass over the
+ * weights and a hash probe regardless of the history size, and a hit is confirmed by comparing the weights exactly.
+ * The history is evicted in least-recently-used order, so line searches returning to an earlier step size, or trainers
+ * re-measuring the accepted point, keep finding their entries. For networks with a frozen prefix, see also
+ * {@link com.simiacryptus.mindseye.network.DAGNetwork#setActivationCache}, which lets the probes that do miss skip
+ * re-evaluating the frozen layers.
  *
  * @param <T> the type parameter
  */
 public class CachedTrainable<T extends Trainable> extends TrainableWrapper<T> {
   private static final Logger log = LoggerFactory.getLogger(CachedTrainable.class);
 
-  private final List<PointSample> history = new ArrayList<>();
+  private final LinkedHashMap<Long, PointSample> history = new LinkedHashMap<>(16, 0.75f, true);
   private int historySize = 3;
   private boolean verbose = true;
 
@@ -98,10 +110,32 @@ public class CachedTrainable<T extends Trainable> extends TrainableWrapper<T> {
     return this;
   }
 
+  /**
+   * Computes a fingerprint of the current contents of a set of weight buffers.
+   *
+   * @param weights the weights
+   * @return the fingerprint
+   */
+  public static long fingerprint(@Nonnull final StateSet<UUID> weights) {
+    long fingerprint = 0;
+    for (@Nonnull final Map.Entry<UUID, State<UUID>> e : weights.getMap().entrySet()) {
+      final double[] target = e.getValue().target;
+      long hash = e.getKey().getLeastSignificantBits() ^ target.length;
+      for (final double v : target) {
+        hash = (hash ^ Double.doubleToLongBits(v)) * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+      }
+      fingerprint += hash;
+    }
+    return fingerprint;
+  }
+
   @Override
-  public PointSample measure(final TrainingMonitor monitor) {
-    for (@Nonnull final PointSample result : history) {
-      if (!result.weights.isDifferent()) {
+  public synchronized PointSample measure(final TrainingMonitor monitor) {
+    if (!history.isEmpty()) {
+      @Nonnull final PointSample cached = history.values().iterator().next();
+      @Nullable final PointSample result = history.get(fingerprint(cached.weights));
+      if (null != result && !result.weights.isDifferent()) {
         if (isVerbose()) {
           log.info(String.format("Returning cached value; %s buffers unchanged since %s => %s",
               result.weights.getMap().size(), result.rate, result.getMean()));
@@ -110,16 +144,30 @@ public class CachedTrainable<T extends Trainable> extends TrainableWrapper<T> {
       }
     }
     final PointSample result = super.measure(monitor);
-    history.add(result.copyFull());
+    @Nullable final PointSample previous = history.put(fingerprint(result.weights), result.copyFull());
+    if (null != previous) previous.freeRef();
+    @Nonnull final Iterator<PointSample> iterator = history.values().iterator();
     while (getHistorySize() < history.size()) {
-      history.remove(0);
+      iterator.next().freeRef();
+      iterator.remove();
     }
     return result;
   }
 
   @Override
-  public boolean reseed(final long seed) {
-    history.clear();
+  public synchronized boolean reseed(final long seed) {
+    clearHistory();
     return super.reseed(seed);
   }
+
+  private void clearHistory() {
+    history.values().forEach(PointSample::freeRef);
+    history.clear();
+  }
+
+  @Override
+  protected void _free() {
+    clearHistory();
+    super._free();
+  }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.eval;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.simiacryptus.mindseye.lang.*;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A data-parallel trainable which splits its data into contiguous shards, one per {@link GradientWorker}, measures all
+ * shards concurrently and sums their gradients into one sample over the coordinator's network. Workers may run in this
+ * JVM ({@link #inProcess}) or in worker JVMs on the same host ({@link #multiProcess}), which spreads activations and
+ * garbage collection over several heaps; other transports plug in by implementing {@link GradientWorker}.
+ * <p>
+ * The optimizer runs against the coordinator's network as usual. Each measurement broadcasts the current weights to the
+ * workers and reduces their gradients pairwise, so the result is identical to a single {@link BasicTrainable} over all
+ * the data, up to floating point summation order. Learned inputs (see {@link TrainableDataMask}) are not supported.
+ */
+public class DataParallelTrainable extends TrainableBase implements DataTrainable {
+  @Nonnull
+  private final Layer network;
+  @Nonnull
+  private final List<GradientWorker> workers;
+  @Nonnull
+  private final ExecutorService pool;
+  @Nonnull
+  private Tensor[][] data = new Tensor[][]{};
+  private int activeWorkers = 0;
+
+  /**
+   * Instantiates a new Data parallel trainable, taking ownership of the workers.
+   *
+   * @param network the network
+   * @param workers the workers
+   */
+  public DataParallelTrainable(@Nonnull final Layer network, @Nonnull final List<? extends GradientWorker> workers) {
+    if (workers.isEmpty()) throw new IllegalArgumentException();
+    this.network = network;
+    this.network.addRef(this);
+    this.workers = new ArrayList<>(workers);
+    this.pool = Executors.newFixedThreadPool(workers.size(),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("gradient-worker-%d").build());
+  }
+
+  /**
+   * Creates a trainable whose shards are evaluated concurrently in this JVM.
+   *
+   * @param network the network
+   * @param workers the number of shards
+   * @return the data parallel trainable
+   */
+  @Nonnull
+  public static DataParallelTrainable inProcess(@Nonnull final Layer network, final int workers) {
+    return new DataParallelTrainable(network, IntStream.range(0, workers)
+        .mapToObj(i -> new InProcessGradientWorker(network)).collect(Collectors.toList()));
+  }
+
+  /**
+   * Creates a trainable whose shards are evaluated in worker JVMs on this host, started with this JVM's classpath. The
+   * workers are launched concurrently; if any fails to start, those already running are closed before rethrowing.
+   *
+   * @param network the network
+   * @param workers the number of worker processes
+   * @param jvmArgs additional arguments for the worker JVMs, such as heap settings
+   * @return the data parallel trainable
+   */
+  @Nonnull
+  public static DataParallelTrainable multiProcess(@Nonnull final Layer network, final int workers, @Nonnull final String... jvmArgs) {
+    @Nullable File model = null;
+    try {
+      model = File.createTempFile("model", ".zip");
+      network.writeZip(model, SerialPrecision.Double);
+      @Nonnull final File file = model;
+      @Nonnull final ExecutorService launcher = Executors.newFixedThreadPool(Math.max(1, workers),
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("worker-launcher-%d").build());
+      @Nonnull final List<SocketGradientWorker> started = new ArrayList<>();
+      try {
+        @Nullable RuntimeException failure = null;
+        for (@Nonnull final Future<SocketGradientWorker> future : IntStream.range(0, workers)
+            .mapToObj(i -> launcher.submit(() -> new SocketGradientWorker(file, jvmArgs))).collect(Collectors.toList())) {
+          try {
+            started.add(Uninterruptibles.getUninterruptibly(future));
+          } catch (ExecutionException e) {
+            if (null == failure) failure = new RuntimeException(e.getCause());
+          }
+        }
+        if (null != failure) throw failure;
+        return new DataParallelTrainable(network, started);
+      } catch (RuntimeException e) {
+        started.forEach(SocketGradientWorker::close);
+        throw e;
+      } finally {
+        launcher.shutdown();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      if (null != model) model.delete();
+    }
+  }
+
+  @Override
+  public Tensor[][] getData() {
+    return data;
+  }
+
+  @Nonnull
+  @Override
+  public synchronized Trainable setData(@Nonnull final List<Tensor[]> tensors) {
+    this.data = tensors.toArray(new Tensor[][]{});
+    activeWorkers = Math.min(workers.size(), tensors.size());
+    final int shards = activeWorkers;
+    run(IntStream.range(0, shards).mapToObj(i -> pool.submit(() -> {
+      final int from = (int) ((long) i * tensors.size() / shards);
+      final int to = (int) ((long) (i + 1) * tensors.size() / shards);
+      workers.get(i).setData(new ArrayList<>(tensors.subList(from, to)));
+      return null;
+    })).collect(Collectors.toList()));
+    return this;
+  }
+
+  @Override
+  public synchronized PointSample measure(final TrainingMonitor monitor) {
+    if (0 == activeWorkers) throw new IllegalStateException("No data");
+    final long startTime = System.nanoTime();
+    @Nonnull final Map<String, double[]> weights = WeightSnapshot.getWeights(network);
+    @Nonnull List<GradientWorker.Gradient> gradients = run(workers.subList(0, activeWorkers).stream()
+        .map(worker -> pool.submit(() -> worker.measure(weights))).collect(Collectors.toList()));
+    while (1 < gradients.size()) {
+      @Nonnull final List<GradientWorker.Gradient> level = gradients;
+      gradients = IntStream.range(0, (level.size() + 1) / 2).parallel()
+          .mapToObj(i -> 2 * i + 1 < level.size() ? level.get(2 * i).add(level.get(2 * i + 1)) : level.get(2 * i))
+          .collect(Collectors.toList());
+    }
+    @Nonnull final GradientWorker.Gradient total = gradients.get(0);
+    @Nonnull final DeltaSet<UUID> deltaSet = new DeltaSet<UUID>();
+    total.deltas.forEach((name, delta) -> {
+      final Delta<UUID> buffer = deltaSet.get(total.keys.get(name), weights.get(name));
+      buffer.addInPlace(delta);
+      buffer.freeRef();
+    });
+    @Nonnull final StateSet<UUID> stateSet = new StateSet<>(deltaSet);
+    try {
+      if (null != monitor) {
+        monitor.log(String.format("Evaluated %s items on %s workers in %.4fs", total.count, activeWorkers, (System.nanoTime() - startTime) / 1e9));
+      }
+      return new PointSample(deltaSet, stateSet, total.sum, 0.0, total.count);
+    } finally {
+      stateSet.freeRef();
+      deltaSet.freeRef();
+    }
+  }
+
+  @Nonnull
+  private static <T> List<T> run(@Nonnull final List<Future<T>> futures) {
+    try {
+      @Nonnull final List<T> results = new ArrayList<>();
+      for (@Nonnull final Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  @Override
+  public Layer getLayer() {
+    return network;
+  }
+
+  /**
+   * Gets the number of workers.
+   *
+   * @return the int
+   */
+  public int getWorkerCount() {
+    return workers.size();
+  }
+
+  @Override
+  protected void _free() {
+    workers.forEach(GradientWorker::close);
+    pool.shutdown();
+    network.freeRef();
+  }
+}
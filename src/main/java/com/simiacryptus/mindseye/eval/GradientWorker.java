@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.eval;
+
+import com.simiacryptus.mindseye.lang.Delta;
+import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.lang.WeightSnapshot;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * One shard of a {@link DataParallelTrainable}: holds part of the training data and evaluates the gradient over it
+ * for given weights. Implementations are the transport between the coordinating trainable and wherever the shard is
+ * evaluated; weights and gradients are exchanged as plain arrays keyed by {@link WeightSnapshot#getWeights(Layer)}
+ * names, so a worker may hold its own copy of the network.
+ */
+public interface GradientWorker extends AutoCloseable {
+
+  /**
+   * Replaces the worker's shard of training data.
+   *
+   * @param data the data
+   */
+  void setData(@Nonnull List<Tensor[]> data);
+
+  /**
+   * Evaluates the gradient over the shard.
+   *
+   * @param weights the current weights, which the worker applies to its network if it holds a copy
+   * @return the gradient
+   */
+  @Nonnull
+  Gradient measure(@Nonnull Map<String, double[]> weights);
+
+  @Override
+  void close();
+
+  /**
+   * The summed loss and weight gradients over a set of rows.
+   */
+  class Gradient {
+    /**
+     * The sum of the loss over the rows.
+     */
+    public final double sum;
+    /**
+     * The number of rows.
+     */
+    public final int count;
+    /**
+     * The delta set key of each weight array.
+     */
+    @Nonnull
+    public final Map<String, UUID> keys;
+    /**
+     * The gradient of each weight array.
+     */
+    @Nonnull
+    public final Map<String, double[]> deltas;
+
+    /**
+     * Instantiates a new Gradient.
+     *
+     * @param sum    the sum
+     * @param count  the count
+     * @param keys   the keys
+     * @param deltas the deltas
+     */
+    public Gradient(final double sum, final int count, @Nonnull final Map<String, UUID> keys, @Nonnull final Map<String, double[]> deltas) {
+      this.sum = sum;
+      this.count = count;
+      this.keys = keys;
+      this.deltas = deltas;
+    }
+
+    /**
+     * Extracts the gradient of a measured sample, naming each weight array as {@link WeightSnapshot#getWeights(Layer)}
+     * does for the network. Deltas of arrays outside the network, such as learned inputs, are not included.
+     *
+     * @param sample  the sample
+     * @param network the network
+     * @return the gradient
+     */
+    @Nonnull
+    public static Gradient of(@Nonnull final PointSample sample, @Nonnull final Layer network) {
+      @Nonnull final Map<double[], String> names = new IdentityHashMap<>();
+      WeightSnapshot.getWeights(network).forEach((name, target) -> names.put(target, name));
+      @Nonnull final Map<String, UUID> keys = new LinkedHashMap<>();
+      @Nonnull final Map<String, double[]> deltas = new LinkedHashMap<>();
+      for (@Nonnull final Map.Entry<UUID, Delta<UUID>> e : sample.delta.getMap().entrySet()) {
+        final String name = names.get(e.getValue().target);
+        if (null == name) continue;
+        keys.put(name, e.getKey());
+        deltas.put(name, Arrays.copyOf(e.getValue().getDelta(), e.getValue().target.length));
+      }
+      return new Gradient(sample.sum, sample.count, keys, deltas);
+    }
+
+    /**
+     * Sums two gradients into a new one.
+     *
+     * @param right the right
+     * @return the gradient
+     */
+    @Nonnull
+    public Gradient add(@Nonnull final Gradient right) {
+      @Nonnull final Map<String, UUID> keys = new LinkedHashMap<>(this.keys);
+      keys.putAll(right.keys);
+      @Nonnull final Map<String, double[]> deltas = new LinkedHashMap<>();
+      for (@Nonnull final String name : keys.keySet()) {
+        final double[] l = this.deltas.get(name);
+        final double[] r = right.deltas.get(name);
+        if (null == l) {
+          deltas.put(name, r);
+        } else if (null == r) {
+          deltas.put(name, l);
+        } else {
+          assert l.length == r.length;
+          @Nonnull final double[] x = new double[l.length];
+          for (int i = 0; i < l.length; i++) {
+            x[i] = l[i] + r[i];
+          }
+          deltas.put(name, x);
+        }
+      }
+      return new Gradient(sum + right.sum, count + right.count, keys, deltas);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.eval;
+
+import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.Tensor;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A worker which evaluates its shard in this JVM against the coordinator's own network, so no weights need to be
+ * copied. Several such workers measure their shards concurrently, each in its own evaluation context.
+ */
+public class InProcessGradientWorker implements GradientWorker {
+  @Nonnull
+  private final Layer network;
+  @Nonnull
+  private final BasicTrainable trainable;
+
+  /**
+   * Instantiates a new In process gradient worker.
+   *
+   * @param network the network shared with the coordinator
+   */
+  public InProcessGradientWorker(@Nonnull final Layer network) {
+    this.network = network;
+    this.trainable = new BasicTrainable(network);
+  }
+
+  @Override
+  public void setData(@Nonnull final List<Tensor[]> data) {
+    trainable.setData(data);
+  }
+
+  @Nonnull
+  @Override
+  public Gradient measure(@Nonnull final Map<String, double[]> weights) {
+    @Nonnull final PointSample sample = trainable.measure(null);
+    try {
+      return Gradient.of(sample, network);
+    } finally {
+      sample.freeRef();
+    }
+  }
+
+  @Override
+  public void close() {
+    trainable.freeRef();
+  }
+}
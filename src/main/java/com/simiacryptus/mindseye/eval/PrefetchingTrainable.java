@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.eval;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.Tensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A sampled trainable which prepares its minibatches in the background. A producer thread draws random rows, has them
+ * decoded (by calling each row's supplier) and optionally augmented on a pool of worker threads, and queues the
+ * assembled batch. Up to {@link #getPrefetch()} batches wait in the queue, so the next batch is normally ready by the
+ * time the trainer calls {@link #reseed(long)} to move on, and data preparation overlaps network evaluation instead of
+ * running between iterations.
+ * <p>
+ * Each supplier call hands one reference to every tensor it returns over to this trainable: a supplier decoding rows
+ * from storage returns its fresh tensors as they are, while a supplier over shared rows, such as an in-memory data
+ * set, must add a reference first (the in-memory constructor does). With augmentation, each row is passed to the
+ * augmentation function and then released; the function returns tensors this trainable owns, so it must add a
+ * reference to any input tensor it passes through unchanged. Batch tensors are released once their batch is replaced.
+ * <p>
+ * If a supplier or the augmentation throws, the failure is queued in place of the batch and rethrown by the
+ * {@link #reseed(long)} which would have used it; the producer then carries on with the next batch.
+ */
+public class PrefetchingTrainable extends TrainableWrapper<ArrayTrainable> implements SampledTrainable, TrainableDataMask {
+  private static final Logger log = LoggerFactory.getLogger(PrefetchingTrainable.class);
+
+  @Nonnull
+  private final List<? extends Supplier<Tensor[]>> trainingData;
+  @Nullable
+  private final Function<Tensor[], Tensor[]> augmentation;
+  @Nonnull
+  private final ExecutorService workers;
+  @Nonnull
+  private final Thread producer;
+  @Nonnull
+  private final BlockingQueue<Batch> queue;
+  private final int prefetch;
+  private volatile int trainingSize;
+  private volatile int generation = 0;
+  private volatile boolean running = true;
+  @Nonnull
+  private final Random random = new Random();
+
+  /**
+   * Instantiates a new Prefetching trainable.
+   *
+   * @param trainingData the row suppliers, each returning tensors the caller owns; these may decode rows from storage
+   * @param augmentation a function producing new, augmented tensors from a row, or null
+   * @param network      the network
+   * @param trainingSize the number of rows per sample
+   * @param batchSize    the evaluation batch size
+   * @param prefetch     the number of samples to prepare ahead
+   * @param threads      the number of decode/augment workers
+   */
+  public PrefetchingTrainable(@Nonnull final List<? extends Supplier<Tensor[]>> trainingData, @Nullable final Function<Tensor[], Tensor[]> augmentation,
+                              final Layer network, final int trainingSize, final int batchSize, final int prefetch, final int threads) {
+    super(new ArrayTrainable(null, network, batchSize));
+    if (0 == trainingData.size()) throw new IllegalArgumentException();
+    if (prefetch < 1 || threads < 1) throw new IllegalArgumentException();
+    this.trainingData = trainingData;
+    this.augmentation = augmentation;
+    this.trainingSize = trainingSize;
+    this.prefetch = prefetch;
+    this.queue = new ArrayBlockingQueue<>(prefetch);
+    this.workers = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("prefetch-worker-%d").build());
+    this.producer = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("prefetch-producer-%d").build().newThread(this::produce);
+    this.producer.start();
+    try {
+      reseed(System.nanoTime());
+    } catch (RuntimeException e) {
+      running = false;
+      producer.interrupt();
+      workers.shutdownNow();
+      throw e;
+    }
+  }
+
+  /**
+   * Instantiates a new Prefetching trainable over in-memory rows, without augmentation.
+   *
+   * @param trainingData the training data
+   * @param network      the network
+   * @param trainingSize the number of rows per sample
+   */
+  public PrefetchingTrainable(@Nonnull final Tensor[][] trainingData, final Layer network, final int trainingSize) {
+    this(Arrays.stream(trainingData).map(row -> (Supplier<Tensor[]>) () -> {
+          Arrays.stream(row).forEach(Tensor::addRef);
+          return row;
+        }).collect(Collectors.toList()),
+        null, network, trainingSize, trainingSize, 2, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+  }
+
+  private void produce() {
+    while (running) {
+      final int generation = this.generation;
+      final int size = getTrainingSize();
+      final int[] indices;
+      synchronized (random) {
+        indices = size < trainingData.size() ?
+            IntStream.generate(() -> random.nextInt(trainingData.size())).distinct().limit(size).toArray() :
+            IntStream.range(0, trainingData.size()).toArray();
+      }
+      try {
+        @Nonnull final Batch batch = assemble(generation, indices);
+        if (!running || generation != this.generation) {
+          batch.free();
+        } else {
+          queue.put(batch);
+        }
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  @Nonnull
+  private Batch assemble(final int generation, @Nonnull final int[] indices) throws InterruptedException {
+    @Nonnull final List<Future<Tensor[]>> rows = Arrays.stream(indices)
+        .mapToObj(i -> workers.submit(() -> load(i)))
+        .collect(Collectors.toList());
+    @Nonnull final Tensor[][] data = new Tensor[rows.size()][];
+    @Nullable Throwable failure = null;
+    for (int i = 0; i < data.length; i++) {
+      try {
+        data[i] = rows.get(i).get();
+      } catch (ExecutionException e) {
+        if (null == failure) failure = e.getCause();
+      } catch (InterruptedException e) {
+        rows.forEach(x -> x.cancel(true));
+        new Batch(generation, data, null).free();
+        throw e;
+      }
+    }
+    if (null == failure) return new Batch(generation, data, null);
+    log.warn("Failed to prepare batch", failure);
+    new Batch(generation, data, null).free();
+    return new Batch(generation, new Tensor[0][], failure);
+  }
+
+  @Nonnull
+  private Tensor[] load(final int index) {
+    final Tensor[] row = trainingData.get(index).get();
+    if (null == augmentation) return row;
+    try {
+      return augmentation.apply(row);
+    } finally {
+      Arrays.stream(row).forEach(Tensor::freeRef);
+    }
+  }
+
+  @Nonnull
+  @Override
+  public SampledCachedTrainable<? extends SampledTrainable> cached() {
+    return new SampledCachedTrainable<>(this);
+  }
+
+  @Override
+  public int getTrainingSize() {
+    return Math.min(trainingData.size(), trainingSize);
+  }
+
+  /**
+   * Gets the number of samples prepared ahead.
+   *
+   * @return the prefetch
+   */
+  public int getPrefetch() {
+    return prefetch;
+  }
+
+  /**
+   * Replaces the current sample with the next prepared one, waiting only if it is not ready yet. If that batch could
+   * not be prepared, its failure is thrown as a RuntimeException and the current sample is kept.
+   *
+   * @param seed the seed
+   * @return true
+   */
+  @Override
+  public boolean reseed(final long seed) {
+    @Nonnull final Batch batch = next();
+    getInner().setTrainingData(batch.data);
+    batch.free();
+    getInner().reseed(seed);
+    return true;
+  }
+
+  @Nonnull
+  private Batch next() {
+    try {
+      while (true) {
+        @Nonnull final Batch batch = queue.take();
+        if (batch.generation != generation) {
+          batch.free();
+        } else if (null != batch.failure) {
+          throw new RuntimeException("Failed to prepare batch", batch.failure);
+        } else {
+          return batch;
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Nonnull
+  @Override
+  public SampledTrainable setTrainingSize(final int trainingSize) {
+    this.trainingSize = trainingSize;
+    generation++;
+    reseed(System.nanoTime());
+    return this;
+  }
+
+  @Override
+  protected void _free() {
+    running = false;
+    producer.interrupt();
+    workers.shutdownNow();
+    @Nullable Batch batch;
+    while (null != (batch = queue.poll())) {
+      batch.free();
+    }
+    super._free();
+  }
+
+  private static class Batch {
+    private final int generation;
+    @Nonnull
+    private final Tensor[][] data;
+    @Nullable
+    private final Throwable failure;
+
+    private Batch(final int generation, @Nonnull final Tensor[][] data, @Nullable final Throwable failure) {
+      this.generation = generation;
+      this.data = data;
+      this.failure = failure;
+    }
+
+    private void free() {
+      Arrays.stream(data).filter(x -> null != x).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+}
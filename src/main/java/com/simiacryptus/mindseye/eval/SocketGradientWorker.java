@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.eval;
+
+import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.lang.WeightSnapshot;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A worker which evaluates its shard in a separate JVM on the same host, so each shard's activations and garbage live
+ * in their own heap. The child process is started with this JVM's classpath, loads the network from a model zip, and
+ * is driven over a loopback socket: the shard is sent once per {@link #setData(List)}, and each measurement sends the
+ * current weights and receives the shard's gradient.
+ */
+public class SocketGradientWorker implements GradientWorker {
+  private static final int DATA = 1;
+  private static final int MEASURE = 2;
+  private static final int CLOSE = 3;
+  private static final int OK = 0;
+  private static final int ERROR = 1;
+  private static final int CONNECT_TIMEOUT = 120000;
+
+  @Nonnull
+  private final Process process;
+  @Nonnull
+  private final Socket socket;
+  @Nonnull
+  private final DataInputStream in;
+  @Nonnull
+  private final DataOutputStream out;
+
+  /**
+   * Starts a worker process.
+   *
+   * @param model   a model zip written by {@link Layer#writeZip(File)}
+   * @param jvmArgs additional arguments for the worker JVM, such as heap settings
+   */
+  public SocketGradientWorker(@Nonnull final File model, @Nonnull final String... jvmArgs) {
+    try (@Nonnull ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      server.setSoTimeout(CONNECT_TIMEOUT);
+      @Nonnull final List<String> command = new ArrayList<>();
+      command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+      command.addAll(Arrays.asList(jvmArgs));
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(SocketGradientWorker.class.getName());
+      command.add(Integer.toString(server.getLocalPort()));
+      command.add(model.getAbsolutePath());
+      this.process = new ProcessBuilder(command).inheritIO().start();
+      this.socket = server.accept();
+      this.socket.setTcpNoDelay(true);
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+      readStatus(in);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * The worker process entry point.
+   *
+   * @param args the coordinator's port and the model file
+   * @throws IOException the io exception
+   */
+  public static void main(final String[] args) throws IOException {
+    try (@Nonnull Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+      socket.setTcpNoDelay(true);
+      @Nonnull final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+      @Nonnull final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+      @Nullable Layer network = null;
+      @Nullable BasicTrainable trainable = null;
+      try {
+        network = Layer.fromZip(new File(args[1]));
+        trainable = new BasicTrainable(network);
+        out.writeByte(OK);
+      } catch (RuntimeException e) {
+        writeError(out, e);
+        return;
+      } finally {
+        out.flush();
+      }
+      try {
+        while (true) {
+          final int command = in.readByte();
+          try {
+            if (DATA == command) {
+              @Nonnull final List<Tensor[]> data = readRows(in);
+              trainable.setData(data);
+              data.stream().flatMap(Arrays::stream).forEach(Tensor::freeRef);
+              out.writeByte(OK);
+            } else if (MEASURE == command) {
+              WeightSnapshot.apply(readArrays(in), network);
+              @Nonnull final PointSample sample = trainable.measure(null);
+              @Nonnull final Gradient gradient = Gradient.of(sample, network);
+              sample.freeRef();
+              out.writeByte(OK);
+              writeGradient(out, gradient);
+            } else if (CLOSE == command) {
+              return;
+            } else {
+              throw new IllegalStateException("Unknown command " + command);
+            }
+          } catch (RuntimeException e) {
+            writeError(out, e);
+          }
+          out.flush();
+        }
+      } finally {
+        trainable.freeRef();
+        network.freeRef();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void setData(@Nonnull final List<Tensor[]> data) {
+    try {
+      out.writeByte(DATA);
+      writeRows(out, data);
+      out.flush();
+      readStatus(in);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Nonnull
+  @Override
+  public synchronized Gradient measure(@Nonnull final Map<String, double[]> weights) {
+    try {
+      out.writeByte(MEASURE);
+      writeArrays(out, weights);
+      out.flush();
+      readStatus(in);
+      return readGradient(in);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      out.writeByte(CLOSE);
+      out.flush();
+      socket.close();
+    } catch (IOException e) {
+      // The process is destroyed below regardless
+    }
+    process.destroy();
+  }
+
+  private static void readStatus(@Nonnull final DataInputStream in) throws IOException {
+    if (ERROR == in.readByte()) throw new RuntimeException("Worker failed: " + in.readUTF());
+  }
+
+  private static void writeError(@Nonnull final DataOutputStream out, @Nonnull final RuntimeException e) throws IOException {
+    @Nonnull final StringWriter trace = new StringWriter();
+    e.printStackTrace(new PrintWriter(trace));
+    out.writeByte(ERROR);
+    final String message = trace.toString();
+    out.writeUTF(message.length() > 16000 ? message.substring(0, 16000) : message);
+  }
+
+  private static void writeDoubles(@Nonnull final DataOutputStream out, @Nonnull final double[] data) throws IOException {
+    @Nonnull final ByteBuffer buffer = ByteBuffer.allocate(8 * data.length);
+    buffer.asDoubleBuffer().put(data);
+    out.writeInt(data.length);
+    out.write(buffer.array());
+  }
+
+  @Nonnull
+  private static double[] readDoubles(@Nonnull final DataInputStream in) throws IOException {
+    @Nonnull final byte[] bytes = new byte[8 * in.readInt()];
+    in.readFully(bytes);
+    @Nonnull final double[] data = new double[bytes.length / 8];
+    ByteBuffer.wrap(bytes).asDoubleBuffer().get(data);
+    return data;
+  }
+
+  private static void writeRows(@Nonnull final DataOutputStream out, @Nonnull final List<Tensor[]> rows) throws IOException {
+    out.writeInt(rows.size());
+    for (@Nonnull final Tensor[] row : rows) {
+      out.writeInt(row.length);
+      for (@Nonnull final Tensor tensor : row) {
+        final int[] dims = tensor.getDimensions();
+        out.writeInt(dims.length);
+        for (final int dim : dims) {
+          out.writeInt(dim);
+        }
+        writeDoubles(out, tensor.getData());
+      }
+    }
+  }
+
+  @Nonnull
+  private static List<Tensor[]> readRows(@Nonnull final DataInputStream in) throws IOException {
+    @Nonnull final List<Tensor[]> rows = new ArrayList<>();
+    for (int r = in.readInt(); r > 0; r--) {
+      @Nonnull final Tensor[] row = new Tensor[in.readInt()];
+      for (int c = 0; c < row.length; c++) {
+        @Nonnull final int[] dims = new int[in.readInt()];
+        for (int d = 0; d < dims.length; d++) {
+          dims[d] = in.readInt();
+        }
+        row[c] = new Tensor(readDoubles(in), dims);
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  private static void writeArrays(@Nonnull final DataOutputStream out, @Nonnull final Map<String, double[]> arrays) throws IOException {
+    out.writeInt(arrays.size());
+    for (@Nonnull final Map.Entry<String, double[]> e : arrays.entrySet()) {
+      out.writeUTF(e.getKey());
+      synchronized (e.getValue()) {
+        writeDoubles(out, e.getValue());
+      }
+    }
+  }
+
+  @Nonnull
+  private static Map<String, double[]> readArrays(@Nonnull final DataInputStream in) throws IOException {
+    @Nonnull final Map<String, double[]> arrays = new LinkedHashMap<>();
+    for (int n = in.readInt(); n > 0; n--) {
+      arrays.put(in.readUTF(), readDoubles(in));
+    }
+    return arrays;
+  }
+
+  private static void writeGradient(@Nonnull final DataOutputStream out, @Nonnull final Gradient gradient) throws IOException {
+    out.writeDouble(gradient.sum);
+    out.writeInt(gradient.count);
+    out.writeInt(gradient.deltas.size());
+    for (@Nonnull final Map.Entry<String, double[]> e : gradient.deltas.entrySet()) {
+      final UUID key = gradient.keys.get(e.getKey());
+      out.writeUTF(e.getKey());
+      out.writeLong(key.getMostSignificantBits());
+      out.writeLong(key.getLeastSignificantBits());
+      writeDoubles(out, e.getValue());
+    }
+  }
+
+  @Nonnull
+  private static Gradient readGradient(@Nonnull final DataInputStream in) throws IOException {
+    final double sum = in.readDouble();
+    final int count = in.readInt();
+    @Nonnull final Map<String, UUID> keys = new LinkedHashMap<>();
+    @Nonnull final Map<String, double[]> deltas = new LinkedHashMap<>();
+    for (int n = in.readInt(); n > 0; n--) {
+      final String name = in.readUTF();
+      keys.put(name, new UUID(in.readLong(), in.readLong()));
+      deltas.put(name, readDoubles(in));
+    }
+    return new Gradient(sum, count, keys, deltas);
+  }
+}
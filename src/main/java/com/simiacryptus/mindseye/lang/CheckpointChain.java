@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An incremental checkpoint series in one directory. The first checkpoint, and every {@link #getRebasePeriod()}th one
+ * after it, is a full base snapshot; the others store only the change in each weight array since the previous
+ * checkpoint, quantized with {@link #getResidualPrecision()} (by default {@link SerialPrecision#Uniform8}) and omitted
+ * entirely for arrays which did not change. Residuals are taken against the weights as the loader will reconstruct them,
+ * not the exact previous weights, so quantization error is carried into the next residual instead of accumulating
+ * along the chain.
+ * <p>
+ * Files are named {@code <prefix>-<sequence>.base.zip} and {@code <prefix>-<sequence>.delta.zip}, each in the
+ * {@link WeightSnapshot} file format, and {@link #restore(File, String, Layer)} replays the latest base and the deltas
+ * following it.
+ */
+public class CheckpointChain {
+  @Nonnull
+  private final File directory;
+  @Nonnull
+  private final String prefix;
+  private int rebasePeriod = 10;
+  @Nonnull
+  private SerialPrecision basePrecision = SerialPrecision.Double;
+  @Nonnull
+  private SerialPrecision residualPrecision = SerialPrecision.Uniform8;
+  @Nullable
+  private Map<String, double[]> reconstructed;
+  private int sequence;
+  private int sinceBase;
+
+  /**
+   * Instantiates a new Checkpoint chain. Sequence numbers continue after any checkpoints already in the directory; the
+   * first checkpoint written is always a base.
+   *
+   * @param directory the directory
+   * @param prefix    the file name prefix
+   */
+  public CheckpointChain(@Nonnull final File directory, @Nonnull final String prefix) {
+    this.directory = directory;
+    this.prefix = prefix;
+    directory.mkdirs();
+    this.sequence = list(directory, prefix).stream().mapToInt(x -> x.sequence).max().orElse(-1) + 1;
+  }
+
+  /**
+   * Writes the next checkpoint in the chain.
+   *
+   * @param snapshot the snapshot
+   * @return the file written, or null if no weights changed since the previous checkpoint
+   */
+  @Nullable
+  public synchronized File write(@Nonnull final WeightSnapshot snapshot) {
+    return write(snapshot.getData());
+  }
+
+  /**
+   * Writes the next checkpoint in the chain.
+   *
+   * @param weights the weights, keyed as in {@link WeightSnapshot#getWeights(Layer)}
+   * @return the file written, or null if no weights changed since the previous checkpoint
+   */
+  @Nullable
+  public synchronized File write(@Nonnull final Map<String, double[]> weights) {
+    if (null == reconstructed || sinceBase >= rebasePeriod || !reconstructed.keySet().equals(weights.keySet())) {
+      @Nonnull final File file = new File(directory, String.format("%s-%06d.base.zip", prefix, sequence));
+      @Nonnull final Map<String, double[]> next = new LinkedHashMap<>();
+      weights.forEach((key, data) -> next.put(key, basePrecision.fromBytes(basePrecision.toBytes(data))));
+      writeFile(file, weights, basePrecision);
+      reconstructed = next;
+      sequence++;
+      sinceBase = 1;
+      return file;
+    }
+    @Nonnull final Map<String, double[]> residuals = new LinkedHashMap<>();
+    @Nonnull final Map<String, double[]> next = new LinkedHashMap<>(reconstructed);
+    weights.forEach((key, data) -> {
+      final double[] previous = reconstructed.get(key);
+      @Nonnull final double[] residual = new double[data.length];
+      boolean changed = false;
+      for (int i = 0; i < data.length; i++) {
+        residual[i] = data[i] - previous[i];
+        changed |= 0 != residual[i];
+      }
+      if (!changed) return;
+      @Nonnull final double[] decoded = residualPrecision.fromBytes(residualPrecision.toBytes(residual));
+      for (int i = 0; i < data.length; i++) {
+        decoded[i] += previous[i];
+      }
+      next.put(key, decoded);
+      residuals.put(key, residual);
+    });
+    if (residuals.isEmpty()) return null;
+    @Nonnull final File file = new File(directory, String.format("%s-%06d.delta.zip", prefix, sequence));
+    writeFile(file, residuals, residualPrecision);
+    reconstructed = next;
+    sequence++;
+    sinceBase++;
+    return file;
+  }
+
+  /**
+   * Writes a checkpoint file under a temporary name and renames it into place, so a failed or interrupted write leaves
+   * neither a partial file for {@link #replay} to read nor any change to the chain's state.
+   *
+   * @param file      the file
+   * @param weights   the weights
+   * @param precision the precision
+   */
+  private static void writeFile(@Nonnull final File file, @Nonnull final Map<String, double[]> weights, @Nonnull final SerialPrecision precision) {
+    @Nonnull final File temp = new File(file.getPath() + ".tmp");
+    try {
+      WeightSnapshot.write(temp, weights, precision);
+    } catch (RuntimeException e) {
+      temp.delete();
+      throw e;
+    }
+    if (!temp.renameTo(file)) {
+      temp.delete();
+      throw new RuntimeException("Could not create " + file);
+    }
+  }
+
+  /**
+   * Restores the latest checkpoint of a chain into a layer with the same structure.
+   *
+   * @param directory the directory
+   * @param prefix    the file name prefix
+   * @param layer     the layer
+   */
+  public static void restore(@Nonnull final File directory, @Nonnull final String prefix, @Nonnull final Layer layer) {
+    WeightSnapshot.apply(replay(directory, prefix, Integer.MAX_VALUE), layer);
+  }
+
+  /**
+   * Reconstructs the weights as of a given checkpoint by replaying the latest base at or before it and the deltas
+   * following that base.
+   *
+   * @param directory the directory
+   * @param prefix    the file name prefix
+   * @param sequence  the last sequence number to include
+   * @return the weights
+   */
+  @Nonnull
+  public static Map<String, double[]> replay(@Nonnull final File directory, @Nonnull final String prefix, final int sequence) {
+    @Nonnull final List<Entry> entries = list(directory, prefix);
+    entries.removeIf(x -> x.sequence > sequence);
+    int base = -1;
+    for (int i = 0; i < entries.size(); i++) {
+      if (entries.get(i).base) base = i;
+    }
+    if (base < 0) throw new IllegalArgumentException("No base checkpoint for " + prefix + " in " + directory);
+    @Nonnull final Map<String, double[]> weights = WeightSnapshot.read(entries.get(base).file);
+    for (@Nonnull final Entry entry : entries.subList(base + 1, entries.size())) {
+      WeightSnapshot.read(entry.file).forEach((key, residual) -> {
+        final double[] data = weights.get(key);
+        if (null == data) throw new IllegalStateException("Residual without base: " + key);
+        for (int i = 0; i < data.length; i++) {
+          data[i] += residual[i];
+        }
+      });
+    }
+    return weights;
+  }
+
+  @Nonnull
+  private static List<Entry> list(@Nonnull final File directory, @Nonnull final String prefix) {
+    @Nonnull final Pattern pattern = Pattern.compile(Pattern.quote(prefix) + "-(\\d+)\\.(base|delta)\\.zip");
+    @Nonnull final List<Entry> entries = new ArrayList<>();
+    @Nullable final File[] files = directory.listFiles();
+    if (null != files) for (@Nonnull final File file : files) {
+      @Nonnull final Matcher matcher = pattern.matcher(file.getName());
+      if (matcher.matches()) {
+        entries.add(new Entry(file, Integer.parseInt(matcher.group(1)), "base".equals(matcher.group(2))));
+      }
+    }
+    entries.sort(Comparator.comparingInt(x -> x.sequence));
+    return entries;
+  }
+
+  /**
+   * Gets rebase period.
+   *
+   * @return the number of checkpoints per base, including the base
+   */
+  public int getRebasePeriod() {
+    return rebasePeriod;
+  }
+
+  /**
+   * Sets rebase period.
+   *
+   * @param rebasePeriod the number of checkpoints per base, including the base
+   * @return the rebase period
+   */
+  @Nonnull
+  public CheckpointChain setRebasePeriod(final int rebasePeriod) {
+    if (rebasePeriod < 1) throw new IllegalArgumentException();
+    this.rebasePeriod = rebasePeriod;
+    return this;
+  }
+
+  /**
+   * Gets base precision.
+   *
+   * @return the base precision
+   */
+  @Nonnull
+  public SerialPrecision getBasePrecision() {
+    return basePrecision;
+  }
+
+  /**
+   * Sets base precision.
+   *
+   * @param basePrecision the base precision
+   * @return the base precision
+   */
+  @Nonnull
+  public CheckpointChain setBasePrecision(@Nonnull final SerialPrecision basePrecision) {
+    this.basePrecision = basePrecision;
+    return this;
+  }
+
+  /**
+   * Gets residual precision.
+   *
+   * @return the residual precision
+   */
+  @Nonnull
+  public SerialPrecision getResidualPrecision() {
+    return residualPrecision;
+  }
+
+  /**
+   * Sets residual precision.
+   *
+   * @param residualPrecision the residual precision
+   * @return the residual precision
+   */
+  @Nonnull
+  public CheckpointChain setResidualPrecision(@Nonnull final SerialPrecision residualPrecision) {
+    this.residualPrecision = residualPrecision;
+    return this;
+  }
+
+  private static class Entry {
+    @Nonnull
+    private final File file;
+    private final int sequence;
+    private final boolean base;
+
+    private Entry(@Nonnull final File file, final int sequence, final boolean base) {
+      this.file = file;
+      this.sequence = sequence;
+      this.base = base;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A TensorList stored as one batch-major double[] of shape [length, ...dims], so item i occupies the range starting at
+ * {@link #offset(int)}. Layers which recognize this type can operate on the whole block in a single loop instead of
+ * walking per-item Tensor objects. Since a Tensor always owns a dense array of its own, {@link #get(int)} copies the
+ * item out; code on the fast path should use {@link #getData()} instead.
+ */
+public class ContiguousTensorList extends ReferenceCountingBase implements TensorList {
+  @Nonnull
+  private final int[] dims;
+  private final int length;
+  private final int elementLength;
+  @Nonnull
+  private final double[] data;
+
+  /**
+   * Instantiates a new Contiguous tensor list, taking ownership of the given buffer.
+   *
+   * @param data   the data
+   * @param length the number of items
+   * @param dims   the dims of each item
+   */
+  public ContiguousTensorList(@Nonnull final double[] data, final int length, @Nonnull final int... dims) {
+    this.dims = Arrays.copyOf(dims, dims.length);
+    this.length = length;
+    this.elementLength = Tensor.length(dims);
+    if (data.length != (long) length * elementLength)
+      throw new IllegalArgumentException(data.length + " != " + length + " * " + Arrays.toString(dims));
+    this.data = data;
+  }
+
+  /**
+   * Instantiates a new zero-filled Contiguous tensor list.
+   *
+   * @param length the number of items
+   * @param dims   the dims of each item
+   */
+  public ContiguousTensorList(final int length, @Nonnull final int... dims) {
+    this(RecycleBin.DOUBLES.obtain((long) length * Tensor.length(dims)), length, dims);
+  }
+
+  /**
+   * Packs a tensor list into a contiguous block. A list which is already contiguous is returned as-is, with an added
+   * reference.
+   *
+   * @param list the list
+   * @return the contiguous tensor list
+   */
+  @Nonnull
+  public static ContiguousTensorList pack(@Nonnull final TensorList list) {
+    if (list instanceof ContiguousTensorList) {
+      list.addRef();
+      return (ContiguousTensorList) list;
+    }
+    @Nonnull final ContiguousTensorList packed = new ContiguousTensorList(list.length(), list.getDimensions());
+    final double[] block = packed.getData();
+    final int elementLength = packed.getElementLength();
+    IntStream.range(0, list.length()).parallel().forEach(dataIndex -> {
+      Tensor tensor = list.get(dataIndex);
+      System.arraycopy(tensor.getData(), 0, block, dataIndex * elementLength, elementLength);
+      tensor.freeRef();
+    });
+    return packed;
+  }
+
+  /**
+   * Gets the whole batch-major block.
+   *
+   * @return the data
+   */
+  @Nonnull
+  public double[] getData() {
+    assertAlive();
+    return data;
+  }
+
+  /**
+   * Gets the number of values in each item.
+   *
+   * @return the element length
+   */
+  public int getElementLength() {
+    return elementLength;
+  }
+
+  /**
+   * Gets the position of an item in the block.
+   *
+   * @param i the item index
+   * @return the offset
+   */
+  public int offset(final int i) {
+    return i * elementLength;
+  }
+
+  @Nonnull
+  @Override
+  public Tensor get(final int i) {
+    assertAlive();
+    @Nonnull final Tensor tensor = new Tensor(dims);
+    System.arraycopy(data, offset(i), tensor.getData(), 0, elementLength);
+    return tensor;
+  }
+
+  @Nonnull
+  @Override
+  public int[] getDimensions() {
+    return Arrays.copyOf(dims, dims.length);
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public Stream<Tensor> stream() {
+    return IntStream.range(0, length).mapToObj(this::get);
+  }
+
+  @Override
+  protected void _free() {
+    if (RecycleBin.DOUBLES.want(data.length)) {
+      RecycleBin.DOUBLES.recycle(data, data.length);
+    }
+  }
+}
@@ -40,12 +40,20 @@ public class CoreSettings implements Settings {
   private final boolean lifecycleDebug;
   private final boolean singleThreaded;
   private final PersistanceMode doubleCacheMode;
+  private final boolean doubleCacheSlab;
+  private final long doubleCacheBytes;
+  private final int deltaStripes;
+  private final boolean deltaDeterministic;
 
   private CoreSettings() {
     System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", Integer.toString(Settings.get("THREADS", 64)));
     this.singleThreaded = Settings.get("SINGLE_THREADED", false);
     this.lifecycleDebug = Settings.get("DEBUG_LIFECYCLE", false);
     this.doubleCacheMode = Settings.get("DOUBLE_CACHE_MODE", PersistanceMode.WEAK);
+    this.doubleCacheSlab = Settings.get("DOUBLE_CACHE_SLAB", false);
+    this.doubleCacheBytes = Settings.get("DOUBLE_CACHE_BYTES", 1024L * 1024 * 1024);
+    this.deltaStripes = Settings.get("DELTA_STRIPES", 0);
+    this.deltaDeterministic = Settings.get("DELTA_DETERMINISTIC", false);
     this.backpropAggregationSize = Settings.get("BACKPROP_AGG_SIZE", 2);
     MarkdownNotebookOutput.MAX_OUTPUT = Settings.get("MAX_OUTPUT", 2 * 1024);
     if (CudaSettings.INSTANCE() == null) throw new RuntimeException();
@@ -95,4 +103,40 @@ public class CoreSettings implements Settings {
     return doubleCacheMode;
   }
 
+  /**
+   * Is double cache slab boolean.
+   *
+   * @return whether RecycleBin.DOUBLES uses the size-class SlabRecycleBin
+   */
+  public boolean isDoubleCacheSlab() {
+    return doubleCacheSlab;
+  }
+
+  /**
+   * Gets double cache bytes.
+   *
+   * @return the byte budget of the slab double cache
+   */
+  public long getDoubleCacheBytes() {
+    return doubleCacheBytes;
+  }
+
+  /**
+   * Gets delta stripes.
+   *
+   * @return the number of partial buffers each Delta accumulates into; 0 disables striping
+   */
+  public int getDeltaStripes() {
+    return deltaStripes;
+  }
+
+  /**
+   * Is delta deterministic boolean.
+   *
+   * @return whether striped Delta partials are reduced sequentially in stripe order
+   */
+  public boolean isDeltaDeterministic() {
+    return deltaDeterministic;
+  }
+
 }
@@ -20,6 +20,7 @@
 package com.simiacryptus.mindseye.lang;
 
 import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
 
 /**
  * Provides a data serialization interface designed for converting arrays of doubles to/from arrays of bytes.
@@ -27,13 +28,32 @@ import javax.annotation.Nonnull;
  */
 public interface DataSerializer {
 
+  /**
+   * Encodes into a buffer, starting at its current position. The buffer's position is not changed.
+   *
+   * @param from the from
+   * @param to   the to
+   */
+  void copy(double[] from, ByteBuffer to);
+
+  /**
+   * Decodes from a buffer, starting at its current position. The buffer's position is not changed, and it may be a
+   * direct or memory-mapped buffer, so large blobs can be decoded without first being read into the heap.
+   *
+   * @param from the from
+   * @param to   the to
+   */
+  void copy(ByteBuffer from, double[] to);
+
   /**
    * Copy.
    *
    * @param from the from
    * @param to   the to
    */
-  void copy(double[] from, byte[] to);
+  default void copy(double[] from, byte[] to) {
+    copy(from, ByteBuffer.wrap(to));
+  }
 
   /**
    * Copy.
@@ -41,7 +61,9 @@ public interface DataSerializer {
    * @param from the from
    * @param to   the to
    */
-  void copy(byte[] from, double[] to);
+  default void copy(byte[] from, double[] to) {
+    copy(ByteBuffer.wrap(from), to);
+  }
 
   /**
    * Gets element size.
@@ -106,4 +128,14 @@ public interface DataSerializer {
   default int decodedSize(@Nonnull byte[] from) {
     return (from.length - getHeaderSize()) / getElementSize();
   }
+
+  /**
+   * Decoded size int.
+   *
+   * @param from the from
+   * @return the int
+   */
+  default int decodedSize(@Nonnull ByteBuffer from) {
+    return (from.remaining() - getHeaderSize()) / getElementSize();
+  }
 }
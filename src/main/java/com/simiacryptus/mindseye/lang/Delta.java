@@ -23,6 +23,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
 
 /**
  * An arithmetic evalInputDelta being staged to effect an in-memory change to a double[] array. In comparison apply the State
@@ -36,6 +37,12 @@ public class Delta<K> extends DoubleBuffer<K> {
    */
   @Nullable
   protected double[] deltaCompensation;
+  /**
+   * Per-stripe partial sums, or null if this delta accumulates directly.
+   */
+  @Nullable
+  private final Stripe[] stripes;
+  private final boolean deterministic;
 
   /**
    * Instantiates a new Delta.
@@ -67,11 +74,29 @@ public class Delta<K> extends DoubleBuffer<K> {
    * @param deltaCompensation the evalInputDelta compensation
    */
   protected Delta(@Nonnull final K layer, @Nullable final double[] target, @Nullable final double[] delta, final double[] deltaCompensation) {
+    this(layer, target, delta, deltaCompensation, CoreSettings.INSTANCE().getDeltaStripes(), CoreSettings.INSTANCE().isDeltaDeterministic());
+  }
+
+  /**
+   * Instantiates a new Delta with explicit striping, overriding {@link CoreSettings#getDeltaStripes()} and
+   * {@link CoreSettings#isDeltaDeterministic()}.
+   *
+   * @param layer             the key
+   * @param target            the target
+   * @param delta             the doubles
+   * @param deltaCompensation the evalInputDelta compensation
+   * @param stripeCount       the number of partial buffers; 0 or 1 accumulates directly
+   * @param deterministic     whether partials are reduced sequentially in stripe order
+   */
+  Delta(@Nonnull final K layer, @Nullable final double[] target, @Nullable final double[] delta, final double[] deltaCompensation,
+        final int stripeCount, final boolean deterministic) {
     super(layer, target, delta);
     if (null == target) throw new IllegalArgumentException();
     assert null == delta || target.length == delta.length;
     //if(null == array) throw new IllegalArgumentException();
     this.deltaCompensation = deltaCompensation;
+    this.stripes = 1 < stripeCount ? IntStream.range(0, stripeCount).mapToObj(i -> new Stripe()).toArray(i -> new Stripe[i]) : null;
+    this.deterministic = deterministic;
   }
 
   /**
@@ -116,6 +141,7 @@ public class Delta<K> extends DoubleBuffer<K> {
    */
   public final void accumulate(final double factor) {
     synchronized (target) {
+      WeightSnapshot.beforeWrite(target);
       assert Arrays.stream(target).allMatch(Double::isFinite);
       @Nullable final double[] delta = getDelta();
       for (int i = 0; i < length(); i++) {
@@ -135,7 +161,8 @@ public class Delta<K> extends DoubleBuffer<K> {
   @Nonnull
   public Delta<K> addInPlace(@Nonnull final Delta<K> buffer) {
     assertAlive();
-    return addInPlace(buffer.delta).addInPlace(buffer.deltaCompensation);
+    @Nullable final double[] delta = buffer.getDelta();
+    return addInPlace(delta).addInPlace(buffer.deltaCompensation);
   }
 
   /**
@@ -148,22 +175,54 @@ public class Delta<K> extends DoubleBuffer<K> {
   public Delta<K> addInPlace(@Nonnull final double[] data) {
     assert data.length == this.target.length;
     //assert Arrays.stream(data).allMatch(Double::isFinite);
+    if (null != stripes) {
+      final Stripe stripe = stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+      synchronized (stripe) {
+        if (null == stripe.partial) {
+          stripe.partial = RecycleBin.DOUBLES.obtain(target.length);
+          stripe.compensation = RecycleBin.DOUBLES.obtain(target.length);
+        }
+        Delta.accumulate(stripe.partial, data, stripe.compensation);
+      }
+      return this;
+    }
     Delta.accumulate(getDelta(), data, deltaCompensation);
     //assert Arrays.stream(read()).allMatch(Double::isFinite);
     return this;
   }
 
 
+  @Nullable
+  @Override
+  public double[] getDelta() {
+    @Nullable final double[] delta = super.getDelta();
+    if (null != stripes) {
+      if (deterministic) {
+        for (@Nonnull final Stripe stripe : stripes) {
+          stripe.reduceInto(delta, deltaCompensation);
+        }
+      } else {
+        Arrays.stream(stripes).parallel().forEach(stripe -> stripe.reduceInto(delta, deltaCompensation));
+      }
+    }
+    return delta;
+  }
+
   @Nonnull
   @Override
   public Delta<K> copy() {
     assertAlive();
-    return new Delta<K>(key, target, RecycleBin.DOUBLES.copyOf(delta, length()), RecycleBin.DOUBLES.copyOf(deltaCompensation, length()));
+    return new Delta<K>(key, target, RecycleBin.DOUBLES.copyOf(getDelta(), length()), RecycleBin.DOUBLES.copyOf(deltaCompensation, length()));
   }
 
   @Override
   protected void _free() {
     super._free();
+    if (null != stripes) {
+      for (@Nonnull final Stripe stripe : stripes) {
+        stripe.free();
+      }
+    }
     if (null != deltaCompensation) {
       if (RecycleBin.DOUBLES.want(deltaCompensation.length)) {
         RecycleBin.DOUBLES.recycle(deltaCompensation, deltaCompensation.length);
@@ -195,4 +254,41 @@ public class Delta<K> extends DoubleBuffer<K> {
     super.set(data);
     return this;
   }
+
+  /**
+   * A partial sum which a subset of accumulating threads add into instead of the shared delta. Each stripe is guarded
+   * by its own monitor, so striping is not lock-free: it only narrows contention to threads mapped to the same stripe.
+   * Partials are folded into the delta, and cleared, whenever the delta is read through {@link #getDelta()}; code must
+   * not read the raw delta field of a striped Delta.
+   */
+  private static final class Stripe {
+    @Nullable
+    private double[] partial;
+    @Nullable
+    private double[] compensation;
+
+    private synchronized void reduceInto(@Nonnull final double[] delta, @Nullable final double[] deltaCompensation) {
+      if (null == partial) return;
+      for (int i = 0; i < partial.length; i++) {
+        partial[i] -= compensation[i];
+      }
+      Delta.accumulate(delta, partial, deltaCompensation);
+      free();
+    }
+
+    private synchronized void free() {
+      if (null != partial) {
+        if (RecycleBin.DOUBLES.want(partial.length)) {
+          RecycleBin.DOUBLES.recycle(partial, partial.length);
+        }
+        partial = null;
+      }
+      if (null != compensation) {
+        if (RecycleBin.DOUBLES.want(compensation.length)) {
+          RecycleBin.DOUBLES.recycle(compensation, compensation.length);
+        }
+        compensation = null;
+      }
+    }
+  }
 }
@@ -109,7 +109,7 @@ public class DeltaSet<K> extends DoubleBufferSet<K, Delta<K>> {
     map.forEach((layer, delta) -> {
       delta.assertAlive();
       State<K> kState = returnValue.get(layer, delta.target);
-      kState.set(delta.delta);
+      kState.set(delta.getDelta());
       kState.freeRef();
     });
     return returnValue;
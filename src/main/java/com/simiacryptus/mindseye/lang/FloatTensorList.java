@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A single-precision counterpart of {@link ContiguousTensorList}: the batch is stored as one batch-major float[] of
+ * shape [length, ...dims]. Java layers running at
+ * {@link com.simiacryptus.mindseye.layers.java.JavaPrecision#Float} exchange data in this form, halving the memory
+ * traffic of their activations and deltas. {@link #get(int)} widens the item into a new double-precision Tensor.
+ */
+public class FloatTensorList extends ReferenceCountingBase implements TensorList {
+  @Nonnull
+  private final int[] dims;
+  private final int length;
+  private final int elementLength;
+  @Nonnull
+  private final float[] data;
+
+  /**
+   * Instantiates a new Float tensor list, taking ownership of the given buffer.
+   *
+   * @param data   the data
+   * @param length the number of items
+   * @param dims   the dims of each item
+   */
+  public FloatTensorList(@Nonnull final float[] data, final int length, @Nonnull final int... dims) {
+    this.dims = Arrays.copyOf(dims, dims.length);
+    this.length = length;
+    this.elementLength = Tensor.length(dims);
+    if (data.length != (long) length * elementLength)
+      throw new IllegalArgumentException(data.length + " != " + length + " * " + Arrays.toString(dims));
+    this.data = data;
+  }
+
+  /**
+   * Instantiates a new zero-filled Float tensor list.
+   *
+   * @param length the number of items
+   * @param dims   the dims of each item
+   */
+  public FloatTensorList(final int length, @Nonnull final int... dims) {
+    this(new float[length * Tensor.length(dims)], length, dims);
+  }
+
+  /**
+   * Packs a tensor list into a single-precision block. A list which is already single-precision is returned as-is, with
+   * an added reference.
+   *
+   * @param list the list
+   * @return the float tensor list
+   */
+  @Nonnull
+  public static FloatTensorList pack(@Nonnull final TensorList list) {
+    if (list instanceof FloatTensorList) {
+      list.addRef();
+      return (FloatTensorList) list;
+    }
+    @Nonnull final FloatTensorList packed = new FloatTensorList(list.length(), list.getDimensions());
+    final float[] block = packed.getData();
+    if (list instanceof ContiguousTensorList) {
+      final double[] source = ((ContiguousTensorList) list).getData();
+      for (int i = 0; i < block.length; i++) {
+        block[i] = (float) source[i];
+      }
+      return packed;
+    }
+    final int elementLength = packed.getElementLength();
+    IntStream.range(0, list.length()).parallel().forEach(dataIndex -> {
+      Tensor tensor = list.get(dataIndex);
+      final double[] source = tensor.getData();
+      final int offset = dataIndex * elementLength;
+      for (int i = 0; i < elementLength; i++) {
+        block[offset + i] = (float) source[i];
+      }
+      tensor.freeRef();
+    });
+    return packed;
+  }
+
+  /**
+   * Gets the whole batch-major block.
+   *
+   * @return the data
+   */
+  @Nonnull
+  public float[] getData() {
+    assertAlive();
+    return data;
+  }
+
+  /**
+   * Gets the number of values in each item.
+   *
+   * @return the element length
+   */
+  public int getElementLength() {
+    return elementLength;
+  }
+
+  @Nonnull
+  @Override
+  public Tensor get(final int i) {
+    assertAlive();
+    @Nonnull final Tensor tensor = new Tensor(dims);
+    final double[] target = tensor.getData();
+    final int offset = i * elementLength;
+    for (int j = 0; j < elementLength; j++) {
+      target[j] = data[offset + j];
+    }
+    return tensor;
+  }
+
+  @Nonnull
+  @Override
+  public int[] getDimensions() {
+    return Arrays.copyOf(dims, dims.length);
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public Stream<Tensor> stream() {
+    return IntStream.range(0, length).mapToObj(this::get);
+  }
+}
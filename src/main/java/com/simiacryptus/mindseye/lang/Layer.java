@@ -22,7 +22,6 @@ package com.simiacryptus.mindseye.lang;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.stream.JsonWriter;
 import com.simiacryptus.mindseye.network.PipelineNetwork;
 import org.apache.commons.io.IOUtils;
 
@@ -81,6 +80,18 @@ public interface Layer extends ReferenceCounting, Serializable {
   }
 
 
+  /**
+   * From zip nn key. Resources of files written by {@link #writeZip(File, SerialPrecision)} are memory-mapped and
+   * decoded directly into their tensors.
+   *
+   * @param file the file
+   * @return the nn key
+   */
+  @Nonnull
+  static Layer fromZip(@Nonnull final File file) {
+    return MappedResources.read(file);
+  }
+
   /**
    * From json nn key.
    *
@@ -316,17 +327,14 @@ public interface Layer extends ReferenceCounting, Serializable {
   }
 
   /**
-   * Write zip.
+   * Write zip. Weight data is stored uncompressed and aligned, so the file can be memory-mapped by
+   * {@link #fromZip(File)}.
    *
    * @param out       the out
    * @param precision the precision
    */
   default void writeZip(@Nonnull File out, SerialPrecision precision) {
-    try (@Nonnull ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(out))) {
-      writeZip(zipOutputStream, precision);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+    MappedResources.write(this, out, precision);
   }
 
   /**
@@ -339,33 +347,16 @@ public interface Layer extends ReferenceCounting, Serializable {
   }
 
   /**
-   * Write zip.
+   * Write zip. Weight blobs are written to the stream as each layer is visited, ahead of model.json, so memory use is
+   * bounded by the largest single tensor rather than the whole model.
    *
    * @param out       the out
    * @param precision the precision
    */
   default void writeZip(@Nonnull ZipOutputStream out, SerialPrecision precision) {
     try {
-      @Nonnull HashMap<CharSequence, byte[]> resources = new HashMap<>();
-      JsonObject json = getJson(resources, precision);
-      out.putNextEntry(new ZipEntry("model.json"));
-      @Nonnull JsonWriter writer = new JsonWriter(new OutputStreamWriter(out));
-      writer.setIndent("  ");
-      writer.setHtmlSafe(true);
-      writer.setSerializeNulls(false);
-      new GsonBuilder().setPrettyPrinting().create().toJson(json, writer);
-      writer.flush();
-      out.closeEntry();
-      resources.forEach((name, data) -> {
-        try {
-          out.putNextEntry(new ZipEntry(String.valueOf(name)));
-          IOUtils.write(data, out);
-          out.flush();
-          out.closeEntry();
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
-      });
+      @Nonnull ZipResourceWriter resources = new ZipResourceWriter(out, null);
+      resources.writeModel(getJson(resources, precision));
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -430,7 +421,8 @@ public interface Layer extends ReferenceCounting, Serializable {
   Layer setFrozen(final boolean frozen);
 
   /**
-   * State list.
+   * State list. These are the live weight arrays; code modifying them in place while training may be checkpointed must
+   * hold each array's monitor and call {@link WeightSnapshot#beforeWrite(double[])} first.
    *
    * @return the list
    */
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The data resources of a model zip file, read through a memory mapping rather than inflated into the heap.
+ * <p>
+ * {@link #write} lays the file out so this is possible: each resource blob is stored uncompressed with its data aligned
+ * to {@link #ALIGNMENT} bytes, followed by model.json and an index entry recording where each blob's data starts. The
+ * result is still an ordinary zip file, readable by {@link Layer#fromZip(ZipFile)}.
+ * <p>
+ * {@link #read} maps each blob on demand and Tensor decodes it in bulk straight from the mapping into its own array,
+ * so loading needs roughly one copy of the model in heap. Consumers which still call {@link #get(Object)} receive a
+ * fresh byte[] copy of the blob, which is not retained.
+ */
+public class MappedResources extends AbstractMap<CharSequence, byte[]> {
+  /**
+   * The name of the index entry.
+   */
+  public static final String INDEX_ENTRY = "resources.index.json";
+  /**
+   * The alignment of each blob's data within the file.
+   */
+  public static final int ALIGNMENT = 64;
+
+  @Nonnull
+  private final FileChannel channel;
+  @Nonnull
+  private final Map<CharSequence, long[]> index;
+
+  /**
+   * Instantiates a new Mapped resources.
+   *
+   * @param channel the channel
+   * @param index   the offset and length of each resource
+   */
+  protected MappedResources(@Nonnull final FileChannel channel, @Nonnull final Map<CharSequence, long[]> index) {
+    this.channel = channel;
+    this.index = index;
+  }
+
+  /**
+   * Writes a layer as a zip file in the mappable layout. Weight blobs are streamed into the file as each layer is
+   * visited; model.json and the index follow them.
+   *
+   * @param layer     the layer
+   * @param out       the out
+   * @param precision the precision
+   */
+  public static void write(@Nonnull final Layer layer, @Nonnull final File out, @Nonnull final SerialPrecision precision) {
+    try (@Nonnull CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(out)));
+         @Nonnull ZipOutputStream zip = new ZipOutputStream(counter)) {
+      @Nonnull final ZipResourceWriter resources = new ZipResourceWriter(zip, counter);
+      final JsonObject json = layer.getJson(resources, precision);
+      resources.writeModel(json);
+      zip.putNextEntry(new ZipEntry(INDEX_ENTRY));
+      zip.write(resources.getIndex().toString().getBytes(StandardCharsets.UTF_8));
+      zip.closeEntry();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads a layer from a zip file. Files written by {@link #write} have their resources memory-mapped; any other zip
+   * falls back to {@link Layer#fromZip(ZipFile)}.
+   *
+   * @param file the file
+   * @return the layer
+   */
+  @Nonnull
+  public static Layer read(@Nonnull final File file) {
+    try (@Nonnull ZipFile zipfile = new ZipFile(file)) {
+      @Nullable final ZipEntry indexEntry = zipfile.getEntry(INDEX_ENTRY);
+      if (null == indexEntry) return Layer.fromZip(zipfile);
+      @Nonnull final Map<CharSequence, long[]> index = new HashMap<>();
+      try (@Nonnull Reader reader = new InputStreamReader(zipfile.getInputStream(indexEntry), StandardCharsets.UTF_8)) {
+        final JsonObject json = new GsonBuilder().create().fromJson(reader, JsonObject.class);
+        for (@Nonnull Map.Entry<String, JsonElement> e : json.entrySet()) {
+          final JsonArray location = e.getValue().getAsJsonArray();
+          index.put(e.getKey(), new long[]{location.get(0).getAsLong(), location.get(1).getAsLong()});
+        }
+      }
+      final JsonObject json;
+      try (@Nonnull Reader reader = new InputStreamReader(zipfile.getInputStream(zipfile.getEntry("model.json")), StandardCharsets.UTF_8)) {
+        json = new GsonBuilder().create().fromJson(reader, JsonObject.class);
+      }
+      try (@Nonnull FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+        return Layer.fromJson(json, new MappedResources(channel, index));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Maps a resource's data. The mapping remains valid after loading completes.
+   *
+   * @param name the name
+   * @return the buffer, or null if there is no such resource
+   */
+  @Nullable
+  public ByteBuffer getBuffer(@Nonnull final CharSequence name) {
+    @Nullable final long[] location = index.get(String.valueOf(name));
+    if (null == location) return null;
+    try {
+      return channel.map(FileChannel.MapMode.READ_ONLY, location[0], location[1]);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Nullable
+  @Override
+  public byte[] get(final Object key) {
+    @Nullable final ByteBuffer buffer = null == key ? null : getBuffer(key.toString());
+    if (null == buffer) return null;
+    @Nonnull final byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return null != key && index.containsKey(key.toString());
+  }
+
+  @Nonnull
+  @Override
+  public Set<Entry<CharSequence, byte[]>> entrySet() {
+    @Nonnull final Set<Entry<CharSequence, byte[]>> entries = new LinkedHashSet<>();
+    for (@Nonnull CharSequence name : index.keySet()) {
+      entries.add(new SimpleImmutableEntry<>(name, get(name)));
+    }
+    return entries;
+  }
+
+  @Override
+  public int size() {
+    return index.size();
+  }
+}
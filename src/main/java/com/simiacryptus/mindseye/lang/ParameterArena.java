@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * A contiguous layout over the parameter buffers of a {@link DoubleBufferSet}: each key is assigned a fixed offset in a
+ * single flat double[], so a whole DeltaSet or StateSet can be gathered into one array, operated on with the
+ * whole-arena kernels below, and scattered back.
+ * <p>
+ * Layer weights stay in the arrays their Tensors own, since buffers are identified by array reference; the arena is
+ * the flat vector space the optimizer works in between one gather and one scatter, instead of streaming over the
+ * per-layer map and allocating a new set for every dot, add and scale.
+ *
+ * @param <K> the type parameter
+ */
+public class ParameterArena<K> {
+  /**
+   * Arrays at least this long are processed in parallel blocks of this size.
+   */
+  public static final int BLOCK = 1 << 16;
+
+  @Nonnull
+  private final List<K> keys;
+  @Nonnull
+  private final List<double[]> targets;
+  @Nonnull
+  private final int[] offsets;
+  @Nonnull
+  private final Map<K, Integer> index;
+  private final int length;
+
+  /**
+   * Instantiates a new Parameter arena with the keys and target buffers of a set, in its iteration order.
+   *
+   * @param layout the layout
+   */
+  public ParameterArena(@Nonnull final DoubleBufferSet<K, ?> layout) {
+    this.keys = new ArrayList<>();
+    this.targets = new ArrayList<>();
+    this.index = new HashMap<>();
+    layout.getMap().forEach((key, buffer) -> {
+      index.put(key, keys.size());
+      keys.add(key);
+      targets.add(buffer.target);
+    });
+    this.offsets = new int[keys.size() + 1];
+    long total = 0;
+    for (int i = 0; i < keys.size(); i++) {
+      offsets[i] = (int) total;
+      total += targets.get(i).length;
+      if (total > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many parameters: " + total);
+    }
+    offsets[keys.size()] = (int) total;
+    this.length = (int) total;
+  }
+
+  /**
+   * Dot product of two flat vectors.
+   *
+   * @param left  the left
+   * @param right the right
+   * @return the double
+   */
+  public static double dot(@Nonnull final double[] left, @Nonnull final double[] right) {
+    if (left.length != right.length) throw new IllegalArgumentException(left.length + " != " + right.length);
+    if (left.length < BLOCK) return dot(left, right, 0, left.length);
+    return IntStream.range(0, blocks(left.length)).parallel()
+        .mapToDouble(b -> dot(left, right, b * BLOCK, Math.min(left.length, (b + 1) * BLOCK)))
+        .sum();
+  }
+
+  /**
+   * Sum of squares of a flat vector.
+   *
+   * @param data the data
+   * @return the double
+   */
+  public static double sumSq(@Nonnull final double[] data) {
+    return dot(data, data);
+  }
+
+  /**
+   * Adds a scaled vector in place: y += alpha * x.
+   *
+   * @param alpha the alpha
+   * @param x     the x
+   * @param y     the y, which is modified
+   */
+  public static void axpy(final double alpha, @Nonnull final double[] x, @Nonnull final double[] y) {
+    if (x.length != y.length) throw new IllegalArgumentException(x.length + " != " + y.length);
+    forEachBlock(y.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        y[i] += alpha * x[i];
+      }
+    });
+  }
+
+  /**
+   * Scales a vector in place.
+   *
+   * @param alpha the alpha
+   * @param data  the data, which is modified
+   */
+  public static void scale(final double alpha, @Nonnull final double[] data) {
+    forEachBlock(data.length, (from, to) -> {
+      for (int i = from; i < to; i++) {
+        data[i] *= alpha;
+      }
+    });
+  }
+
+  /**
+   * Is finite boolean.
+   *
+   * @param data the data
+   * @return whether every element is finite
+   */
+  public static boolean isFinite(@Nonnull final double[] data) {
+    return IntStream.range(0, blocks(data.length)).parallel().allMatch(b -> {
+      final int to = Math.min(data.length, (b + 1) * BLOCK);
+      for (int i = b * BLOCK; i < to; i++) {
+        if (!Double.isFinite(data[i])) return false;
+      }
+      return true;
+    });
+  }
+
+  private static double dot(@Nonnull final double[] left, @Nonnull final double[] right, final int from, final int to) {
+    double sum = 0;
+    for (int i = from; i < to; i++) {
+      sum += left[i] * right[i];
+    }
+    return sum;
+  }
+
+  private static int blocks(final int length) {
+    return (length + BLOCK - 1) / BLOCK;
+  }
+
+  private static void forEachBlock(final int length, @Nonnull final BlockFunction fn) {
+    if (length < BLOCK) {
+      fn.apply(0, length);
+    } else {
+      IntStream.range(0, blocks(length)).parallel().forEach(b -> fn.apply(b * BLOCK, Math.min(length, (b + 1) * BLOCK)));
+    }
+  }
+
+  /**
+   * Gets the total number of parameters.
+   *
+   * @return the length
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Gets the keys in layout order.
+   *
+   * @return the keys
+   */
+  @Nonnull
+  public List<K> getKeys() {
+    return keys;
+  }
+
+  /**
+   * Gets the offset of a key's buffer in the arena.
+   *
+   * @param key the key
+   * @return the offset, or -1 if the key is not in the layout
+   */
+  public int offset(@Nonnull final K key) {
+    @Nullable final Integer i = index.get(key);
+    return null == i ? -1 : offsets[i];
+  }
+
+  /**
+   * Tests whether a set has exactly this layout's keys, with buffers of the same lengths.
+   *
+   * @param set the set
+   * @return the boolean
+   */
+  public boolean matches(@Nonnull final DoubleBufferSet<K, ?> set) {
+    if (set.getMap().size() != keys.size()) return false;
+    for (int i = 0; i < keys.size(); i++) {
+      @Nullable final DoubleBuffer<K> buffer = set.getMap().get(keys.get(i));
+      if (null == buffer || buffer.length() != offsets[i + 1] - offsets[i]) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Copies the buffers of a set into a new flat vector. Keys absent from the set are zero; keys absent from the layout
+   * are ignored.
+   *
+   * @param set the set
+   * @return the double [ ]
+   */
+  @Nonnull
+  public double[] gather(@Nonnull final DoubleBufferSet<K, ?> set) {
+    @Nonnull final double[] flat = new double[length];
+    IntStream.range(0, keys.size()).parallel().forEach(i -> {
+      @Nullable final DoubleBuffer<K> buffer = set.getMap().get(keys.get(i));
+      if (null != buffer) System.arraycopy(checkLength(buffer, i).getDelta(), 0, flat, offsets[i], offsets[i + 1] - offsets[i]);
+    });
+    return flat;
+  }
+
+  /**
+   * Gathers the difference of two sets, left - right, in one pass without materializing either side.
+   *
+   * @param left  the left
+   * @param right the right
+   * @return the double [ ]
+   */
+  @Nonnull
+  public double[] difference(@Nonnull final DoubleBufferSet<K, ?> left, @Nonnull final DoubleBufferSet<K, ?> right) {
+    @Nonnull final double[] flat = new double[length];
+    IntStream.range(0, keys.size()).parallel().forEach(i -> {
+      final int offset = offsets[i];
+      final int size = offsets[i + 1] - offset;
+      @Nullable final DoubleBuffer<K> l = left.getMap().get(keys.get(i));
+      @Nullable final DoubleBuffer<K> r = right.getMap().get(keys.get(i));
+      if (null != l) System.arraycopy(checkLength(l, i).getDelta(), 0, flat, offset, size);
+      if (null != r) {
+        @Nullable final double[] data = checkLength(r, i).getDelta();
+        for (int j = 0; j < size; j++) {
+          flat[offset + j] -= data[j];
+        }
+      }
+    });
+    return flat;
+  }
+
+  /**
+   * Copies a flat vector into the matching buffers of a set. Keys absent from the set are skipped.
+   *
+   * @param flat the flat
+   * @param set  the set, which is modified
+   */
+  public void scatter(@Nonnull final double[] flat, @Nonnull final DoubleBufferSet<K, ?> set) {
+    if (flat.length != length) throw new IllegalArgumentException(flat.length + " != " + length);
+    IntStream.range(0, keys.size()).parallel().forEach(i -> {
+      @Nullable final DoubleBuffer<K> buffer = set.getMap().get(keys.get(i));
+      if (null != buffer) System.arraycopy(flat, offsets[i], checkLength(buffer, i).getDelta(), 0, offsets[i + 1] - offsets[i]);
+    });
+  }
+
+  /**
+   * Creates a new DeltaSet over the layout's targets holding the values of a flat vector.
+   *
+   * @param flat the flat
+   * @return the delta set
+   */
+  @Nonnull
+  public DeltaSet<K> toDeltaSet(@Nonnull final double[] flat) {
+    if (flat.length != length) throw new IllegalArgumentException(flat.length + " != " + length);
+    @Nonnull final DeltaSet<K> deltaSet = new DeltaSet<>();
+    for (int i = 0; i < keys.size(); i++) {
+      final Delta<K> delta = deltaSet.get(keys.get(i), targets.get(i));
+      System.arraycopy(flat, offsets[i], delta.getDelta(), 0, offsets[i + 1] - offsets[i]);
+      delta.freeRef();
+    }
+    return deltaSet;
+  }
+
+  @Nonnull
+  private DoubleBuffer<K> checkLength(@Nonnull final DoubleBuffer<K> buffer, final int i) {
+    if (buffer.length() != offsets[i + 1] - offsets[i]) {
+      throw new IllegalArgumentException(String.format("Buffer %s has %d parameters; layout has %d", buffer.key, buffer.length(), offsets[i + 1] - offsets[i]));
+    }
+    return buffer;
+  }
+
+  @Nonnull
+  @Override
+  public String toString() {
+    return String.format("%s[%d keys, %d parameters]", getClass().getSimpleName(), keys.size(), length);
+  }
+
+  private interface BlockFunction {
+    void apply(int from, int to);
+  }
+}
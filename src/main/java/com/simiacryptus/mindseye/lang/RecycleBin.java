@@ -46,22 +46,7 @@ public abstract class RecycleBin<T> {
   /**
    * The constant DOUBLES.
    */
-  public static final RecycleBin<double[]> DOUBLES = new RecycleBin<double[]>() {
-    @Override
-    protected void free(double[] obj) {
-    }
-
-    @Override
-    public double[] create(final long length) {
-      return new double[(int) length];
-    }
-
-    @Override
-    public void reset(@Nonnull final double[] data, long size) {
-      assert data.length == size;
-      Arrays.fill(data, 0);
-    }
-  }.setPersistanceMode(CoreSettings.INSTANCE().getDoubleCacheMode());
+  public static final RecycleBin<double[]> DOUBLES = createDoubles();
   /**
    * The constant logger.
    */
@@ -120,6 +105,30 @@ public abstract class RecycleBin<T> {
     return RecycleBin.garbageTruck;
   }
 
+  @Nonnull
+  private static RecycleBin<double[]> createDoubles() {
+    if (CoreSettings.INSTANCE().isDoubleCacheSlab()) {
+      return SlabRecycleBin.doubleArrays(CoreSettings.INSTANCE().getDoubleCacheBytes())
+          .setPersistanceMode(CoreSettings.INSTANCE().getDoubleCacheMode());
+    }
+    return new RecycleBin<double[]>() {
+      @Override
+      protected void free(double[] obj) {
+      }
+
+      @Override
+      public double[] create(final long length) {
+        return new double[(int) length];
+      }
+
+      @Override
+      public void reset(@Nonnull final double[] data, long size) {
+        assert data.length == size;
+        Arrays.fill(data, 0);
+      }
+    }.setPersistanceMode(CoreSettings.INSTANCE().getDoubleCacheMode());
+  }
+
   /**
    * Equals boolean.
    *
@@ -20,13 +20,12 @@
 package com.simiacryptus.mindseye.lang;
 
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.stream.Stream;
 
 /**
  * A wrapper TensorList data to override the existing tensor key. Can be used for example to flatten or unflatten a
- * tensor to/from a rank-1 array.
+ * tensor to/from a rank-1 array. Elements alias the data of the inner list's elements rather than copying it.
  */
 public class ReshapedTensorList extends ReferenceCountingBase implements TensorList {
   @Nonnull
@@ -52,9 +51,9 @@ public class ReshapedTensorList extends ReferenceCountingBase implements TensorL
   public Tensor get(int i) {
     assertAlive();
     @Nonnull Tensor tensor = inner.get(i);
-    @Nonnull Tensor reshapeCast = tensor.reshapeCast(dims);
+    @Nonnull Tensor reshapeView = tensor.reshapeView(dims);
     tensor.freeRef();
-    return reshapeCast;
+    return reshapeView;
   }
 
   @Nonnull
@@ -71,7 +70,7 @@ public class ReshapedTensorList extends ReferenceCountingBase implements TensorL
   @Override
   public Stream<Tensor> stream() {
     return inner.stream().map(t -> {
-      @Nullable Tensor tensor = t.reshapeCast(dims);
+      @Nonnull Tensor tensor = t.reshapeView(dims);
       t.freeRef();
       return tensor;
     });
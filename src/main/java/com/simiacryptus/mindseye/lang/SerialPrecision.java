@@ -22,8 +22,8 @@ package com.simiacryptus.mindseye.lang;
 import jcuda.Sizeof;
 
 import javax.annotation.Nonnull;
-import java.nio.*;
-import java.nio.DoubleBuffer;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.DoubleSummaryStatistics;
 
@@ -36,21 +36,13 @@ public enum SerialPrecision implements DataSerializer {
    */
   Double(Sizeof.DOUBLE) {
     @Override
-    public void copy(@Nonnull double[] from, @Nonnull byte[] to) {
-      @Nonnull DoubleBuffer inBuffer = DoubleBuffer.wrap(from);
-      @Nonnull DoubleBuffer outBuffer = ByteBuffer.wrap(to).asDoubleBuffer();
-      while (inBuffer.hasRemaining()) {
-        outBuffer.put(inBuffer.get());
-      }
+    public void copy(@Nonnull double[] from, @Nonnull ByteBuffer to) {
+      to.slice().asDoubleBuffer().put(from);
     }
 
     @Override
-    public void copy(@Nonnull byte[] from, @Nonnull double[] to) {
-      @Nonnull DoubleBuffer inBuffer = ByteBuffer.wrap(from).asDoubleBuffer();
-      @Nonnull DoubleBuffer outBuffer = DoubleBuffer.wrap(to);
-      while (inBuffer.hasRemaining()) {
-        outBuffer.put(inBuffer.get());
-      }
+    public void copy(@Nonnull ByteBuffer from, @Nonnull double[] to) {
+      from.slice().asDoubleBuffer().get(to);
     }
   },
   /**
@@ -58,21 +50,28 @@ public enum SerialPrecision implements DataSerializer {
    */
   Float(Sizeof.FLOAT) {
     @Override
-    public void copy(@Nonnull double[] from, @Nonnull byte[] to) {
-      @Nonnull DoubleBuffer inBuffer = DoubleBuffer.wrap(from);
-      @Nonnull FloatBuffer outBuffer = ByteBuffer.wrap(to).asFloatBuffer();
-      while (inBuffer.hasRemaining()) {
-        outBuffer.put((float) inBuffer.get());
+    public void copy(@Nonnull double[] from, @Nonnull ByteBuffer to) {
+      @Nonnull FloatBuffer outBuffer = to.slice().asFloatBuffer();
+      @Nonnull float[] chunk = new float[Math.min(CHUNK, from.length)];
+      for (int offset = 0; offset < from.length; offset += chunk.length) {
+        final int length = Math.min(chunk.length, from.length - offset);
+        for (int i = 0; i < length; i++) {
+          chunk[i] = (float) from[offset + i];
+        }
+        outBuffer.put(chunk, 0, length);
       }
-
     }
 
     @Override
-    public void copy(@Nonnull byte[] from, @Nonnull double[] to) {
-      @Nonnull FloatBuffer inBuffer = ByteBuffer.wrap(from).asFloatBuffer();
-      @Nonnull DoubleBuffer outBuffer = DoubleBuffer.wrap(to);
-      while (inBuffer.hasRemaining()) {
-        outBuffer.put(inBuffer.get());
+    public void copy(@Nonnull ByteBuffer from, @Nonnull double[] to) {
+      @Nonnull FloatBuffer inBuffer = from.slice().asFloatBuffer();
+      @Nonnull float[] chunk = new float[Math.min(CHUNK, to.length)];
+      for (int offset = 0; offset < to.length; offset += chunk.length) {
+        final int length = Math.min(chunk.length, to.length - offset);
+        inBuffer.get(chunk, 0, length);
+        for (int i = 0; i < length; i++) {
+          to[offset + i] = chunk[i];
+        }
       }
     }
   },
@@ -81,39 +80,30 @@ public enum SerialPrecision implements DataSerializer {
    */
   Uniform32(4) {
     @Override
-    public void copy(@Nonnull double[] from, @Nonnull byte[] to) {
+    public void copy(@Nonnull double[] from, @Nonnull ByteBuffer to) {
+      @Nonnull final ByteBuffer out = to.slice();
       DoubleSummaryStatistics statistics = Arrays.stream(from).summaryStatistics();
-      @Nonnull DoubleBuffer inBuffer = DoubleBuffer.wrap(from);
-      @Nonnull FloatBuffer floatBuffer = ByteBuffer.wrap(to).asFloatBuffer();
       double min = statistics.getMin();
       double max = statistics.getMax();
-      floatBuffer.put((float) min);
-      floatBuffer.put((float) max);
+      out.putFloat(0, (float) min);
+      out.putFloat(4, (float) max);
       double center = (max + min) / 2;
       double radius = (max - min) / 2;
-      @Nonnull IntBuffer byteBuffer = ByteBuffer.wrap(to).asIntBuffer();
-      byteBuffer.position(2);
-      while (inBuffer.hasRemaining()) {
-        byteBuffer.put((int) (Integer.MAX_VALUE * (inBuffer.get() - center) / radius));
+      for (int i = 0; i < from.length; i++) {
+        out.putInt(8 + i * 4, (int) (Integer.MAX_VALUE * (from[i] - center) / radius));
       }
-
     }
 
     @Override
-    public void copy(@Nonnull byte[] from, @Nonnull double[] to) {
-      @Nonnull DoubleBuffer outBuffer = DoubleBuffer.wrap(to);
-      @Nonnull FloatBuffer floatBuffer = ByteBuffer.wrap(from).asFloatBuffer();
-      double min = floatBuffer.get();
-      double max = floatBuffer.get();
+    public void copy(@Nonnull ByteBuffer from, @Nonnull double[] to) {
+      @Nonnull final ByteBuffer in = from.slice();
+      double min = in.getFloat(0);
+      double max = in.getFloat(4);
       double center = (max + min) / 2;
       double radius = (max - min) / 2;
-      @Nonnull IntBuffer intBuffer = ByteBuffer.wrap(from).asIntBuffer();
-      intBuffer.position(2);
-      while (intBuffer.hasRemaining()) {
-        int v = intBuffer.get();
-        outBuffer.put((v * radius / Integer.MAX_VALUE) + center);
+      for (int i = 0; i < to.length; i++) {
+        to[i] = (in.getInt(8 + i * 4) * radius / Integer.MAX_VALUE) + center;
       }
-
     }
 
     @Override
@@ -126,39 +116,30 @@ public enum SerialPrecision implements DataSerializer {
    */
   Uniform16(2) {
     @Override
-    public void copy(@Nonnull double[] from, @Nonnull byte[] to) {
+    public void copy(@Nonnull double[] from, @Nonnull ByteBuffer to) {
+      @Nonnull final ByteBuffer out = to.slice();
       DoubleSummaryStatistics statistics = Arrays.stream(from).summaryStatistics();
-      @Nonnull DoubleBuffer inBuffer = DoubleBuffer.wrap(from);
-      @Nonnull FloatBuffer floatBuffer = ByteBuffer.wrap(to).asFloatBuffer();
       double min = statistics.getMin();
       double max = statistics.getMax();
-      floatBuffer.put((float) min);
-      floatBuffer.put((float) max);
+      out.putFloat(0, (float) min);
+      out.putFloat(4, (float) max);
       double center = (max + min) / 2;
       double radius = (max - min) / 2;
-      @Nonnull ShortBuffer shortBuffer = ByteBuffer.wrap(to).asShortBuffer();
-      shortBuffer.position(4);
-      while (inBuffer.hasRemaining()) {
-        shortBuffer.put((short) (Short.MAX_VALUE * (inBuffer.get() - center) / radius));
+      for (int i = 0; i < from.length; i++) {
+        out.putShort(8 + i * 2, (short) (Short.MAX_VALUE * (from[i] - center) / radius));
       }
-
     }
 
     @Override
-    public void copy(@Nonnull byte[] from, @Nonnull double[] to) {
-      @Nonnull DoubleBuffer outBuffer = DoubleBuffer.wrap(to);
-      @Nonnull FloatBuffer floatBuffer = ByteBuffer.wrap(from).asFloatBuffer();
-      double min = floatBuffer.get();
-      double max = floatBuffer.get();
+    public void copy(@Nonnull ByteBuffer from, @Nonnull double[] to) {
+      @Nonnull final ByteBuffer in = from.slice();
+      double min = in.getFloat(0);
+      double max = in.getFloat(4);
       double center = (max + min) / 2;
       double radius = (max - min) / 2;
-      @Nonnull ShortBuffer shortBuffer = ByteBuffer.wrap(from).asShortBuffer();
-      shortBuffer.position(4);
-      while (shortBuffer.hasRemaining()) {
-        short v = shortBuffer.get();
-        outBuffer.put((v * radius / Short.MAX_VALUE) + center);
+      for (int i = 0; i < to.length; i++) {
+        to[i] = (in.getShort(8 + i * 2) * radius / Short.MAX_VALUE) + center;
       }
-
     }
 
     @Override
@@ -171,39 +152,30 @@ public enum SerialPrecision implements DataSerializer {
    */
   Uniform8(1) {
     @Override
-    public void copy(@Nonnull double[] from, @Nonnull byte[] to) {
+    public void copy(@Nonnull double[] from, @Nonnull ByteBuffer to) {
+      @Nonnull final ByteBuffer out = to.slice();
       DoubleSummaryStatistics statistics = Arrays.stream(from).summaryStatistics();
-      @Nonnull DoubleBuffer inBuffer = DoubleBuffer.wrap(from);
-      @Nonnull FloatBuffer floatBuffer = ByteBuffer.wrap(to).asFloatBuffer();
       double min = statistics.getMin();
       double max = statistics.getMax();
-      floatBuffer.put((float) min);
-      floatBuffer.put((float) max);
+      out.putFloat(0, (float) min);
+      out.putFloat(4, (float) max);
       double center = (max + min) / 2;
       double radius = (max - min) / 2;
-      @Nonnull ByteBuffer byteBuffer = ByteBuffer.wrap(to);
-      byteBuffer.position(8);
-      while (inBuffer.hasRemaining()) {
-        byteBuffer.put((byte) (Byte.MAX_VALUE * (inBuffer.get() - center) / radius));
+      for (int i = 0; i < from.length; i++) {
+        out.put(8 + i, (byte) (Byte.MAX_VALUE * (from[i] - center) / radius));
       }
-
     }
 
     @Override
-    public void copy(@Nonnull byte[] from, @Nonnull double[] to) {
-      @Nonnull DoubleBuffer outBuffer = DoubleBuffer.wrap(to);
-      @Nonnull FloatBuffer floatBuffer = ByteBuffer.wrap(from).asFloatBuffer();
-      double min = floatBuffer.get();
-      double max = floatBuffer.get();
+    public void copy(@Nonnull ByteBuffer from, @Nonnull double[] to) {
+      @Nonnull final ByteBuffer in = from.slice();
+      double min = in.getFloat(0);
+      double max = in.getFloat(4);
       double center = (max + min) / 2;
       double radius = (max - min) / 2;
-      @Nonnull ByteBuffer byteBuffer = ByteBuffer.wrap(from);
-      byteBuffer.position(8);
-      while (byteBuffer.hasRemaining()) {
-        byte v = byteBuffer.get();
-        outBuffer.put((v * radius / Byte.MAX_VALUE) + center);
+      for (int i = 0; i < to.length; i++) {
+        to[i] = (in.get(8 + i) * radius / Byte.MAX_VALUE) + center;
       }
-
     }
 
     @Override
@@ -212,6 +184,11 @@ public enum SerialPrecision implements DataSerializer {
     }
   };
 
+  /**
+   * The number of elements converted per bulk transfer by the narrowing codecs.
+   */
+  private static final int CHUNK = 4096;
+
   private final int size;
 
   SerialPrecision(final int size) {
@@ -0,0 +1,549 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A RecycleBin which groups buffers into power-of-two size classes rather than exact lengths. Recently recycled
+ * buffers are kept in a small per-thread cache, and everything held, whether thread-cached or shared, is bounded by a
+ * global byte budget which is enforced by evicting the least recently recycled buffers. Eviction, expiry and
+ * {@link #clear()} may release a buffer sitting in any thread's cache, including threads which have since died; the
+ * owning thread then skips the released entry. Buffer types which can be narrowed to a requested length
+ * (e.g. nio buffers, see {@link #isSliceable()}) are served from any slab of the matching class; fixed-length types
+ * such as double[] only match slabs of identical length within the class.
+ * <p>
+ * A claimed slab is not searched for in the shared structures; it is skipped and dropped by whichever scan next
+ * reaches it, and once the claimed entries outnumber the held ones, one sweep removes them all, so every operation
+ * costs amortized constant time. For the same reason a buffer recycled twice is only detected while it is still
+ * among the calling thread's cached entries or the first entries of the shared pool for its class.
+ *
+ * @param <T> the type parameter
+ */
+public abstract class SlabRecycleBin<T> extends RecycleBin<T> {
+
+  private static final int MAX_CLASSES = 64;
+  private final ConcurrentLinkedDeque<Slab>[] classes = new ConcurrentLinkedDeque[MAX_CLASSES];
+  private final ConcurrentLinkedDeque<Slab> lru = new ConcurrentLinkedDeque<>();
+  private final AtomicLong bytes = new AtomicLong(0);
+  private final AtomicInteger held = new AtomicInteger(0);
+  private final AtomicInteger stale = new AtomicInteger(0);
+  private final ThreadLocal<ArrayDeque<Slab>[]> threadCache = ThreadLocal.withInitial(() -> new ArrayDeque[MAX_CLASSES]);
+  private volatile long maxBytes;
+  private int threadCacheSize = 4;
+  private int maxScan = 16;
+
+  /**
+   * Instantiates a new Slab recycle bin.
+   *
+   * @param maxBytes the global byte budget
+   */
+  protected SlabRecycleBin(final long maxBytes) {
+    super();
+    this.maxBytes = maxBytes;
+    for (int i = 0; i < MAX_CLASSES; i++) {
+      classes[i] = new ConcurrentLinkedDeque<>();
+    }
+    RecycleBin.getGarbageTruck().scheduleAtFixedRate(this::purgeExpired, getPurgeFreq(), getPurgeFreq(), TimeUnit.SECONDS);
+  }
+
+  /**
+   * Creates a heap double[] bin.
+   *
+   * @param maxBytes the global byte budget
+   * @return the slab recycle bin
+   */
+  @Nonnull
+  public static SlabRecycleBin<double[]> doubleArrays(final long maxBytes) {
+    return new SlabRecycleBin<double[]>(maxBytes) {
+      @Override
+      protected void free(double[] obj) {
+      }
+
+      @Nonnull
+      @Override
+      public double[] create(final long length) {
+        return new double[(int) length];
+      }
+
+      @Override
+      public void reset(@Nonnull final double[] data, long size) {
+        assert data.length == size;
+        Arrays.fill(data, 0);
+      }
+
+      @Override
+      protected long capacity(@Nonnull final double[] obj) {
+        return obj.length;
+      }
+    };
+  }
+
+  /**
+   * Creates a bin of nio double buffers, optionally allocated off-heap. Obtained buffers have their limit set to the
+   * requested length and may have a larger capacity.
+   *
+   * @param maxBytes the global byte budget
+   * @param direct   whether to allocate off-heap
+   * @return the slab recycle bin
+   */
+  @Nonnull
+  public static SlabRecycleBin<java.nio.DoubleBuffer> doubleBuffers(final long maxBytes, final boolean direct) {
+    return new SlabRecycleBin<java.nio.DoubleBuffer>(maxBytes) {
+      @Override
+      protected void free(java.nio.DoubleBuffer obj) {
+      }
+
+      @Nonnull
+      @Override
+      public java.nio.DoubleBuffer create(final long length) {
+        if (direct) {
+          return ByteBuffer.allocateDirect((int) (length * Double.BYTES)).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        } else {
+          return java.nio.DoubleBuffer.allocate((int) length);
+        }
+      }
+
+      @Override
+      public void reset(@Nonnull final java.nio.DoubleBuffer data, long size) {
+        data.clear();
+        data.limit((int) size);
+        for (int i = 0; i < size; i++) {
+          data.put(i, 0);
+        }
+      }
+
+      @Nullable
+      @Override
+      public java.nio.DoubleBuffer copyOf(@Nullable final java.nio.DoubleBuffer original, long size) {
+        if (null == original) return null;
+        final java.nio.DoubleBuffer copy = obtain(size);
+        java.nio.DoubleBuffer src = original.duplicate();
+        src.clear();
+        src.limit((int) size);
+        copy.put(src);
+        copy.clear();
+        copy.limit((int) size);
+        return copy;
+      }
+
+      @Override
+      protected long capacity(@Nonnull final java.nio.DoubleBuffer obj) {
+        return obj.capacity();
+      }
+
+      @Override
+      protected boolean isSliceable() {
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Size class int.
+   *
+   * @param length the length
+   * @return the index of the smallest power of two not less than length
+   */
+  public static int sizeClass(final long length) {
+    if (length <= 1) return 0;
+    return 64 - Long.numberOfLeadingZeros(length - 1);
+  }
+
+  /**
+   * Capacity long.
+   *
+   * @param obj the obj
+   * @return the number of elements the buffer can hold
+   */
+  protected abstract long capacity(@Nonnull T obj);
+
+  /**
+   * Is sliceable boolean.
+   *
+   * @return true if a buffer with a larger capacity can serve a shorter request
+   */
+  protected boolean isSliceable() {
+    return false;
+  }
+
+  /**
+   * Bytes per element int.
+   *
+   * @return the int
+   */
+  protected int bytesPerElement() {
+    return Double.BYTES;
+  }
+
+  @Override
+  public T obtain(final long length) {
+    @Nullable StackCounter stackCounter = getRecycle_get(length);
+    if (null != stackCounter) {
+      stackCounter.increment(length);
+    }
+    final int sizeClass = sizeClass(length);
+    if (sizeClass < MAX_CLASSES) {
+      T data = pollLocal(sizeClass, length);
+      if (null == data) data = pollShared(sizeClass, length);
+      if (null != data) {
+        reset(data, length);
+        return data;
+      }
+    }
+    if (isSliceable()) {
+      final T data = create(1L << sizeClass, 1);
+      reset(data, length);
+      return data;
+    }
+    return create(length, 1);
+  }
+
+  @Override
+  public void recycle(@Nullable final T data, long size) {
+    if (null == data) return;
+    final long capacity = capacity(data);
+    if (capacity < getMinLengthPerBuffer() || capacity > getMaxLengthPerBuffer()) {
+      freeItem(data, capacity);
+      return;
+    }
+    @Nullable StackCounter stackCounter = getRecycle_put(capacity);
+    if (null != stackCounter) {
+      stackCounter.increment(capacity);
+    }
+    final int sizeClass = sizeClass(capacity);
+    if (isSliceable() && capacity != (1L << sizeClass)) {
+      freeItem(data, capacity);
+      return;
+    }
+    if (isHeld(data, sizeClass)) {
+      logger.warn(String.format("Buffer of capacity %d recycled twice; ignoring", capacity));
+      return;
+    }
+    @Nonnull final Slab slab = new Slab(wrap(data), capacity, sizeClass);
+    bytes.addAndGet(slab.bytes());
+    held.incrementAndGet();
+    lru.addLast(slab);
+    final ArrayDeque<Slab> local = localBin(sizeClass);
+    local.addFirst(slab);
+    while (local.size() > threadCacheSize) {
+      // Move the oldest thread-local entry into the shared pool; it stays in the lru either way
+      final Slab spill = local.pollLast();
+      if (!spill.isClaimed()) classes[sizeClass].addFirst(spill);
+    }
+    evict();
+    compact();
+  }
+
+  @Override
+  public boolean want(long size) {
+    if (size < getMinLengthPerBuffer()) return false;
+    if (size > getMaxLengthPerBuffer()) return false;
+    return size * bytesPerElement() <= maxBytes;
+  }
+
+  /**
+   * Releases every held buffer, including those in thread-local caches.
+   *
+   * @return the number of elements freed
+   */
+  @Override
+  public long clear() {
+    long freed = 0;
+    Slab slab;
+    while (null != (slab = lru.poll())) {
+      freed += release(slab);
+    }
+    for (ConcurrentLinkedDeque<Slab> bin : classes) {
+      bin.clear();
+    }
+    return freed;
+  }
+
+  @Override
+  public long getSize() {
+    return bytes.get() / bytesPerElement();
+  }
+
+  /**
+   * Gets bytes.
+   *
+   * @return the bytes currently held, including thread-local caches; never more than the budget after a recycle
+   */
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  /**
+   * Gets max bytes.
+   *
+   * @return the max bytes
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Sets max bytes.
+   *
+   * @param maxBytes the max bytes
+   * @return the max bytes
+   */
+  @Nonnull
+  public SlabRecycleBin<T> setMaxBytes(final long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict();
+    return this;
+  }
+
+  /**
+   * Gets thread cache size.
+   *
+   * @return the thread cache size
+   */
+  public int getThreadCacheSize() {
+    return threadCacheSize;
+  }
+
+  /**
+   * Sets thread cache size.
+   *
+   * @param threadCacheSize the number of buffers per size class kept by each thread
+   * @return the thread cache size
+   */
+  @Nonnull
+  public SlabRecycleBin<T> setThreadCacheSize(final int threadCacheSize) {
+    this.threadCacheSize = threadCacheSize;
+    return this;
+  }
+
+  /**
+   * Gets max scan.
+   *
+   * @return the max scan
+   */
+  public int getMaxScan() {
+    return maxScan;
+  }
+
+  /**
+   * Sets max scan.
+   *
+   * @param maxScan the number of shared entries inspected per obtain for fixed-length buffer types
+   * @return the max scan
+   */
+  @Nonnull
+  public SlabRecycleBin<T> setMaxScan(final int maxScan) {
+    this.maxScan = maxScan;
+    return this;
+  }
+
+  @Nonnull
+  private ArrayDeque<Slab> localBin(final int sizeClass) {
+    final ArrayDeque<Slab>[] bins = threadCache.get();
+    if (null == bins[sizeClass]) bins[sizeClass] = new ArrayDeque<>();
+    return bins[sizeClass];
+  }
+
+  @Nullable
+  private T pollLocal(final int sizeClass, final long length) {
+    final ArrayDeque<Slab>[] bins = threadCache.get();
+    final ArrayDeque<Slab> local = bins[sizeClass];
+    if (null == local) return null;
+    final Iterator<Slab> iterator = local.iterator();
+    while (iterator.hasNext()) {
+      final Slab slab = iterator.next();
+      if (slab.isClaimed()) {
+        iterator.remove();
+      } else if (isSliceable() || slab.capacity == length) {
+        iterator.remove();
+        final T obj = slab.claim();
+        if (null != obj) return obj;
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private T pollShared(final int sizeClass, final long length) {
+    final Iterator<Slab> iterator = classes[sizeClass].iterator();
+    int scanned = 0;
+    while (iterator.hasNext() && scanned < maxScan) {
+      final Slab slab = iterator.next();
+      if (slab.isClaimed()) {
+        iterator.remove();
+        continue;
+      }
+      scanned++;
+      if (!isSliceable() && slab.capacity != length) continue;
+      iterator.remove();
+      @Nullable final T obj = slab.claim();
+      if (null != obj) return obj;
+    }
+    return null;
+  }
+
+  /**
+   * Checks the calling thread's cache and the first {@link #getMaxScan()} shared entries of the class for the buffer.
+   */
+  private boolean isHeld(@Nonnull final T data, final int sizeClass) {
+    for (@Nonnull final Slab slab : localBin(sizeClass)) {
+      if (slab.isHeld(data)) return true;
+    }
+    int scanned = 0;
+    for (@Nonnull final Slab slab : classes[sizeClass]) {
+      if (scanned++ >= maxScan) break;
+      if (slab.isHeld(data)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Sweeps claimed slabs out of the lru and shared pools once they outnumber the held ones, so the cost of the sweep
+   * is covered by the claims which made it necessary.
+   */
+  private void compact() {
+    final int claimed = stale.get();
+    if (claimed <= Math.max(maxScan, held.get()) || !stale.compareAndSet(claimed, 0)) return;
+    lru.removeIf(Slab::isClaimed);
+    for (@Nonnull final ConcurrentLinkedDeque<Slab> bin : classes) {
+      bin.removeIf(Slab::isClaimed);
+    }
+  }
+
+  private void evict() {
+    while (bytes.get() > maxBytes) {
+      final Slab slab = lru.poll();
+      if (null == slab) return;
+      release(slab);
+    }
+  }
+
+  private void purgeExpired() {
+    Slab slab;
+    while (null != (slab = lru.peek()) && (slab.isClaimed() || slab.age() > getPurgeFreq())) {
+      if (lru.remove(slab)) release(slab);
+    }
+  }
+
+  /**
+   * Frees a slab already removed from the lru. Any entry left in a shared pool or thread cache is skipped once claimed.
+   */
+  private long release(@Nonnull final Slab slab) {
+    if (slab.isClaimed()) {
+      stale.decrementAndGet();
+      return 0;
+    }
+    @Nullable final T obj = slab.claim();
+    stale.decrementAndGet();
+    return null == obj ? 0 : freeItem(obj, slab.capacity);
+  }
+
+  private class Slab {
+    /**
+     * The Capacity.
+     */
+    public final long capacity;
+    /**
+     * The Size class.
+     */
+    public final int sizeClass;
+    /**
+     * The Created at.
+     */
+    public final long createdAt = System.nanoTime();
+    private final AtomicBoolean claimed = new AtomicBoolean(false);
+    @Nullable
+    private volatile Supplier<T> obj;
+
+    private Slab(final Supplier<T> obj, final long capacity, final int sizeClass) {
+      this.obj = obj;
+      this.capacity = capacity;
+      this.sizeClass = sizeClass;
+    }
+
+    /**
+     * Takes the buffer out of the bin, whichever list still refers to this slab. Only the first caller succeeds; the
+     * slab then drops its reference, so stale entries left in a thread cache hold no memory.
+     *
+     * @return the buffer, or null if it was already claimed or has been collected
+     */
+    @Nullable
+    public final T claim() {
+      if (!claimed.compareAndSet(false, true)) return null;
+      bytes.addAndGet(-bytes());
+      held.decrementAndGet();
+      stale.incrementAndGet();
+      @Nullable final Supplier<T> supplier = obj;
+      obj = null;
+      return null == supplier ? null : supplier.get();
+    }
+
+    /**
+     * Is claimed boolean.
+     *
+     * @return the boolean
+     */
+    public final boolean isClaimed() {
+      return claimed.get();
+    }
+
+    /**
+     * Is held boolean.
+     *
+     * @param data the data
+     * @return true if this unclaimed slab holds exactly this buffer
+     */
+    public final boolean isHeld(@Nonnull final T data) {
+      @Nullable final Supplier<T> supplier = obj;
+      return !claimed.get() && null != supplier && supplier.get() == data;
+    }
+
+    /**
+     * Bytes long.
+     *
+     * @return the long
+     */
+    public final long bytes() {
+      return capacity * bytesPerElement();
+    }
+
+    /**
+     * Age double.
+     *
+     * @return the double
+     */
+    public final double age() {
+      return (System.nanoTime() - createdAt) / 1e9;
+    }
+  }
+}
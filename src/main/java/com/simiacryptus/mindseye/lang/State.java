@@ -104,7 +104,10 @@ public class State<K> extends DoubleBuffer<K> {
    */
   @Nonnull
   public final synchronized State<K> restore() {
-    System.arraycopy(getDelta(), 0, target, 0, target.length);
+    synchronized (target) {
+      WeightSnapshot.beforeWrite(target);
+      System.arraycopy(getDelta(), 0, target, 0, target.length);
+    }
     return this;
   }
 
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A view of each tensor in an underlying TensorList, described by an offset, dimensions and strides into the flat data
+ * of the underlying tensors. Band selection, cropping, tiling and transposition are all expressible this way, and a
+ * view of a view is folded into a single view of the original list, so chains of such operations allocate nothing until
+ * an element is read. Reading an element gathers it into a new dense tensor, or aliases the underlying tensor if the
+ * view covers it contiguously.
+ * <p>
+ * Elements are not cached: every call to {@link #get(int)} on a non-contiguous view gathers the whole element again.
+ * Code reading several values of one element should get it once and index the returned tensor.
+ */
+public class StridedTensorList extends ReferenceCountingBase implements TensorList {
+  @Nonnull
+  private final TensorList inner;
+  private final int offset;
+  @Nonnull
+  private final int[] dims;
+  @Nonnull
+  private final int[] strides;
+
+  /**
+   * Instantiates a new Strided tensor list.
+   *
+   * @param inner   the inner
+   * @param offset  the offset of the view's origin in each underlying tensor's data
+   * @param dims    the dims of the view
+   * @param strides the step in the underlying data for each dimension of the view
+   */
+  public StridedTensorList(@Nonnull final TensorList inner, final int offset, @Nonnull final int[] dims, @Nonnull final int[] strides) {
+    if (dims.length != strides.length || 0 == dims.length)
+      throw new IllegalArgumentException(Arrays.toString(dims) + " / " + Arrays.toString(strides));
+    int min = offset;
+    int max = offset;
+    for (int i = 0; i < dims.length; i++) {
+      if (dims[i] <= 0) throw new IllegalArgumentException(Arrays.toString(dims));
+      final int extent = (dims[i] - 1) * strides[i];
+      if (extent < 0) min += extent;
+      else max += extent;
+    }
+    if (min < 0 || max >= Tensor.length(inner.getDimensions()))
+      throw new IllegalArgumentException(String.format("View [%s, %s] exceeds %s", min, max, Arrays.toString(inner.getDimensions())));
+    this.inner = inner;
+    this.inner.addRef(this);
+    this.offset = offset;
+    this.dims = Arrays.copyOf(dims, dims.length);
+    this.strides = Arrays.copyOf(strides, strides.length);
+  }
+
+  /**
+   * Wraps a tensor list as a view covering each tensor in full. An existing view is returned as-is, with an added
+   * reference.
+   *
+   * @param inner the inner
+   * @return the strided tensor list
+   */
+  @Nonnull
+  public static StridedTensorList wrap(@Nonnull final TensorList inner) {
+    if (inner instanceof StridedTensorList) {
+      inner.addRef();
+      return (StridedTensorList) inner;
+    }
+    @Nonnull final int[] dims = inner.getDimensions();
+    return new StridedTensorList(inner, 0, dims, denseStrides(dims));
+  }
+
+  private static int[] denseStrides(@Nonnull final int[] dims) {
+    @Nonnull final int[] strides = new int[dims.length];
+    int stride = 1;
+    for (int i = 0; i < dims.length; i++) {
+      strides[i] = stride;
+      stride *= dims[i];
+    }
+    return strides;
+  }
+
+  /**
+   * Selects a regular sub-grid of this view. Steps may be negative to reverse an axis.
+   *
+   * @param origin the coordinates, in this view, of the first element
+   * @param steps  the step along each axis, in this view's coordinates
+   * @param dims   the dims of the result
+   * @return the strided tensor list
+   */
+  @Nonnull
+  public StridedTensorList slice(@Nonnull final int[] origin, @Nonnull final int[] steps, @Nonnull final int[] dims) {
+    if (origin.length != this.dims.length || steps.length != this.dims.length || dims.length != this.dims.length)
+      throw new IllegalArgumentException();
+    int newOffset = offset;
+    @Nonnull final int[] newStrides = new int[dims.length];
+    for (int i = 0; i < dims.length; i++) {
+      newOffset += origin[i] * strides[i];
+      newStrides[i] = steps[i] * strides[i];
+    }
+    return new StridedTensorList(inner, newOffset, dims, newStrides);
+  }
+
+  /**
+   * Reorders the axes of this view.
+   *
+   * @param axes for each axis of the result, the axis of this view it is taken from
+   * @return the strided tensor list
+   */
+  @Nonnull
+  public StridedTensorList permute(@Nonnull final int... axes) {
+    if (axes.length != dims.length) throw new IllegalArgumentException(Arrays.toString(axes));
+    return new StridedTensorList(inner, offset,
+        Arrays.stream(axes).map(i -> dims[i]).toArray(),
+        Arrays.stream(axes).map(i -> strides[i]).toArray());
+  }
+
+  /**
+   * Crops a rectangle of an image view.
+   *
+   * @param x      the x
+   * @param y      the y
+   * @param width  the width
+   * @param height the height
+   * @return the strided tensor list
+   */
+  @Nonnull
+  public StridedTensorList crop(final int x, final int y, final int width, final int height) {
+    assert 3 == dims.length;
+    return slice(new int[]{x, y, 0}, new int[]{1, 1, 1}, new int[]{width, height, dims[2]});
+  }
+
+  /**
+   * Selects evenly spaced bands of an image view.
+   *
+   * @param from  the first band
+   * @param step  the step between bands
+   * @param count the number of bands
+   * @return the strided tensor list
+   */
+  @Nonnull
+  public StridedTensorList selectBands(final int from, final int step, final int count) {
+    assert 3 == dims.length;
+    return slice(new int[]{0, 0, from}, new int[]{1, 1, step}, new int[]{dims[0], dims[1], count});
+  }
+
+  /**
+   * Is contiguous boolean.
+   *
+   * @return true if the view covers each underlying tensor's data in order
+   */
+  public boolean isContiguous() {
+    return 0 == offset && Arrays.equals(strides, denseStrides(dims)) && Tensor.length(dims) == Tensor.length(inner.getDimensions());
+  }
+
+  /**
+   * Gets an element. Unless the view is contiguous this gathers a new tensor, costing one pass over the element.
+   *
+   * @param i the index
+   * @return the tensor
+   */
+  @Nonnull
+  @Override
+  public Tensor get(final int i) {
+    assertAlive();
+    @Nonnull final Tensor source = inner.get(i);
+    try {
+      if (isContiguous()) return source.reshapeView(dims);
+      @Nonnull final Tensor result = new Tensor(dims);
+      gather(source.getData(), result.getData());
+      return result;
+    } finally {
+      source.freeRef();
+    }
+  }
+
+  private void gather(@Nonnull final double[] source, @Nonnull final double[] target) {
+    @Nonnull final int[] counter = new int[dims.length];
+    int index = offset;
+    for (int i = 0; i < target.length; i++) {
+      target[i] = source[index];
+      for (int d = 0; d < dims.length; d++) {
+        index += strides[d];
+        if (++counter[d] < dims[d]) break;
+        index -= strides[d] * dims[d];
+        counter[d] = 0;
+      }
+    }
+  }
+
+  @Nonnull
+  @Override
+  public int[] getDimensions() {
+    return Arrays.copyOf(dims, dims.length);
+  }
+
+  @Override
+  public int length() {
+    return inner.length();
+  }
+
+  @Override
+  public Stream<Tensor> stream() {
+    return IntStream.range(0, length()).mapToObj(this::get);
+  }
+
+  @Override
+  protected void _free() {
+    inner.freeRef();
+  }
+
+  /**
+   * Gets inner.
+   *
+   * @return the inner
+   */
+  @Nonnull
+  public TensorList getInner() {
+    return inner;
+  }
+}
@@ -30,6 +30,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.awt.image.BufferedImage;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.function.*;
 import java.util.stream.*;
@@ -64,6 +65,11 @@ public final class Tensor extends ReferenceCountingBase implements Serializable
 
   @Nullable
   protected volatile UUID id;
+  /**
+   * The tensor whose data this tensor aliases, or null if it owns its data.
+   */
+  @Nullable
+  private volatile Tensor viewParent;
 
   /**
    * Instantiates a new Tensor.
@@ -204,7 +210,11 @@ public final class Tensor extends ReferenceCountingBase implements Serializable
       if (null == base64) {
         if (null == resources) throw new IllegalArgumentException("No Data Resources");
         CharSequence resourceId = jsonObject.getAsJsonPrimitive("resource").getAsString();
-        tensor.setBytes(resources.get(resourceId), precision);
+        if (resources instanceof MappedResources) {
+          tensor.setBytes(((MappedResources) resources).getBuffer(resourceId), precision);
+        } else {
+          tensor.setBytes(resources.get(resourceId), precision);
+        }
       } else {
         tensor.setBytes(Base64.getDecoder().decode(base64.getAsString()), precision);
       }
@@ -611,7 +621,8 @@ public final class Tensor extends ReferenceCountingBase implements Serializable
   }
 
   /**
-   * Add and free tensor.
+   * Add and free tensor. The sum is written in place only if this is the last reference to data no other tensor
+   * shares; a view made by {@link #reshapeView(int...)} is never written through.
    *
    * @param right the right
    * @return the tensor
@@ -620,7 +631,7 @@ public final class Tensor extends ReferenceCountingBase implements Serializable
   public Tensor addAndFree(@Nonnull final Tensor right) {
     assertAlive();
     right.assertAlive();
-    if (1 == currentRefCount()) {
+    if (1 == currentRefCount() && null == viewParent) {
       addInPlace(right);
       return this;
     } else {
@@ -701,6 +712,12 @@ public final class Tensor extends ReferenceCountingBase implements Serializable
 
   @Override
   protected void _free() {
+    if (null != viewParent) {
+      viewParent.freeRef();
+      viewParent = null;
+      data = null;
+      return;
+    }
     if (null != data) {
       if (RecycleBin.DOUBLES.want(data.length)) {
         RecycleBin.DOUBLES.recycle(data, data.length);
@@ -1571,6 +1588,19 @@ public final class Tensor extends ReferenceCountingBase implements Serializable
     return this;
   }
 
+  /**
+   * Sets bytes from a buffer, which may be memory-mapped.
+   *
+   * @param bytes     the bytes
+   * @param precision the precision
+   * @return the bytes
+   */
+  @Nonnull
+  public Tensor setBytes(@Nonnull ByteBuffer bytes, @Nonnull DataSerializer precision) {
+    precision.copy(bytes, getData());
+    return this;
+  }
+
   @Nonnull
   private JsonElement toJson(@Nonnull final int[] coords) {
     if (coords.length == dimensions.length) {
@@ -1741,6 +1771,24 @@ public final class Tensor extends ReferenceCountingBase implements Serializable
     return new Tensor(dims, null == data ? null : RecycleBin.DOUBLES.copyOf(data, data.length));
   }
 
+  /**
+   * Reshape view tensor. Unlike {@link #reshapeCast(int...)}, the result aliases this tensor's data rather than copying
+   * it, and holds a reference to this tensor until it is freed.
+   *
+   * @param dims the dims
+   * @return the tensor
+   */
+  @Nonnull
+  public Tensor reshapeView(@Nonnull int... dims) {
+    assertAlive();
+    if (0 == dims.length) throw new IllegalArgumentException();
+    if (length(dims) != length()) throw new IllegalArgumentException(Arrays.toString(dims) + " != " + length());
+    @Nonnull final Tensor view = new Tensor(Arrays.copyOf(dims, dims.length), getData());
+    view.viewParent = this;
+    addRef(view);
+    return view;
+  }
+
   /**
    * Reshape cast and free tensor.
    *
@@ -1825,7 +1873,7 @@ public final class Tensor extends ReferenceCountingBase implements Serializable
    * @return the tensor
    */
   public Tensor copyAndFree() {
-    if (currentRefCount() == 1) return this;
+    if (currentRefCount() == 1 && null == viewParent) return this;
     Tensor copy = copy();
     freeRef();
     return copy;
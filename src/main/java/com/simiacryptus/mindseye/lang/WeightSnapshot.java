@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.simiacryptus.mindseye.layers.java.WrapperLayer;
+import com.simiacryptus.mindseye.network.DAGNetwork;
+import org.apache.commons.io.IOUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A copy-on-write snapshot of a layer's weights. Capturing records only references to the live weight arrays, so it
+ * costs nothing proportional to the model size. Each array is copied at most once: either by the first weight update
+ * that touches it after the capture (see {@link #beforeWrite(double[])}), or by whichever thread reads the snapshot,
+ * whichever comes first. Both paths copy under the array's own monitor, the same lock {@link Delta#accumulate(double)}
+ * holds while writing, so the snapshot is exactly the weights at the moment of capture while training carries on.
+ * Lock-free writers may instead check {@link #isPending(double[])} and take the monitor only when it returns true; an
+ * update already in progress when a snapshot is captured may then be partly included in it.
+ * <p>
+ * Only writes which call {@link #beforeWrite(double[])} are intercepted. Optimizer updates do, through {@link Delta},
+ * {@link State} and {@link #apply(Map, Layer)}, but writes made directly through a weight {@link Tensor}'s setters or
+ * a layer's own setters (such as {@code FullyConnectedLayer.set}) do not, and a snapshot still pending may then record
+ * the new values. Make such edits while no snapshot is pending, or call {@link #beforeWrite(double[])} under the
+ * array's monitor first.
+ * <p>
+ * Weights are keyed by the id of the layer owning them and their position in that layer's {@link Layer#state()}, so a
+ * snapshot can be restored into any network with the same layers.
+ */
+public class WeightSnapshot extends ReferenceCountingBase {
+  private static final CopyOnWriteArrayList<WeightSnapshot> active = new CopyOnWriteArrayList<>();
+
+  @Nonnull
+  private final Map<String, double[]> targets = new LinkedHashMap<>();
+  @Nonnull
+  private final Map<double[], double[]> copies = new IdentityHashMap<>();
+
+  private WeightSnapshot(@Nonnull final Map<String, double[]> targets) {
+    targets.forEach((key, target) -> {
+      this.targets.put(key, target);
+      this.copies.put(target, null);
+    });
+  }
+
+  /**
+   * Captures the current weights of a layer and all layers nested within it.
+   *
+   * @param layer the layer
+   * @return the weight snapshot
+   */
+  @Nonnull
+  public static WeightSnapshot capture(@Nonnull final Layer layer) {
+    @Nonnull final WeightSnapshot snapshot = new WeightSnapshot(getWeights(layer));
+    active.add(snapshot);
+    return snapshot;
+  }
+
+  /**
+   * Gets the weight arrays of a layer, keyed by owning layer id and index. Networks and wrappers only report the state
+   * of their components, so they are skipped, and arrays shared between layers are reported once.
+   *
+   * @param layer the layer
+   * @return the weights
+   */
+  @Nonnull
+  public static Map<String, double[]> getWeights(@Nonnull final Layer layer) {
+    @Nonnull final Map<String, double[]> weights = new LinkedHashMap<>();
+    @Nonnull final Set<double[]> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    @Nonnull final List<Layer> layers = new ArrayList<>();
+    if (layer instanceof DAGNetwork) {
+      ((DAGNetwork) layer).visitLayers(layers::add);
+    } else {
+      layers.add(layer);
+    }
+    for (@Nonnull final Layer l : layers) {
+      if (l instanceof DAGNetwork || l instanceof WrapperLayer) continue;
+      @Nullable final List<double[]> state = l.state();
+      if (null == state) continue;
+      for (int i = 0; i < state.size(); i++) {
+        if (seen.add(state.get(i))) weights.put(l.getId() + "/" + i, state.get(i));
+      }
+    }
+    return weights;
+  }
+
+  /**
+   * Must be called, while holding the array's monitor, before modifying a weight array in place. Preserves the array's
+   * current contents in every snapshot that still needs them.
+   *
+   * @param target the weight array about to be written
+   */
+  public static void beforeWrite(@Nonnull final double[] target) {
+    if (active.isEmpty()) return;
+    for (@Nonnull final WeightSnapshot snapshot : active) {
+      snapshot.preserve(target);
+    }
+  }
+
+  /**
+   * Checks whether any active snapshot has yet to preserve the array, i.e. whether a write must hold the array's
+   * monitor and call {@link #beforeWrite(double[])} first.
+   *
+   * @param target the weight array about to be written
+   * @return the boolean
+   */
+  public static boolean isPending(@Nonnull final double[] target) {
+    if (active.isEmpty()) return false;
+    for (@Nonnull final WeightSnapshot snapshot : active) {
+      synchronized (snapshot) {
+        if (snapshot.copies.containsKey(target) && null == snapshot.copies.get(target)) return true;
+      }
+    }
+    return false;
+  }
+
+  @Nullable
+  private double[] preserve(@Nonnull final double[] target) {
+    synchronized (target) {
+      synchronized (this) {
+        if (!copies.containsKey(target)) return null;
+        @Nullable double[] copy = copies.get(target);
+        if (null == copy) {
+          copy = RecycleBin.DOUBLES.copyOf(target, target.length);
+          copies.put(target, copy);
+        }
+        return copy;
+      }
+    }
+  }
+
+  /**
+   * Gets the captured weights, copying any arrays which have not yet been written since the capture. Once this returns
+   * the snapshot no longer intercepts weight updates. The returned arrays belong to the snapshot: they are recycled
+   * into {@link RecycleBin#DOUBLES} when it is freed, so callers must copy any array they need beyond that.
+   *
+   * @return the weights, keyed as in {@link #getWeights(Layer)}
+   */
+  @Nonnull
+  public Map<String, double[]> getData() {
+    assertAlive();
+    @Nonnull final Map<String, double[]> data = new LinkedHashMap<>();
+    targets.forEach((key, target) -> data.put(key, preserve(target)));
+    active.remove(this);
+    return data;
+  }
+
+  /**
+   * Writes the snapshot as a zip of weight blobs with a weights.json manifest giving each blob's key and length.
+   *
+   * @param file      the file
+   * @param precision the precision
+   */
+  public void write(@Nonnull final File file, @Nonnull final SerialPrecision precision) {
+    write(file, getData(), precision);
+  }
+
+  /**
+   * Writes keyed weight arrays in the snapshot file format.
+   *
+   * @param file      the file
+   * @param weights   the weights
+   * @param precision the precision
+   */
+  public static void write(@Nonnull final File file, @Nonnull final Map<String, double[]> weights, @Nonnull final SerialPrecision precision) {
+    try (@Nonnull ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      @Nonnull final JsonObject manifest = new JsonObject();
+      manifest.addProperty("precision", precision.name());
+      @Nonnull final JsonObject lengths = new JsonObject();
+      for (@Nonnull final Map.Entry<String, double[]> e : weights.entrySet()) {
+        lengths.addProperty(e.getKey(), e.getValue().length);
+        zip.putNextEntry(new ZipEntry(e.getKey()));
+        zip.write(precision.toBytes(e.getValue()));
+        zip.closeEntry();
+      }
+      manifest.add("lengths", lengths);
+      zip.putNextEntry(new ZipEntry("weights.json"));
+      zip.write(new GsonBuilder().setPrettyPrinting().create().toJson(manifest).getBytes(StandardCharsets.UTF_8));
+      zip.closeEntry();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads a file written by {@link #write(File, Map, SerialPrecision)}.
+   *
+   * @param file the file
+   * @return the weights, keyed as in {@link #getWeights(Layer)}
+   */
+  @Nonnull
+  public static Map<String, double[]> read(@Nonnull final File file) {
+    @Nonnull final Map<String, double[]> weights = new LinkedHashMap<>();
+    try (@Nonnull ZipFile zip = new ZipFile(file)) {
+      final JsonObject manifest;
+      try (@Nonnull Reader reader = new InputStreamReader(zip.getInputStream(zip.getEntry("weights.json")), StandardCharsets.UTF_8)) {
+        manifest = new GsonBuilder().create().fromJson(reader, JsonObject.class);
+      }
+      final SerialPrecision precision = SerialPrecision.valueOf(manifest.get("precision").getAsString());
+      for (@Nonnull final Map.Entry<String, JsonElement> e : manifest.getAsJsonObject("lengths").entrySet()) {
+        @Nonnull final ZipEntry entry = zip.getEntry(e.getKey());
+        final byte[] bytes = IOUtils.readFully(zip.getInputStream(entry), (int) entry.getSize());
+        @Nonnull final double[] data = new double[e.getValue().getAsInt()];
+        precision.copy(bytes, data);
+        weights.put(e.getKey(), data);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return weights;
+  }
+
+  /**
+   * Restores weights written by {@link #write(File, SerialPrecision)} into a layer with the same structure.
+   *
+   * @param file  the file
+   * @param layer the layer
+   */
+  public static void restore(@Nonnull final File file, @Nonnull final Layer layer) {
+    apply(read(file), layer);
+  }
+
+  /**
+   * Overwrites the weights of a layer with keyed values.
+   *
+   * @param weights the weights
+   * @param layer   the layer
+   */
+  public static void apply(@Nonnull final Map<String, double[]> weights, @Nonnull final Layer layer) {
+    @Nonnull final Map<String, double[]> targets = getWeights(layer);
+    weights.forEach((key, data) -> {
+      @Nullable final double[] target = targets.get(key);
+      if (null == target) throw new IllegalArgumentException("No weights for " + key);
+      if (target.length != data.length)
+        throw new IllegalArgumentException(String.format("%s: %s != %s", key, target.length, data.length));
+      synchronized (target) {
+        beforeWrite(target);
+        System.arraycopy(data, 0, target, 0, data.length);
+      }
+    });
+  }
+
+  @Override
+  protected void _free() {
+    active.remove(this);
+    synchronized (this) {
+      copies.values().stream().filter(Objects::nonNull).forEach(x -> RecycleBin.DOUBLES.recycle(x, x.length));
+      copies.clear();
+    }
+  }
+}
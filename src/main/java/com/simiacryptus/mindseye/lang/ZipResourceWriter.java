@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A resource map which writes each resource into a zip file as soon as it is put, instead of holding it until the
+ * model's JSON is complete. Passing this to {@link Layer#getJson(Map, DataSerializer)} streams weight blobs out as
+ * each layer is visited, so serializing a network needs memory for only the JSON stubs and the largest single tensor.
+ * Values are not retained, so as a map this is write-only: it always reads as empty, with {@link #get(Object)}
+ * returning null. The names written so far are available from {@link #getNames()}.
+ * <p>
+ * When constructed with the byte counter underneath the zip stream, entries are STORED and aligned, and their data
+ * offsets are recorded for {@link #getIndex()}; this is the layout {@link MappedResources} reads. Otherwise entries
+ * use the zip stream's default method.
+ */
+public class ZipResourceWriter extends AbstractMap<CharSequence, byte[]> {
+  private static final int ALIGNMENT_EXTRA_ID = 0xD935;
+  private static final int LOCAL_HEADER_SIZE = 30;
+
+  @Nonnull
+  private final ZipOutputStream zip;
+  @Nullable
+  private final CountingOutputStream counter;
+  @Nonnull
+  private final JsonObject index = new JsonObject();
+  @Nonnull
+  private final Set<CharSequence> names = new LinkedHashSet<>();
+
+  /**
+   * Instantiates a new Zip resource writer.
+   *
+   * @param zip     the zip
+   * @param counter the stream the zip writes into, or null to write compressed, unindexed entries
+   */
+  public ZipResourceWriter(@Nonnull final ZipOutputStream zip, @Nullable final CountingOutputStream counter) {
+    this.zip = zip;
+    this.counter = counter;
+  }
+
+  @Nullable
+  @Override
+  public synchronized byte[] put(@Nonnull final CharSequence key, @Nonnull final byte[] data) {
+    final String name = String.valueOf(key);
+    if (!names.add(name)) throw new IllegalArgumentException("Duplicate resource " + name);
+    try {
+      @Nonnull final ZipEntry entry = new ZipEntry(name);
+      if (null != counter) {
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        @Nonnull final CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setCrc(crc.getValue());
+        entry.setExtra(alignmentExtra(counter.getByteCount(), name.getBytes(StandardCharsets.UTF_8).length));
+      }
+      zip.putNextEntry(entry);
+      if (null != counter) {
+        @Nonnull final JsonArray location = new JsonArray();
+        location.add(counter.getByteCount());
+        location.add(data.length);
+        index.add(name, location);
+      }
+      zip.write(data);
+      zip.closeEntry();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return null;
+  }
+
+  @Nonnull
+  private static byte[] alignmentExtra(final long headerOffset, final int nameLength) {
+    final long dataOffset = headerOffset + LOCAL_HEADER_SIZE + nameLength + 6;
+    final int alignment = MappedResources.ALIGNMENT;
+    final int padding = (int) ((alignment - dataOffset % alignment) % alignment);
+    @Nonnull final byte[] extra = new byte[6 + padding];
+    extra[0] = (byte) ALIGNMENT_EXTRA_ID;
+    extra[1] = (byte) (ALIGNMENT_EXTRA_ID >> 8);
+    extra[2] = (byte) (2 + padding);
+    extra[3] = (byte) ((2 + padding) >> 8);
+    extra[4] = (byte) alignment;
+    extra[5] = (byte) (alignment >> 8);
+    return extra;
+  }
+
+  /**
+   * Writes the model.json entry. Called once every resource has been put.
+   *
+   * @param json the json
+   * @throws IOException the io exception
+   */
+  public synchronized void writeModel(@Nonnull final JsonObject json) throws IOException {
+    zip.putNextEntry(new ZipEntry("model.json"));
+    @Nonnull JsonWriter writer = new JsonWriter(new OutputStreamWriter(zip));
+    writer.setIndent("  ");
+    writer.setHtmlSafe(true);
+    writer.setSerializeNulls(false);
+    new GsonBuilder().setPrettyPrinting().create().toJson(json, writer);
+    writer.flush();
+    zip.closeEntry();
+  }
+
+  /**
+   * Gets the data offset and length of each resource written so far, as stored in the index entry.
+   *
+   * @return the index
+   */
+  @Nonnull
+  public synchronized JsonObject getIndex() {
+    return index;
+  }
+
+  /**
+   * Gets the names of the resources written so far.
+   *
+   * @return the names
+   */
+  @Nonnull
+  public synchronized Set<CharSequence> getNames() {
+    return Collections.unmodifiableSet(new LinkedHashSet<>(names));
+  }
+
+  @Nullable
+  @Override
+  public byte[] get(final Object key) {
+    return null;
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return false;
+  }
+
+  @Nonnull
+  @Override
+  public Set<Entry<CharSequence, byte[]>> entrySet() {
+    return Collections.emptySet();
+  }
+}
@@ -40,7 +40,7 @@ import java.util.function.IntToDoubleFunction;
  * Adds a bias tensor to the input. Expects a single input of the same dimension as the bias tensor.
  */
 @SuppressWarnings("serial")
-public class BiasLayer extends LayerBase {
+public class BiasLayer extends LayerBase implements JavaMultiPrecision<BiasLayer> {
 
   @SuppressWarnings("unused")
   private static final Logger log = LoggerFactory.getLogger(BiasLayer.class);
@@ -49,6 +49,7 @@ public class BiasLayer extends LayerBase {
    */
   @Nullable
   public final double[] bias;
+  private JavaPrecision precision = JavaPrecision.Double;
 
   /**
    * Instantiates a new Bias key.
@@ -76,6 +77,9 @@ public class BiasLayer extends LayerBase {
   protected BiasLayer(@Nonnull final JsonObject json) {
     super(json);
     bias = JsonUtil.getDoubleArray(json.getAsJsonArray("bias"));
+    if (json.has("precision")) {
+      precision = JavaPrecision.valueOf(json.get("precision").getAsString());
+    }
   }
 
   /**
@@ -131,16 +135,77 @@ public class BiasLayer extends LayerBase {
     } else {
       input = inObj[0].getData();
     }
-    return new Result(TensorArray.wrap(input.stream().parallel()
-        .map(r -> {
-          @Nonnull Tensor tensor = new Tensor(add(r.getData()), r.getDimensions());
-          r.freeRef();
-          return tensor;
-        }).toArray(i -> new Tensor[i])),
+    final TensorList output;
+    if (JavaPrecision.Float == precision && 0 < input.length()) {
+      @Nonnull final FloatTensorList block = FloatTensorList.pack(input);
+      @Nonnull final FloatTensorList outputBlock = new FloatTensorList(block.length(), block.getDimensions());
+      final float[] inputData = block.getData();
+      final float[] outputData = outputBlock.getData();
+      final int elementLength = block.getElementLength();
+      for (int offset = 0; offset < outputData.length; offset += elementLength) {
+        for (int i = 0; i < elementLength; i++) {
+          outputData[offset + i] = (float) (inputData[offset + i] + bias[1 == bias.length ? 0 : i]);
+        }
+      }
+      block.freeRef();
+      output = outputBlock;
+    } else if (input instanceof ContiguousTensorList) {
+      @Nonnull final ContiguousTensorList block = (ContiguousTensorList) input;
+      @Nonnull final ContiguousTensorList outputBlock = new ContiguousTensorList(block.length(), block.getDimensions());
+      final double[] inputData = block.getData();
+      final double[] outputData = outputBlock.getData();
+      final int elementLength = block.getElementLength();
+      if (1 == bias.length) {
+        for (int i = 0; i < outputData.length; i++) {
+          outputData[i] = inputData[i] + bias[0];
+        }
+      } else {
+        for (int offset = 0; offset < outputData.length; offset += elementLength) {
+          for (int i = 0; i < elementLength; i++) {
+            outputData[offset + i] = inputData[offset + i] + bias[i];
+          }
+        }
+      }
+      output = outputBlock;
+    } else {
+      output = TensorArray.wrap(input.stream().parallel()
+          .map(r -> {
+            @Nonnull Tensor tensor = new Tensor(add(r.getData()), r.getDimensions());
+            r.freeRef();
+            return tensor;
+          }).toArray(i -> new Tensor[i]));
+    }
+    return new Result(output,
         (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList delta) -> {
           if (!isFrozen()) {
             final Delta<UUID> deltaBuffer = buffer.get(BiasLayer.this.getId(), bias);
-            if (1 == bias.length) {
+            if (delta instanceof FloatTensorList) {
+              @Nonnull final FloatTensorList block = (FloatTensorList) delta;
+              final float[] deltaData = block.getData();
+              final int elementLength = block.getElementLength();
+              @Nonnull final double[] biasDelta = new double[bias.length];
+              for (int offset = 0; offset < deltaData.length; offset += elementLength) {
+                for (int i = 0; i < elementLength; i++) {
+                  biasDelta[1 == bias.length ? 0 : i] += deltaData[offset + i];
+                }
+              }
+              deltaBuffer.addInPlace(biasDelta);
+            } else if (delta instanceof ContiguousTensorList) {
+              @Nonnull final ContiguousTensorList block = (ContiguousTensorList) delta;
+              final double[] deltaData = block.getData();
+              final int elementLength = block.getElementLength();
+              @Nonnull final double[] biasDelta = new double[bias.length];
+              if (1 == bias.length) {
+                biasDelta[0] = Arrays.stream(deltaData).sum();
+              } else {
+                for (int offset = 0; offset < deltaData.length; offset += elementLength) {
+                  for (int i = 0; i < elementLength; i++) {
+                    biasDelta[i] += deltaData[offset + i];
+                  }
+                }
+              }
+              deltaBuffer.addInPlace(biasDelta);
+            } else if (1 == bias.length) {
               delta.stream().parallel().forEach(d -> {
                 @Nullable final double[] array = d.getData();
                 deltaBuffer.addInPlace(1 == array.length ? array : new double[]{Arrays.stream(array).sum()});
@@ -178,10 +243,30 @@ public class BiasLayer extends LayerBase {
   public JsonObject getJson(Map<CharSequence, byte[]> resources, DataSerializer dataSerializer) {
     @Nonnull final JsonObject json = super.getJsonStub();
     json.add("bias", JsonUtil.getJson(bias));
+    json.addProperty("precision", precision.name());
     return json;
   }
 
 
+  @Override
+  public JavaPrecision getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Sets precision. At {@link JavaPrecision#Float} the output is a {@link FloatTensorList}; the bias stays double
+   * precision.
+   *
+   * @param precision the precision
+   * @return the precision
+   */
+  @Nonnull
+  @Override
+  public BiasLayer setPrecision(final JavaPrecision precision) {
+    this.precision = precision;
+    return this;
+  }
+
   /**
    * Set nn key.
    *
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.layers.java;
+
+import com.google.gson.JsonObject;
+import com.simiacryptus.mindseye.lang.*;
+import com.simiacryptus.mindseye.network.PipelineNetwork;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A gradient checkpoint. The wrapped layer (typically a sub-segment of a pipeline) is evaluated against constant copies
+ * of its inputs during the forward pass, so none of its intermediate activations outlive the call; only the inputs and
+ * the output are retained. When the backward pass reaches this layer, the segment is evaluated again against the
+ * original inputs and the gradient is passed through the recomputed result. This trades one extra forward evaluation
+ * of the segment for its activation memory. Stochastic components inside the segment must not be reshuffled between
+ * the forward and backward passes.
+ */
+@SuppressWarnings("serial")
+public class CheckpointLayer extends WrapperLayer {
+
+  /**
+   * Instantiates a new Checkpoint key.
+   *
+   * @param json the json
+   * @param rs   the rs
+   */
+  protected CheckpointLayer(@Nonnull final JsonObject json, Map<CharSequence, byte[]> rs) {
+    super(json, rs);
+  }
+
+  /**
+   * Instantiates a new Checkpoint key.
+   *
+   * @param inner the heapCopy
+   */
+  public CheckpointLayer(final Layer inner) {
+    super(inner);
+  }
+
+  /**
+   * From json checkpoint key.
+   *
+   * @param json the json
+   * @param rs   the rs
+   * @return the checkpoint key
+   */
+  public static CheckpointLayer fromJson(@Nonnull final JsonObject json, Map<CharSequence, byte[]> rs) {
+    return new CheckpointLayer(json, rs);
+  }
+
+  /**
+   * Wraps a single-input chain of layers as one checkpointed segment.
+   *
+   * @param layers the layers
+   * @return the checkpoint key
+   */
+  @Nonnull
+  public static CheckpointLayer segment(final Layer... layers) {
+    PipelineNetwork segment = PipelineNetwork.build(1, layers);
+    CheckpointLayer checkpointLayer = new CheckpointLayer(segment);
+    segment.freeRef();
+    return checkpointLayer;
+  }
+
+  @Nullable
+  @Override
+  public Result eval(@Nonnull final Result... inObj) {
+    final Result[] constants = Arrays.stream(inObj).map(x -> new ConstantResult(x.getData())).toArray(i -> new Result[i]);
+    @Nullable final Result forward = getInner().eval(constants);
+    Arrays.stream(constants).forEach(ReferenceCounting::freeRef);
+    if (null == forward) return null;
+    final TensorList outputData = forward.getDataAndFree();
+    Arrays.stream(inObj).forEach(x -> {
+      x.addRef();
+      x.getData().addRef();
+    });
+    return new Result(outputData, (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList delta) -> {
+      @Nullable final Result recomputed = getInner().eval(inObj);
+      try {
+        delta.addRef();
+        recomputed.accumulate(buffer, delta);
+      } finally {
+        recomputed.getData().freeRef();
+        recomputed.freeRef();
+      }
+    }) {
+
+      @Override
+      public boolean isAlive() {
+        return Arrays.stream(inObj).anyMatch(x -> x.isAlive()) || !isFrozen();
+      }
+
+      @Override
+      protected void _free() {
+        Arrays.stream(inObj).forEach(x -> {
+          x.getData().freeRef();
+          x.freeRef();
+        });
+      }
+    };
+  }
+
+}
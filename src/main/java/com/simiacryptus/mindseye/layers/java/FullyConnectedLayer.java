@@ -25,6 +25,7 @@ import com.simiacryptus.util.FastRandom;
 import com.simiacryptus.util.JsonUtil;
 import com.simiacryptus.util.Util;
 import org.jblas.DoubleMatrix;
+import org.jblas.NativeBlas;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,7 +47,7 @@ import java.util.stream.Stream;
  * inputs are connected to all outputs via seperate coefficients.
  */
 @SuppressWarnings("serial")
-public class FullyConnectedLayer extends LayerBase {
+public class FullyConnectedLayer extends LayerBase implements JavaMultiPrecision<FullyConnectedLayer> {
 
 
   @SuppressWarnings("unused")
@@ -63,6 +64,10 @@ public class FullyConnectedLayer extends LayerBase {
   public final int[] outputDims;
   @Nullable
   private final Tensor weights;
+  private boolean batched = false;
+  private JavaPrecision precision = JavaPrecision.Double;
+  @Nullable
+  private volatile float[] floatWeights = null;
 
   /**
    * Instantiates a new Fully connected key.
@@ -105,6 +110,12 @@ public class FullyConnectedLayer extends LayerBase {
     outputDims = JsonUtil.getIntArray(json.getAsJsonArray("outputDims"));
     inputDims = JsonUtil.getIntArray(json.getAsJsonArray("inputDims"));
     weights = Tensor.fromJson(json.get("weights"), resources);
+    if (json.has("batched")) {
+      batched = json.get("batched").getAsBoolean();
+    }
+    if (json.has("precision")) {
+      precision = JavaPrecision.valueOf(json.get("precision").getAsString());
+    }
   }
 
   /**
@@ -202,6 +213,8 @@ public class FullyConnectedLayer extends LayerBase {
   @Nonnull
   @Override
   public Result eval(@Nonnull final Result... inObj) {
+    if (JavaPrecision.Float == precision) return evalFloat(inObj);
+    if (isBatched()) return evalBatched(inObj);
     final TensorList indata = inObj[0].getData();
     indata.addRef();
     for (@Nonnull Result result : inObj) {
@@ -276,6 +289,177 @@ public class FullyConnectedLayer extends LayerBase {
     };
   }
 
+  /**
+   * Evaluates the whole batch as a single matrix product: the input list is packed into an (inputs x batch) matrix so
+   * the forward pass, the input gradient and the weight gradient are each one dgemm call, with no per-item weight
+   * deltas allocated.
+   *
+   * @param inObj the in obj
+   * @return the result
+   */
+  @Nonnull
+  protected Result evalBatched(@Nonnull final Result... inObj) {
+    final TensorList indata = inObj[0].getData();
+    indata.addRef();
+    for (@Nonnull Result result : inObj) {
+      result.addRef();
+    }
+    FullyConnectedLayer.this.addRef();
+    assert Tensor.length(indata.getDimensions()) == Tensor.length(this.inputDims) : Arrays.toString(indata.getDimensions()) + " == " + Arrays.toString(this.inputDims);
+    final int inputs = Tensor.length(inputDims);
+    final int outputs = Tensor.length(outputDims);
+    final int items = indata.length();
+    @Nonnull final ContiguousTensorList inputList = ContiguousTensorList.pack(indata);
+    final double[] inputMatrix = inputList.getData();
+    @Nonnull final ContiguousTensorList tensorArray = new ContiguousTensorList(items, outputDims);
+    NativeBlas.dgemm('T', 'N', outputs, items, inputs,
+        1.0, this.weights.getData(), 0, inputs,
+        inputMatrix, 0, inputs,
+        0.0, tensorArray.getData(), 0, outputs);
+    this.weights.addRef();
+    return new Result(tensorArray, (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList delta) -> {
+      @Nonnull final ContiguousTensorList deltaList = ContiguousTensorList.pack(delta);
+      final double[] deltaMatrix = deltaList.getData();
+      if (!isFrozen()) {
+        final Delta<UUID> deltaBuffer = buffer.get(FullyConnectedLayer.this.getId(), this.weights.getData());
+        final double[] weightDelta = RecycleBin.DOUBLES.obtain((long) inputs * outputs);
+        NativeBlas.dgemm('N', 'T', inputs, outputs, items,
+            1.0, inputMatrix, 0, inputs,
+            deltaMatrix, 0, outputs,
+            0.0, weightDelta, 0, inputs);
+        deltaBuffer.addInPlace(weightDelta);
+        RecycleBin.DOUBLES.recycle(weightDelta, weightDelta.length);
+        deltaBuffer.freeRef();
+      }
+      if (inObj[0].isAlive()) {
+        @Nonnull final ContiguousTensorList tensorList = new ContiguousTensorList(items, indata.getDimensions());
+        NativeBlas.dgemm('N', 'N', inputs, items, outputs,
+            1.0, this.weights.getData(), 0, inputs,
+            deltaMatrix, 0, outputs,
+            0.0, tensorList.getData(), 0, inputs);
+        deltaList.freeRef();
+        inObj[0].accumulate(buffer, tensorList);
+      } else {
+        deltaList.freeRef();
+      }
+    }) {
+
+      @Override
+      protected void _free() {
+        inputList.freeRef();
+        indata.freeRef();
+        FullyConnectedLayer.this.freeRef();
+        for (@Nonnull Result result : inObj) {
+          result.freeRef();
+        }
+        FullyConnectedLayer.this.weights.freeRef();
+      }
+
+      @Override
+      public boolean isAlive() {
+        return !isFrozen() || Arrays.stream(inObj).anyMatch(x -> x.isAlive());
+      }
+
+    };
+  }
+
+  /**
+   * Evaluates the whole batch as single-precision matrix products over {@link FloatTensorList} blocks.
+   *
+   * @param inObj the in obj
+   * @return the result
+   */
+  @Nonnull
+  protected Result evalFloat(@Nonnull final Result... inObj) {
+    final TensorList indata = inObj[0].getData();
+    for (@Nonnull Result result : inObj) {
+      result.addRef();
+    }
+    FullyConnectedLayer.this.addRef();
+    assert Tensor.length(indata.getDimensions()) == Tensor.length(this.inputDims) : Arrays.toString(indata.getDimensions()) + " == " + Arrays.toString(this.inputDims);
+    @Nonnull final int[] inputDimensions = indata.getDimensions();
+    final int inputs = Tensor.length(inputDims);
+    final int outputs = Tensor.length(outputDims);
+    final int items = indata.length();
+    @Nonnull final FloatTensorList inputList = FloatTensorList.pack(indata);
+    final float[] inputMatrix = inputList.getData();
+    final float[] weightMatrix = getFloatWeights();
+    @Nonnull final FloatTensorList tensorArray = new FloatTensorList(items, outputDims);
+    NativeBlas.sgemm('T', 'N', outputs, items, inputs,
+        1.0f, weightMatrix, 0, inputs,
+        inputMatrix, 0, inputs,
+        0.0f, tensorArray.getData(), 0, outputs);
+    this.weights.addRef();
+    return new Result(tensorArray, (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList delta) -> {
+      @Nonnull final FloatTensorList deltaList = FloatTensorList.pack(delta);
+      final float[] deltaMatrix = deltaList.getData();
+      if (!isFrozen()) {
+        final Delta<UUID> deltaBuffer = buffer.get(FullyConnectedLayer.this.getId(), this.weights.getData());
+        @Nonnull final float[] weightDelta = new float[inputs * outputs];
+        NativeBlas.sgemm('N', 'T', inputs, outputs, items,
+            1.0f, inputMatrix, 0, inputs,
+            deltaMatrix, 0, outputs,
+            0.0f, weightDelta, 0, inputs);
+        @Nonnull final double[] weightDeltaDoubles = new double[weightDelta.length];
+        for (int i = 0; i < weightDelta.length; i++) {
+          weightDeltaDoubles[i] = weightDelta[i];
+        }
+        deltaBuffer.addInPlace(weightDeltaDoubles);
+        deltaBuffer.freeRef();
+      }
+      if (inObj[0].isAlive()) {
+        @Nonnull final FloatTensorList tensorList = new FloatTensorList(items, inputDimensions);
+        NativeBlas.sgemm('N', 'N', inputs, items, outputs,
+            1.0f, weightMatrix, 0, inputs,
+            deltaMatrix, 0, outputs,
+            0.0f, tensorList.getData(), 0, inputs);
+        inObj[0].accumulate(buffer, tensorList);
+      }
+      deltaList.freeRef();
+    }) {
+
+      @Override
+      protected void _free() {
+        inputList.freeRef();
+        FullyConnectedLayer.this.freeRef();
+        for (@Nonnull Result result : inObj) {
+          result.freeRef();
+        }
+        FullyConnectedLayer.this.weights.freeRef();
+      }
+
+      @Override
+      public boolean isAlive() {
+        return !isFrozen() || Arrays.stream(inObj).anyMatch(x -> x.isAlive());
+      }
+
+    };
+  }
+
+  /**
+   * Gets the weights rounded to single precision. The rounded copy is reused for as long as it still matches the
+   * weights, however they were written; once they change it is replaced by a new array rather than overwritten, since
+   * results from earlier evaluations still use it in their backward pass.
+   *
+   * @return the float weights
+   */
+  @Nonnull
+  private float[] getFloatWeights() {
+    final double[] data = this.weights.getData();
+    @Nullable float[] floats = floatWeights;
+    if (null != floats && floats.length == data.length) {
+      int i = 0;
+      while (i < data.length && (float) data[i] == floats[i]) i++;
+      if (i == data.length) return floats;
+    }
+    floats = new float[data.length];
+    for (int i = 0; i < data.length; i++) {
+      floats[i] = (float) data[i];
+    }
+    floatWeights = floats;
+    return floats;
+  }
+
   @Nonnull
   @Override
   public JsonObject getJson(Map<CharSequence, byte[]> resources, @Nonnull DataSerializer dataSerializer) {
@@ -283,6 +467,8 @@ public class FullyConnectedLayer extends LayerBase {
     json.add("outputDims", JsonUtil.getJson(outputDims));
     json.add("inputDims", JsonUtil.getJson(inputDims));
     json.add("weights", getWeights().toJson(resources, dataSerializer));
+    json.addProperty("batched", batched);
+    json.addProperty("precision", precision.name());
     return json;
   }
 
@@ -421,6 +607,47 @@ public class FullyConnectedLayer extends LayerBase {
     return this;
   }
 
+  /**
+   * Is batched boolean.
+   *
+   * @return the boolean
+   */
+  public boolean isBatched() {
+    return batched;
+  }
+
+  /**
+   * Sets batched. When enabled, each evaluation packs the whole batch into one matrix and uses a single GEMM for each of
+   * the forward pass, the input gradient and the weight gradient.
+   *
+   * @param batched the batched
+   * @return the batched
+   */
+  @Nonnull
+  public FullyConnectedLayer setBatched(final boolean batched) {
+    this.batched = batched;
+    return this;
+  }
+
+  @Override
+  public JavaPrecision getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Sets precision. At {@link JavaPrecision#Float} the layer always runs batched, exchanging {@link FloatTensorList}
+   * blocks and using single-precision GEMM; weights and their gradients remain double precision.
+   *
+   * @param precision the precision
+   * @return the precision
+   */
+  @Nonnull
+  @Override
+  public FullyConnectedLayer setPrecision(final JavaPrecision precision) {
+    this.precision = precision;
+    return this;
+  }
+
   @Nonnull
   @Override
   public List<double[]> state() {
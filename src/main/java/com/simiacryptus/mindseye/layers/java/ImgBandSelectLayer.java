@@ -73,6 +73,19 @@ public class ImgBandSelectLayer extends LayerBase {
     return new ImgBandSelectLayer(json);
   }
 
+  /**
+   * Is strided boolean.
+   *
+   * @return true if the bands are evenly spaced, so the output can be a view of the input
+   */
+  private boolean isStrided() {
+    if (0 == bands.length) return false;
+    for (int i = 2; i < bands.length; i++) {
+      if (bands[i] - bands[i - 1] != bands[1] - bands[0]) return false;
+    }
+    return true;
+  }
+
   @Nonnull
   @Override
   public Result eval(@Nonnull final Result... inObj) {
@@ -80,18 +93,27 @@ public class ImgBandSelectLayer extends LayerBase {
     final TensorList batch = input.getData();
     @Nonnull final int[] inputDims = batch.getDimensions();
     assert 3 == inputDims.length;
-    @Nonnull final Tensor outputDims = new Tensor(inputDims[0], inputDims[1], bands.length);
     Arrays.stream(inObj).forEach(nnResult -> nnResult.addRef());
-    @Nonnull TensorArray wrap = TensorArray.wrap(IntStream.range(0, batch.length()).parallel()
-        .mapToObj(dataIndex -> outputDims.mapCoords((c) -> {
-          int[] coords = c.getCoords();
-          @Nullable Tensor tensor = batch.get(dataIndex);
-          double v = tensor.get(coords[0], coords[1], bands[coords[2]]);
-          tensor.freeRef();
-          return v;
-        }))
-        .toArray(i -> new Tensor[i]));
-    outputDims.freeRef();
+    final TensorList wrap;
+    if (isStrided()) {
+      @Nonnull final StridedTensorList view = StridedTensorList.wrap(batch);
+      wrap = view.selectBands(bands[0], bands.length > 1 ? bands[1] - bands[0] : 1, bands.length);
+      view.freeRef();
+    } else {
+      @Nonnull final Tensor outputDims = new Tensor(inputDims[0], inputDims[1], bands.length);
+      wrap = TensorArray.wrap(IntStream.range(0, batch.length()).parallel()
+          .mapToObj(dataIndex -> {
+            @Nullable final Tensor tensor = batch.get(dataIndex);
+            @Nonnull final Tensor selected = outputDims.mapCoords((c) -> {
+              int[] coords = c.getCoords();
+              return tensor.get(coords[0], coords[1], bands[coords[2]]);
+            });
+            tensor.freeRef();
+            return selected;
+          })
+          .toArray(i -> new Tensor[i]));
+      outputDims.freeRef();
+    }
     return new Result(wrap, (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList error) -> {
       if (input.isAlive()) {
         @Nonnull TensorArray tensorArray = TensorArray.wrap(IntStream.range(0, error.length()).parallel()
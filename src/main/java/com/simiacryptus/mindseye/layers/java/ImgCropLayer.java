@@ -121,15 +121,23 @@ public class ImgCropLayer extends LayerBase {
     final TensorList batch = input.getData();
     @Nonnull final int[] inputDims = batch.getDimensions();
     assert 3 == inputDims.length;
-    return new Result(TensorArray.wrap(IntStream.range(0, batch.length()).parallel()
-        .mapToObj(dataIndex -> {
-          @Nonnull final Tensor outputData = new Tensor(sizeX, sizeY, inputDims[2]);
-          Tensor inputData = batch.get(dataIndex);
-          ImgCropLayer.copy(inputData, outputData);
-          inputData.freeRef();
-          return outputData;
-        })
-        .toArray(i -> new Tensor[i])), (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList error) -> {
+    final TensorList outputData;
+    if (sizeX <= inputDims[0] && sizeY <= inputDims[1]) {
+      @Nonnull final StridedTensorList view = StridedTensorList.wrap(batch);
+      outputData = view.crop((inputDims[0] - sizeX) / 2, (inputDims[1] - sizeY) / 2, sizeX, sizeY);
+      view.freeRef();
+    } else {
+      outputData = TensorArray.wrap(IntStream.range(0, batch.length()).parallel()
+          .mapToObj(dataIndex -> {
+            @Nonnull final Tensor tensor = new Tensor(sizeX, sizeY, inputDims[2]);
+            Tensor inputData = batch.get(dataIndex);
+            ImgCropLayer.copy(inputData, tensor);
+            inputData.freeRef();
+            return tensor;
+          })
+          .toArray(i -> new Tensor[i]));
+    }
+    return new Result(outputData, (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList error) -> {
       if (input.isAlive()) {
         @Nonnull TensorArray tensorArray = TensorArray.wrap(IntStream.range(0, error.length()).parallel()
             .mapToObj(dataIndex -> {
@@ -219,15 +219,24 @@ public class ImgTileSelectLayer extends LayerBase {
     @Nonnull final int[] inputDims = batch.getDimensions();
     assert 3 == inputDims.length;
     @Nonnull final int[] dimOut = getViewDimensions(inputDims, new int[]{sizeX, sizeY, inputDims[2]}, new int[]{positionX, positionY, 0});
-    return new Result(TensorArray.wrap(IntStream.range(0, batch.length()).parallel()
-        .mapToObj(dataIndex -> {
-          @Nonnull final Tensor outputData = new Tensor(dimOut);
-          Tensor inputData = batch.get(dataIndex);
-          copy(inputData, outputData, positionX, positionY, toroidal);
-          inputData.freeRef();
-          return outputData;
-        })
-        .toArray(i -> new Tensor[i])), (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList error) -> {
+    final TensorList outputData;
+    if (positionX >= 0 && positionY >= 0 && dimOut[0] > 0 && dimOut[1] > 0
+        && positionX + dimOut[0] <= inputDims[0] && positionY + dimOut[1] <= inputDims[1]) {
+      @Nonnull final StridedTensorList view = StridedTensorList.wrap(batch);
+      outputData = view.crop(positionX, positionY, dimOut[0], dimOut[1]);
+      view.freeRef();
+    } else {
+      outputData = TensorArray.wrap(IntStream.range(0, batch.length()).parallel()
+          .mapToObj(dataIndex -> {
+            @Nonnull final Tensor tensor = new Tensor(dimOut);
+            Tensor inputData = batch.get(dataIndex);
+            copy(inputData, tensor, positionX, positionY, toroidal);
+            inputData.freeRef();
+            return tensor;
+          })
+          .toArray(i -> new Tensor[i]));
+    }
+    return new Result(outputData, (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList error) -> {
       if (input.isAlive()) {
         @Nonnull TensorArray tensorArray = TensorArray.wrap(IntStream.range(0, error.length()).parallel()
             .mapToObj(dataIndex -> {
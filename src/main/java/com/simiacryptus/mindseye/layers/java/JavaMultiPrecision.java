@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.layers.java;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An interface for Java layers with a configurable numeric precision.
+ *
+ * @param <T> the parent type, specified for return values.
+ */
+public interface JavaMultiPrecision<T> {
+  /**
+   * Gets precision.
+   *
+   * @return the precision
+   */
+  JavaPrecision getPrecision();
+
+  /**
+   * Sets precision.
+   *
+   * @param precision the precision
+   * @return the precision
+   */
+  @Nonnull
+  T setPrecision(JavaPrecision precision);
+}
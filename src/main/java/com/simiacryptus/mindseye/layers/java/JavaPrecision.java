@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.layers.java;
+
+/**
+ * The numeric precision a Java layer computes its activations and deltas in. This is independent of the CuDNN layers'
+ * {@link com.simiacryptus.mindseye.lang.cudnn.Precision}; weights and their gradients are always double precision.
+ */
+public enum JavaPrecision {
+  /**
+   * Double precision, exchanging double-backed tensor lists.
+   */
+  Double,
+  /**
+   * Single precision, exchanging {@link com.simiacryptus.mindseye.lang.FloatTensorList} blocks.
+   */
+  Float
+}
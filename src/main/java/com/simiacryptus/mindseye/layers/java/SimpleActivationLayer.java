@@ -37,10 +37,11 @@ import java.util.stream.IntStream;
  * @param <T> the type parameter
  */
 @SuppressWarnings("serial")
-public abstract class SimpleActivationLayer<T extends SimpleActivationLayer<T>> extends LayerBase {
+public abstract class SimpleActivationLayer<T extends SimpleActivationLayer<T>> extends LayerBase implements JavaMultiPrecision<T> {
 
   @SuppressWarnings("unused")
   private static final Logger log = LoggerFactory.getLogger(SigmoidActivationLayer.class);
+  private JavaPrecision precision = JavaPrecision.Double;
 
   /**
    * Instantiates a new Simple activation key.
@@ -57,6 +58,9 @@ public abstract class SimpleActivationLayer<T extends SimpleActivationLayer<T>>
    */
   protected SimpleActivationLayer(@Nonnull final JsonObject id) {
     super(id);
+    if (id.has("precision")) {
+      precision = JavaPrecision.valueOf(id.get("precision").getAsString());
+    }
   }
 
   /**
@@ -71,6 +75,8 @@ public abstract class SimpleActivationLayer<T extends SimpleActivationLayer<T>>
   @Override
   public Result eval(@Nonnull final Result... inObj) {
     final TensorList indata0 = inObj[0].getData();
+    if (JavaPrecision.Float == precision) return evalFloat(inObj);
+    if (indata0 instanceof ContiguousTensorList) return evalContiguous(inObj);
     final int itemCnt = indata0.length();
     assert 0 < itemCnt;
     Arrays.stream(inObj).forEach(nnResult -> nnResult.addRef());
@@ -124,6 +130,137 @@ public abstract class SimpleActivationLayer<T extends SimpleActivationLayer<T>>
     };
   }
 
+  /**
+   * Evaluates a contiguous batch in single passes over its block, keeping the derivative as a block of the same shape.
+   *
+   * @param inObj the in obj
+   * @return the result
+   */
+  @Nonnull
+  protected Result evalContiguous(@Nonnull final Result... inObj) {
+    @Nonnull final ContiguousTensorList indata0 = (ContiguousTensorList) inObj[0].getData();
+    Arrays.stream(inObj).forEach(nnResult -> nnResult.addRef());
+    @Nonnull final int[] dimensions = indata0.getDimensions();
+    @Nonnull final ContiguousTensorList output = new ContiguousTensorList(indata0.length(), dimensions);
+    @Nonnull final ContiguousTensorList inputGradient = new ContiguousTensorList(indata0.length(), dimensions);
+    final double[] inputData = indata0.getData();
+    final double[] outputData = output.getData();
+    final double[] gradientData = inputGradient.getData();
+    @Nonnull final double[] results = new double[2];
+    for (int i = 0; i < inputData.length; i++) {
+      eval(inputData[i], results);
+      outputData[i] = results[0];
+      gradientData[i] = results[1];
+    }
+    return new Result(output, (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList data) -> {
+      if (inObj[0].isAlive()) {
+        @Nonnull final ContiguousTensorList delta = ContiguousTensorList.pack(data);
+        @Nonnull final ContiguousTensorList passback = new ContiguousTensorList(delta.length(), dimensions);
+        final double[] deltaData = delta.getData();
+        final double[] passbackData = passback.getData();
+        for (int i = 0; i < passbackData.length; i++) {
+          final double v = gradientData[i];
+          if (Double.isFinite(v)) {
+            passbackData[i] = deltaData[i] * v;
+          }
+        }
+        delta.freeRef();
+        inObj[0].accumulate(buffer, passback);
+      }
+    }) {
+
+      @Override
+      protected void _free() {
+        Arrays.stream(inObj).forEach(nnResult -> nnResult.freeRef());
+        inputGradient.freeRef();
+      }
+
+      @Override
+      public boolean isAlive() {
+        return inObj[0].isAlive();
+      }
+    };
+  }
+
+  /**
+   * Evaluates the batch as a {@link FloatTensorList}, keeping the derivative in single precision.
+   *
+   * @param inObj the in obj
+   * @return the result
+   */
+  @Nonnull
+  protected Result evalFloat(@Nonnull final Result... inObj) {
+    @Nonnull final FloatTensorList indata0 = FloatTensorList.pack(inObj[0].getData());
+    Arrays.stream(inObj).forEach(nnResult -> nnResult.addRef());
+    @Nonnull final int[] dimensions = indata0.getDimensions();
+    @Nonnull final FloatTensorList output = new FloatTensorList(indata0.length(), dimensions);
+    @Nonnull final float[] gradientData = new float[output.getData().length];
+    final float[] inputData = indata0.getData();
+    final float[] outputData = output.getData();
+    @Nonnull final double[] results = new double[2];
+    for (int i = 0; i < inputData.length; i++) {
+      eval(inputData[i], results);
+      outputData[i] = (float) results[0];
+      gradientData[i] = (float) results[1];
+    }
+    indata0.freeRef();
+    return new Result(output, (@Nonnull final DeltaSet<UUID> buffer, @Nonnull final TensorList data) -> {
+      if (inObj[0].isAlive()) {
+        @Nonnull final FloatTensorList delta = FloatTensorList.pack(data);
+        @Nonnull final FloatTensorList passback = new FloatTensorList(delta.length(), dimensions);
+        final float[] deltaData = delta.getData();
+        final float[] passbackData = passback.getData();
+        for (int i = 0; i < passbackData.length; i++) {
+          final float v = gradientData[i];
+          if (Float.isFinite(v)) {
+            passbackData[i] = deltaData[i] * v;
+          }
+        }
+        delta.freeRef();
+        inObj[0].accumulate(buffer, passback);
+      }
+    }) {
+
+      @Override
+      protected void _free() {
+        Arrays.stream(inObj).forEach(nnResult -> nnResult.freeRef());
+      }
+
+      @Override
+      public boolean isAlive() {
+        return inObj[0].isAlive();
+      }
+    };
+  }
+
+  @Nonnull
+  @Override
+  public JsonObject getJsonStub() {
+    @Nonnull final JsonObject json = super.getJsonStub();
+    json.addProperty("precision", precision.name());
+    return json;
+  }
+
+  @Override
+  public JavaPrecision getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Sets precision. At {@link JavaPrecision#Float} the activation and its derivative are stored as
+   * {@link FloatTensorList} blocks.
+   *
+   * @param precision the precision
+   * @return the precision
+   */
+  @Nonnull
+  @Override
+  @SuppressWarnings("unchecked")
+  public T setPrecision(final JavaPrecision precision) {
+    this.precision = precision;
+    return (T) this;
+  }
+
   @Nonnull
   @Override
   public List<double[]> state() {
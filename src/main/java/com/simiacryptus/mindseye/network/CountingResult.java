@@ -56,7 +56,6 @@ public class CountingResult extends Result {
   public CountingResult(@Nonnull final Result inner) {
     super(inner.getData(), new CountingAccumulator(inner));
     this.inner = inner;
-    inner.addRef();
   }
 
   /**
@@ -78,13 +77,12 @@ public class CountingResult extends Result {
 
   @Override
   protected void _free() {
-    inner.freeRef();
     ((CountingAccumulator) accumulator).freeRef();
   }
 
   @Override
   public boolean isAlive() {
-    return inner.isAlive();
+    return getAccumulator().isInnerAlive();
   }
 
   /**
@@ -100,6 +98,9 @@ public class CountingResult extends Result {
     private final LinkedList<TensorList> passbackBuffers;
     @Nonnull
     private final AtomicInteger accumulations;
+    @Nonnull
+    private final AtomicBoolean released = new AtomicBoolean(false);
+    private volatile boolean releaseAfterBackprop = false;
 
     /**
      * Instantiates a new Counting accumulator.
@@ -141,6 +142,7 @@ public class CountingResult extends Result {
       if (1 >= references.get()) {
         data.addRef();
         inner.accumulate(buffer, data);
+        if (releaseAfterBackprop) release();
       } else {
         @Nonnull TensorList reduced = null;
         synchronized (passbackBuffers) {
@@ -178,17 +180,55 @@ public class CountingResult extends Result {
         if (null != reduced) {
           inner.accumulate(buffer, reduced);
           accumulations.set(0);
+          if (releaseAfterBackprop) release();
         }
       }
     }
 
+    /**
+     * Is release after backprop boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isReleaseAfterBackprop() {
+      return releaseAfterBackprop;
+    }
+
+    /**
+     * Sets release after backprop. When set, the inner result (and with it the activations its backprop closure
+     * captured) is freed as soon as the final gradient has been passed through it, so the result can only be
+     * backpropagated once.
+     *
+     * @param releaseAfterBackprop the release after backprop
+     * @return the release after backprop
+     */
+    public CountingAccumulator setReleaseAfterBackprop(boolean releaseAfterBackprop) {
+      this.releaseAfterBackprop = releaseAfterBackprop;
+      return this;
+    }
+
+    /**
+     * Is inner alive boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isInnerAlive() {
+      return !released.get() && inner.isAlive();
+    }
+
+    private void release() {
+      if (released.compareAndSet(false, true)) {
+        this.inner.freeRef();
+      }
+    }
+
     @Override
     protected void _free() {
       synchronized (passbackBuffers) {
         passbackBuffers.stream().forEach(t -> t.freeRef());
         passbackBuffers.clear();
       }
-      this.inner.freeRef();
+      release();
     }
 
 
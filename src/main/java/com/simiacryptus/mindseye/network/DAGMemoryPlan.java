@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.network;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * A static liveness plan for one head of a DAGNetwork. It orders the nodes reachable from the head topologically and
+ * counts, for each intermediate node, how many of those nodes consume it. Evaluation contexts seeded with these counts
+ * only wait for consumers that will actually run, so each {@link LazyResult} hands its result off at its last forward
+ * use rather than leaving it in the context until the context is freed, and each node's backprop closure is released
+ * by its {@link CountingResult} once the final gradient has been delivered. The plan stores node ids only and holds no
+ * references to the graph.
+ */
+public class DAGMemoryPlan {
+
+  private final UUID headId;
+  private final long version;
+  @Nonnull
+  private final List<UUID> order = new ArrayList<>();
+  @Nonnull
+  private final Map<UUID, Long> consumerCounts = new HashMap<>();
+  private final int peakLive;
+
+  /**
+   * Instantiates a new Dag memory plan.
+   *
+   * @param network the network
+   * @param head    the head
+   */
+  public DAGMemoryPlan(@Nonnull final DAGNetwork network, @Nonnull final DAGNode head) {
+    this.headId = head.getId();
+    this.version = network.getGraphVersion();
+    @Nonnull final Map<UUID, Integer> lastUse = new HashMap<>();
+    for (@Nonnull final DAGNode node : topologicalOrder(network, head)) {
+      for (@Nonnull final DAGNode input : node.getInputs()) {
+        UUID inputId = input.getId();
+        if (network.inputNodes.containsKey(inputId)) continue;
+        consumerCounts.merge(inputId, 1L, Long::sum);
+        lastUse.put(inputId, order.size());
+      }
+      order.add(node.getId());
+    }
+    @Nonnull final int[] expiring = new int[order.size()];
+    lastUse.values().forEach(i -> expiring[i]++);
+    int live = 0;
+    int peak = 0;
+    for (int i = 0; i < order.size(); i++) {
+      live++;
+      peak = Math.max(peak, live);
+      live -= expiring[i];
+    }
+    this.peakLive = peak;
+  }
+
+  /**
+   * Lists the non-input nodes reachable from the head, each after all of its inputs.
+   *
+   * @param network the network
+   * @param head    the head
+   * @return the list
+   */
+  @Nonnull
+  static List<DAGNode> topologicalOrder(@Nonnull final DAGNetwork network, @Nonnull final DAGNode head) {
+    @Nonnull final List<DAGNode> order = new ArrayList<>();
+    @Nonnull final Set<UUID> visited = new HashSet<>();
+    @Nonnull final Deque<DAGNode> stack = new ArrayDeque<>();
+    @Nonnull final Deque<Boolean> expanded = new ArrayDeque<>();
+    stack.push(head);
+    expanded.push(false);
+    while (!stack.isEmpty()) {
+      final DAGNode node = stack.pop();
+      final boolean isExpanded = expanded.pop();
+      if (isExpanded) {
+        order.add(node);
+        continue;
+      }
+      if (network.inputNodes.containsKey(node.getId())) continue;
+      if (!visited.add(node.getId())) continue;
+      stack.push(node);
+      expanded.push(true);
+      final DAGNode[] inputs = node.getInputs();
+      for (int i = inputs.length - 1; i >= 0; i--) {
+        if (!visited.contains(inputs[i].getId())) {
+          stack.push(inputs[i]);
+          expanded.push(false);
+        }
+      }
+    }
+    return order;
+  }
+
+  /**
+   * Is current boolean.
+   *
+   * @param network the network
+   * @param head    the head
+   * @return true if the plan still describes the network's graph
+   */
+  public boolean isCurrent(@Nonnull final DAGNetwork network, @Nonnull final DAGNode head) {
+    return headId.equals(head.getId()) && version == network.getGraphVersion();
+  }
+
+  /**
+   * Gets the ids of the reachable nodes in topological order.
+   *
+   * @return the order
+   */
+  @Nonnull
+  public List<UUID> getOrder() {
+    return Collections.unmodifiableList(order);
+  }
+
+  /**
+   * Gets the number of reachable consumers of each intermediate node.
+   *
+   * @return the consumer counts
+   */
+  @Nonnull
+  public Map<UUID, Long> getConsumerCounts() {
+    return Collections.unmodifiableMap(consumerCounts);
+  }
+
+  /**
+   * Gets the peak number of intermediate results alive at once during a sequential forward pass under this plan.
+   *
+   * @return the peak live
+   */
+  public int getPeakLive() {
+    return peakLive;
+  }
+}
@@ -21,6 +21,8 @@ package com.simiacryptus.mindseye.network;
 
 import com.google.gson.*;
 import com.simiacryptus.mindseye.lang.*;
+import com.simiacryptus.mindseye.layers.java.JavaMultiPrecision;
+import com.simiacryptus.mindseye.layers.java.JavaPrecision;
 import com.simiacryptus.mindseye.layers.java.WrapperLayer;
 import com.simiacryptus.util.MonitoredItem;
 import com.simiacryptus.util.MonitoredObject;
@@ -31,6 +33,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
@@ -63,6 +67,14 @@ public abstract class DAGNetwork extends LayerBase {
    * The Nodes by id.
    */
   protected final LinkedHashMap<UUID, DAGNode> internalNodes = new LinkedHashMap<>();
+  @Nullable
+  private transient DAGScheduler scheduler = null;
+  private boolean freeAtLastUse = false;
+  @Nullable
+  private transient volatile DAGMemoryPlan memoryPlan = null;
+  @Nullable
+  private transient FrozenActivationCache activationCache = null;
+  private final transient AtomicLong graphVersion = new AtomicLong();
 
   /**
    * Instantiates a new Dag network.
@@ -223,6 +235,7 @@ public abstract class DAGNetwork extends LayerBase {
     Arrays.stream(head).distinct().forEach(ReferenceCounting::freeRef);
     DAGNode replaced = internalNodes.put(node.getId(), node);
     if (null != replaced) replaced.freeRef();
+    graphVersion.incrementAndGet();
     node.addRef();
     if (null != label) {
       labels.put(label, node.getId());
@@ -234,6 +247,8 @@ public abstract class DAGNetwork extends LayerBase {
   @Override
   protected void _free() {
     super._free();
+    if (null != activationCache) activationCache.freeRef();
+    if (null != scheduler) scheduler.release(this);
     this.internalNodes.values().forEach(ReferenceCounting::freeRef);
     this.inputNodes.values().forEach(ReferenceCounting::freeRef);
     this.inputNodes.clear();
@@ -250,6 +265,7 @@ public abstract class DAGNetwork extends LayerBase {
     inputHandles.add(key);
     InputNode replaced = inputNodes.put(key, new InputNode(this, key));
     if (null != replaced) throw new RuntimeException("UUID Conflict: " + key);
+    graphVersion.incrementAndGet();
     return this;
   }
 
@@ -290,17 +306,22 @@ public abstract class DAGNetwork extends LayerBase {
   public GraphEvaluationContext buildExeCtx(@Nonnull final Result... inputs) {
     assert inputs.length == inputHandles.size() : inputs.length + " != " + inputHandles.size();
     @Nonnull final GraphEvaluationContext context = new GraphEvaluationContext();
+    context.setReleaseAfterBackprop(isFreeAtLastUse());
     for (int i = 0; i < inputs.length; i++) {
       UUID key = inputHandles.get(i);
       Result input = inputs[i];
       if (!context.calculated.containsKey(key)) {
         input.getData().addRef();
-        context.calculated.put(key, new Singleton<CountingResult>().set(new CountingResult(input)));
+        context.calculated.put(key, new Singleton<CountingResult>().set(context.newResult(input)));
       }
     }
-    context.expectedCounts.putAll(getNodes().stream().flatMap(t -> {
-      return Arrays.stream(t.getInputs()).map(n -> n.getId());
-    }).filter(x -> !inputHandles.contains(x)).collect(Collectors.groupingBy(x -> x, Collectors.counting())));
+    if (isFreeAtLastUse()) {
+      context.expectedCounts.putAll(getMemoryPlan().getConsumerCounts());
+    } else {
+      context.expectedCounts.putAll(getNodes().stream().flatMap(t -> {
+        return Arrays.stream(t.getInputs()).map(n -> n.getId());
+      }).filter(x -> !inputHandles.contains(x)).collect(Collectors.groupingBy(x -> x, Collectors.counting())));
+    }
     return context;
   }
 
@@ -317,6 +338,15 @@ public abstract class DAGNetwork extends LayerBase {
     @Nonnull GraphEvaluationContext buildExeCtx = buildExeCtx(input);
     DAGNode head = getHead();
     try {
+      @Nullable DAGScheduler scheduler = this.scheduler;
+      @Nullable FrozenActivationCache activationCache = this.activationCache;
+      if (null != activationCache) {
+        activationCache.seed(this, input, buildExeCtx);
+      }
+      if (null != scheduler) {
+        buildExeCtx.setScheduled(true);
+        scheduler.run(this, head, buildExeCtx);
+      }
       return head.get(buildExeCtx);
     } finally {
       head.freeRef();
@@ -324,6 +354,119 @@ public abstract class DAGNetwork extends LayerBase {
     }
   }
 
+  /**
+   * Gets scheduler.
+   *
+   * @return the scheduler, or null if nodes are resolved recursively on demand
+   */
+  @Nullable
+  public DAGScheduler getScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Sets scheduler.
+   *
+   * @param scheduler the scheduler
+   * @return the scheduler
+   */
+  @Nonnull
+  public DAGNetwork setScheduler(@Nullable final DAGScheduler scheduler) {
+    if (null != this.scheduler && scheduler != this.scheduler) this.scheduler.release(this);
+    this.scheduler = scheduler;
+    return this;
+  }
+
+  /**
+   * Evaluates this network with a dependency scheduler dispatching independent nodes onto the given executor.
+   *
+   * @param executor the executor
+   * @return the dag network
+   */
+  @Nonnull
+  public DAGNetwork setExecutor(@Nonnull final Executor executor) {
+    return setScheduler(new DAGScheduler(executor));
+  }
+
+  /**
+   * Is free at last use boolean.
+   *
+   * @return the boolean
+   */
+  public boolean isFreeAtLastUse() {
+    return freeAtLastUse;
+  }
+
+  /**
+   * Sets free at last use. When set, evaluation follows a static {@link DAGMemoryPlan}: only consumers reachable from
+   * the head are counted, so each intermediate is handed off at its last forward use, and each node's backprop closure
+   * is freed once its final gradient has been delivered. Results evaluated this way can be backpropagated only once.
+   *
+   * @param freeAtLastUse the free at last use
+   * @return the free at last use
+   */
+  @Nonnull
+  public DAGNetwork setFreeAtLastUse(final boolean freeAtLastUse) {
+    this.freeAtLastUse = freeAtLastUse;
+    return this;
+  }
+
+  /**
+   * Gets the frozen activation cache.
+   *
+   * @return the activation cache, or null if frozen prefix outputs are recomputed on every evaluation
+   */
+  @Nullable
+  public FrozenActivationCache getActivationCache() {
+    return activationCache;
+  }
+
+  /**
+   * Sets the cache through which the frozen prefix's outputs are reused across evaluations of the same samples; see
+   * {@link FrozenActivationCache}. With a scheduler set, the seeded nodes are taken as complete and the prefix behind
+   * them is not scheduled.
+   *
+   * @param activationCache the activation cache, or null to recompute the prefix on every evaluation
+   * @return the activation cache
+   */
+  @Nonnull
+  public synchronized DAGNetwork setActivationCache(@Nullable final FrozenActivationCache activationCache) {
+    if (null != activationCache) activationCache.addRef();
+    if (null != this.activationCache) this.activationCache.freeRef();
+    this.activationCache = activationCache;
+    return this;
+  }
+
+  /**
+   * Gets the graph version, which changes whenever a node or input is added, replaced or removed. Cached plans compare
+   * it to detect a rewired graph even when the node count is unchanged.
+   *
+   * @return the graph version
+   */
+  public long getGraphVersion() {
+    return graphVersion.get();
+  }
+
+  /**
+   * Gets the memory plan for the current head, recomputing it if the graph has changed.
+   *
+   * @return the memory plan
+   */
+  @Nonnull
+  public DAGMemoryPlan getMemoryPlan() {
+    DAGNode head = getHead();
+    try {
+      DAGMemoryPlan plan = this.memoryPlan;
+      if (null == plan || !plan.isCurrent(this, head)) {
+        plan = new DAGMemoryPlan(this, head);
+        this.memoryPlan = plan;
+      }
+      return plan;
+    } finally {
+      head.freeRef();
+    }
+  }
+
   /**
    * Gets by label.
    *
@@ -496,6 +639,7 @@ public abstract class DAGNetwork extends LayerBase {
     @Nonnull final InnerNode node = new InnerNode(this, layer, newNodeId, dependencies);
     DAGNode replaced = internalNodes.put(node.getId(), node);
     if (null != replaced) replaced.freeRef();
+    graphVersion.incrementAndGet();
     assertConsistent();
   }
 
@@ -510,6 +654,7 @@ public abstract class DAGNetwork extends LayerBase {
     final UUID key = inputHandles.remove(index);
     InputNode remove = inputNodes.remove(key);
     if (null != remove) remove.freeRef();
+    graphVersion.incrementAndGet();
     return this;
   }
 
@@ -520,6 +665,7 @@ public abstract class DAGNetwork extends LayerBase {
     this.internalNodes.values().forEach(ReferenceCounting::freeRef);
     this.internalNodes.clear();
     labels.clear();
+    graphVersion.incrementAndGet();
   }
 
   @Nonnull
@@ -530,6 +676,23 @@ public abstract class DAGNetwork extends LayerBase {
     return this;
   }
 
+  /**
+   * Sets the precision of every Java layer in the network, including nested networks, which supports more than one.
+   * CuDNN layers keep their own precision.
+   *
+   * @param precision the precision
+   * @return the precision
+   */
+  @Nonnull
+  public DAGNetwork setPrecision(final JavaPrecision precision) {
+    visitLayers(layer -> {
+      if (layer instanceof JavaMultiPrecision<?>) {
+        ((JavaMultiPrecision<?>) layer).setPrecision(precision);
+      }
+    });
+    return this;
+  }
+
   @Override
   public List<double[]> state() {
     return getChildren().stream().filter(x->!x.isFrozen()).flatMap(l -> l.state().stream()).distinct().collect(Collectors.toList());
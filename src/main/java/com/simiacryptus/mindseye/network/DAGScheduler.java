@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.network;
+
+import com.simiacryptus.mindseye.lang.ReferenceCountingBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Evaluates the nodes of a DAGNetwork in dependency order. The topological plan (each node's inner dependencies and
+ * dependents) is computed once per graph version and holds a reference to each planned node until it is replaced or
+ * released; each evaluation then seeds a ready-queue with the nodes whose inputs
+ * are available and dispatches them onto the configured executor as their dependencies complete. The calling thread
+ * also drains the ready-queue, so nested networks sharing a bounded executor always make progress. Nodes whose results
+ * are already present in the context, such as those seeded by a {@link FrozenActivationCache}, are taken as complete,
+ * and nodes needed only by them are skipped.
+ * <p>
+ * If a node fails, no further nodes are started, and the error is rethrown once every node already running has
+ * finished, so the context is never released while still in use.
+ */
+public class DAGScheduler {
+  private static final Logger log = LoggerFactory.getLogger(DAGScheduler.class);
+
+  @Nonnull
+  private final Executor executor;
+  @Nullable
+  private Plan plan = null;
+  private volatile Map<UUID, NodeTiming> lastTimings = Collections.emptyMap();
+
+  /**
+   * Instantiates a new Dag scheduler.
+   *
+   * @param executor the executor
+   */
+  public DAGScheduler(@Nonnull final Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Gets executor.
+   *
+   * @return the executor
+   */
+  @Nonnull
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Gets the per-node timings of the most recent evaluation.
+   *
+   * @return the last timings
+   */
+  @Nonnull
+  public Map<UUID, NodeTiming> getLastTimings() {
+    return lastTimings;
+  }
+
+  /**
+   * Gets the critical path of the most recent evaluation, ending at the head node.
+   *
+   * @return the node ids on the critical path, in evaluation order
+   */
+  @Nonnull
+  public List<UUID> getCriticalPath() {
+    Map<UUID, NodeTiming> timings = this.lastTimings;
+    @Nonnull LinkedList<UUID> path = new LinkedList<>();
+    NodeTiming node = timings.values().stream().max(Comparator.comparing(x -> x.criticalPathNanos)).orElse(null);
+    while (null != node) {
+      path.addFirst(node.id);
+      node = null == node.criticalInput ? null : timings.get(node.criticalInput);
+    }
+    return path;
+  }
+
+  /**
+   * Evaluates every node needed by the head, leaving each result in the context. The head itself is then retrieved
+   * through the normal {@link DAGNode#get(GraphEvaluationContext)} path.
+   *
+   * @param network the network
+   * @param head    the head
+   * @param context the context
+   */
+  public void run(@Nonnull final DAGNetwork network, @Nonnull final DAGNode head, @Nonnull final GraphEvaluationContext context) {
+    @Nonnull final Plan plan = getPlan(network, head);
+    try {
+      if (plan.order.isEmpty()) return;
+      @Nonnull final Execution execution = new Execution(plan, context);
+      execution.run();
+      lastTimings = execution.timings();
+    } finally {
+      plan.freeRef();
+    }
+  }
+
+  /**
+   * Releases the cached plan if it was built for the given network, dropping its node references.
+   *
+   * @param network the network
+   */
+  public synchronized void release(@Nonnull final DAGNetwork network) {
+    if (null != plan && plan.network == network) {
+      plan.freeRef();
+      plan = null;
+    }
+  }
+
+  /**
+   * Gets the plan for the given head, rebuilding it if the cached one is stale. The returned plan carries a reference
+   * owned by the caller, so a concurrent replacement or release cannot free it while it is in use.
+   */
+  @Nonnull
+  private synchronized Plan getPlan(@Nonnull final DAGNetwork network, @Nonnull final DAGNode head) {
+    long version = network.getGraphVersion();
+    if (null == plan || plan.network != network || !plan.headId.equals(head.getId()) || plan.version != version) {
+      if (null != plan) plan.freeRef();
+      plan = new Plan(network, head, version);
+    }
+    plan.addRef();
+    return plan;
+  }
+
+  /**
+   * The per-node timing of one evaluation.
+   */
+  public static class NodeTiming {
+    /**
+     * The Id.
+     */
+    public final UUID id;
+    /**
+     * The wall time spent evaluating this node.
+     */
+    public final long durationNanos;
+    /**
+     * The longest chain of dependent evaluation time ending at this node, including it.
+     */
+    public final long criticalPathNanos;
+    /**
+     * The input on the critical path, or null.
+     */
+    @Nullable
+    public final UUID criticalInput;
+
+    private NodeTiming(final UUID id, final long durationNanos, final long criticalPathNanos, @Nullable final UUID criticalInput) {
+      this.id = id;
+      this.durationNanos = durationNanos;
+      this.criticalPathNanos = criticalPathNanos;
+      this.criticalInput = criticalInput;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %.3fms (critical path %.3fms)", id, durationNanos / 1e6, criticalPathNanos / 1e6);
+    }
+  }
+
+  private static class Plan extends ReferenceCountingBase {
+    /**
+     * The network the plan was built for; compared by identity only, no reference is held.
+     */
+    final DAGNetwork network;
+    /**
+     * The Head id.
+     */
+    final UUID headId;
+    /**
+     * The graph version.
+     */
+    final long version;
+    /**
+     * Nodes reachable from the head, in topological order. Each holds a reference owned by the plan.
+     */
+    final List<LazyResult> order = new ArrayList<>();
+    /**
+     * The Index.
+     */
+    final Map<UUID, Integer> index = new HashMap<>();
+    /**
+     * Distinct scheduled inputs per node, by index.
+     */
+    final int[][] dependencies;
+    /**
+     * Distinct scheduled consumers per node, by index.
+     */
+    final int[][] dependents;
+
+    private Plan(@Nonnull final DAGNetwork network, @Nonnull final DAGNode head, final long version) {
+      this.network = network;
+      this.headId = head.getId();
+      this.version = version;
+      for (@Nonnull final DAGNode node : DAGMemoryPlan.topologicalOrder(network, head)) {
+        node.addRef();
+        index.put(node.getId(), order.size());
+        order.add((LazyResult) node);
+      }
+      dependencies = new int[order.size()][];
+      @Nonnull final List<List<Integer>> consumers = order.stream().map(x -> new ArrayList<Integer>()).collect(Collectors.toList());
+      for (int i = 0; i < order.size(); i++) {
+        final int node = i;
+        dependencies[i] = Arrays.stream(order.get(i).getInputs()).map(x -> index.get(x.getId()))
+            .filter(Objects::nonNull).distinct().mapToInt(x -> x).toArray();
+        Arrays.stream(dependencies[i]).forEach(d -> consumers.get(d).add(node));
+      }
+      dependents = consumers.stream().map(x -> x.stream().mapToInt(i -> i).toArray()).toArray(i -> new int[i][]);
+    }
+
+    @Override
+    protected void _free() {
+      order.forEach(LazyResult::freeRef);
+    }
+  }
+
+  private class Execution {
+    private final Plan plan;
+    private final GraphEvaluationContext context;
+    private final AtomicInteger[] pending;
+    private final AtomicBoolean[] claimed;
+    private final long[] start;
+    private final long[] end;
+    private final ConcurrentLinkedQueue<Integer> ready = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch done;
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Object signal = new Object();
+    private final long origin = System.nanoTime();
+
+    private Execution(@Nonnull final Plan plan, @Nonnull final GraphEvaluationContext context) {
+      this.plan = plan;
+      this.context = context;
+      final int size = plan.order.size();
+      pending = new AtomicInteger[size];
+      claimed = new AtomicBoolean[size];
+      start = new long[size];
+      end = new long[size];
+      done = new CountDownLatch(size);
+      for (int i = 0; i < size; i++) {
+        pending[i] = new AtomicInteger(plan.dependencies[i].length);
+        claimed[i] = new AtomicBoolean(false);
+      }
+      // Walk back from the head, stopping at results already in the context; everything not reached is complete
+      @Nonnull final boolean[] needed = new boolean[size];
+      @Nonnull final Deque<Integer> stack = new ArrayDeque<>();
+      stack.push(plan.index.get(plan.headId));
+      while (!stack.isEmpty()) {
+        final int node = stack.pop();
+        if (needed[node] || context.calculated.containsKey(plan.order.get(node).getId())) continue;
+        needed[node] = true;
+        Arrays.stream(plan.dependencies[node]).forEach(stack::push);
+      }
+      for (int i = 0; i < size; i++) {
+        if (needed[i]) continue;
+        claimed[i].set(true);
+        done.countDown();
+        for (final int dependent : plan.dependents[i]) pending[dependent].decrementAndGet();
+      }
+    }
+
+    private void run() {
+      for (int i = 0; i < pending.length; i++) {
+        if (!claimed[i].get() && 0 == pending[i].get()) schedule(i);
+      }
+      try {
+        while (true) {
+          Integer task = ready.poll();
+          if (null != task) {
+            execute(task);
+            continue;
+          }
+          // Producers enqueue before signalling, so checking under the monitor cannot miss a wakeup
+          synchronized (signal) {
+            if ((0 == done.getCount() || null != error.get()) && 0 == running.get()) break;
+            if (ready.isEmpty()) signal.wait();
+          }
+        }
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      Throwable throwable = error.get();
+      if (null != throwable) {
+        if (throwable instanceof RuntimeException) throw (RuntimeException) throwable;
+        throw new RuntimeException(throwable);
+      }
+    }
+
+    private void schedule(final int node) {
+      ready.add(node);
+      wake();
+      try {
+        executor.execute(() -> {
+          Integer task = ready.poll();
+          if (null != task) execute(task);
+        });
+      } catch (RejectedExecutionException e) {
+        log.debug("Executor rejected task; evaluating on calling thread", e);
+      }
+    }
+
+    private void execute(final int node) {
+      // Counted as running before checking for an error, so the caller cannot see zero running and return between the
+      // check and the evaluation
+      running.incrementAndGet();
+      if (null != error.get() || !claimed[node].compareAndSet(false, true)) {
+        if (0 == running.decrementAndGet()) wake();
+        return;
+      }
+      try {
+        start[node] = System.nanoTime() - origin;
+        plan.order.get(node).calculate(context);
+        end[node] = System.nanoTime() - origin;
+        for (final int dependent : plan.dependents[node]) {
+          if (0 == pending[dependent].decrementAndGet()) schedule(dependent);
+        }
+      } catch (Throwable e) {
+        error.compareAndSet(null, e);
+      } finally {
+        done.countDown();
+        running.decrementAndGet();
+        if (0 == done.getCount() || null != error.get()) wake();
+      }
+    }
+
+    private void wake() {
+      synchronized (signal) {
+        signal.notifyAll();
+      }
+    }
+
+    @Nonnull
+    private Map<UUID, NodeTiming> timings() {
+      final int size = plan.order.size();
+      final long[] critical = new long[size];
+      @Nonnull final Map<UUID, NodeTiming> timings = new LinkedHashMap<>();
+      for (int i = 0; i < size; i++) {
+        long duration = end[i] - start[i];
+        int criticalInput = -1;
+        for (final int d : plan.dependencies[i]) {
+          if (criticalInput < 0 || critical[d] > critical[criticalInput]) criticalInput = d;
+        }
+        critical[i] = duration + (criticalInput < 0 ? 0 : critical[criticalInput]);
+        UUID id = plan.order.get(i).getId();
+        timings.put(id, new NodeTiming(id, duration, critical[i], criticalInput < 0 ? null : plan.order.get(criticalInput).getId()));
+      }
+      return Collections.unmodifiableMap(timings);
+    }
+  }
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.network;
+
+import com.simiacryptus.mindseye.lang.*;
+import com.simiacryptus.mindseye.layers.StochasticComponent;
+import com.simiacryptus.mindseye.layers.java.WrapperLayer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Reuses the outputs of a network's frozen prefix across evaluations. A node is part of the prefix when its layer
+ * (including any wrapped or nested layers) is frozen and not stochastic, and all of its inputs are either network
+ * inputs which need no gradient or other prefix nodes; its output then depends only on the input data. The outputs of
+ * the prefix nodes consumed by the rest of the network are cached per training sample, i.e. per row of input tensors,
+ * and seeded into each evaluation, so only rows never seen before run through the prefix. This serves both line search
+ * probes, which re-evaluate the same batch, and fine-tuning, where every epoch revisits the same samples in new
+ * batches.
+ * <p>
+ * Rows are held on-heap up to {@link #getMaxBytes()}, evicting the least recently used. With a spill directory set,
+ * evicted rows are appended to a scratch file there and read back on their next use instead of being recomputed. The
+ * spilled rows are bounded by {@link #getMaxSpillBytes()}, again dropping the least recently used, and the file is
+ * rewritten without the dropped rows once they take up more of it than the live ones.
+ * <p>
+ * Samples are recognized by a digest of the contents of their constant inputs, so a sample is found again whatever
+ * {@link TensorList} carries it and however often it is decoded anew; the keys hold no tensors. {@link #clear()} must be
+ * called if the frozen layers' weights are changed directly.
+ */
+public class FrozenActivationCache extends ReferenceCountingBase {
+
+  private final long maxBytes;
+  @Nonnull
+  private final LinkedHashMap<RowKey, Tensor[]> heap = new LinkedHashMap<>(16, 0.75f, true);
+  @Nonnull
+  private final LinkedHashMap<RowKey, SpilledRow> spilled = new LinkedHashMap<>(16, 0.75f, true);
+  private long heapBytes = 0;
+  private long spilledBytes = 0;
+  private long maxSpillBytes = 1L << 32;
+  @Nullable
+  private File spillDirectory = null;
+  @Nullable
+  private File spillFile = null;
+  @Nullable
+  private FileChannel spill = null;
+
+  /**
+   * Instantiates a new Frozen activation cache.
+   *
+   * @param maxBytes the maximum size of the rows held on-heap
+   */
+  public FrozenActivationCache(final long maxBytes) {
+    if (maxBytes < 0) throw new IllegalArgumentException();
+    this.maxBytes = maxBytes;
+  }
+
+  private static boolean isConstant(@Nonnull final Layer layer) {
+    final boolean[] constant = {true};
+    @Nonnull final Consumer<Layer> check = l -> {
+      if (!l.isFrozen() || l instanceof StochasticComponent) constant[0] = false;
+    };
+    check.accept(layer);
+    Layer unwrapped = layer;
+    while (unwrapped instanceof WrapperLayer) {
+      unwrapped = ((WrapperLayer) unwrapped).getInner();
+      check.accept(unwrapped);
+    }
+    if (unwrapped instanceof DAGNetwork) ((DAGNetwork) unwrapped).visitLayers(check);
+    return constant[0];
+  }
+
+  /**
+   * Finds the prefix nodes whose outputs are consumed outside the prefix.
+   *
+   * @param network the network
+   * @param inputs  the inputs
+   * @return the node ids
+   */
+  @Nonnull
+  static List<UUID> getFrontier(@Nonnull final DAGNetwork network, @Nonnull final Result... inputs) {
+    @Nonnull final Set<UUID> constant = new HashSet<>();
+    for (int i = 0; i < inputs.length; i++) {
+      if (!inputs[i].isAlive()) constant.add(network.inputHandles.get(i));
+    }
+    if (constant.isEmpty()) return Collections.emptyList();
+    @Nonnull final Set<UUID> prefix = new LinkedHashSet<>();
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (@Nonnull final DAGNode node : network.internalNodes.values()) {
+        if (prefix.contains(node.getId())) continue;
+        if (Arrays.stream(node.getInputs()).allMatch(x -> constant.contains(x.getId())) && isConstant(node.getLayer())) {
+          prefix.add(node.getId());
+          constant.add(node.getId());
+          changed = true;
+        }
+      }
+    }
+    if (prefix.isEmpty()) return Collections.emptyList();
+    @Nonnull final Set<UUID> frontier = new LinkedHashSet<>();
+    final DAGNode head = network.getHead();
+    try {
+      if (prefix.contains(head.getId())) frontier.add(head.getId());
+    } finally {
+      head.freeRef();
+    }
+    for (@Nonnull final DAGNode node : network.internalNodes.values()) {
+      if (prefix.contains(node.getId())) continue;
+      for (@Nonnull final DAGNode input : node.getInputs()) {
+        if (prefix.contains(input.getId())) frontier.add(input.getId());
+      }
+    }
+    return new ArrayList<>(frontier);
+  }
+
+  /**
+   * Seeds an evaluation context with the prefix outputs for its inputs, computing those of uncached rows first.
+   *
+   * @param network the network
+   * @param inputs  the inputs
+   * @param context the context
+   */
+  void seed(@Nonnull final DAGNetwork network, @Nonnull final Result[] inputs, @Nonnull final GraphEvaluationContext context) {
+    @Nonnull final List<UUID> frontier = getFrontier(network, inputs);
+    if (frontier.isEmpty()) return;
+    // Any TensorList: items are taken as owned references, whether held by the list or created on access
+    @Nonnull final Tensor[][] columns = Arrays.stream(inputs)
+        .map(input -> input.getData().stream().toArray(i -> new Tensor[i]))
+        .toArray(i -> new Tensor[i][]);
+    try {
+      seed(network, inputs, context, frontier, columns);
+    } finally {
+      Arrays.stream(columns).flatMap(Arrays::stream).forEach(ReferenceCounting::freeRef);
+    }
+  }
+
+  private void seed(@Nonnull final DAGNetwork network, @Nonnull final Result[] inputs, @Nonnull final GraphEvaluationContext context,
+                    @Nonnull final List<UUID> frontier, @Nonnull final Tensor[][] columns) {
+    final int rows = columns[0].length;
+    @Nonnull final RowKey[] keys = IntStream.range(0, rows).mapToObj(row -> new RowKey(frontier,
+        IntStream.range(0, inputs.length).mapToObj(col -> inputs[col].isAlive() ? null : columns[col][row]).toArray(i -> new Tensor[i])))
+        .toArray(i -> new RowKey[i]);
+    @Nonnull final Tensor[][] outputs = new Tensor[rows][];
+    for (int row = 0; row < rows; row++) {
+      outputs[row] = get(keys[row]);
+    }
+    @Nonnull final int[] missing = IntStream.range(0, rows).filter(row -> null == outputs[row]).toArray();
+    if (0 < missing.length) {
+      @Nonnull final Tensor[][] computed = compute(network, columns, missing, frontier);
+      for (int i = 0; i < missing.length; i++) {
+        put(keys[missing[i]], computed[i]);
+        outputs[missing[i]] = computed[i];
+      }
+    }
+    for (int k = 0; k < frontier.size(); k++) {
+      final int index = k;
+      @Nonnull final TensorArray data = TensorArray.create(Arrays.stream(outputs).map(row -> row[index]).toArray(i -> new Tensor[i]));
+      @Nonnull final ConstantResult result = new ConstantResult(data);
+      context.calculated.put(frontier.get(k), new Singleton<CountingResult>().set(context.newResult(result)));
+      result.freeRef();
+    }
+    Arrays.stream(outputs).flatMap(Arrays::stream).forEach(ReferenceCounting::freeRef);
+  }
+
+  @Nonnull
+  private static Tensor[][] compute(@Nonnull final DAGNetwork network, @Nonnull final Tensor[][] columns,
+                                    @Nonnull final int[] rows, @Nonnull final List<UUID> frontier) {
+    @Nonnull final Result[] inputs = Arrays.stream(columns)
+        .map(column -> new ConstantResult(TensorArray.create(Arrays.stream(rows).mapToObj(row -> column[row]).toArray(i -> new Tensor[i]))))
+        .toArray(i -> new Result[i]);
+    @Nonnull final GraphEvaluationContext context = network.buildExeCtx(inputs);
+    context.expectedCounts.clear();
+    try {
+      @Nonnull final Tensor[][] outputs = new Tensor[rows.length][frontier.size()];
+      for (int k = 0; k < frontier.size(); k++) {
+        @Nonnull final CountingResult result = network.getNodeById(frontier.get(k)).get(context);
+        final TensorList data = result.getData();
+        for (int i = 0; i < rows.length; i++) {
+          outputs[i][k] = data.get(i);
+        }
+        data.freeRef();
+        result.freeRef();
+      }
+      return outputs;
+    } finally {
+      context.freeRef();
+      for (@Nonnull final Result input : inputs) {
+        input.getData().freeRef();
+        input.freeRef();
+      }
+    }
+  }
+
+  /**
+   * Gets a cached row, adding a reference to each of its tensors, or null.
+   */
+  @Nullable
+  private synchronized Tensor[] get(@Nonnull final RowKey key) {
+    @Nullable Tensor[] row = heap.get(key);
+    if (null == row) {
+      @Nullable final SpilledRow spilledRow = spilled.get(key);
+      if (null == spilledRow) return null;
+      row = spilledRow.read(spill);
+      put(key, row);
+      return row;
+    }
+    Arrays.stream(row).forEach(ReferenceCounting::addRef);
+    return row;
+  }
+
+  private synchronized void put(@Nonnull final RowKey key, @Nonnull final Tensor[] row) {
+    Arrays.stream(row).forEach(ReferenceCounting::addRef);
+    @Nullable final Tensor[] previous = heap.put(key, row);
+    if (null != previous) evict(key, previous);
+    heapBytes += bytes(row);
+    @Nonnull final Iterator<Map.Entry<RowKey, Tensor[]>> iterator = heap.entrySet().iterator();
+    while (heapBytes > maxBytes && iterator.hasNext()) {
+      @Nonnull final Map.Entry<RowKey, Tensor[]> eldest = iterator.next();
+      iterator.remove();
+      evict(eldest.getKey(), eldest.getValue());
+    }
+  }
+
+  private void evict(@Nonnull final RowKey key, @Nonnull final Tensor[] row) {
+    heapBytes -= bytes(row);
+    if (null != spillDirectory && !spilled.containsKey(key) && bytes(row) <= maxSpillBytes) {
+      spilled.put(key, write(getSpill(), row));
+      spilledBytes += bytes(row);
+      @Nonnull final Iterator<SpilledRow> iterator = spilled.values().iterator();
+      while (spilledBytes > maxSpillBytes && iterator.hasNext()) {
+        spilledBytes -= iterator.next().bytes();
+        iterator.remove();
+      }
+      compactSpill();
+    }
+    Arrays.stream(row).forEach(ReferenceCounting::freeRef);
+  }
+
+  /**
+   * Rewrites the spill file with only the live rows, once dropped rows take up more of it than they do.
+   */
+  private void compactSpill() {
+    try {
+      final long garbage = spill.size() - spilledBytes;
+      if (garbage <= Math.max(spilledBytes, 1L << 20)) return;
+      @Nonnull final FileChannel previous = spill;
+      @Nonnull final File previousFile = spillFile;
+      spill = null;
+      @Nonnull final FileChannel compacted = getSpill();
+      for (@Nonnull final Map.Entry<RowKey, SpilledRow> entry : spilled.entrySet()) {
+        @Nonnull final Tensor[] row = entry.getValue().read(previous);
+        entry.setValue(write(compacted, row));
+        Arrays.stream(row).forEach(ReferenceCounting::freeRef);
+      }
+      previous.close();
+      previousFile.delete();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static long bytes(@Nonnull final Tensor[] row) {
+    return Arrays.stream(row).mapToLong(x -> 8L * x.length()).sum();
+  }
+
+  @Nonnull
+  private FileChannel getSpill() {
+    if (null == spill) {
+      try {
+        spillFile = File.createTempFile("activations", ".bin", spillDirectory);
+        spillFile.deleteOnExit();
+        spill = new RandomAccessFile(spillFile, "rw").getChannel();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return spill;
+  }
+
+  @Nonnull
+  private SpilledRow write(@Nonnull final FileChannel spill, @Nonnull final Tensor[] row) {
+    try {
+      final long offset = spill.size();
+      @Nonnull final ByteBuffer buffer = ByteBuffer.allocate((int) bytes(row));
+      for (@Nonnull final Tensor tensor : row) {
+        buffer.asDoubleBuffer().put(tensor.getData());
+        buffer.position(buffer.position() + 8 * tensor.length());
+      }
+      buffer.flip();
+      long position = offset;
+      while (buffer.hasRemaining()) {
+        position += spill.write(buffer, position);
+      }
+      return new SpilledRow(offset, Arrays.stream(row).map(Tensor::getDimensions).toArray(i -> new int[i][]));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Gets the maximum size of the rows held on-heap.
+   *
+   * @return the max bytes
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Gets the maximum size of the rows spilled to disk.
+   *
+   * @return the max spill bytes
+   */
+  public long getMaxSpillBytes() {
+    return maxSpillBytes;
+  }
+
+  /**
+   * Sets the maximum size of the rows spilled to disk; beyond it the least recently used spilled rows are dropped.
+   * Defaults to 4 GiB.
+   *
+   * @param maxSpillBytes the max spill bytes
+   * @return the max spill bytes
+   */
+  @Nonnull
+  public synchronized FrozenActivationCache setMaxSpillBytes(final long maxSpillBytes) {
+    if (maxSpillBytes < 0) throw new IllegalArgumentException();
+    this.maxSpillBytes = maxSpillBytes;
+    return this;
+  }
+
+  /**
+   * Gets the spill directory.
+   *
+   * @return the spill directory, or null if evicted rows are discarded
+   */
+  @Nullable
+  public File getSpillDirectory() {
+    return spillDirectory;
+  }
+
+  /**
+   * Sets the directory to which rows evicted from the heap are spilled.
+   *
+   * @param spillDirectory the spill directory, or null to discard evicted rows
+   * @return the spill directory
+   */
+  @Nonnull
+  public synchronized FrozenActivationCache setSpillDirectory(@Nullable final File spillDirectory) {
+    this.spillDirectory = spillDirectory;
+    return this;
+  }
+
+  /**
+   * Gets the number of rows held on-heap.
+   *
+   * @return the int
+   */
+  public synchronized int size() {
+    return heap.size();
+  }
+
+  /**
+   * Gets the number of rows spilled to disk.
+   *
+   * @return the int
+   */
+  public synchronized int spilledSize() {
+    return spilled.size();
+  }
+
+  /**
+   * Releases all cached rows and deletes the spill file.
+   */
+  public synchronized void clear() {
+    heap.values().forEach(row -> Arrays.stream(row).forEach(ReferenceCounting::freeRef));
+    heap.clear();
+    heapBytes = 0;
+    spilled.clear();
+    spilledBytes = 0;
+    if (null != spill) {
+      try {
+        spill.close();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      spill = null;
+      spillFile.delete();
+      spillFile = null;
+    }
+  }
+
+  @Override
+  protected void _free() {
+    clear();
+  }
+
+  private final class SpilledRow {
+    private final long offset;
+    @Nonnull
+    private final int[][] dims;
+
+    private SpilledRow(final long offset, @Nonnull final int[][] dims) {
+      this.offset = offset;
+      this.dims = dims;
+    }
+
+    private long bytes() {
+      return Arrays.stream(dims).mapToLong(x -> 8L * Tensor.length(x)).sum();
+    }
+
+    @Nonnull
+    private Tensor[] read(@Nonnull final FileChannel spill) {
+      @Nonnull final Tensor[] row = Arrays.stream(dims).map(Tensor::new).toArray(i -> new Tensor[i]);
+      try {
+        @Nonnull final ByteBuffer buffer = ByteBuffer.allocate((int) bytes(row));
+        long position = offset;
+        while (buffer.hasRemaining()) {
+          final int read = spill.read(buffer, position);
+          if (read < 0) throw new IOException("Truncated spill file");
+          position += read;
+        }
+        buffer.flip();
+        for (@Nonnull final Tensor tensor : row) {
+          buffer.asDoubleBuffer().get(tensor.getData());
+          buffer.position(buffer.position() + 8 * tensor.length());
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return row;
+    }
+  }
+
+  /**
+   * Identifies a row by the frontier it caches and a 128-bit digest of its constant inputs' dimensions and values.
+   */
+  private static final class RowKey {
+    @Nonnull
+    private final List<UUID> frontier;
+    private final long high;
+    private final long low;
+
+    private RowKey(@Nonnull final List<UUID> frontier, @Nonnull final Tensor[] data) {
+      this.frontier = frontier;
+      final MessageDigest digest;
+      try {
+        digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+      for (@Nullable final Tensor tensor : data) {
+        if (null == tensor) {
+          digest.update((byte) 0);
+          continue;
+        }
+        @Nonnull final int[] dims = tensor.getDimensions();
+        @Nonnull final ByteBuffer buffer = ByteBuffer.allocate(1 + 4 * (1 + dims.length) + 8 * tensor.length());
+        buffer.put((byte) 1).putInt(dims.length);
+        for (final int dim : dims) buffer.putInt(dim);
+        buffer.asDoubleBuffer().put(tensor.getData());
+        digest.update(buffer.array());
+      }
+      @Nonnull final ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+      this.high = hash.getLong();
+      this.low = hash.getLong();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (!(o instanceof RowKey)) return false;
+      @Nonnull final RowKey other = (RowKey) o;
+      return high == other.high && low == other.low && frontier.equals(other.frontier);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * frontier.hashCode() + Long.hashCode(low);
+    }
+  }
+}
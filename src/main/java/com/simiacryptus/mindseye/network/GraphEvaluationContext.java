@@ -20,6 +20,9 @@
 package com.simiacryptus.mindseye.network;
 
 import com.simiacryptus.mindseye.lang.ReferenceCountingBase;
+import com.simiacryptus.mindseye.lang.Result;
+
+import javax.annotation.Nonnull;
 
 import java.util.Map;
 import java.util.UUID;
@@ -42,6 +45,62 @@ class GraphEvaluationContext extends ReferenceCountingBase {
    */
   final Map<UUID, Supplier<CountingResult>> calculated = new ConcurrentHashMap<>();
 
+  private volatile boolean scheduled = false;
+  private volatile boolean releaseAfterBackprop = false;
+
+  /**
+   * Is scheduled boolean.
+   *
+   * @return true if node inputs are resolved ahead of time by a DAGScheduler
+   */
+  boolean isScheduled() {
+    return scheduled;
+  }
+
+  /**
+   * Sets scheduled.
+   *
+   * @param scheduled the scheduled
+   * @return the scheduled
+   */
+  GraphEvaluationContext setScheduled(final boolean scheduled) {
+    this.scheduled = scheduled;
+    return this;
+  }
+
+  /**
+   * Is release after backprop boolean.
+   *
+   * @return true if node results free their backprop closures once their final gradient is delivered
+   */
+  boolean isReleaseAfterBackprop() {
+    return releaseAfterBackprop;
+  }
+
+  /**
+   * Sets release after backprop.
+   *
+   * @param releaseAfterBackprop the release after backprop
+   * @return the release after backprop
+   */
+  GraphEvaluationContext setReleaseAfterBackprop(final boolean releaseAfterBackprop) {
+    this.releaseAfterBackprop = releaseAfterBackprop;
+    return this;
+  }
+
+  /**
+   * Wraps a node result for this context.
+   *
+   * @param result the result
+   * @return the counting result
+   */
+  @Nonnull
+  CountingResult newResult(@Nonnull final Result result) {
+    @Nonnull CountingResult countingResult = new CountingResult(result);
+    countingResult.getAccumulator().setReleaseAfterBackprop(releaseAfterBackprop);
+    return countingResult;
+  }
+
   @Override
   protected synchronized void _free() {
     calculated.entrySet().stream().filter(e -> {
@@ -97,7 +97,7 @@ public final class InnerNode extends LazyResult {
     @Nonnull final Layer innerLayer = getLayer();
     assert Arrays.stream(inputNodes).allMatch(x -> x != null);
     @Nonnull Stream<DAGNode> stream = Arrays.stream(inputNodes);
-    if (!CoreSettings.INSTANCE().isSingleThreaded() && parallel) stream = stream.parallel();
+    if (!CoreSettings.INSTANCE().isSingleThreaded() && parallel && !ctx.isScheduled()) stream = stream.parallel();
     final Result[] in = stream.map(x -> x == null ? null : x.get(ctx)).toArray(i -> new Result[i]);
     assert Arrays.stream(in).allMatch(x -> x != null);
     @Nullable Result result = innerLayer.evalAndFree(in);
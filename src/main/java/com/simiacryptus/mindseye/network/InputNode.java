@@ -66,11 +66,9 @@ final class InputNode extends LazyResult {
   protected Result eval(@Nonnull final GraphEvaluationContext context) {
     assertAlive();
     this.dagNetwork.assertAlive();
-    synchronized (context) {
-      CountingResult countingNNResult = context.calculated.get(id).get();
-      countingNNResult.addRef();
-      return countingNNResult;
-    }
+    CountingResult countingNNResult = context.calculated.get(id).get();
+    countingNNResult.addRef();
+    return countingNNResult;
   }
 
   @Override
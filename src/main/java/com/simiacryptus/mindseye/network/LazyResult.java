@@ -76,26 +76,7 @@ abstract class LazyResult extends ReferenceCountingBase implements DAGNode {
     context.assertAlive();
     assertAlive();
     long expectedCount = context.expectedCounts.getOrDefault(id, -1L);
-    if (!context.calculated.containsKey(id)) {
-      @Nullable Singleton singleton = null;
-      synchronized (context) {
-        if (!context.calculated.containsKey(id)) {
-          singleton = new Singleton();
-          context.calculated.put(id, singleton);
-        }
-      }
-      if (null != singleton) {
-        try {
-          @Nullable Result result = eval(context);
-          if (null == result) throw new IllegalStateException();
-          singleton.set(new CountingResult(result));
-          result.freeRef();
-        } catch (Throwable e) {
-          log.warn("Error execuing network component", e);
-          singleton.set(e);
-        }
-      }
-    }
+    calculate(context);
     Supplier resultSupplier = context.calculated.get(id);
     if (null == resultSupplier) throw new IllegalStateException();
     Object obj = null == resultSupplier ? null : resultSupplier.get();
@@ -115,6 +96,29 @@ abstract class LazyResult extends ReferenceCountingBase implements DAGNode {
     return nnResult;
   }
 
+  /**
+   * Ensures this node's result is present in the context, evaluating it if no other thread has claimed it. Does not
+   * count as a reference to the result.
+   *
+   * @param context the context
+   */
+  void calculate(@Nonnull final GraphEvaluationContext context) {
+    if (!context.calculated.containsKey(id)) {
+      @Nonnull Singleton singleton = new Singleton();
+      if (null == context.calculated.putIfAbsent(id, singleton)) {
+        try {
+          @Nullable Result result = eval(context);
+          if (null == result) throw new IllegalStateException();
+          singleton.set(context.newResult(result));
+          result.freeRef();
+        } catch (Throwable e) {
+          log.warn("Error execuing network component", e);
+          singleton.set(e);
+        }
+      }
+    }
+  }
+
   @Override
   public final UUID getId() {
     return id;
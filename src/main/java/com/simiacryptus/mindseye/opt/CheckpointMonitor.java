@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.opt;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.simiacryptus.mindseye.lang.CheckpointChain;
+import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.SerialPrecision;
+import com.simiacryptus.mindseye.lang.WeightSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * A training monitor which checkpoints the weights of a layer every few steps without stopping the training loop. On
+ * each checkpointed step it captures a copy-on-write {@link WeightSnapshot}, which costs no copying up front, and hands
+ * it to a background thread for writing. Weight updates made by the following steps copy only the arrays they touch
+ * before the writer has reached them. If the previous checkpoint is still being written the step is skipped rather than
+ * queued, so a slow disk never holds up training or accumulates snapshots.
+ * <p>
+ * Only weight writes that go through {@link WeightSnapshot#beforeWrite(double[])} are kept out of a checkpoint being
+ * written; see {@link WeightSnapshot} for the writes that bypass it. Call {@link #close()} when training ends to stop
+ * the writer thread once the last checkpoint is written.
+ */
+public class CheckpointMonitor extends TrainingMonitor implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(CheckpointMonitor.class);
+
+  @Nonnull
+  private final TrainingMonitor inner;
+  @Nonnull
+  private final Layer layer;
+  @Nonnull
+  private final Function<Step, File> files;
+  @Nonnull
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("checkpoint-%d").build());
+  private int period = 1;
+  @Nonnull
+  private SerialPrecision precision = SerialPrecision.Double;
+  @Nullable
+  private volatile Future<?> pending;
+  @Nullable
+  private CheckpointChain chain;
+
+  /**
+   * Instantiates a new Checkpoint monitor which writes an incremental checkpoint chain.
+   *
+   * @param inner the monitor to delegate to
+   * @param layer the layer whose weights are checkpointed
+   * @param chain the chain
+   */
+  public CheckpointMonitor(@Nonnull final TrainingMonitor inner, @Nonnull final Layer layer, @Nonnull final CheckpointChain chain) {
+    this(inner, layer, step -> null);
+    this.chain = chain;
+  }
+
+  /**
+   * Instantiates a new Checkpoint monitor.
+   *
+   * @param inner the monitor to delegate to
+   * @param layer the layer whose weights are checkpointed
+   * @param files the file to write for a given step
+   */
+  public CheckpointMonitor(@Nonnull final TrainingMonitor inner, @Nonnull final Layer layer, @Nonnull final Function<Step, File> files) {
+    this.inner = inner;
+    this.layer = layer;
+    this.files = files;
+  }
+
+  @Override
+  public void clear() {
+    inner.clear();
+  }
+
+  @Override
+  public void log(final String msg) {
+    inner.log(msg);
+  }
+
+  @Override
+  public void onStepComplete(final Step currentPoint) {
+    inner.onStepComplete(currentPoint);
+    if (0 != currentPoint.iteration % period || writer.isShutdown()) return;
+    @Nullable final Future<?> previous = pending;
+    if (null != previous && !previous.isDone()) {
+      inner.log(String.format("Checkpoint for step %s skipped; previous checkpoint still writing", currentPoint.iteration));
+      return;
+    }
+    @Nonnull final WeightSnapshot snapshot = WeightSnapshot.capture(layer);
+    @Nullable final CheckpointChain chain = this.chain;
+    try {
+      pending = writer.submit(() -> {
+        try {
+          @Nullable final File file;
+          if (null == chain) {
+            file = files.apply(currentPoint);
+            snapshot.write(file, precision);
+          } else {
+            file = chain.write(snapshot);
+          }
+          inner.log(String.format("Checkpoint for step %s written to %s", currentPoint.iteration, file));
+        } catch (Throwable e) {
+          log.warn("Checkpoint failed for step " + currentPoint.iteration, e);
+        } finally {
+          snapshot.freeRef();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      snapshot.freeRef();
+    }
+  }
+
+  /**
+   * Waits for any checkpoint in progress to finish writing.
+   *
+   * @param timeout the timeout
+   * @param unit    the unit
+   * @return true if no checkpoint is still being written
+   * @throws InterruptedException the interrupted exception
+   */
+  public boolean await(final long timeout, @Nonnull final TimeUnit unit) throws InterruptedException {
+    @Nullable final Future<?> previous = pending;
+    if (null == previous) return true;
+    try {
+      previous.get(timeout, unit);
+    } catch (ExecutionException | TimeoutException e) {
+      return previous.isDone();
+    }
+    return true;
+  }
+
+  /**
+   * Stops taking checkpoints and shuts down the writer thread. A checkpoint already being written is finished.
+   */
+  @Override
+  public void close() {
+    writer.shutdown();
+  }
+
+  /**
+   * Gets period.
+   *
+   * @return the number of steps between checkpoints
+   */
+  public int getPeriod() {
+    return period;
+  }
+
+  /**
+   * Sets period.
+   *
+   * @param period the number of steps between checkpoints
+   * @return the period
+   */
+  @Nonnull
+  public CheckpointMonitor setPeriod(final int period) {
+    if (period < 1) throw new IllegalArgumentException();
+    this.period = period;
+    return this;
+  }
+
+  /**
+   * Gets precision.
+   *
+   * @return the precision
+   */
+  @Nonnull
+  public SerialPrecision getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Sets precision. Checkpoints written to a chain use the chain's precisions instead.
+   *
+   * @param precision the precision
+   * @return the precision
+   */
+  @Nonnull
+  public CheckpointMonitor setPrecision(@Nonnull final SerialPrecision precision) {
+    this.precision = precision;
+    return this;
+  }
+}
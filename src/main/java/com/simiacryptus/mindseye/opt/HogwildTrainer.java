@@ -0,0 +1,483 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.opt;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.simiacryptus.mindseye.eval.SampledArrayTrainable;
+import com.simiacryptus.mindseye.eval.SampledTrainable;
+import com.simiacryptus.mindseye.lang.Delta;
+import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.ReferenceCountingBase;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.lang.WeightSnapshot;
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalUnit;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * An asynchronous stochastic gradient descent loop in the style of Hogwild!: each worker thread repeatedly samples a
+ * minibatch from its own {@link SampledTrainable}, measures the gradient against the shared network, and subtracts the
+ * scaled gradient from the weight arrays in place. Measurement reads the weights without any lock, so a gradient may
+ * see a mix of several updates. Updates are lock-free as well, except that an array a {@link WeightSnapshot} has yet to
+ * preserve is updated under its monitor, so snapshots taken during training stay consistent. The loop therefore scales with the number of cores,
+ * where {@link IterativeTrainer} serializes measure, orient and line search.
+ * <p>
+ * The step is a static rate applied to the minibatch's mean gradient, as {@link com.simiacryptus.mindseye.opt.line.StaticLearningRate}
+ * would take it, optionally with per-worker momentum. A gradient measured while more than {@link #getMaxStaleness()}
+ * other updates were applied is discarded, as is one whose loss or gradient is not finite. The mean loss since the previous report is logged, and passed to
+ * {@link TrainingMonitor#onStepComplete(Step)}, at most once per {@link #getReportInterval()}.
+ */
+public class HogwildTrainer extends ReferenceCountingBase {
+  @Nonnull
+  private final IntFunction<? extends SampledTrainable> samplers;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private double rate = 1e-3;
+  private double momentum = 0.0;
+  private long maxStaleness = Long.MAX_VALUE;
+  private long maxIterations = Long.MAX_VALUE;
+  private double terminateThreshold = 0;
+  @Nonnull
+  private Duration timeout = Duration.of(5, ChronoUnit.MINUTES);
+  @Nonnull
+  private Duration reportInterval = Duration.of(10, ChronoUnit.SECONDS);
+  @Nonnull
+  private TrainingMonitor monitor = new TrainingMonitor();
+
+  /**
+   * Instantiates a new Hogwild trainer.
+   *
+   * @param samplers creates the sampled trainable for each worker index; all must evaluate the same network
+   */
+  public HogwildTrainer(@Nonnull final IntFunction<? extends SampledTrainable> samplers) {
+    this.samplers = samplers;
+  }
+
+  /**
+   * Instantiates a new Hogwild trainer whose workers each draw minibatches from the same data.
+   *
+   * @param data      the data
+   * @param network   the network
+   * @param batchSize the minibatch size
+   */
+  public HogwildTrainer(@Nonnull final Tensor[][] data, @Nonnull final Layer network, final int batchSize) {
+    this(i -> new SampledArrayTrainable(data, network, batchSize));
+  }
+
+  /**
+   * Gets threads.
+   *
+   * @return the number of workers
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Sets threads.
+   *
+   * @param threads the threads
+   * @return the threads
+   */
+  @Nonnull
+  public HogwildTrainer setThreads(final int threads) {
+    if (threads < 1) throw new IllegalArgumentException("threads=" + threads);
+    this.threads = threads;
+    return this;
+  }
+
+  /**
+   * Gets rate.
+   *
+   * @return the rate
+   */
+  public double getRate() {
+    return rate;
+  }
+
+  /**
+   * Sets rate.
+   *
+   * @param rate the rate
+   * @return the rate
+   */
+  @Nonnull
+  public HogwildTrainer setRate(final double rate) {
+    this.rate = rate;
+    return this;
+  }
+
+  /**
+   * Gets momentum.
+   *
+   * @return the fraction of each worker's previous step carried into its next
+   */
+  public double getMomentum() {
+    return momentum;
+  }
+
+  /**
+   * Sets momentum.
+   *
+   * @param momentum the momentum
+   * @return the momentum
+   */
+  @Nonnull
+  public HogwildTrainer setMomentum(final double momentum) {
+    this.momentum = momentum;
+    return this;
+  }
+
+  /**
+   * Gets max staleness.
+   *
+   * @return the number of updates which may be applied while a gradient is measured before it is discarded
+   */
+  public long getMaxStaleness() {
+    return maxStaleness;
+  }
+
+  /**
+   * Sets max staleness.
+   *
+   * @param maxStaleness the max staleness
+   * @return the max staleness
+   */
+  @Nonnull
+  public HogwildTrainer setMaxStaleness(final long maxStaleness) {
+    this.maxStaleness = maxStaleness;
+    return this;
+  }
+
+  /**
+   * Gets max iterations.
+   *
+   * @return the total number of updates across all workers
+   */
+  public long getMaxIterations() {
+    return maxIterations;
+  }
+
+  /**
+   * Sets max iterations.
+   *
+   * @param maxIterations the max iterations
+   * @return the max iterations
+   */
+  @Nonnull
+  public HogwildTrainer setMaxIterations(final long maxIterations) {
+    this.maxIterations = maxIterations;
+    return this;
+  }
+
+  /**
+   * Gets terminate threshold.
+   *
+   * @return the reported mean loss at or below which training stops
+   */
+  public double getTerminateThreshold() {
+    return terminateThreshold;
+  }
+
+  /**
+   * Sets terminate threshold.
+   *
+   * @param terminateThreshold the terminate threshold
+   * @return the terminate threshold
+   */
+  @Nonnull
+  public HogwildTrainer setTerminateThreshold(final double terminateThreshold) {
+    this.terminateThreshold = terminateThreshold;
+    return this;
+  }
+
+  /**
+   * Gets timeout.
+   *
+   * @return the timeout
+   */
+  @Nonnull
+  public Duration getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Sets timeout.
+   *
+   * @param number the number
+   * @param units  the units
+   * @return the timeout
+   */
+  @Nonnull
+  public HogwildTrainer setTimeout(final int number, @Nonnull final TemporalUnit units) {
+    timeout = Duration.of(number, units);
+    return this;
+  }
+
+  /**
+   * Sets timeout.
+   *
+   * @param number the number
+   * @param units  the units
+   * @return the timeout
+   */
+  @Nonnull
+  public HogwildTrainer setTimeout(final int number, @Nonnull final TimeUnit units) {
+    return setTimeout(number, Util.cvt(units));
+  }
+
+  /**
+   * Gets report interval.
+   *
+   * @return the report interval
+   */
+  @Nonnull
+  public Duration getReportInterval() {
+    return reportInterval;
+  }
+
+  /**
+   * Sets report interval.
+   *
+   * @param reportInterval the report interval
+   * @return the report interval
+   */
+  @Nonnull
+  public HogwildTrainer setReportInterval(@Nonnull final Duration reportInterval) {
+    this.reportInterval = reportInterval;
+    return this;
+  }
+
+  /**
+   * Gets monitor.
+   *
+   * @return the monitor
+   */
+  @Nonnull
+  public TrainingMonitor getMonitor() {
+    return monitor;
+  }
+
+  /**
+   * Sets monitor.
+   *
+   * @param monitor the monitor
+   * @return the monitor
+   */
+  @Nonnull
+  public HogwildTrainer setMonitor(@Nonnull final TrainingMonitor monitor) {
+    this.monitor = monitor;
+    return this;
+  }
+
+  /**
+   * Run and free double.
+   *
+   * @return the double
+   */
+  public double runAndFree() {
+    try {
+      return run();
+    } finally {
+      freeRef();
+    }
+  }
+
+  /**
+   * Runs the workers until the timeout, the iteration limit or the terminate threshold is reached.
+   *
+   * @return the mean loss of the last reporting window
+   */
+  public double run() {
+    @Nonnull final Run run = new Run();
+    @Nonnull final ExecutorService pool = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hogwild-%d").build());
+    try {
+      @Nonnull final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        final int index = i;
+        futures.add(pool.submit(() -> run.work(index)));
+      }
+      for (@Nonnull final Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw new RuntimeException(e.getCause());
+    } finally {
+      run.running = false;
+      pool.shutdownNow();
+    }
+    run.report(null, true);
+    return run.lastLoss;
+  }
+
+  @Override
+  protected void _free() {
+  }
+
+  /**
+   * The shared state of one run.
+   */
+  private final class Run {
+    private final long deadline = System.currentTimeMillis() + timeout.toMillis();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong nextReport = new AtomicLong(System.currentTimeMillis() + reportInterval.toMillis());
+    private final DoubleAdder windowSum = new DoubleAdder();
+    private final LongAdder windowCount = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder corrupt = new LongAdder();
+    private volatile boolean running = true;
+    private volatile double lastLoss = Double.NaN;
+
+    private void work(final int index) {
+      @Nonnull final SampledTrainable sampler = samplers.apply(index);
+      @Nonnull final Random random = new Random(System.nanoTime() + index);
+      @Nullable final Map<double[], double[]> velocity = 0 == momentum ? null : new IdentityHashMap<>();
+      @Nonnull final TrainingMonitor quiet = new TrainingMonitor();
+      try {
+        while (running) {
+          if (version.get() >= maxIterations || System.currentTimeMillis() > deadline) {
+            running = false;
+            break;
+          }
+          final long seen = version.get();
+          sampler.reseed(random.nextLong());
+          @Nonnull final PointSample sample = sampler.measure(quiet);
+          try {
+            if (!Double.isFinite(sample.sum) || !isFinite(sample)) {
+              corrupt.increment();
+              continue;
+            }
+            windowSum.add(sample.sum);
+            windowCount.add(sample.count);
+            if (version.get() - seen > maxStaleness) {
+              stale.increment();
+            } else {
+              apply(sample, velocity);
+              version.incrementAndGet();
+            }
+            if (System.currentTimeMillis() >= nextReport.get()) report(sample, false);
+          } finally {
+            sample.freeRef();
+          }
+        }
+      } catch (Throwable e) {
+        running = false;
+        throw e;
+      } finally {
+        sampler.freeRef();
+      }
+    }
+
+    private void apply(@Nonnull final PointSample sample, @Nullable final Map<double[], double[]> velocity) {
+      final double scale = rate / sample.count;
+      for (@Nonnull final Delta<UUID> delta : sample.delta.getMap().values()) {
+        final double[] target = delta.target;
+        @Nullable final double[] gradient = delta.getDelta();
+        if (WeightSnapshot.isPending(target)) {
+          synchronized (target) {
+            WeightSnapshot.beforeWrite(target);
+            update(target, gradient, scale, velocity);
+          }
+        } else {
+          update(target, gradient, scale, velocity);
+        }
+      }
+    }
+
+    private void update(@Nonnull final double[] target, @Nonnull final double[] gradient, final double scale,
+                        @Nullable final Map<double[], double[]> velocity) {
+      if (null == velocity) {
+        for (int i = 0; i < target.length; i++) {
+          target[i] -= scale * gradient[i];
+        }
+      } else {
+        @Nonnull final double[] v = velocity.computeIfAbsent(target, t -> new double[t.length]);
+        for (int i = 0; i < target.length; i++) {
+          v[i] = momentum * v[i] + scale * gradient[i];
+          target[i] -= v[i];
+        }
+      }
+    }
+
+    private boolean isFinite(@Nonnull final PointSample sample) {
+      for (@Nonnull final Delta<UUID> delta : sample.delta.getMap().values()) {
+        @Nullable final double[] gradient = delta.getDelta();
+        if (null == gradient) continue;
+        for (final double v : gradient) {
+          if (!Double.isFinite(v)) return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Reports the mean loss of the window since the last report. Only one worker reports each window.
+     *
+     * @param sample the sample to attach to the monitor's step, or null to only log
+     * @param force  whether to report regardless of the interval
+     */
+    private void report(@Nullable final PointSample sample, final boolean force) {
+      final long due = nextReport.get();
+      if (!force && !nextReport.compareAndSet(due, System.currentTimeMillis() + reportInterval.toMillis())) return;
+      final double sum = windowSum.sumThenReset();
+      final long count = windowCount.sumThenReset();
+      if (0 == count) return;
+      lastLoss = sum / count;
+      synchronized (monitor) {
+        monitor.log(String.format("Iteration %s: loss %s over %s items; %s stale and %s corrupt gradients discarded",
+            version.get(), lastLoss, count, stale.sum(), corrupt.sum()));
+        if (null != sample) {
+          @Nonnull final PointSample point = new PointSample(sample.delta, sample.weights, sum, rate, (int) count);
+          try {
+            monitor.onStepComplete(new Step(point, version.get()));
+          } finally {
+            point.freeRef();
+          }
+        }
+      }
+      if (lastLoss <= terminateThreshold) running = false;
+    }
+  }
+}
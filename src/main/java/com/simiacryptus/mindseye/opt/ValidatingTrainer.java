@@ -19,6 +19,7 @@
 
 package com.simiacryptus.mindseye.opt;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.simiacryptus.lang.TimedResult;
 import com.simiacryptus.mindseye.eval.*;
 import com.simiacryptus.mindseye.lang.*;
@@ -35,12 +36,13 @@ import com.simiacryptus.util.Util;
 import com.simiacryptus.util.data.DoubleStatistics;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.lang.management.ManagementFactory;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalUnit;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
@@ -63,8 +65,11 @@ public class ValidatingTrainer {
   private final AtomicLong validatingMeasurementTime = new AtomicLong(0);
   @Nonnull
   private final Trainable validationSubject;
+  @Nullable
+  private final DataTrainable validationData;
   private double adjustmentFactor = 0.5;
   private double adjustmentTolerance = 0.1;
+  private boolean asyncValidation = false;
   private AtomicInteger currentIteration = new AtomicInteger(0);
   private int disappointmentThreshold = 0;
   private int epochIterations = 1;
@@ -116,11 +121,27 @@ public class ValidatingTrainer {
         return validationSubject.getLayer();
       }
     };
+    validationData = getDataTrainable(validationSubject);
     trainingSize = trainingSubject.getTrainingSize();
     timeout = Duration.of(5, ChronoUnit.MINUTES);
     terminateThreshold = Double.NEGATIVE_INFINITY;
   }
 
+  @Nullable
+  private static DataTrainable getDataTrainable(@Nullable final Trainable subject) {
+    if (subject instanceof DataTrainable) return (DataTrainable) subject;
+    if (subject instanceof TrainableWrapper) return getDataTrainable(((TrainableWrapper<?>) subject).getInner());
+    return null;
+  }
+
+  private static void clearNoise(@Nonnull final Layer layer) {
+    if (layer instanceof DAGNetwork) {
+      ((DAGNetwork) layer).visitLayers(x -> {
+        if (x instanceof StochasticComponent) ((StochasticComponent) x).clearNoise();
+      });
+    }
+  }
+
   @Nonnull
   private static CharSequence getId(@Nonnull final DoubleBuffer<UUID> x) {
     return x.key.toString();
@@ -186,6 +207,33 @@ public class ValidatingTrainer {
     return this;
   }
 
+  /**
+   * Is async validation boolean.
+   *
+   * @return whether each epoch's validation runs in the background while the next epoch trains
+   */
+  public boolean isAsyncValidation() {
+    return asyncValidation;
+  }
+
+  /**
+   * Sets async validation. Off by default. When set, the weights at each epoch boundary are snapshotted and validated
+   * on a private copy of the network while the next epoch trains. Convergence checks and epoch-size adaptation then use
+   * each result when it arrives, one epoch later than in synchronous mode, so the next epoch always runs with the
+   * previous parameters and training may stop one epoch later. When an epoch's validation shows convergence, the epoch
+   * trained meanwhile is not logged or adapted to; {@link #run()} only returns its validation, since the network holds
+   * its weights. This requires a validation subject which is, or wraps, a {@link DataTrainable}; otherwise, or when
+   * unset, training waits for each validation.
+   *
+   * @param asyncValidation the async validation
+   * @return the async validation
+   */
+  @Nonnull
+  public ValidatingTrainer setAsyncValidation(final boolean asyncValidation) {
+    this.asyncValidation = asyncValidation;
+    return this;
+  }
+
   /**
    * Gets current iteration.
    *
@@ -566,18 +614,17 @@ public class ValidatingTrainer {
    * @return the double
    */
   public double run() {
+    final boolean async = asyncValidation && null != validationData;
+    if (asyncValidation && !async) monitor.log("Validation subject has no data to copy; validating synchronously");
+    @Nullable final ExecutorService validationPool = async ? Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("validation-%d").build()) : null;
+    @Nullable Trainable validationCopy = null;
     try {
       final long timeoutAt = System.currentTimeMillis() + timeout.toMillis();
-      if (validationSubject.getLayer() instanceof DAGNetwork) {
-        ((DAGNetwork) validationSubject.getLayer()).visitLayers(layer -> {
-          if (layer instanceof StochasticComponent) ((StochasticComponent) layer).clearNoise();
-        });
-      }
+      clearNoise(validationSubject.getLayer());
       @Nonnull final EpochParams epochParams = new EpochParams(timeoutAt, epochIterations, getTrainingSize(), validationSubject.measure(monitor));
-      int epochNumber = 0;
-      int iterationNumber = 0;
-      int lastImprovement = 0;
-      double lowestValidation = Double.POSITIVE_INFINITY;
+      if (async) validationCopy = copyValidationSubject();
+      @Nullable EpochValidation pending = null;
       while (true) {
         if (shouldHalt(monitor, timeoutAt)) {
           monitor.log("Training halted");
@@ -591,72 +638,161 @@ public class ValidatingTrainer {
           return runPhase(epochParams, phase, i, seed);
         }).collect(Collectors.toList());
         final EpochResult primaryPhase = epochResults.get(0);
-        iterationNumber += primaryPhase.iterations;
-        final double trainingDelta = primaryPhase.currentPoint.getMean() / primaryPhase.priorMean;
-        if (validationSubject.getLayer() instanceof DAGNetwork) {
-          ((DAGNetwork) validationSubject.getLayer()).visitLayers(layer -> {
-            if (layer instanceof StochasticComponent) ((StochasticComponent) layer).clearNoise();
-          });
-        }
-        final PointSample currentValidation = validationSubject.measure(monitor);
-        final double overtraining = Math.log(trainingDelta) / Math.log(currentValidation.getMean() / epochParams.validation.getMean());
-        final double validationDelta = currentValidation.getMean() / epochParams.validation.getMean();
-        final double adj1 = Math.pow(Math.log(getTrainingTarget()) / Math.log(validationDelta), adjustmentFactor);
-        final double adj2 = Math.pow(overtraining / getOvertrainingTarget(), adjustmentFactor);
-        final double validationMean = currentValidation.getMean();
-        if (validationMean < lowestValidation) {
-          lowestValidation = validationMean;
-          lastImprovement = iterationNumber;
+        epochParams.iterationNumber += primaryPhase.iterations;
+        @Nonnull final EpochValidation validation = validate(epochParams, primaryPhase, validationCopy, validationPool);
+        if (!async) {
+          if (!completeEpoch(epochParams, validation)) break;
+          continue;
         }
-        monitor.log(String.format("Epoch %d result apply %s iterations, %s/%s samples: {validation *= 2^%.5f; training *= 2^%.3f; Overtraining = %.2f}, {itr*=%.2f, len*=%.2f} %s since improvement; %.4f validation time",
-            ++epochNumber, primaryPhase.iterations, epochParams.trainingSize, getMaxTrainingSize(),
-            Math.log(validationDelta) / Math.log(2), Math.log(trainingDelta) / Math.log(2),
-            overtraining, adj1, adj2, iterationNumber - lastImprovement,
-            validatingMeasurementTime.getAndSet(0) / 1e9));
-        if (!primaryPhase.continueTraining) {
-          monitor.log(String.format("Training %d runPhase halted", epochNumber));
+        @Nullable final EpochValidation previous = pending;
+        pending = validation;
+        if (null != previous && !completeEpoch(epochParams, previous)) {
+          // Converged on the previous epoch; the one trained since is not reported, only its validation returned
+          epochParams.validation = pending.get();
+          pending = null;
           break;
         }
-        if (epochParams.trainingSize >= getMaxTrainingSize()) {
-          final double roll = FastRandom.INSTANCE.random();
-          if (roll > Math.pow(2 - validationDelta, pessimism)) {
-            monitor.log(String.format("Training randomly converged: %3f", roll));
-            break;
+        if (!primaryPhase.continueTraining) break;
+      }
+      if (null != pending) {
+        completeEpoch(epochParams, pending);
+        epochParams.validation = pending.get();
+      }
+      clearNoise(validationSubject.getLayer());
+      return epochParams.validation.getMean();
+    } catch (@Nonnull final Throwable e) {
+      throw new RuntimeException(e);
+    } finally {
+      if (null != validationPool) validationPool.shutdownNow();
+      if (null != validationCopy) validationCopy.freeRef();
+    }
+  }
+
+  /**
+   * Builds an evaluation context for asynchronous validation: a copy of the validation network over the validation
+   * subject's data, batched the same way.
+   *
+   * @return the trainable
+   */
+  @Nonnull
+  private Trainable copyValidationSubject() {
+    @Nonnull final Layer copy = validationSubject.getLayer().copy();
+    try {
+      if (validationData instanceof BatchedTrainable) {
+        return new ArrayTrainable(validationData.getData(), copy, ((BatchedTrainable) validationData).getBatchSize());
+      } else {
+        return new ArrayTrainable(validationData.getData(), copy);
+      }
+    } finally {
+      copy.freeRef();
+    }
+  }
+
+  /**
+   * Starts the validation of an epoch's result. Without a copy, the live network is measured before returning;
+   * otherwise the current weights are snapshotted and measured on the copy by the pool, so the next epoch can start
+   * training immediately.
+   *
+   * @param epochParams    the epoch params
+   * @param primaryPhase   the primary phase result
+   * @param validationCopy the copy of the validation subject, or null to validate synchronously
+   * @param pool           the pool
+   * @return the epoch validation
+   */
+  @Nonnull
+  private EpochValidation validate(@Nonnull final EpochParams epochParams, @Nonnull final EpochResult primaryPhase,
+                                   @Nullable final Trainable validationCopy, @Nullable final ExecutorService pool) {
+    if (null == validationCopy || null == pool) {
+      clearNoise(validationSubject.getLayer());
+      return new EpochValidation(epochParams, primaryPhase, CompletableFuture.completedFuture(measureValidation(validationSubject)));
+    }
+    @Nonnull final WeightSnapshot snapshot = WeightSnapshot.capture(validationSubject.getLayer());
+    return new EpochValidation(epochParams, primaryPhase, pool.submit(() -> {
+      try {
+        WeightSnapshot.apply(snapshot.getData(), validationCopy.getLayer());
+      } finally {
+        snapshot.freeRef();
+      }
+      clearNoise(validationCopy.getLayer());
+      @Nonnull final TimedResult<PointSample> time = TimedResult.time(() -> measureValidation(validationCopy));
+      validatingMeasurementTime.addAndGet(time.timeNanos);
+      return time.result;
+    }));
+  }
+
+  /**
+   * Measures the validation subject at the end of an epoch. With asynchronous validation this runs on the validation
+   * thread, against a copy of the network holding the weights of the epoch being validated.
+   *
+   * @param subject the validation subject, or its copy
+   * @return the point sample
+   */
+  protected PointSample measureValidation(@Nonnull final Trainable subject) {
+    return subject.measure(monitor);
+  }
+
+  /**
+   * Waits for an epoch's validation, logs the epoch and adapts the epoch parameters to it.
+   *
+   * @param epochParams the epoch params
+   * @param validation  the validation
+   * @return whether training should continue
+   */
+  private boolean completeEpoch(@Nonnull final EpochParams epochParams, @Nonnull final EpochValidation validation) {
+    final EpochResult primaryPhase = validation.primaryPhase;
+    final double trainingDelta = primaryPhase.currentPoint.getMean() / primaryPhase.priorMean;
+    final PointSample currentValidation = validation.get();
+    final double overtraining = Math.log(trainingDelta) / Math.log(currentValidation.getMean() / epochParams.validation.getMean());
+    final double validationDelta = currentValidation.getMean() / epochParams.validation.getMean();
+    final double adj1 = Math.pow(Math.log(getTrainingTarget()) / Math.log(validationDelta), adjustmentFactor);
+    final double adj2 = Math.pow(overtraining / getOvertrainingTarget(), adjustmentFactor);
+    final double validationMean = currentValidation.getMean();
+    if (validationMean < epochParams.lowestValidation) {
+      epochParams.lowestValidation = validationMean;
+      epochParams.lastImprovement = validation.iterationNumber;
+    }
+    final int iterationNumber = validation.iterationNumber;
+    final int lastImprovement = epochParams.lastImprovement;
+    monitor.log(String.format("Epoch %d result apply %s iterations, %s/%s samples: {validation *= 2^%.5f; training *= 2^%.3f; Overtraining = %.2f}, {itr*=%.2f, len*=%.2f} %s since improvement; %.4f validation time",
+        validation.epochNumber, primaryPhase.iterations, validation.trainingSize, getMaxTrainingSize(),
+        Math.log(validationDelta) / Math.log(2), Math.log(trainingDelta) / Math.log(2),
+        overtraining, adj1, adj2, iterationNumber - lastImprovement,
+        validatingMeasurementTime.getAndSet(0) / 1e9));
+    if (!primaryPhase.continueTraining) {
+      monitor.log(String.format("Training %d runPhase halted", validation.epochNumber));
+      return false;
+    }
+    if (epochParams.trainingSize >= getMaxTrainingSize()) {
+      final double roll = FastRandom.INSTANCE.random();
+      if (roll > Math.pow(2 - validationDelta, pessimism)) {
+        monitor.log(String.format("Training randomly converged: %3f", roll));
+        return false;
+      } else {
+        if (iterationNumber - lastImprovement > improvmentStaleThreshold) {
+          if (disappointments.incrementAndGet() > getDisappointmentThreshold()) {
+            monitor.log(String.format("Training converged after %s iterations", iterationNumber - lastImprovement));
+            return false;
           } else {
-            if (iterationNumber - lastImprovement > improvmentStaleThreshold) {
-              if (disappointments.incrementAndGet() > getDisappointmentThreshold()) {
-                monitor.log(String.format("Training converged after %s iterations", iterationNumber - lastImprovement));
-                break;
-              } else {
-                monitor.log(String.format("Training failed to converged on %s attempt after %s iterations", disappointments.get(), iterationNumber - lastImprovement));
-              }
-            } else {
-              disappointments.set(0);
-            }
-          }
-        }
-        if (validationDelta < 1.0 && trainingDelta < 1.0) {
-          if (adj1 < 1 - adjustmentTolerance || adj1 > 1 + adjustmentTolerance) {
-            epochParams.iterations = Math.max(getMinEpochIterations(), Math.min(getMaxEpochIterations(), (int) (primaryPhase.iterations * adj1)));
-          }
-          if (adj2 < 1 + adjustmentTolerance || adj2 > 1 - adjustmentTolerance) {
-            epochParams.trainingSize = Math.max(0, Math.min(Math.max(getMinTrainingSize(), Math.min(getMaxTrainingSize(), (int) (epochParams.trainingSize * adj2))), epochParams.trainingSize));
+            monitor.log(String.format("Training failed to converged on %s attempt after %s iterations", disappointments.get(), iterationNumber - lastImprovement));
           }
         } else {
-          epochParams.trainingSize = Math.max(0, Math.min(Math.max(getMinTrainingSize(), Math.min(getMaxTrainingSize(), epochParams.trainingSize * 5)), epochParams.trainingSize));
-          epochParams.iterations = 1;
+          disappointments.set(0);
         }
-        epochParams.validation = currentValidation;
       }
-      if (validationSubject.getLayer() instanceof DAGNetwork) {
-        ((DAGNetwork) validationSubject.getLayer()).visitLayers(layer -> {
-          if (layer instanceof StochasticComponent) ((StochasticComponent) layer).clearNoise();
-        });
+    }
+    if (validationDelta < 1.0 && trainingDelta < 1.0) {
+      if (adj1 < 1 - adjustmentTolerance || adj1 > 1 + adjustmentTolerance) {
+        epochParams.iterations = Math.max(getMinEpochIterations(), Math.min(getMaxEpochIterations(), (int) (primaryPhase.iterations * adj1)));
       }
-      return epochParams.validation.getMean();
-    } catch (@Nonnull final Throwable e) {
-      throw new RuntimeException(e);
+      if (adj2 < 1 + adjustmentTolerance || adj2 > 1 - adjustmentTolerance) {
+        epochParams.trainingSize = Math.max(0, Math.min(Math.max(getMinTrainingSize(), Math.min(getMaxTrainingSize(), (int) (epochParams.trainingSize * adj2))), epochParams.trainingSize));
+      }
+    } else {
+      epochParams.trainingSize = Math.max(0, Math.min(Math.max(getMinTrainingSize(), Math.min(getMaxTrainingSize(), epochParams.trainingSize * 5)), epochParams.trainingSize));
+      epochParams.iterations = 1;
     }
+    epochParams.validation = currentValidation;
+    return true;
   }
 
   /**
@@ -830,6 +966,22 @@ public class ValidatingTrainer {
      * The Validation.
      */
     PointSample validation;
+    /**
+     * The number of epochs started.
+     */
+    int epochNumber = 0;
+    /**
+     * The number of iterations run.
+     */
+    int iterationNumber = 0;
+    /**
+     * The iteration number of the lowest validation so far.
+     */
+    int lastImprovement = 0;
+    /**
+     * The lowest validation mean so far.
+     */
+    double lowestValidation = Double.POSITIVE_INFINITY;
 
     private EpochParams(final long timeoutMs, final int iterations, final int trainingSize, final PointSample validation) {
       this.timeoutMs = timeoutMs;
@@ -876,6 +1028,53 @@ public class ValidatingTrainer {
 
   }
 
+  private static class EpochValidation {
+    /**
+     * The epoch number.
+     */
+    final int epochNumber;
+    /**
+     * The iteration number at the end of the epoch.
+     */
+    final int iterationNumber;
+    /**
+     * The training size of the epoch.
+     */
+    final int trainingSize;
+    /**
+     * The primary phase result.
+     */
+    final EpochResult primaryPhase;
+    /**
+     * The validation result.
+     */
+    final Future<PointSample> result;
+
+    private EpochValidation(@Nonnull final EpochParams epochParams, @Nonnull final EpochResult primaryPhase, @Nonnull final Future<PointSample> result) {
+      this.epochNumber = ++epochParams.epochNumber;
+      this.iterationNumber = epochParams.iterationNumber;
+      this.trainingSize = epochParams.trainingSize;
+      this.primaryPhase = primaryPhase;
+      this.result = result;
+    }
+
+    /**
+     * Waits for the validation result.
+     *
+     * @return the point sample
+     */
+    PointSample get() {
+      try {
+        return result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
   /**
    * The type Training phase.
    */
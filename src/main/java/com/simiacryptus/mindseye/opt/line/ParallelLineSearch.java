@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.opt.line;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.simiacryptus.mindseye.eval.ArrayTrainable;
+import com.simiacryptus.mindseye.eval.BatchedTrainable;
+import com.simiacryptus.mindseye.eval.DataTrainable;
+import com.simiacryptus.mindseye.eval.GradientWorker;
+import com.simiacryptus.mindseye.eval.Trainable;
+import com.simiacryptus.mindseye.eval.TrainableDataMask;
+import com.simiacryptus.mindseye.eval.TrainableWrapper;
+import com.simiacryptus.mindseye.lang.*;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A line search which evaluates several step sizes at once, each on its own copy of the network, rather than one
+ * {@link LineSearchCursor#step} at a time. The first round probes the origin and a geometric spread of rates around the
+ * last accepted one; later rounds either widen the bracket or divide it evenly, with one probe at the secant root of
+ * the line derivative. The lowest point meeting the Armijo and Wolfe conditions is taken, and the live network is moved
+ * to it without being evaluated again.
+ * <p>
+ * Probes need an evaluation context of their own, so this applies to a {@link SimpleLineSearchCursor} whose subject is,
+ * or wraps, a {@link DataTrainable}; each probe evaluates that trainable's current data with its mask, in batches of
+ * the batch size of the nearest wrapped {@link BatchedTrainable}, or as a single batch if there is none. Any other
+ * cursor is searched serially by an {@link ArmijoWolfeSearch}.
+ * <p>
+ * Each search copies the network once per concurrent probe, so the copies carry its current structure and state, and
+ * frees the copies when it ends; nothing is held between searches.
+ */
+public class ParallelLineSearch implements LineSearchStrategy {
+  private static final ExecutorService pool = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("line-search-%d").build());
+
+  private final int parallelism;
+  @Nonnull
+  private final LineSearchStrategy fallback = new ArmijoWolfeSearch();
+  private double alpha = 1.0;
+  private double spread = 4.0;
+  private double c1 = 1e-6;
+  private double c2 = 0.9;
+  private boolean strongWolfe = true;
+  private int maxRounds = 4;
+  private double relativeTolerance = 1e-2;
+
+  /**
+   * Instantiates a new Parallel line search with four concurrent probes.
+   */
+  public ParallelLineSearch() {
+    this(4);
+  }
+
+  /**
+   * Instantiates a new Parallel line search.
+   *
+   * @param parallelism the number of points evaluated per round, each on its own copy of the network
+   */
+  public ParallelLineSearch(final int parallelism) {
+    if (parallelism < 2) throw new IllegalArgumentException("parallelism=" + parallelism);
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Gets parallelism.
+   *
+   * @return the parallelism
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Gets alpha.
+   *
+   * @return the rate the next search is centered on
+   */
+  public double getAlpha() {
+    return alpha;
+  }
+
+  /**
+   * Sets alpha.
+   *
+   * @param alpha the alpha
+   * @return the alpha
+   */
+  @Nonnull
+  public ParallelLineSearch setAlpha(final double alpha) {
+    this.alpha = alpha;
+    return this;
+  }
+
+  /**
+   * Gets spread.
+   *
+   * @return the ratio between neighbouring probes while bracketing
+   */
+  public double getSpread() {
+    return spread;
+  }
+
+  /**
+   * Sets spread.
+   *
+   * @param spread the spread
+   * @return the spread
+   */
+  @Nonnull
+  public ParallelLineSearch setSpread(final double spread) {
+    if (spread <= 1) throw new IllegalArgumentException("spread=" + spread);
+    this.spread = spread;
+    return this;
+  }
+
+  /**
+   * Gets c 1.
+   *
+   * @return the c 1
+   */
+  public double getC1() {
+    return c1;
+  }
+
+  /**
+   * Sets c 1.
+   *
+   * @param c1 the c 1
+   * @return the c 1
+   */
+  @Nonnull
+  public ParallelLineSearch setC1(final double c1) {
+    this.c1 = c1;
+    return this;
+  }
+
+  /**
+   * Gets c 2.
+   *
+   * @return the c 2
+   */
+  public double getC2() {
+    return c2;
+  }
+
+  /**
+   * Sets c 2.
+   *
+   * @param c2 the c 2
+   * @return the c 2
+   */
+  @Nonnull
+  public ParallelLineSearch setC2(final double c2) {
+    this.c2 = c2;
+    return this;
+  }
+
+  /**
+   * Is strong wolfe boolean.
+   *
+   * @return the boolean
+   */
+  public boolean isStrongWolfe() {
+    return strongWolfe;
+  }
+
+  /**
+   * Sets strong wolfe.
+   *
+   * @param strongWolfe the strong wolfe
+   * @return the strong wolfe
+   */
+  @Nonnull
+  public ParallelLineSearch setStrongWolfe(final boolean strongWolfe) {
+    this.strongWolfe = strongWolfe;
+    return this;
+  }
+
+  /**
+   * Gets max rounds.
+   *
+   * @return the number of rounds of probes after the first
+   */
+  public int getMaxRounds() {
+    return maxRounds;
+  }
+
+  /**
+   * Sets max rounds.
+   *
+   * @param maxRounds the max rounds
+   * @return the max rounds
+   */
+  @Nonnull
+  public ParallelLineSearch setMaxRounds(final int maxRounds) {
+    this.maxRounds = maxRounds;
+    return this;
+  }
+
+  /**
+   * Gets relative tolerance.
+   *
+   * @return the relative tolerance
+   */
+  public double getRelativeTolerance() {
+    return relativeTolerance;
+  }
+
+  /**
+   * Sets relative tolerance.
+   *
+   * @param relativeTolerance the relative tolerance
+   * @return the relative tolerance
+   */
+  @Nonnull
+  public ParallelLineSearch setRelativeTolerance(final double relativeTolerance) {
+    this.relativeTolerance = relativeTolerance;
+    return this;
+  }
+
+  @Override
+  public PointSample step(@Nonnull final LineSearchCursor cursor, @Nonnull final TrainingMonitor monitor) {
+    if (!(cursor instanceof SimpleLineSearchCursor)) return fallback.step(cursor, monitor);
+    @Nonnull final SimpleLineSearchCursor simpleCursor = (SimpleLineSearchCursor) cursor;
+    @Nullable final DataTrainable data = getDataTrainable(simpleCursor.subject);
+    if (null == data) return fallback.step(cursor, monitor);
+    simpleCursor.reset();
+    @Nullable final Search search = Search.create(simpleCursor, data, getBatchSize(simpleCursor.subject), parallelism);
+    if (null == search) return fallback.step(cursor, monitor);
+    try {
+      return run(search, monitor);
+    } finally {
+      search.free();
+    }
+  }
+
+  @Nonnull
+  private PointSample run(@Nonnull final Search search, @Nonnull final TrainingMonitor monitor) {
+    final double first = alpha / Math.pow(spread, (parallelism - 2) / 2);
+    search.evaluate(IntStream.range(0, parallelism).mapToDouble(i -> 0 == i ? 0.0 : first * Math.pow(spread, i - 1)).toArray());
+    @Nonnull final Probe start = search.probes.get(0.0);
+    final double startValue = start.value;
+    final double startDerivative = start.derivative;
+    if (0 <= startDerivative) {
+      monitor.log(String.format("th(0)=%s;dx=%s (ERROR: Starting derivative negative)", startValue, startDerivative));
+      return finish(search, start);
+    }
+    monitor.log(String.format("th(0)=%s;dx=%s", startValue, startDerivative));
+    for (int round = 0; ; round++) {
+      @Nullable Probe accepted = null;
+      double mu = 0;
+      double nu = Double.POSITIVE_INFINITY;
+      for (@Nonnull final Probe probe : search.probes.values()) {
+        if (0 == probe.t) continue;
+        if (!(probe.value <= startValue + probe.t * c1 * startDerivative) || (strongWolfe && probe.derivative > 0)) {
+          nu = Math.min(nu, probe.t);
+        } else if (probe.derivative < c2 * startDerivative) {
+          mu = Math.max(mu, probe.t);
+        } else if (null == accepted || probe.value < accepted.value) {
+          accepted = probe;
+        }
+      }
+      if (null != accepted) {
+        monitor.log(String.format("END: th(%s)=%s; dx=%s; %s points in %s rounds", accepted.t, accepted.value, accepted.derivative, search.probes.size(), round + 1));
+        return finish(search, accepted);
+      }
+      if (round >= maxRounds || mu >= nu || nu - mu < nu * relativeTolerance) {
+        @Nonnull final Probe best = search.probes.values().stream().min(Comparator.comparing(p -> p.value)).get();
+        monitor.log(String.format("BEST: th(%s)=%s; mu=%s, nu=%s; %s points in %s rounds", best.t, best.value, mu, nu, search.probes.size(), round + 1));
+        return finish(search, best);
+      }
+      monitor.log(String.format("Bracket %s: mu=%s, nu=%s", round, mu, nu));
+      search.evaluate(probes(search, mu, nu));
+    }
+  }
+
+  @Nonnull
+  private double[] probes(@Nonnull final Search search, final double mu, final double nu) {
+    if (!Double.isFinite(nu)) {
+      return IntStream.range(0, parallelism).mapToDouble(i -> mu * Math.pow(spread, i + 1)).toArray();
+    }
+    if (0 == mu) {
+      return IntStream.range(0, parallelism).mapToDouble(i -> nu * Math.pow(spread, -(i + 1))).toArray();
+    }
+    @Nonnull final double[] probes = IntStream.range(0, parallelism).mapToDouble(i -> mu + (nu - mu) * (i + 1) / (parallelism + 1)).toArray();
+    final double low = search.probes.get(mu).derivative;
+    final double high = search.probes.get(nu).derivative;
+    if (high > low) {
+      final double secant = mu - low * (nu - mu) / (high - low);
+      if (secant > mu && secant < nu) probes[parallelism / 2] = secant;
+    }
+    return probes;
+  }
+
+  @Nonnull
+  private PointSample finish(@Nonnull final Search search, @Nonnull final Probe probe) {
+    if (0 < probe.t) {
+      alpha = probe.t;
+    } else {
+      alpha /= spread;
+    }
+    return search.position(probe);
+  }
+
+  /**
+   * Finds the data trainable a subject evaluates, unwrapping any TrainableWrappers.
+   *
+   * @param subject the subject
+   * @return the data trainable, or null
+   */
+  @Nullable
+  static DataTrainable getDataTrainable(@Nullable final Trainable subject) {
+    if (subject instanceof DataTrainable) return (DataTrainable) subject;
+    if (subject instanceof TrainableWrapper) return getDataTrainable(((TrainableWrapper<?>) subject).getInner());
+    return null;
+  }
+
+  /**
+   * Gets the batch size of the nearest BatchedTrainable a subject is, or wraps.
+   *
+   * @param subject the subject
+   * @return the batch size, or {@link Integer#MAX_VALUE} to evaluate all data as one batch
+   */
+  static int getBatchSize(@Nullable final Trainable subject) {
+    if (subject instanceof BatchedTrainable) return ((BatchedTrainable) subject).getBatchSize();
+    if (subject instanceof TrainableWrapper) return getBatchSize(((TrainableWrapper<?>) subject).getInner());
+    return Integer.MAX_VALUE;
+  }
+
+  private static final class Probe {
+    private final double t;
+    private final double value;
+    private final double derivative;
+    @Nonnull
+    private final GradientWorker.Gradient gradient;
+
+    private Probe(final double t, @Nonnull final GradientWorker.Gradient gradient, final double derivative) {
+      this.t = t;
+      this.value = Double.isFinite(gradient.sum) ? gradient.sum / gradient.count : Double.POSITIVE_INFINITY;
+      this.derivative = derivative;
+      this.gradient = gradient;
+    }
+  }
+
+  /**
+   * The state of one search: the origin and direction, named as {@link WeightSnapshot#getWeights(Layer)} names them, the
+   * network copies it owns with one batched evaluation context each, and every probe evaluated so far.
+   */
+  private static final class Search {
+    @Nonnull
+    private final SimpleLineSearchCursor cursor;
+    @Nonnull
+    private final Layer network;
+    @Nonnull
+    private final Map<String, double[]> origin;
+    @Nonnull
+    private final Map<String, double[]> direction;
+    @Nonnull
+    private final List<Layer> contexts;
+    @Nonnull
+    private final List<ArrayTrainable> trainables;
+    @Nonnull
+    private final TreeMap<Double, Probe> probes = new TreeMap<>();
+
+    private Search(@Nonnull final SimpleLineSearchCursor cursor, @Nonnull final Map<String, double[]> origin, @Nonnull final Map<String, double[]> direction,
+                   @Nonnull final Tensor[][] data, @Nullable final boolean[] mask, final int batchSize, final int parallelism) {
+      this.cursor = cursor;
+      this.network = cursor.subject.getLayer();
+      this.origin = origin;
+      this.direction = direction;
+      this.contexts = IntStream.range(0, parallelism).mapToObj(i -> network.copy()).collect(Collectors.toList());
+      this.trainables = contexts.stream().map(context -> {
+        @Nonnull final ArrayTrainable trainable = new ArrayTrainable(data, context, Math.min(batchSize, data.length));
+        if (null != mask) trainable.setMask(mask);
+        return trainable;
+      }).collect(Collectors.toList());
+    }
+
+    /**
+     * Captures the origin, which the live network must currently hold, names the direction's buffers, and copies the
+     * network once per concurrent probe.
+     *
+     * @param cursor      the cursor
+     * @param data        the data trainable
+     * @param batchSize   the most rows a probe evaluates at once
+     * @param parallelism the number of network copies
+     * @return the search, or null if the direction moves buffers outside the network
+     */
+    @Nullable
+    static Search create(@Nonnull final SimpleLineSearchCursor cursor, @Nonnull final DataTrainable data, final int batchSize, final int parallelism) {
+      @Nonnull final Map<String, double[]> live = WeightSnapshot.getWeights(cursor.subject.getLayer());
+      @Nonnull final Map<double[], String> names = new IdentityHashMap<>();
+      @Nonnull final Map<String, double[]> origin = new LinkedHashMap<>();
+      live.forEach((name, target) -> {
+        names.put(target, name);
+        origin.put(name, Arrays.copyOf(target, target.length));
+      });
+      @Nonnull final Map<String, double[]> direction = new HashMap<>();
+      for (@Nonnull final Delta<UUID> delta : cursor.direction.getMap().values()) {
+        @Nullable final String name = names.get(delta.target);
+        if (null == name) return null;
+        direction.put(name, delta.getDelta());
+      }
+      @Nullable final Tensor[][] tensors = data.getData();
+      if (null == tensors || 0 == tensors.length) return null;
+      @Nullable final boolean[] mask = data instanceof TrainableDataMask ? ((TrainableDataMask) data).getMask() : null;
+      return new Search(cursor, origin, direction, tensors, mask, batchSize, parallelism);
+    }
+
+    /**
+     * Evaluates a set of rates concurrently, one per context.
+     *
+     * @param rates the rates
+     */
+    void evaluate(@Nonnull final double[] rates) {
+      assert rates.length <= contexts.size();
+      @Nonnull final List<Future<Probe>> futures = IntStream.range(0, rates.length)
+          .filter(i -> !probes.containsKey(rates[i]))
+          .mapToObj(i -> pool.submit(() -> evaluate(i, rates[i])))
+          .collect(Collectors.toList());
+      try {
+        for (@Nonnull final Future<Probe> future : futures) {
+          @Nonnull final Probe probe = future.get();
+          probes.put(probe.t, probe);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    @Nonnull
+    private Probe evaluate(final int index, final double t) {
+      @Nonnull final Map<String, double[]> weights = new HashMap<>();
+      origin.forEach((name, data) -> {
+        @Nonnull final double[] point = Arrays.copyOf(data, data.length);
+        @Nullable final double[] step = direction.get(name);
+        if (null != step && 0 != t) {
+          for (int i = 0; i < point.length; i++) {
+            point[i] += t * step[i];
+          }
+        }
+        weights.put(name, point);
+      });
+      final Layer context = contexts.get(index);
+      WeightSnapshot.apply(weights, context);
+      @Nonnull final PointSample sample = trainables.get(index).measure(null);
+      @Nonnull final GradientWorker.Gradient gradient;
+      try {
+        gradient = GradientWorker.Gradient.of(sample, context);
+      } finally {
+        sample.freeRef();
+      }
+      double derivative = 0;
+      for (@Nonnull final Map.Entry<String, double[]> e : direction.entrySet()) {
+        @Nullable final double[] delta = gradient.deltas.get(e.getKey());
+        if (null == delta) continue;
+        final double[] step = e.getValue();
+        for (int i = 0; i < step.length; i++) {
+          derivative += step[i] * delta[i];
+        }
+      }
+      return new Probe(t, gradient, derivative);
+    }
+
+    /**
+     * Moves the live network to a probe's rate and expresses its measurement against the live weights.
+     *
+     * @param probe the probe
+     * @return the point sample
+     */
+    @Nonnull
+    PointSample position(@Nonnull final Probe probe) {
+      cursor.reset();
+      if (0 != probe.t) cursor.direction.accumulate(probe.t);
+      @Nonnull final Map<String, double[]> live = WeightSnapshot.getWeights(network);
+      @Nonnull final DeltaSet<UUID> deltaSet = new DeltaSet<UUID>();
+      probe.gradient.deltas.forEach((name, delta) -> {
+        final Delta<UUID> buffer = deltaSet.get(probe.gradient.keys.get(name), live.get(name));
+        buffer.addInPlace(delta);
+        buffer.freeRef();
+      });
+      @Nonnull final StateSet<UUID> stateSet = new StateSet<>(deltaSet);
+      try {
+        return new PointSample(deltaSet, stateSet, probe.gradient.sum, probe.t, probe.gradient.count);
+      } finally {
+        stateSet.freeRef();
+        deltaSet.freeRef();
+      }
+    }
+
+    /**
+     * Frees the evaluation contexts and the network copies.
+     */
+    void free() {
+      trainables.forEach(ReferenceCounting::freeRef);
+      contexts.forEach(ReferenceCounting::freeRef);
+    }
+  }
+}
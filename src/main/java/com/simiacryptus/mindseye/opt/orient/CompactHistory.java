@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.opt.orient;
+
+import com.simiacryptus.mindseye.lang.ParameterArena;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.SerialPrecision;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.UUID;
+
+/**
+ * LBFGS history kept as a ring buffer of step/gradient-change pairs rather than of full PointSample copies. Each pair
+ * holds s = w[k+1] - w[k] and y = g[k+1] - g[k], encoded at a configurable {@link SerialPrecision}, together with the
+ * precomputed rho = 1 / s.y. Only the most recent accepted point is retained at full precision, as the base of the next
+ * pair.
+ */
+public class CompactHistory {
+  @Nonnull
+  private final SerialPrecision precision;
+  @Nonnull
+  private final ArrayDeque<Pair> pairs = new ArrayDeque<>();
+  @Nullable
+  private ParameterArena<UUID> arena;
+  @Nullable
+  private double[] weights;
+  @Nullable
+  private double[] gradient;
+  private double sum = Double.POSITIVE_INFINITY;
+
+  /**
+   * Instantiates a new Compact history.
+   *
+   * @param precision the storage precision of each pair
+   */
+  public CompactHistory(@Nonnull final SerialPrecision precision) {
+    this.precision = precision;
+  }
+
+  /**
+   * Gets precision.
+   *
+   * @return the precision
+   */
+  @Nonnull
+  public SerialPrecision getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Gets the layout the history is stored in.
+   *
+   * @return the arena, or null if no point has been accepted
+   */
+  @Nullable
+  public ParameterArena<UUID> getArena() {
+    return arena;
+  }
+
+  /**
+   * Gets the number of stored pairs.
+   *
+   * @return the int
+   */
+  public int size() {
+    return pairs.size();
+  }
+
+  /**
+   * Offers a measurement. It is accepted only if its sum improves on the last accepted point, so pairs are ordered both
+   * by time and by value, as {@link LBFGS#history} is. A pair is then recorded unless s.y vanishes, evicting the
+   * oldest pair beyond capacity. A measurement over a different set of parameters restarts the history.
+   *
+   * @param measurement the measurement
+   * @param capacity    the maximum number of pairs
+   * @return whether the measurement was accepted
+   */
+  public synchronized boolean add(@Nonnull final PointSample measurement, final int capacity) {
+    if (null == arena || !arena.matches(measurement.delta)) {
+      clear();
+      arena = new ParameterArena<>(measurement.delta);
+    } else if (measurement.sum >= sum) {
+      return false;
+    }
+    @Nonnull final double[] w = arena.gather(measurement.weights);
+    @Nonnull final double[] g = arena.gather(measurement.delta);
+    if (null != weights) {
+      @Nonnull final double[] s = w.clone();
+      @Nonnull final double[] y = g.clone();
+      ParameterArena.axpy(-1, weights, s);
+      ParameterArena.axpy(-1, gradient, y);
+      @Nonnull final Pair pair = new Pair(precision.toBytes(s), precision.toBytes(y));
+      // rho and gamma are taken from the decoded values, so they agree with what apply() reads back
+      precision.copy(pair.s, s);
+      precision.copy(pair.y, y);
+      final double sy = ParameterArena.dot(s, y);
+      if (0 != sy && Double.isFinite(sy)) {
+        pair.rho = 1 / sy;
+        pair.gamma = sy / ParameterArena.sumSq(y);
+        pairs.addLast(pair);
+        while (pairs.size() > capacity) pairs.removeFirst();
+      }
+    }
+    weights = w;
+    gradient = g;
+    sum = measurement.sum;
+    return true;
+  }
+
+  /**
+   * Drops the oldest pair.
+   */
+  public synchronized void removeOldest() {
+    pairs.pollFirst();
+  }
+
+  /**
+   * Applies the two-loop recursion to a gradient, decoding each pair into scratch buffers as it is visited.
+   *
+   * @param gradient the flat gradient, in this history's layout
+   * @return the two-loop result p
+   */
+  @Nonnull
+  public synchronized double[] apply(@Nonnull final double[] gradient) {
+    if (pairs.isEmpty()) throw new IllegalStateException("Empty history");
+    @Nonnull final double[] p = gradient.clone();
+    @Nonnull final double[] s = new double[p.length];
+    @Nonnull final double[] y = new double[p.length];
+    @Nonnull final double[] alphas = new double[pairs.size()];
+    int i = pairs.size();
+    for (@Nonnull Iterator<Pair> iterator = pairs.descendingIterator(); iterator.hasNext(); ) {
+      @Nonnull final Pair pair = iterator.next();
+      precision.copy(pair.s, s);
+      precision.copy(pair.y, y);
+      alphas[--i] = pair.rho * ParameterArena.dot(s, p);
+      ParameterArena.axpy(-alphas[i], y, p);
+    }
+    ParameterArena.scale(pairs.getLast().gamma, p);
+    for (@Nonnull final Pair pair : pairs) {
+      precision.copy(pair.s, s);
+      precision.copy(pair.y, y);
+      final double beta = pair.rho * ParameterArena.dot(y, p);
+      ParameterArena.axpy(alphas[i++] - beta, s, p);
+    }
+    if (!ParameterArena.isFinite(p)) throw new IllegalStateException("Non-finite value");
+    return p;
+  }
+
+  /**
+   * Gets the heap held by the stored pairs and the retained point.
+   *
+   * @return the bytes
+   */
+  public synchronized long getBytes() {
+    long bytes = null == weights ? 0 : 16L * weights.length;
+    for (@Nonnull final Pair pair : pairs) {
+      bytes += pair.s.length + pair.y.length;
+    }
+    return bytes;
+  }
+
+  /**
+   * Discards all history.
+   */
+  public synchronized void clear() {
+    pairs.clear();
+    arena = null;
+    weights = null;
+    gradient = null;
+    sum = Double.POSITIVE_INFINITY;
+  }
+
+  private static final class Pair {
+    @Nonnull
+    private final byte[] s;
+    @Nonnull
+    private final byte[] y;
+    private double rho;
+    private double gamma;
+
+    private Pair(@Nonnull final byte[] s, @Nonnull final byte[] y) {
+      this.s = s;
+      this.y = y;
+    }
+  }
+}
@@ -47,6 +47,13 @@ public class LBFGS extends OrientationStrategyBase<SimpleLineSearchCursor> {
   protected boolean verbose = true;
   private int maxHistory = 30;
   private int minHistory = 3;
+  private boolean useArena = false;
+  @Nullable
+  private CompactHistory compactHistory = null;
+  @Nullable
+  private ParameterArena<UUID> arena = null;
+  @Nonnull
+  private final Map<PointSample, ArenaPair> arenaPairs = new IdentityHashMap<>();
 
   private static boolean isFinite(@Nonnull final DoubleBufferSet<?, ?> delta) {
     return delta.stream().parallel().flatMapToDouble(y -> Arrays.stream(y.getDelta())).allMatch(d -> Double.isFinite(d));
@@ -67,6 +74,12 @@ public class LBFGS extends OrientationStrategyBase<SimpleLineSearchCursor> {
       if (verbose) {
         monitor.log("Corrupt weights measurement");
       }
+    } else if (null != compactHistory) {
+      final boolean accepted = compactHistory.add(measurement, maxHistory);
+      if (verbose) {
+        monitor.log(String.format("%s measurement %s. Total: %s pairs, %s bytes", accepted ? "Added" : "Non-optimal",
+            measurement.sum, compactHistory.size(), compactHistory.getBytes()));
+      }
     } else {
       boolean isFound = history.stream().filter(x -> x.sum <= measurement.sum).findAny().isPresent();
       if (!isFound) {
@@ -135,6 +148,54 @@ public class LBFGS extends OrientationStrategyBase<SimpleLineSearchCursor> {
     return this;
   }
 
+  /**
+   * Is use arena boolean.
+   *
+   * @return whether the two-loop recursion runs on flat vectors gathered through a {@link ParameterArena}
+   */
+  public boolean isUseArena() {
+    return useArena;
+  }
+
+  /**
+   * Sets use arena. When set, the s/y difference between each pair of neighbouring history points is gathered into
+   * contiguous arrays the first time the pair is used and kept for as long as both points stay in the history, and
+   * every dot, add and scale of the recursion runs on them, rather than on per-layer DeltaSet maps.
+   *
+   * @param useArena the use arena
+   * @return the use arena
+   */
+  @Nonnull
+  public LBFGS setUseArena(final boolean useArena) {
+    this.useArena = useArena;
+    return this;
+  }
+
+  /**
+   * Gets history precision.
+   *
+   * @return the storage precision of the compact history, or null if full PointSample copies are kept
+   */
+  @Nullable
+  public SerialPrecision getHistoryPrecision() {
+    return null == compactHistory ? null : compactHistory.getPrecision();
+  }
+
+  /**
+   * Sets history precision. When set, the history is kept as a {@link CompactHistory} of s/y pairs encoded at this
+   * precision, instead of as full copies of each PointSample's weights and gradient; the recursion is unchanged.
+   * Changing it discards the current history.
+   *
+   * @param precision the precision, or null for full PointSample copies
+   * @return the history precision
+   */
+  @Nonnull
+  public LBFGS setHistoryPrecision(@Nullable final SerialPrecision precision) {
+    reset();
+    this.compactHistory = null == precision ? null : new CompactHistory(precision);
+    return this;
+  }
+
   /**
    * Lbfgs evalInputDelta setBytes.
    *
@@ -178,6 +239,7 @@ public class LBFGS extends OrientationStrategyBase<SimpleLineSearchCursor> {
   }
 
   private boolean lbfgs(@Nonnull PointSample measurement, @Nonnull TrainingMonitor monitor, @Nonnull List<PointSample> history, @Nonnull DeltaSet<UUID> direction) {
+    if (useArena) return lbfgsArena(measurement, monitor, history, direction);
     try {
       @Nonnull DeltaSet<UUID> p = measurement.delta.copy();
       if (!p.stream().parallel().allMatch(y -> Arrays.stream(y.getDelta()).allMatch(d -> Double.isFinite(d)))) {
@@ -226,6 +288,59 @@ public class LBFGS extends OrientationStrategyBase<SimpleLineSearchCursor> {
     }
   }
 
+  private boolean lbfgsArena(@Nonnull PointSample measurement, @Nonnull TrainingMonitor monitor, @Nonnull List<PointSample> history, @Nonnull DeltaSet<UUID> direction) {
+    try {
+      if (null == arena || !arena.matches(measurement.delta)) {
+        arena = new ParameterArena<>(measurement.delta);
+        arenaPairs.clear();
+      }
+      final int pairs = history.size() - 1;
+      @Nonnull final ArenaPair[] pair = new ArenaPair[pairs];
+      @Nonnull final Map<PointSample, ArenaPair> used = new IdentityHashMap<>();
+      for (int i = 0; i < pairs; i++) {
+        @Nullable ArenaPair cached = arenaPairs.get(history.get(i + 1));
+        if (null == cached || cached.previous != history.get(i)) {
+          cached = new ArenaPair(arena, history.get(i), history.get(i + 1));
+        }
+        used.put(history.get(i + 1), cached);
+        pair[i] = cached;
+      }
+      arenaPairs.clear();
+      arenaPairs.putAll(used);
+      @Nonnull final double[] gradient = arena.gather(measurement.delta);
+      @Nonnull final double[] p = gradient.clone();
+      if (!ParameterArena.isFinite(p)) {
+        throw new IllegalStateException("Non-finite value");
+      }
+      @Nonnull final double[] alphas = new double[pairs];
+      for (int i = pairs - 1; i >= 0; i--) {
+        alphas[i] = ParameterArena.dot(p, pair[i].s) / pair[i].sy;
+        ParameterArena.axpy(-alphas[i], pair[i].y, p);
+      }
+      ParameterArena.scale(pair[pairs - 1].sy / pair[pairs - 1].yy, p);
+      for (int i = 0; i < pairs; i++) {
+        final double beta = ParameterArena.dot(p, pair[i].y) / pair[i].sy;
+        ParameterArena.axpy(alphas[i] - beta, pair[i].s, p);
+      }
+      if (!ParameterArena.isFinite(p)) {
+        throw new IllegalStateException("Non-finite value");
+      }
+      boolean accept = ParameterArena.dot(gradient, p) < 0;
+      if (verbose) {
+        @Nonnull final DeltaSet<UUID> quasinewton = arena.toDeltaSet(p);
+        monitor.log((accept ? "Accepted: " : "Rejected: ") + new Stats(direction, quasinewton));
+        quasinewton.freeRef();
+      }
+      if (accept) {
+        arena.scatter(p, direction);
+      }
+      return accept;
+    } catch (Throwable e) {
+      monitor.log(String.format("LBFGS Orientation Error: %s", e.getMessage()));
+      return false;
+    }
+  }
+
   private void copy(@Nonnull DeltaSet<UUID> from, @Nonnull DeltaSet<UUID> to) {
     for (@Nonnull final Map.Entry<UUID, Delta<UUID>> e : to.getMap().entrySet()) {
       @Nullable final double[] delta = from.getMap().get(e.getKey()).getDelta();
@@ -233,8 +348,46 @@ public class LBFGS extends OrientationStrategyBase<SimpleLineSearchCursor> {
     }
   }
 
+  @Nonnull
+  private SimpleLineSearchCursor orientCompact(final Trainable subject, @Nonnull final PointSample measurement, @Nonnull final TrainingMonitor monitor) {
+    addToHistory(measurement, monitor);
+    @Nonnull final DeltaSet<UUID> direction = measurement.delta.scale(-1);
+    String type = "GD";
+    @Nullable final ParameterArena<UUID> arena = compactHistory.getArena();
+    if (null != arena && arena.matches(measurement.delta)) {
+      @Nonnull final double[] gradient = arena.gather(measurement.delta);
+      while (compactHistory.size() >= minHistory) {
+        try {
+          @Nonnull final double[] p = compactHistory.apply(gradient);
+          final double dot = ParameterArena.dot(gradient, p);
+          if (verbose) {
+            monitor.log(String.format("%s: LBFGS Orientation magnitude: %.3e, gradient %.3e, dot %.3f", dot < 0 ? "Accepted" : "Rejected",
+                Math.sqrt(ParameterArena.sumSq(p)), Math.sqrt(ParameterArena.sumSq(gradient)),
+                dot / Math.sqrt(ParameterArena.sumSq(p) * ParameterArena.sumSq(gradient))));
+          }
+          if (dot < 0) {
+            arena.scatter(p, direction);
+            type = "LBFGS";
+            break;
+          }
+        } catch (Throwable e) {
+          monitor.log(String.format("LBFGS Orientation Error: %s", e.getMessage()));
+        }
+        monitor.log(String.format("Orientation rejected. Dropping oldest of %s pairs", compactHistory.size()));
+        compactHistory.removeOldest();
+      }
+    }
+    if ("GD".equals(type)) {
+      monitor.log(String.format("LBFGS Accumulation History: %s pairs", compactHistory.size()));
+    }
+    @Nonnull final SimpleLineSearchCursor cursor = cursor(subject, measurement, type, direction);
+    direction.freeRef();
+    return cursor;
+  }
+
   @Override
   public SimpleLineSearchCursor orient(final Trainable subject, @Nonnull final PointSample measurement, @Nonnull final TrainingMonitor monitor) {
+    if (null != compactHistory) return orientCompact(subject, measurement, monitor);
 
 //    if (getClass().desiredAssertionStatus()) {
 //      double verify = subject.measureStyle(monitor).getMean();
@@ -279,6 +432,8 @@ public class LBFGS extends OrientationStrategyBase<SimpleLineSearchCursor> {
   public synchronized void reset() {
     history.forEach(x -> x.freeRef());
     history.clear();
+    arenaPairs.clear();
+    if (null != compactHistory) compactHistory.clear();
   }
 
   @Override
@@ -286,6 +441,32 @@ public class LBFGS extends OrientationStrategyBase<SimpleLineSearchCursor> {
     for (@Nonnull PointSample pointSample : history) {
       pointSample.freeRef();
     }
+    arenaPairs.clear();
+  }
+
+  /**
+   * The flattened s/y difference between two neighbouring history points, with the products the recursion reuses.
+   */
+  private static final class ArenaPair {
+    @Nonnull
+    private final PointSample previous;
+    @Nonnull
+    private final double[] s;
+    @Nonnull
+    private final double[] y;
+    private final double sy;
+    private final double yy;
+
+    private ArenaPair(@Nonnull final ParameterArena<UUID> arena, @Nonnull final PointSample previous, @Nonnull final PointSample next) {
+      this.previous = previous;
+      this.s = arena.difference(next.weights, previous.weights);
+      this.y = arena.difference(next.delta, previous.delta);
+      this.sy = ParameterArena.dot(s, y);
+      this.yy = ParameterArena.sumSq(y);
+      if (0 == sy) {
+        throw new IllegalStateException("Orientation vanished.");
+      }
+    }
   }
 
   private class Stats {
@@ -23,6 +23,7 @@ import com.simiacryptus.mindseye.eval.Trainable;
 import com.simiacryptus.mindseye.lang.DeltaSet;
 import com.simiacryptus.mindseye.lang.DoubleBuffer;
 import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.ParameterArena;
 import com.simiacryptus.mindseye.lang.PointSample;
 import com.simiacryptus.mindseye.opt.TrainingMonitor;
 import com.simiacryptus.mindseye.opt.line.LineSearchCursor;
@@ -30,6 +31,7 @@ import com.simiacryptus.mindseye.opt.line.SimpleLineSearchCursor;
 import com.simiacryptus.util.ArrayUtil;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.UUID;
 
 /**
@@ -48,6 +50,11 @@ public class MomentumStrategy extends OrientationStrategyBase<SimpleLineSearchCu
   @Nonnull
   DeltaSet<UUID> prevDelta = new DeltaSet<UUID>();
   private double carryOver = 0.1;
+  private boolean useArena = false;
+  @Nullable
+  private ParameterArena<UUID> prevArena = null;
+  @Nullable
+  private double[] prevFlat = null;
 
   /**
    * Instantiates a new Momentum strategy.
@@ -84,11 +91,49 @@ public class MomentumStrategy extends OrientationStrategyBase<SimpleLineSearchCu
     return this;
   }
 
+  /**
+   * Is use arena boolean.
+   *
+   * @return whether the momentum term is kept as a flat vector in a {@link ParameterArena}
+   */
+  public boolean isUseArena() {
+    return useArena;
+  }
+
+  /**
+   * Sets use arena. When set, the previous step is kept as one flat vector and each step is a single scaled add over
+   * it. The momentum restarts from zero whenever the inner direction's layout changes.
+   *
+   * @param useArena the use arena
+   * @return the use arena
+   */
+  @Nonnull
+  public MomentumStrategy setUseArena(final boolean useArena) {
+    this.useArena = useArena;
+    return this;
+  }
+
   @Nonnull
   @Override
   public SimpleLineSearchCursor orient(final Trainable subject, @Nonnull final PointSample measurement, final TrainingMonitor monitor) {
     final LineSearchCursor orient = inner.orient(subject, measurement, monitor);
     final DeltaSet<UUID> direction = ((SimpleLineSearchCursor) orient).direction;
+    if (useArena) {
+      if (null == prevArena || !prevArena.matches(direction)) {
+        prevArena = new ParameterArena<>(direction);
+        prevFlat = null;
+      }
+      @Nonnull final double[] flat = prevArena.gather(direction);
+      orient.freeRef();
+      if (null != prevFlat) ParameterArena.axpy(carryOver, prevFlat, flat);
+      prevFlat = flat;
+      @Nonnull final DeltaSet<UUID> newDelta = prevArena.toDeltaSet(flat);
+      try {
+        return new SimpleLineSearchCursor(subject, measurement, newDelta);
+      } finally {
+        newDelta.freeRef();
+      }
+    }
     @Nonnull final DeltaSet<UUID> newDelta = new DeltaSet<UUID>();
     direction.getMap().forEach((layer, delta) -> {
       final DoubleBuffer<UUID> prevBuffer = prevDelta.get(layer, delta.target);
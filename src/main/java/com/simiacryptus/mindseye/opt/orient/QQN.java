@@ -22,6 +22,7 @@ package com.simiacryptus.mindseye.opt.orient;
 import com.simiacryptus.mindseye.eval.Trainable;
 import com.simiacryptus.mindseye.lang.DeltaSet;
 import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.ParameterArena;
 import com.simiacryptus.mindseye.lang.PointSample;
 import com.simiacryptus.mindseye.opt.TrainingMonitor;
 import com.simiacryptus.mindseye.opt.line.LineSearchCursor;
@@ -46,6 +47,7 @@ public class QQN extends OrientationStrategyBase<LineSearchCursor> {
    */
   public static final String CURSOR_NAME = "QQN";
   private final LBFGS inner = new LBFGS();
+  private boolean useArena = false;
 
   /**
    * Gets max history.
@@ -89,6 +91,30 @@ public class QQN extends OrientationStrategyBase<LineSearchCursor> {
     return this;
   }
 
+  /**
+   * Is use arena boolean.
+   *
+   * @return whether the orientation and the quadratic path run on flat vectors gathered through a {@link ParameterArena}
+   */
+  public boolean isUseArena() {
+    return useArena;
+  }
+
+  /**
+   * Sets use arena. When set, the inner LBFGS recursion runs on flat vectors, and the quadratic cursor gathers its two
+   * directions once so that each position and tangent is a pair of flat scaled adds rather than several DeltaSet
+   * allocations.
+   *
+   * @param useArena the use arena
+   * @return the use arena
+   */
+  @Nonnull
+  public QQN setUseArena(final boolean useArena) {
+    this.useArena = useArena;
+    inner.setUseArena(useArena);
+    return this;
+  }
+
   @Override
   public LineSearchCursor orient(@Nonnull final Trainable subject, @Nonnull final PointSample origin, @Nonnull final TrainingMonitor monitor) {
     inner.addToHistory(origin, monitor);
@@ -98,8 +124,13 @@ public class QQN extends OrientationStrategyBase<LineSearchCursor> {
     final double lbfgsMag = lbfgs.getMagnitude();
     final double gdMag = gd.getMagnitude();
     if (Math.abs(lbfgsMag - gdMag) / (lbfgsMag + gdMag) > 1e-2) {
-      @Nonnull final DeltaSet<UUID> scaledGradient = gd.scale(lbfgsMag / gdMag);
       monitor.log(String.format("Returning Quadratic Cursor %s GD, %s QN", gdMag, lbfgsMag));
+      if (useArena) {
+        @Nonnull final LineSearchCursor cursor = arenaCursor(subject, origin, lbfgsCursor, gd, lbfgsMag / gdMag);
+        gd.freeRef();
+        return cursor;
+      }
+      @Nonnull final DeltaSet<UUID> scaledGradient = gd.scale(lbfgsMag / gdMag);
       gd.freeRef();
       return new LineSearchCursorBase() {
 
@@ -145,6 +176,59 @@ public class QQN extends OrientationStrategyBase<LineSearchCursor> {
     }
   }
 
+  @Nonnull
+  private LineSearchCursor arenaCursor(@Nonnull final Trainable subject, @Nonnull final PointSample origin, @Nonnull final SimpleLineSearchCursor lbfgsCursor, @Nonnull final DeltaSet<UUID> gd, final double gradientScale) {
+    @Nonnull final ParameterArena<UUID> arena = new ParameterArena<>(origin.delta);
+    @Nonnull final double[] scaledGradient = arena.gather(gd);
+    ParameterArena.scale(gradientScale, scaledGradient);
+    @Nonnull final double[] quasinewton = arena.gather(lbfgsCursor.direction);
+    return new LineSearchCursorBase() {
+
+      @Nonnull
+      @Override
+      public CharSequence getDirectionType() {
+        return CURSOR_NAME;
+      }
+
+      @Override
+      public DeltaSet<UUID> position(final double t) {
+        if (!Double.isFinite(t)) throw new IllegalArgumentException();
+        return arena.toDeltaSet(blend(t - t * t, t * t));
+      }
+
+      @Override
+      public void reset() {
+        lbfgsCursor.reset();
+      }
+
+      @Nonnull
+      @Override
+      public LineSearchPoint step(final double t, @Nonnull final TrainingMonitor monitor) {
+        if (!Double.isFinite(t)) throw new IllegalArgumentException();
+        reset();
+        @Nonnull final DeltaSet<UUID> position = position(t);
+        position.accumulate(1);
+        position.freeRef();
+        @Nonnull final PointSample sample = subject.measure(monitor).setRate(t);
+        inner.addToHistory(sample, monitor);
+        return new LineSearchPoint(sample, ParameterArena.dot(blend(1 - 2 * t, 2 * t), arena.gather(sample.delta)));
+      }
+
+      @Nonnull
+      private double[] blend(final double gradientWeight, final double quasinewtonWeight) {
+        @Nonnull final double[] flat = new double[arena.length()];
+        ParameterArena.axpy(gradientWeight, scaledGradient, flat);
+        ParameterArena.axpy(quasinewtonWeight, quasinewton, flat);
+        return flat;
+      }
+
+      @Override
+      public void _free() {
+        lbfgsCursor.freeRef();
+      }
+    };
+  }
+
   @Override
   public void reset() {
     inner.reset();
@@ -33,6 +33,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.awt.image.BufferedImage;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.KeyManagementException;
@@ -113,5 +114,16 @@ public class CIFAR10 {
     return CIFAR10.training.stream();
   }
 
+  /**
+   * Gets the training data as a memory-mapped data set, converting it into the given file on first use.
+   *
+   * @param file the file
+   * @return the mapped dataset
+   */
+  @Nonnull
+  public static MappedDataset trainingDataset(@Nonnull final File file) {
+    return MappedDataset.cached(file, CIFAR10::trainingDataStream, new int[]{32, 32, 3}, MappedDataset.Encoding.UnsignedByte);
+  }
+
 
 }
@@ -20,6 +20,7 @@
 package com.simiacryptus.mindseye.test.data;
 
 import com.simiacryptus.lang.SupplierWeakCache;
+import com.simiacryptus.mindseye.lang.Tensor;
 import com.simiacryptus.mindseye.test.TestUtil;
 import com.simiacryptus.util.Util;
 import com.simiacryptus.util.io.DataLoader;
@@ -31,6 +32,7 @@ import javax.annotation.Nullable;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.KeyManagementException;
@@ -110,5 +112,21 @@ public class Caltech101 {
     return Caltech101.training.stream();
   }
 
+  /**
+   * Gets the training data, resized to square images, as a memory-mapped data set, converting it into the given file on
+   * first use. Decoding and resizing the JPEG images is by far the slowest part of loading this set, so the converted
+   * file should be kept per image size.
+   *
+   * @param file      the file
+   * @param imageSize the image size
+   * @return the mapped dataset
+   */
+  @Nonnull
+  public static MappedDataset trainingDataset(@Nonnull final File file, final int imageSize) {
+    return MappedDataset.cachedAndFree(file,
+        () -> Caltech101.trainingDataStream().map(x -> x.map(y -> Tensor.fromRGB(TestUtil.resize(y.get(), imageSize)))),
+        new int[]{imageSize, imageSize, 3}, MappedDataset.Encoding.UnsignedByte);
+  }
+
 
 }
@@ -168,4 +168,26 @@ public class MNIST {
     return MNIST.validation.stream();
   }
 
+  /**
+   * Gets the training data as a memory-mapped data set, converting it into the given file on first use.
+   *
+   * @param file the file
+   * @return the mapped dataset
+   */
+  @Nonnull
+  public static MappedDataset trainingDataset(@Nonnull final File file) {
+    return MappedDataset.cached(file, MNIST::trainingDataStream, new int[]{28, 28, 1}, MappedDataset.Encoding.UnsignedByte);
+  }
+
+  /**
+   * Gets the validation data as a memory-mapped data set, converting it into the given file on first use.
+   *
+   * @param file the file
+   * @return the mapped dataset
+   */
+  @Nonnull
+  public static MappedDataset validationDataset(@Nonnull final File file) {
+    return MappedDataset.cached(file, MNIST::validationDataStream, new int[]{28, 28, 1}, MappedDataset.Encoding.UnsignedByte);
+  }
+
 }
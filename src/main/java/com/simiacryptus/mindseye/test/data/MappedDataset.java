@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.test.data;
+
+import com.simiacryptus.mindseye.lang.ContiguousTensorList;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.util.test.LabeledObject;
+
+import javax.annotation.Nonnull;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A labeled data set stored as uncompressed fixed-size records and read through a memory mapping. Converting a data set
+ * once with {@link #write} replaces the download, decompression and per-image decoding done by loaders such as
+ * {@link MNIST} with a mapping of the prepared file: opening is immediate, pages are faulted in as records are used,
+ * and each tensor or batch is decoded straight from the mapping into its own array.
+ * <p>
+ * The file is big-endian: a {@link #HEADER_SIZE} byte header (magic, version, encoding, rank, up to {@link #MAX_RANK}
+ * dims, record count, footer offset), the records (a label index followed by the values), and a footer listing the
+ * label names.
+ */
+public class MappedDataset {
+  /**
+   * The file magic number.
+   */
+  public static final int MAGIC = 0x4D445331;
+  /**
+   * The format version.
+   */
+  public static final int VERSION = 1;
+  /**
+   * The header size, which is also the offset of the first record.
+   */
+  public static final int HEADER_SIZE = 64;
+  /**
+   * The maximum number of dimensions of a record.
+   */
+  public static final int MAX_RANK = 8;
+
+  @Nonnull
+  private final Encoding encoding;
+  @Nonnull
+  private final int[] dims;
+  private final int elementLength;
+  private final int recordSize;
+  private final int count;
+  private final int recordsPerSegment;
+  @Nonnull
+  private final ByteBuffer[] segments;
+  @Nonnull
+  private final List<String> labels;
+
+  private MappedDataset(@Nonnull final FileChannel channel) throws IOException {
+    @Nonnull final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (header.hasRemaining()) {
+      if (channel.read(header, header.position()) < 0) throw new EOFException();
+    }
+    header.flip();
+    if (header.getInt() != MAGIC) throw new IOException("Not a dataset file");
+    if (header.getInt() != VERSION) throw new IOException("Unsupported dataset version");
+    this.encoding = Encoding.values()[header.getInt()];
+    this.dims = new int[header.getInt()];
+    for (int i = 0; i < MAX_RANK; i++) {
+      final int dim = header.getInt();
+      if (i < dims.length) dims[i] = dim;
+    }
+    this.count = header.getInt();
+    final long footer = header.getLong();
+    this.elementLength = Tensor.length(dims);
+    this.recordSize = 4 + elementLength * encoding.size;
+    this.recordsPerSegment = Math.max(1, Integer.MAX_VALUE / recordSize);
+    this.segments = new ByteBuffer[(count + recordsPerSegment - 1) / recordsPerSegment];
+    for (int s = 0; s < segments.length; s++) {
+      final int records = Math.min(recordsPerSegment, count - s * recordsPerSegment);
+      segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + (long) s * recordsPerSegment * recordSize, (long) records * recordSize);
+    }
+    try (@Nonnull DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(footer))))) {
+      @Nonnull final String[] names = new String[in.readInt()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = in.readUTF();
+      }
+      this.labels = Collections.unmodifiableList(Arrays.asList(names));
+    }
+  }
+
+  /**
+   * Opens a data set file. The mapping stays valid after the file is closed, so the returned object holds no file
+   * handle.
+   *
+   * @param file the file
+   * @return the mapped dataset
+   */
+  @Nonnull
+  public static MappedDataset open(@Nonnull final File file) {
+    try (@Nonnull FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+      return new MappedDataset(channel);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Opens a data set file, first converting the source data into it if the file does not exist.
+   *
+   * @param file     the file
+   * @param source   the source data
+   * @param dims     the dims of each record
+   * @param encoding the encoding
+   * @return the mapped dataset
+   */
+  @Nonnull
+  public static MappedDataset cached(@Nonnull final File file, @Nonnull final Supplier<Stream<LabeledObject<Tensor>>> source,
+                                     @Nonnull final int[] dims, @Nonnull final Encoding encoding) {
+    return cached(file, source, dims, encoding, false);
+  }
+
+  /**
+   * Opens a data set file, first converting the source data into it if the file does not exist. Each source tensor is
+   * freed once it is written, so the source may produce new tensors which nothing else holds.
+   *
+   * @param file     the file
+   * @param source   the source data
+   * @param dims     the dims of each record
+   * @param encoding the encoding
+   * @return the mapped dataset
+   */
+  @Nonnull
+  public static MappedDataset cachedAndFree(@Nonnull final File file, @Nonnull final Supplier<Stream<LabeledObject<Tensor>>> source,
+                                            @Nonnull final int[] dims, @Nonnull final Encoding encoding) {
+    return cached(file, source, dims, encoding, true);
+  }
+
+  @Nonnull
+  private static MappedDataset cached(@Nonnull final File file, @Nonnull final Supplier<Stream<LabeledObject<Tensor>>> source,
+                                      @Nonnull final int[] dims, @Nonnull final Encoding encoding, final boolean free) {
+    if (!file.exists()) {
+      @Nonnull final File temp = new File(file.getPath() + ".tmp");
+      write(temp, source.get(), dims, encoding, free);
+      if (!temp.renameTo(file)) throw new RuntimeException("Could not create " + file);
+    }
+    return open(file);
+  }
+
+  /**
+   * Converts a stream of labeled tensors into a data set file. The tensors are not freed.
+   *
+   * @param file     the file
+   * @param data     the data
+   * @param dims     the dims of each record
+   * @param encoding the encoding
+   */
+  public static void write(@Nonnull final File file, @Nonnull final Stream<LabeledObject<Tensor>> data,
+                           @Nonnull final int[] dims, @Nonnull final Encoding encoding) {
+    write(file, data, dims, encoding, false);
+  }
+
+  /**
+   * Converts a stream of labeled tensors into a data set file, freeing each tensor once it is written.
+   *
+   * @param file     the file
+   * @param data     the data
+   * @param dims     the dims of each record
+   * @param encoding the encoding
+   */
+  public static void writeAndFree(@Nonnull final File file, @Nonnull final Stream<LabeledObject<Tensor>> data,
+                                  @Nonnull final int[] dims, @Nonnull final Encoding encoding) {
+    write(file, data, dims, encoding, true);
+  }
+
+  private static void write(@Nonnull final File file, @Nonnull final Stream<LabeledObject<Tensor>> data,
+                            @Nonnull final int[] dims, @Nonnull final Encoding encoding, final boolean free) {
+    if (dims.length > MAX_RANK) throw new IllegalArgumentException(Arrays.toString(dims));
+    final int elementLength = Tensor.length(dims);
+    @Nonnull final Map<String, Integer> labels = new LinkedHashMap<>();
+    final int[] count = {0};
+    try (@Nonnull RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(0);
+      @Nonnull final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(raf.getFD()), 1 << 16));
+      out.write(new byte[HEADER_SIZE]);
+      data.sequential().forEachOrdered(item -> {
+        if (!Arrays.equals(dims, item.data.getDimensions()))
+          throw new IllegalArgumentException(Arrays.toString(item.data.getDimensions()) + " != " + Arrays.toString(dims));
+        try {
+          out.writeInt(labels.computeIfAbsent(item.label, x -> labels.size()));
+          final double[] values = item.data.getData();
+          for (int i = 0; i < elementLength; i++) {
+            encoding.write(out, values[i]);
+          }
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        } finally {
+          if (free) item.data.freeRef();
+        }
+        count[0]++;
+      });
+      final long footer = HEADER_SIZE + (long) count[0] * (4 + elementLength * encoding.size);
+      out.writeInt(labels.size());
+      for (@Nonnull String label : labels.keySet()) {
+        out.writeUTF(label);
+      }
+      out.flush();
+      @Nonnull final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).putInt(encoding.ordinal()).putInt(dims.length);
+      for (int i = 0; i < MAX_RANK; i++) {
+        header.putInt(i < dims.length ? dims[i] : 0);
+      }
+      header.putInt(count[0]).putLong(footer);
+      raf.seek(0);
+      raf.write(header.array());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Gets the number of records.
+   *
+   * @return the int
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Get the dims of each record.
+   *
+   * @return the int [ ]
+   */
+  @Nonnull
+  public int[] getDimensions() {
+    return Arrays.copyOf(dims, dims.length);
+  }
+
+  /**
+   * Gets the label names, in order of first appearance.
+   *
+   * @return the labels
+   */
+  @Nonnull
+  public List<String> getLabels() {
+    return labels;
+  }
+
+  /**
+   * Gets the encoding.
+   *
+   * @return the encoding
+   */
+  @Nonnull
+  public Encoding getEncoding() {
+    return encoding;
+  }
+
+  /**
+   * Gets a record's label index into {@link #getLabels()}.
+   *
+   * @param index the record index
+   * @return the label index
+   */
+  public int getLabelIndex(final int index) {
+    return segments[index / recordsPerSegment].getInt((index % recordsPerSegment) * recordSize);
+  }
+
+  /**
+   * Gets a record's label.
+   *
+   * @param index the record index
+   * @return the label
+   */
+  @Nonnull
+  public String getLabel(final int index) {
+    return labels.get(getLabelIndex(index));
+  }
+
+  /**
+   * Decodes a record into a new tensor.
+   *
+   * @param index the record index
+   * @return the tensor
+   */
+  @Nonnull
+  public Tensor get(final int index) {
+    @Nonnull final Tensor tensor = new Tensor(dims);
+    read(index, tensor.getData(), 0);
+    return tensor;
+  }
+
+  /**
+   * Decodes a set of records into one contiguous batch, in the given order.
+   *
+   * @param indices the record indices
+   * @return the batch
+   */
+  @Nonnull
+  public ContiguousTensorList getBatch(@Nonnull final int... indices) {
+    @Nonnull final ContiguousTensorList batch = new ContiguousTensorList(indices.length, dims);
+    final double[] block = batch.getData();
+    IntStream.range(0, indices.length).parallel().forEach(i -> read(indices[i], block, batch.offset(i)));
+    return batch;
+  }
+
+  /**
+   * Streams the records as labeled tensors, decoding each as it is reached.
+   *
+   * @return the stream
+   */
+  @Nonnull
+  public Stream<LabeledObject<Tensor>> stream() {
+    return IntStream.range(0, count).mapToObj(i -> new LabeledObject<>(get(i), getLabel(i)));
+  }
+
+  private void read(final int index, @Nonnull final double[] target, final int offset) {
+    if (index < 0 || index >= count) throw new IndexOutOfBoundsException(Integer.toString(index));
+    final ByteBuffer segment = segments[index / recordsPerSegment];
+    final int position = (index % recordsPerSegment) * recordSize + 4;
+    encoding.read(segment, position, target, offset, elementLength);
+  }
+
+  /**
+   * The per-value encoding of a data set.
+   */
+  public enum Encoding {
+    /**
+     * Values rounded and clamped to 0..255, stored in one byte. Exact for 8-bit image data.
+     */
+    UnsignedByte(1) {
+      @Override
+      void write(@Nonnull final DataOutputStream out, final double value) throws IOException {
+        out.writeByte((int) Math.max(0, Math.min(255, Math.round(value))));
+      }
+
+      @Override
+      void read(@Nonnull final ByteBuffer buffer, final int position, @Nonnull final double[] target, final int offset, final int length) {
+        for (int i = 0; i < length; i++) {
+          target[offset + i] = buffer.get(position + i) & 0xFF;
+        }
+      }
+    },
+    /**
+     * Values stored as 32-bit floats.
+     */
+    Float(4) {
+      @Override
+      void write(@Nonnull final DataOutputStream out, final double value) throws IOException {
+        out.writeFloat((float) value);
+      }
+
+      @Override
+      void read(@Nonnull final ByteBuffer buffer, final int position, @Nonnull final double[] target, final int offset, final int length) {
+        for (int i = 0; i < length; i++) {
+          target[offset + i] = buffer.getFloat(position + 4 * i);
+        }
+      }
+    };
+
+    /**
+     * The number of bytes per value.
+     */
+    public final int size;
+
+    Encoding(final int size) {
+      this.size = size;
+    }
+
+    /**
+     * Writes one value.
+     *
+     * @param out   the out
+     * @param value the value
+     * @throws IOException the io exception
+     */
+    abstract void write(@Nonnull DataOutputStream out, double value) throws IOException;
+
+    /**
+     * Decodes consecutive values from a buffer using absolute positions, so concurrent readers may share the buffer.
+     *
+     * @param buffer   the buffer
+     * @param position the position
+     * @param target   the target
+     * @param offset   the offset
+     * @param length   the length
+     */
+    abstract void read(@Nonnull ByteBuffer buffer, int position, @Nonnull double[] target, int offset, int length);
+  }
+}
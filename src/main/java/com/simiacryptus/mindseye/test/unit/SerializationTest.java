@@ -39,8 +39,6 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.GZIPOutputStream;
-import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
 
 /**
  * The type Json apply.
@@ -112,7 +110,7 @@ public class SerializationTest extends ComponentTestBase<ToleranceStatistics> {
         try {
           @Nonnull File file = new File(log.getResourceDir(), log.getName() + "_" + precision.name() + ".zip");
           layer.writeZip(file, precision);
-          @Nonnull final Layer echo = Layer.fromZip(new ZipFile(file));
+          @Nonnull final Layer echo = Layer.fromZip(file);
           getModels().put(precision, echo);
           synchronized (outSync) {
             log.h2(String.format("Zipfile %s", precision.name()));
@@ -126,10 +124,6 @@ public class SerializationTest extends ComponentTestBase<ToleranceStatistics> {
           e.printStackTrace();
         } catch (OutOfMemoryError e) {
           e.printStackTrace();
-        } catch (ZipException e) {
-          e.printStackTrace();
-        } catch (IOException e) {
-          e.printStackTrace();
         }
       });
 
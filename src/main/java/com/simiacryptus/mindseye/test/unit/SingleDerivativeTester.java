@@ -20,7 +20,10 @@
 package com.simiacryptus.mindseye.test.unit;
 
 import com.simiacryptus.mindseye.lang.*;
+import com.simiacryptus.mindseye.layers.java.JavaMultiPrecision;
+import com.simiacryptus.mindseye.layers.java.JavaPrecision;
 import com.simiacryptus.mindseye.layers.java.PlaceholderLayer;
+import com.simiacryptus.mindseye.network.DAGNetwork;
 import com.simiacryptus.mindseye.test.SimpleEval;
 import com.simiacryptus.mindseye.test.ToleranceStatistics;
 import com.simiacryptus.notebook.NotebookOutput;
@@ -63,6 +66,35 @@ public class SingleDerivativeTester extends ComponentTestBase<ToleranceStatistic
     this.probeSize = probeSize;
   }
 
+  /**
+   * Gets the tolerance for a component. A finite difference taken in single precision carries a rounding error of
+   * about one float ulp divided by the probe size, so components with any single-precision layer are held to at most
+   * that.
+   *
+   * @param component the component
+   * @return the tolerance
+   */
+  public double getTolerance(@Nonnull final Layer component) {
+    if (!isSinglePrecision(component)) return tolerance;
+    return Math.max(tolerance, 10 * Math.ulp(1.0f) / probeSize);
+  }
+
+  private static boolean isSinglePrecision(@Nonnull final Layer component) {
+    if (component instanceof JavaMultiPrecision<?> && JavaPrecision.Float == ((JavaMultiPrecision<?>) component).getPrecision()) {
+      return true;
+    }
+    if (component instanceof DAGNetwork) {
+      @Nonnull final AtomicBoolean found = new AtomicBoolean(false);
+      ((DAGNetwork) component).visitLayers(layer -> {
+        if (layer instanceof JavaMultiPrecision<?> && JavaPrecision.Float == ((JavaMultiPrecision<?>) layer).getPrecision()) {
+          found.set(true);
+        }
+      });
+      return found.get();
+    }
+    return false;
+  }
+
   @Nonnull
   private Tensor getFeedbackGradient(@Nonnull final Layer component, final int inputIndex, @Nonnull final Tensor outputPrototype, @Nonnull final Tensor... inputPrototype) {
     final Tensor inputTensor = inputPrototype[inputIndex];
@@ -394,7 +426,7 @@ public class SingleDerivativeTester extends ComponentTestBase<ToleranceStatistic
         final ToleranceStatistics result = IntStream.range(0, null == measuredGradient ? 0 : measuredGradient.length()).mapToObj(i1 -> {
           return new ToleranceStatistics().accumulate(measuredGradient.getData()[i1], implementedGradient.getData()[i1]);
         }).reduce((a, b) -> a.combine(b)).orElse(new ToleranceStatistics());
-        if (!(result.absoluteTol.getMax() < tolerance)) {
+        if (!(result.absoluteTol.getMax() < getTolerance(component))) {
           throw new AssertionError(result.toString());
         } else {
           //log.info(String.format("Component: %s", component));
@@ -455,7 +487,7 @@ public class SingleDerivativeTester extends ComponentTestBase<ToleranceStatistic
           return new ToleranceStatistics().accumulate(measuredGradient.getData()[i1], implementedGradient.getData()[i1]);
         }).reduce((a, b) -> a.combine(b)).orElse(new ToleranceStatistics());
 
-        if (!(result.absoluteTol.getMax() < tolerance)) throw new AssertionError(result.toString());
+        if (!(result.absoluteTol.getMax() < getTolerance(component))) throw new AssertionError(result.toString());
         //log.info(String.format("Component: %s", component));
         if (verbose) {
           log.info(String.format("Feedback for input %s", i));
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.eval;
+
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.Result;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.layers.java.FullyConnectedLayer;
+import com.simiacryptus.mindseye.layers.java.LinearActivationLayer;
+import com.simiacryptus.mindseye.layers.java.MeanSqLossLayer;
+import com.simiacryptus.mindseye.network.PipelineNetwork;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+import com.simiacryptus.mindseye.test.RegressionProblem;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The type Batched trainable test.
+ */
+public class BatchedTrainableTest {
+
+  /**
+   * Test concurrent batch evaluation matches sequential evaluation, including an uneven final batch and more permits
+   * than batches.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testParallelMatchesSequential() {
+    @Nonnull RegressionProblem problem = RegressionProblem.random(37);
+    @Nonnull ArrayTrainable sequential = new ArrayTrainable(problem.data, problem.network, 5);
+    try {
+      PointSample expected = sequential.measure(new TrainingMonitor());
+      Assert.assertEquals(37, expected.count);
+      for (final int parallelism : new int[]{2, 4, 16}) {
+        @Nonnull ArrayTrainable parallel = new ArrayTrainable(problem.data, problem.network, 5);
+        parallel.setMaxParallelism(parallelism);
+        PointSample actual = parallel.measure(new TrainingMonitor());
+        RegressionProblem.assertEquivalent(expected, actual, 1e-9);
+        actual.freeRef();
+        parallel.freeRef();
+      }
+      expected.freeRef();
+    } finally {
+      sequential.freeRef();
+      problem.freeRef();
+    }
+  }
+
+  /**
+   * Test the number of batches in flight is bounded by the memory budget as well as the configured parallelism.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testMemoryBudget() {
+    @Nonnull RegressionProblem problem = RegressionProblem.random(10);
+    @Nonnull ArrayTrainable trainable = new ArrayTrainable(problem.data, problem.network, 5);
+    try {
+      // Each batch of 5 rows holds 5 * 9 doubles of input
+      final long batchBytes = 5 * 9 * 8 * 16;
+      Assert.assertEquals(1, trainable.getParallelism(Arrays.asList(problem.rows(0, 5))));
+      trainable.setMaxParallelism(8);
+      Assert.assertEquals(8, trainable.getParallelism(Arrays.asList(problem.rows(0, 5))));
+      trainable.setMemoryBudget(3 * batchBytes);
+      Assert.assertEquals(3, trainable.getParallelism(Arrays.asList(problem.rows(0, 5))));
+      trainable.setMemoryBudget(batchBytes / 2);
+      Assert.assertEquals(1, trainable.getParallelism(Arrays.asList(problem.rows(0, 5))));
+      PointSample sample = trainable.measure(new TrainingMonitor());
+      Assert.assertEquals(10, sample.count);
+      sample.freeRef();
+    } finally {
+      trainable.freeRef();
+      problem.freeRef();
+    }
+  }
+
+  /**
+   * Test a failing batch is rethrown without leaving permits or work behind: the same trainable evaluates normally
+   * once the failing rows are removed.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testFailedBatch() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor[][] data = RegressionProblem.randomRows(random, 37);
+    data[17][0].set(0, Double.NaN);
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    network.wrap(new MeanSqLossLayer(),
+        network.wrap(new LinearActivationLayer() {
+          @Override
+          public Result eval(final Result... inObj) {
+            if (inObj[0].getData().stream().anyMatch(tensor -> {
+              final boolean poisoned = Double.isNaN(tensor.get(0));
+              tensor.freeRef();
+              return poisoned;
+            })) throw new IllegalStateException("Poisoned batch");
+            return super.eval(inObj);
+          }
+        }, network.wrap(new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian()), network.getInput(0))),
+        network.getInput(1)).freeRef();
+    @Nonnull ArrayTrainable trainable = new ArrayTrainable(data, network, 5);
+    trainable.setMaxParallelism(4);
+    try {
+      try {
+        trainable.measure(new TrainingMonitor()).freeRef();
+        Assert.fail();
+      } catch (RuntimeException e) {
+        // Expected
+      }
+      trainable.setTrainingData(Arrays.stream(data).filter(row -> !Double.isNaN(row[0].get(0))).toArray(i -> new Tensor[i][]));
+      PointSample sample = trainable.measure(new TrainingMonitor());
+      Assert.assertEquals(36, sample.count);
+      sample.freeRef();
+    } finally {
+      trainable.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+}
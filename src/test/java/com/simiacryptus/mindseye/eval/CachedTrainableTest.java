@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.eval;
+
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.layers.java.BiasLayer;
+import com.simiacryptus.mindseye.layers.java.MeanSqLossLayer;
+import com.simiacryptus.mindseye.network.PipelineNetwork;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * The type Cached trainable test.
+ */
+public class CachedTrainableTest {
+
+  /**
+   * Test a probe returning to earlier weights hits the cache, and eviction is least-recently-used.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testRevisit() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor[][] data = IntStream.range(0, 10).mapToObj(i -> new Tensor[]{
+        new Tensor(3).set(() -> random.nextGaussian()),
+        new Tensor(3).set(() -> random.nextGaussian())
+    }).toArray(i -> new Tensor[i][]);
+    @Nonnull BiasLayer bias = new BiasLayer(3);
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    network.wrap(new MeanSqLossLayer(), network.add(bias, network.getInput(0)), network.getInput(1)).freeRef();
+    @Nonnull AtomicInteger evaluations = new AtomicInteger();
+    @Nonnull ArrayTrainable inner = new ArrayTrainable(data, network);
+    @Nonnull CachedTrainable<ArrayTrainable> trainable = new CachedTrainable<>(inner).setHistorySize(2).setVerbose(false);
+    @Nonnull TrainingMonitor monitor = new TrainingMonitor() {
+      @Override
+      public void log(final String msg) {
+        evaluations.incrementAndGet();
+      }
+    };
+    inner.setVerbose(true);
+    try {
+      double[] weights = bias.state().get(0);
+      double[] start = Arrays.copyOf(weights, weights.length);
+      double first = measure(trainable, monitor);
+      for (double step : new double[]{0.1, 0.2}) {
+        Arrays.setAll(weights, i -> start[i] + step);
+        measure(trainable, monitor);
+      }
+      Assert.assertEquals(3, evaluations.get());
+      Arrays.setAll(weights, i -> start[i] + 0.2);
+      measure(trainable, monitor);
+      Assert.assertEquals(3, evaluations.get());
+      System.arraycopy(start, 0, weights, 0, weights.length);
+      Assert.assertEquals(first, measure(trainable, monitor), 0.0);
+      Assert.assertEquals(4, evaluations.get());
+    } finally {
+      trainable.freeRef();
+      inner.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  private static double measure(@Nonnull final Trainable trainable, @Nonnull final TrainingMonitor monitor) {
+    PointSample sample = trainable.measure(monitor);
+    double mean = sample.getMean();
+    sample.freeRef();
+    return mean;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.eval;
+
+import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+import com.simiacryptus.mindseye.test.RegressionProblem;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * The type Data parallel trainable test.
+ */
+public class DataParallelTrainableTest {
+
+  /**
+   * Test sharded evaluation matches a single evaluation over all the data, with uneven shards and with fewer rows than
+   * workers.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testInProcess() {
+    test(network -> DataParallelTrainable.inProcess(network, 4));
+  }
+
+  /**
+   * Test shards evaluated in worker JVMs, with the model and weights sent over their sockets, match a single evaluation
+   * over all the data.
+   */
+  @Test(timeout = 300000)
+  @Category(TestCategories.UnitTest.class)
+  public void testMultiProcess() {
+    test(network -> DataParallelTrainable.multiProcess(network, 2));
+  }
+
+  private void test(@Nonnull final Function<Layer, DataParallelTrainable> factory) {
+    @Nonnull RegressionProblem problem = RegressionProblem.random(23);
+    @Nonnull BasicTrainable reference = new BasicTrainable(problem.network);
+    @Nonnull DataParallelTrainable parallel = factory.apply(problem.network);
+    try {
+      for (final int rows : new int[]{23, 1}) {
+        reference.setData(Arrays.asList(problem.rows(0, rows)));
+        parallel.setData(Arrays.asList(problem.rows(0, rows)));
+        PointSample expected = reference.measure(new TrainingMonitor());
+        PointSample actual = parallel.measure(new TrainingMonitor());
+        RegressionProblem.assertEquivalent(expected, actual, 1e-9);
+        expected.freeRef();
+        actual.freeRef();
+      }
+      // Weights changed on the coordinator are broadcast to the workers on the next measurement
+      Arrays.fill(problem.layer.state().get(0), 0.5);
+      PointSample expected = reference.measure(new TrainingMonitor());
+      PointSample actual = parallel.measure(new TrainingMonitor());
+      RegressionProblem.assertEquivalent(expected, actual, 1e-9);
+      expected.freeRef();
+      actual.freeRef();
+    } finally {
+      reference.freeRef();
+      parallel.freeRef();
+      problem.freeRef();
+    }
+  }
+}
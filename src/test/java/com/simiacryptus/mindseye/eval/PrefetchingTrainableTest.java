@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.eval;
+
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.layers.java.MeanSqLossLayer;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The type Prefetching trainable test.
+ */
+public class PrefetchingTrainableTest {
+
+  /**
+   * Test batches are drawn from the decoded rows, replaced on reseed and resized by setTrainingSize.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testPrefetch() {
+    @Nonnull AtomicInteger decoded = new AtomicInteger();
+    @Nonnull MeanSqLossLayer network = new MeanSqLossLayer();
+    @Nonnull PrefetchingTrainable trainable = new PrefetchingTrainable(
+        IntStream.range(0, 100).mapToObj(i -> (Supplier<Tensor[]>) () -> {
+          decoded.incrementAndGet();
+          return decode(i);
+        }).collect(Collectors.toList()),
+        row -> new Tensor[]{row[0].scale(2), row[1].copy()},
+        network, 10, 10, 2, 2);
+    try {
+      for (int i = 0; i < 5; i++) {
+        Tensor[][] data = trainable.getInner().getData();
+        Assert.assertEquals(10, data.length);
+        Assert.assertTrue(Arrays.stream(data).allMatch(row -> row[0].get(0) % 2 == 0 && row[0].get(0) < 200));
+        Assert.assertTrue(trainable.measure(new TrainingMonitor()).getMean() >= 0);
+        trainable.reseed(i);
+      }
+      trainable.setTrainingSize(20);
+      Assert.assertEquals(20, trainable.getInner().getData().length);
+      Assert.assertTrue(decoded.get() >= 70);
+    } finally {
+      trainable.freeRef();
+      network.freeRef();
+    }
+  }
+
+  /**
+   * Test rows decoded by the suppliers are released once their batch is replaced.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testDecodedRowsReleased() {
+    @Nonnull MeanSqLossLayer network = new MeanSqLossLayer();
+    @Nonnull PrefetchingTrainable trainable = new PrefetchingTrainable(
+        IntStream.range(0, 100).mapToObj(i -> (Supplier<Tensor[]>) () -> decode(i)).collect(Collectors.toList()),
+        null, network, 10, 10, 2, 2);
+    try {
+      @Nonnull Tensor[] first = Arrays.stream(trainable.getInner().getData()).flatMap(Arrays::stream).toArray(i -> new Tensor[i]);
+      Assert.assertTrue(Arrays.stream(first).noneMatch(Tensor::isFinalized));
+      trainable.reseed(1);
+      Assert.assertTrue(Arrays.stream(first).allMatch(Tensor::isFinalized));
+    } finally {
+      trainable.freeRef();
+      network.freeRef();
+    }
+  }
+
+  /**
+   * Test a failing supplier surfaces from reseed instead of blocking it.
+   */
+  @Test(timeout = 60000)
+  @Category(TestCategories.UnitTest.class)
+  public void testFailurePropagates() {
+    @Nonnull AtomicBoolean fail = new AtomicBoolean(false);
+    @Nonnull MeanSqLossLayer network = new MeanSqLossLayer();
+    @Nonnull PrefetchingTrainable trainable = new PrefetchingTrainable(
+        IntStream.range(0, 100).mapToObj(i -> (Supplier<Tensor[]>) () -> {
+          if (fail.get()) throw new IllegalStateException("Unreadable row " + i);
+          return decode(i);
+        }).collect(Collectors.toList()),
+        null, network, 10, 10, 1, 2);
+    try {
+      fail.set(true);
+      @Nullable RuntimeException failure = null;
+      for (int i = 0; i < 4 && null == failure; i++) {
+        try {
+          trainable.reseed(i);
+        } catch (RuntimeException e) {
+          failure = e;
+        }
+      }
+      Assert.assertNotNull(failure);
+      Assert.assertTrue(failure.getCause() instanceof IllegalStateException);
+      Assert.assertEquals(10, trainable.getInner().getData().length);
+    } finally {
+      trainable.freeRef();
+      network.freeRef();
+    }
+  }
+
+  @Nonnull
+  private static Tensor[] decode(final int i) {
+    return new Tensor[]{new Tensor(new double[]{i}, 1), new Tensor(new double[]{0}, 1)};
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The type Checkpoint chain test.
+ */
+public class CheckpointChainTest {
+
+  /**
+   * Test a chain of small updates replays to the latest weights, skips unchanged arrays and rebases periodically.
+   *
+   * @throws IOException the io exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testReplay() throws IOException {
+    @Nonnull File directory = Files.createTempDirectory("chain").toFile();
+    try {
+      @Nonnull Random random = new Random(0);
+      @Nonnull Map<String, double[]> weights = new LinkedHashMap<>();
+      weights.put("a/0", random.doubles(1000).toArray());
+      weights.put("b/0", random.doubles(10).toArray());
+      @Nonnull CheckpointChain chain = new CheckpointChain(directory, "test").setRebasePeriod(3);
+      Assert.assertTrue(chain.write(weights).getName().endsWith(".base.zip"));
+      for (int step = 1; step < 5; step++) {
+        Arrays.setAll(weights.get("a/0"), i -> weights.get("a/0")[i] + 1e-3 * random.nextGaussian());
+        @Nonnull File file = chain.write(weights);
+        Assert.assertEquals(step == 3, file.getName().endsWith(".base.zip"));
+        @Nonnull Map<String, double[]> replayed = CheckpointChain.replay(directory, "test", Integer.MAX_VALUE);
+        Assert.assertArrayEquals(weights.get("a/0"), replayed.get("a/0"), 1e-4);
+        Assert.assertArrayEquals(weights.get("b/0"), replayed.get("b/0"), 0.0);
+      }
+      Assert.assertNull(chain.write(weights));
+    } finally {
+      Arrays.stream(directory.listFiles()).forEach(File::delete);
+      directory.delete();
+    }
+  }
+
+  /**
+   * Test a failed write leaves the chain consistent: no file for replay to read, and the next checkpoint is taken
+   * against the last state actually written.
+   *
+   * @throws IOException the io exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testFailedWrite() throws IOException {
+    @Nonnull File directory = Files.createTempDirectory("chain").toFile();
+    @Nonnull File blocker = new File(directory, "test-000001.delta.zip.tmp");
+    try {
+      @Nonnull Random random = new Random(0);
+      @Nonnull Map<String, double[]> weights = new LinkedHashMap<>();
+      weights.put("a/0", random.doubles(100).toArray());
+      @Nonnull CheckpointChain chain = new CheckpointChain(directory, "test");
+      chain.write(weights);
+      Assert.assertTrue(new File(blocker, "block").mkdirs());
+      Arrays.setAll(weights.get("a/0"), i -> weights.get("a/0")[i] + 1e-3 * random.nextGaussian());
+      try {
+        chain.write(weights);
+        Assert.fail("Expected the write to fail");
+      } catch (RuntimeException e) {
+        // expected
+      }
+      Assert.assertFalse(new File(directory, "test-000001.delta.zip").exists());
+      new File(blocker, "block").delete();
+      blocker.delete();
+      Arrays.setAll(weights.get("a/0"), i -> weights.get("a/0")[i] + 1e-3 * random.nextGaussian());
+      Assert.assertEquals("test-000001.delta.zip", chain.write(weights).getName());
+      Assert.assertArrayEquals(weights.get("a/0"), CheckpointChain.replay(directory, "test", Integer.MAX_VALUE).get("a/0"), 1e-4);
+    } finally {
+      new File(blocker, "block").delete();
+      blocker.delete();
+      Arrays.stream(directory.listFiles()).forEach(File::delete);
+      directory.delete();
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The type Contiguous tensor list test.
+ */
+public class ContiguousTensorListTest {
+
+  /**
+   * Test packing a tensor array lays items out batch-major and reads them back unchanged.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testPack() {
+    @Nonnull TensorArray array = TensorArray.wrap(
+        new Tensor(new double[]{1, 2, 3, 4}, 2, 2),
+        new Tensor(new double[]{5, 6, 7, 8}, 2, 2)
+    );
+    @Nonnull ContiguousTensorList packed = ContiguousTensorList.pack(array);
+    Assert.assertArrayEquals(new double[]{1, 2, 3, 4, 5, 6, 7, 8}, packed.getData(), 0.0);
+    Assert.assertEquals(4, packed.offset(1));
+    @Nonnull Tensor item = packed.get(1);
+    Assert.assertArrayEquals(new int[]{2, 2}, item.getDimensions());
+    Assert.assertArrayEquals(new double[]{5, 6, 7, 8}, item.getData(), 0.0);
+    item.freeRef();
+    @Nonnull ContiguousTensorList repacked = ContiguousTensorList.pack(packed);
+    Assert.assertSame(packed, repacked);
+    repacked.freeRef();
+    packed.freeRef();
+    array.freeRef();
+  }
+}
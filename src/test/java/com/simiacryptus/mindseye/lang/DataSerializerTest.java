@@ -20,12 +20,14 @@
 package com.simiacryptus.mindseye.lang;
 
 import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.function.DoubleSupplier;
 import java.util.stream.IntStream;
@@ -116,6 +118,25 @@ public class DataSerializerTest {
     //assert rms < 1e-4;
   }
 
+  /**
+   * Test decoding from a direct buffer at a nonzero position matches decoding from the byte array.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testDirectBuffer() {
+    for (@Nonnull SerialPrecision precision : SerialPrecision.values()) {
+      @Nonnull double[] source = random(1024, this::random2);
+      @Nonnull byte[] bytes = precision.toBytes(source);
+      @Nonnull ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 3);
+      buffer.position(3);
+      precision.copy(source, buffer);
+      Assert.assertEquals(3, buffer.position());
+      @Nonnull double[] result = new double[source.length];
+      precision.copy(buffer, result);
+      Assert.assertArrayEquals(precision.name(), precision.fromBytes(bytes), result, 0.0);
+    }
+  }
+
   @Nonnull
   private double[] random(int i, @Nonnull DoubleSupplier f) {
     @Nonnull double[] doubles = new double[i];
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The type Delta test.
+ */
+public class DeltaTest {
+
+  private static final int LENGTH = 1000;
+  private static final int THREADS = 16;
+  private static final int ADDS = 50;
+
+  /**
+   * Test striped accumulation from many threads matches serial accumulation, with both reduction orders.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testStripedAccumulation() throws Exception {
+    @Nonnull final Random random = new Random(1);
+    @Nonnull final double[][][] inputs = new double[THREADS][ADDS][];
+    for (int t = 0; t < THREADS; t++) {
+      for (int a = 0; a < ADDS; a++) {
+        inputs[t][a] = random.doubles(LENGTH, -1, 1).toArray();
+      }
+    }
+    @Nonnull final double[] target = new double[LENGTH];
+    @Nonnull final Delta<String> serial = newDelta(target, 0, false);
+    for (@Nonnull final double[][] thread : inputs) {
+      for (@Nonnull final double[] input : thread) {
+        serial.addInPlace(input);
+      }
+    }
+    @Nonnull final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (final boolean deterministic : new boolean[]{false, true}) {
+        @Nonnull final Delta<String> striped = newDelta(target, 4, deterministic);
+        for (final Future<?> future : IntStream.range(0, THREADS).mapToObj(t -> pool.submit(() -> {
+          for (@Nonnull final double[] input : inputs[t]) {
+            striped.addInPlace(input);
+          }
+        })).collect(Collectors.toList())) {
+          future.get();
+        }
+        Assert.assertArrayEquals(serial.getDelta(), striped.getDelta(), 1e-9);
+        striped.freeRef();
+      }
+    } finally {
+      pool.shutdown();
+      serial.freeRef();
+    }
+  }
+
+  /**
+   * Test converting a delta set to a state set includes partial sums still held in stripes.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testAsStateReadsStripes() {
+    @Nonnull final double[] target = new double[LENGTH];
+    @Nonnull final Delta<String> striped = newDelta(target, 4, true);
+    @Nonnull final double[] input = new Random(2).doubles(LENGTH, -1, 1).toArray();
+    striped.addInPlace(input);
+    @Nonnull final DeltaSet<String> deltaSet = new DeltaSet<>(Collections.singletonMap("key", striped));
+    striped.freeRef();
+    @Nonnull final StateSet<String> state = deltaSet.asState();
+    Assert.assertArrayEquals(input, state.getMap().get("key").getDelta(), 0.0);
+    state.freeRef();
+    deltaSet.freeRef();
+  }
+
+  @Nonnull
+  private static Delta<String> newDelta(@Nonnull final double[] target, final int stripes, final boolean deterministic) {
+    return new Delta<>("key", target, new double[target.length], new double[target.length], stripes, deterministic);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.simiacryptus.mindseye.layers.java.FullyConnectedLayer;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The type Mapped resources test.
+ */
+public class MappedResourcesTest {
+
+  /**
+   * Test a model written in the mappable layout loads through both the mapped and the plain zip reader.
+   *
+   * @throws IOException the io exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testRoundTrip() throws IOException {
+    @Nonnull FullyConnectedLayer layer = new FullyConnectedLayer(new int[]{64}, new int[]{32});
+    @Nonnull File file = File.createTempFile("model", ".zip");
+    try {
+      layer.writeZip(file, SerialPrecision.Double);
+      try (@Nonnull ZipFile zipFile = new ZipFile(file)) {
+        Assert.assertNotNull(zipFile.getEntry(MappedResources.INDEX_ENTRY));
+        zipFile.stream().filter(x -> !x.getName().endsWith(".json"))
+            .forEach(x -> Assert.assertEquals(ZipEntry.STORED, x.getMethod()));
+        @Nonnull Layer plain = Layer.fromZip(zipFile);
+        Assert.assertEquals(layer, plain);
+        Assert.assertArrayEquals(layer.state().get(0), plain.state().get(0), 0.0);
+        plain.freeRef();
+      }
+      @Nonnull Layer mapped = Layer.fromZip(file);
+      Assert.assertEquals(layer, mapped);
+      Assert.assertArrayEquals(layer.state().get(0), mapped.state().get(0), 0.0);
+      mapped.freeRef();
+    } finally {
+      layer.freeRef();
+      file.delete();
+    }
+  }
+
+  /**
+   * Test a model streamed into a caller-supplied zip stream reads back.
+   *
+   * @throws IOException the io exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testStreamingZip() throws IOException {
+    @Nonnull FullyConnectedLayer layer = new FullyConnectedLayer(new int[]{64}, new int[]{32});
+    @Nonnull File file = File.createTempFile("model", ".zip");
+    try {
+      try (@Nonnull ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+        layer.writeZip(out, SerialPrecision.Float);
+      }
+      try (@Nonnull ZipFile zipFile = new ZipFile(file)) {
+        @Nonnull Layer echo = Layer.fromZip(zipFile);
+        Assert.assertArrayEquals(layer.state().get(0), echo.state().get(0), 1e-6);
+        echo.freeRef();
+      }
+    } finally {
+      layer.freeRef();
+      file.delete();
+    }
+  }
+}
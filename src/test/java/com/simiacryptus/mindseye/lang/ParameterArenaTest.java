@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.simiacryptus.mindseye.eval.TrainableBase;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+import com.simiacryptus.mindseye.opt.line.LineSearchCursor;
+import com.simiacryptus.mindseye.opt.line.SimpleLineSearchCursor;
+import com.simiacryptus.mindseye.opt.orient.GradientDescent;
+import com.simiacryptus.mindseye.opt.orient.LBFGS;
+import com.simiacryptus.mindseye.opt.orient.MomentumStrategy;
+import com.simiacryptus.mindseye.opt.orient.OrientationStrategy;
+import com.simiacryptus.mindseye.opt.orient.QQN;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * The type Parameter arena test.
+ */
+public class ParameterArenaTest {
+  private final UUID[] keys = {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+  private final double[][] targets = {new double[5], new double[ParameterArena.BLOCK + 3], new double[17]};
+
+  /**
+   * Test the flat kernels agree with the DeltaSet operations, and gather and scatter round-trip.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testKernels() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull DeltaSet<UUID> left = deltaSet(random);
+    @Nonnull DeltaSet<UUID> right = deltaSet(random);
+    @Nonnull ParameterArena<UUID> arena = new ParameterArena<>(left);
+    Assert.assertEquals(Arrays.stream(targets).mapToInt(x -> x.length).sum(), arena.length());
+    @Nonnull double[] l = arena.gather(left);
+    @Nonnull double[] r = arena.gather(right);
+    Assert.assertEquals(left.dot(right), ParameterArena.dot(l, r), 1e-9);
+    Assert.assertEquals(left.getMagnitude(), Math.sqrt(ParameterArena.sumSq(l)), 1e-9);
+    @Nonnull DeltaSet<UUID> difference = left.subtract(right);
+    Assert.assertArrayEquals(arena.gather(difference), arena.difference(left, right), 1e-12);
+    ParameterArena.axpy(-1.0, r, l);
+    Assert.assertArrayEquals(arena.gather(difference), l, 1e-12);
+    ParameterArena.scale(2.0, l);
+    arena.scatter(l, right);
+    @Nonnull DeltaSet<UUID> scaled = difference.scale(2.0);
+    Assert.assertEquals(0.0, right.subtract(scaled).getMagnitude(), 1e-12);
+    @Nonnull DeltaSet<UUID> copy = arena.toDeltaSet(l);
+    Assert.assertEquals(scaled.getMagnitude(), copy.getMagnitude(), 1e-12);
+    l[0] = Double.NaN;
+    Assert.assertFalse(ParameterArena.isFinite(l));
+    copy.freeRef();
+    scaled.freeRef();
+    difference.freeRef();
+    left.freeRef();
+    right.freeRef();
+  }
+
+  /**
+   * Test LBFGS orients identically with and without the arena, on samples of a diagonal quadratic whose curvature
+   * makes the recursion's direction acceptable (delta . p &lt; 0), so neither falls back to gradient descent.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testLbfgsOrientation() {
+    @Nonnull PointSample[] samples = samples(new Random(1));
+    @Nonnull DeltaSet<UUID> expected = orient(new LBFGS(), samples);
+    @Nonnull DeltaSet<UUID> actual = orient(new LBFGS().setUseArena(true), samples);
+    assertSame(expected, actual);
+    expected.freeRef();
+    actual.freeRef();
+    Arrays.stream(samples).forEach(ReferenceCounting::freeRef);
+  }
+
+  /**
+   * Test LBFGS orients identically with and without the arena when each sample is oriented in turn, so later
+   * orientations reuse the s/y pairs the arena cached for the earlier ones.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testLbfgsCachedPairs() {
+    @Nonnull PointSample[] samples = samples(new Random(1));
+    @Nonnull LineSearchCursor expected = cursor(new LBFGS(), samples);
+    @Nonnull LineSearchCursor actual = cursor(new LBFGS().setUseArena(true), samples);
+    Assert.assertEquals("LBFGS", expected.getDirectionType().toString());
+    Assert.assertEquals("LBFGS", actual.getDirectionType().toString());
+    assertSame(((SimpleLineSearchCursor) expected).direction, ((SimpleLineSearchCursor) actual).direction);
+    expected.freeRef();
+    actual.freeRef();
+    Arrays.stream(samples).forEach(ReferenceCounting::freeRef);
+  }
+
+  /**
+   * Test QQN's quadratic cursor yields the same positions with and without the arena.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testQqnPosition() {
+    @Nonnull PointSample[] samples = samples(new Random(1));
+    @Nonnull LineSearchCursor expected = cursor(new QQN(), samples);
+    @Nonnull LineSearchCursor actual = cursor(new QQN().setUseArena(true), samples);
+    Assert.assertEquals(QQN.CURSOR_NAME, expected.getDirectionType().toString());
+    Assert.assertEquals(QQN.CURSOR_NAME, actual.getDirectionType().toString());
+    for (final double t : new double[]{0.25, 1.0, 2.0}) {
+      @Nonnull DeltaSet<UUID> left = expected.position(t);
+      @Nonnull DeltaSet<UUID> right = actual.position(t);
+      assertSame(left, right);
+      left.freeRef();
+      right.freeRef();
+    }
+    expected.freeRef();
+    actual.freeRef();
+    Arrays.stream(samples).forEach(ReferenceCounting::freeRef);
+  }
+
+  /**
+   * Test the momentum term accumulates identically with and without the arena.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testMomentum() {
+    @Nonnull PointSample[] samples = samples(new Random(1));
+    @Nonnull LineSearchCursor expected = cursor(new MomentumStrategy(new GradientDescent()).setCarryOver(0.5), samples);
+    @Nonnull LineSearchCursor actual = cursor(new MomentumStrategy(new GradientDescent()).setCarryOver(0.5).setUseArena(true), samples);
+    @Nonnull DeltaSet<UUID> left = expected.position(1.0);
+    @Nonnull DeltaSet<UUID> right = actual.position(1.0);
+    assertSame(left, right);
+    left.freeRef();
+    right.freeRef();
+    expected.freeRef();
+    actual.freeRef();
+    Arrays.stream(samples).forEach(ReferenceCounting::freeRef);
+  }
+
+  private static void assertSame(@Nonnull final DeltaSet<UUID> expected, @Nonnull final DeltaSet<UUID> actual) {
+    @Nonnull DeltaSet<UUID> error = actual.subtract(expected);
+    Assert.assertEquals(0.0, error.getMagnitude() / expected.getMagnitude(), 1e-9);
+    error.freeRef();
+  }
+
+  @Nonnull
+  private PointSample[] samples(@Nonnull final Random random) {
+    @Nonnull double[][] curvature = Arrays.stream(targets).map(x -> random.doubles(x.length, -2.0, -1.0).toArray()).toArray(i -> new double[i][]);
+    @Nonnull PointSample[] samples = new PointSample[5];
+    for (int i = 0; i < samples.length; i++) {
+      @Nonnull StateSet<UUID> weights = new StateSet<>();
+      @Nonnull DeltaSet<UUID> gradient = new DeltaSet<>();
+      for (int k = 0; k < keys.length; k++) {
+        @Nonnull double[] w = random.doubles(targets[k].length, -1.0, 1.0).toArray();
+        @Nonnull double[] g = new double[w.length];
+        for (int j = 0; j < g.length; j++) {
+          g[j] = curvature[k][j] * w[j];
+        }
+        weights.get(keys[k], targets[k]).set(w).freeRef();
+        gradient.get(keys[k], targets[k]).set(g).freeRef();
+      }
+      samples[i] = new PointSample(gradient, weights, 10.0 - i, 0.0, 1);
+      gradient.freeRef();
+      weights.freeRef();
+    }
+    return samples;
+  }
+
+  @Nonnull
+  private DeltaSet<UUID> orient(@Nonnull final LBFGS lbfgs, @Nonnull final PointSample[] samples) {
+    @Nonnull TrainingMonitor monitor = new TrainingMonitor();
+    for (int i = 0; i < samples.length - 1; i++) {
+      lbfgs.addToHistory(samples[i], monitor);
+    }
+    @Nonnull TrainableBase subject = subject();
+    SimpleLineSearchCursor cursor = lbfgs.orient(subject, samples[samples.length - 1], monitor);
+    Assert.assertEquals("LBFGS", cursor.getDirectionType().toString());
+    @Nonnull DeltaSet<UUID> direction = cursor.direction.copy();
+    cursor.freeRef();
+    subject.freeRef();
+    lbfgs.freeRef();
+    return direction;
+  }
+
+  @Nonnull
+  private LineSearchCursor cursor(@Nonnull final OrientationStrategy<?> strategy, @Nonnull final PointSample[] samples) {
+    @Nonnull TrainingMonitor monitor = new TrainingMonitor();
+    @Nonnull TrainableBase subject = subject();
+    for (int i = 0; i < samples.length - 1; i++) {
+      strategy.orient(subject, samples[i], monitor).freeRef();
+    }
+    LineSearchCursor cursor = strategy.orient(subject, samples[samples.length - 1], monitor);
+    subject.freeRef();
+    strategy.freeRef();
+    return cursor;
+  }
+
+  @Nonnull
+  private static TrainableBase subject() {
+    return new TrainableBase() {
+      @Override
+      public PointSample measure(final TrainingMonitor monitor) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public Layer getLayer() {
+        return null;
+      }
+    };
+  }
+
+  @Nonnull
+  private DeltaSet<UUID> deltaSet(@Nonnull final Random random) {
+    @Nonnull DeltaSet<UUID> deltaSet = new DeltaSet<>();
+    for (int k = 0; k < keys.length; k++) {
+      deltaSet.get(keys[k], targets[k]).set(random.doubles(targets[k].length, -1.0, 1.0).toArray()).freeRef();
+    }
+    return deltaSet;
+  }
+}
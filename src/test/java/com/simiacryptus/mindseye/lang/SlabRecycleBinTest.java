@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The type Slab recycle bin test.
+ */
+public class SlabRecycleBinTest {
+
+  /**
+   * Test size classes.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testSizeClass() {
+    Assert.assertEquals(0, SlabRecycleBin.sizeClass(1));
+    Assert.assertEquals(10, SlabRecycleBin.sizeClass(999));
+    Assert.assertEquals(10, SlabRecycleBin.sizeClass(1024));
+    Assert.assertEquals(11, SlabRecycleBin.sizeClass(1025));
+  }
+
+  /**
+   * Test a sliceable buffer is reused for a shorter request of the same class.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testReuseWithinClass() {
+    @Nonnull SlabRecycleBin<java.nio.DoubleBuffer> bin = SlabRecycleBin.doubleBuffers(1024 * 1024, true);
+    bin.setPersistanceMode(PersistanceMode.STRONG);
+    java.nio.DoubleBuffer first = bin.obtain(1000);
+    Assert.assertEquals(1000, first.limit());
+    Assert.assertEquals(1024, first.capacity());
+    first.put(0, 1.0);
+    bin.recycle(first, first.capacity());
+    java.nio.DoubleBuffer second = bin.obtain(999);
+    Assert.assertSame(first, second);
+    Assert.assertEquals(999, second.limit());
+    Assert.assertEquals(0.0, second.get(0), 0.0);
+  }
+
+  /**
+   * Test the byte budget evicts older buffers, including those in the thread-local cache.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testBudget() {
+    @Nonnull SlabRecycleBin<double[]> bin = SlabRecycleBin.doubleArrays(2 * 1024 * Double.BYTES);
+    bin.setPersistanceMode(PersistanceMode.STRONG);
+    Assert.assertTrue(bin.getThreadCacheSize() > 2);
+    for (int i = 0; i < 16; i++) {
+      bin.recycle(new double[1024], 1024);
+      Assert.assertTrue(bin.getBytes() <= bin.getMaxBytes());
+    }
+    Assert.assertEquals(bin.getMaxBytes(), bin.getBytes());
+  }
+
+  /**
+   * Test clear releases buffers cached by the calling thread and by threads which have exited.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testClear() throws InterruptedException {
+    @Nonnull SlabRecycleBin<double[]> bin = SlabRecycleBin.doubleArrays(1024 * 1024 * Double.BYTES);
+    bin.setPersistanceMode(PersistanceMode.STRONG);
+    @Nonnull double[] local = new double[1024];
+    bin.recycle(local, 1024);
+    @Nonnull Thread thread = new Thread(() -> bin.recycle(new double[1024], 1024));
+    thread.start();
+    thread.join();
+    Assert.assertEquals(2 * 1024 * Double.BYTES, bin.getBytes());
+    Assert.assertEquals(2 * 1024, bin.clear());
+    Assert.assertEquals(0, bin.getBytes());
+    Assert.assertNotSame(local, bin.obtain(1024));
+  }
+
+  /**
+   * Test a buffer recycled twice is only held once.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testDuplicateRecycle() {
+    @Nonnull SlabRecycleBin<double[]> bin = SlabRecycleBin.doubleArrays(1024 * 1024 * Double.BYTES);
+    bin.setPersistanceMode(PersistanceMode.STRONG);
+    @Nonnull double[] data = new double[1024];
+    bin.recycle(data, 1024);
+    bin.recycle(data, 1024);
+    Assert.assertEquals(1024 * Double.BYTES, bin.getBytes());
+    Assert.assertSame(data, bin.obtain(1024));
+    Assert.assertNotSame(data, bin.obtain(1024));
+  }
+
+  /**
+   * Test sustained obtain/recycle churn across threads keeps reusing buffers and accounts every held byte.
+   *
+   * @throws InterruptedException the interrupted exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testChurn() throws InterruptedException {
+    @Nonnull SlabRecycleBin<double[]> bin = SlabRecycleBin.doubleArrays(64 * 1024 * Double.BYTES);
+    bin.setPersistanceMode(PersistanceMode.STRONG);
+    @Nonnull Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 100000; i++) {
+          final double[] data = bin.obtain(1024);
+          bin.recycle(data, 1024);
+        }
+      });
+      threads[t].start();
+    }
+    for (@Nonnull Thread thread : threads) thread.join();
+    Assert.assertTrue(bin.getBytes() <= threads.length * 1024 * Double.BYTES);
+    @Nonnull double[] data = bin.obtain(1024);
+    bin.recycle(data, 1024);
+    Assert.assertSame(data, bin.obtain(1024));
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.simiacryptus.mindseye.layers.java.ReshapeLayer;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The type Strided tensor list test.
+ */
+public class StridedTensorListTest {
+
+  /**
+   * Test a crop of a band selection matches direct indexing.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testComposedView() {
+    @Nonnull Tensor source = new Tensor(4, 3, 3).setByCoord(c -> c.getIndex());
+    @Nonnull TensorArray list = TensorArray.create(source);
+    @Nonnull StridedTensorList full = StridedTensorList.wrap(list);
+    @Nonnull StridedTensorList bands = full.selectBands(2, -2, 2);
+    @Nonnull StridedTensorList crop = bands.crop(1, 1, 2, 2);
+    @Nonnull Tensor tensor = crop.get(0);
+    Assert.assertArrayEquals(new int[]{2, 2, 2}, tensor.getDimensions());
+    for (int x = 0; x < 2; x++) {
+      for (int y = 0; y < 2; y++) {
+        Assert.assertEquals(source.get(x + 1, y + 1, 2), tensor.get(x, y, 0), 0.0);
+        Assert.assertEquals(source.get(x + 1, y + 1, 0), tensor.get(x, y, 1), 0.0);
+      }
+    }
+    tensor.freeRef();
+    crop.freeRef();
+    bands.freeRef();
+    full.freeRef();
+    list.freeRef();
+    source.freeRef();
+  }
+
+  /**
+   * Test a transposed view.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testPermute() {
+    @Nonnull Tensor source = new Tensor(2, 3).setByCoord(c -> c.getIndex());
+    @Nonnull TensorArray list = TensorArray.create(source);
+    @Nonnull StridedTensorList full = StridedTensorList.wrap(list);
+    @Nonnull StridedTensorList transposed = full.permute(1, 0);
+    @Nonnull Tensor tensor = transposed.get(0);
+    Assert.assertArrayEquals(new int[]{3, 2}, tensor.getDimensions());
+    for (int x = 0; x < 2; x++) {
+      for (int y = 0; y < 3; y++) {
+        Assert.assertEquals(source.get(x, y), tensor.get(y, x), 0.0);
+      }
+    }
+    tensor.freeRef();
+    transposed.freeRef();
+    full.freeRef();
+    list.freeRef();
+    source.freeRef();
+  }
+
+  /**
+   * Test a contiguous view aliases the underlying data.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testContiguousAlias() {
+    @Nonnull Tensor source = new Tensor(2, 3);
+    @Nonnull TensorArray list = TensorArray.create(source);
+    @Nonnull StridedTensorList full = StridedTensorList.wrap(list);
+    Assert.assertTrue(full.isContiguous());
+    @Nonnull Tensor tensor = full.get(0);
+    Assert.assertSame(source.getData(), tensor.getData());
+    tensor.freeRef();
+    full.freeRef();
+    list.freeRef();
+    source.freeRef();
+  }
+
+  /**
+   * Test summing the output of a reshape leaves its input unchanged.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testReshapeSumDoesNotWriteThrough() {
+    @Nonnull Tensor source = new Tensor(2, 3).setByCoord(c -> c.getIndex());
+    @Nonnull Tensor expected = source.copy();
+    @Nonnull ReshapeLayer layer = new ReshapeLayer(6);
+    @Nonnull Result result = layer.eval(source);
+    @Nonnull TensorList output = result.getData();
+    @Nonnull TensorList sum = output.add(output);
+    @Nonnull Tensor total = sum.get(0);
+    for (int i = 0; i < 6; i++) {
+      Assert.assertEquals(2 * expected.get(i), total.get(i), 0.0);
+    }
+    Assert.assertArrayEquals(expected.getData(), source.getData(), 0.0);
+    total.freeRef();
+    sum.freeRef();
+    output.freeRef();
+    result.freeRef();
+    layer.freeRef();
+    expected.freeRef();
+    source.freeRef();
+  }
+}
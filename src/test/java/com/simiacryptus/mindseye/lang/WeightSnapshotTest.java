@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.lang;
+
+import com.simiacryptus.mindseye.layers.java.BiasLayer;
+import com.simiacryptus.mindseye.layers.java.SigmoidActivationLayer;
+import com.simiacryptus.mindseye.network.PipelineNetwork;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * The type Weight snapshot test.
+ */
+public class WeightSnapshotTest {
+
+  /**
+   * Test a snapshot keeps the captured weights across a later update, and restores them.
+   *
+   * @throws IOException the io exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testCopyOnWrite() throws IOException {
+    @Nonnull BiasLayer bias = new BiasLayer(8).addWeights(() -> 1.0);
+    @Nonnull PipelineNetwork network = PipelineNetwork.wrap(1, bias, new SigmoidActivationLayer());
+    @Nonnull double[] weights = bias.state().get(0);
+    @Nonnull double[] original = Arrays.copyOf(weights, weights.length);
+    @Nonnull WeightSnapshot snapshot = WeightSnapshot.capture(network);
+    @Nonnull Delta<UUID> delta = new Delta<>(bias.getId(), weights);
+    delta.addInPlace(new double[]{1, 1, 1, 1, 1, 1, 1, 1});
+    delta.accumulate(1.0);
+    delta.freeRef();
+    Assert.assertEquals(2.0, weights[0], 0.0);
+    Assert.assertArrayEquals(original, snapshot.getData().get(bias.getId() + "/0"), 0.0);
+    @Nonnull File file = File.createTempFile("weights", ".zip");
+    try {
+      snapshot.write(file, SerialPrecision.Double);
+      WeightSnapshot.restore(file, network);
+      Assert.assertArrayEquals(original, weights, 0.0);
+    } finally {
+      file.delete();
+      snapshot.freeRef();
+      network.freeRef();
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.layers.java;
+
+import com.simiacryptus.mindseye.lang.ContiguousTensorList;
+import com.simiacryptus.mindseye.lang.DeltaSet;
+import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.Result;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.lang.TensorArray;
+import com.simiacryptus.mindseye.lang.TensorList;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the single-loop {@link ContiguousTensorList} paths of the bias and activation layers against their
+ * per-tensor paths, on the forward output, the input passback and the weight gradient.
+ */
+public class ContiguousFastPathTest {
+
+  /**
+   * Test a bias with one value per element.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testBias() {
+    final Random random = new Random(0);
+    test(new BiasLayer(2, 3).addWeights(random::nextGaussian), random);
+  }
+
+  /**
+   * Test a scalar bias broadcast over every element.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testScalarBias() {
+    final Random random = new Random(0);
+    test(new BiasLayer(1).addWeights(random::nextGaussian), random);
+  }
+
+  /**
+   * Test the activation layers built on {@link SimpleActivationLayer}.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testActivations() {
+    final Random random = new Random(0);
+    test(new SigmoidActivationLayer(), random);
+    test(new AbsActivationLayer(), random);
+    test(new SqActivationLayer(), random);
+  }
+
+  private static void test(@Nonnull final Layer layer, @Nonnull final Random random) {
+    try {
+      @Nonnull final Tensor[] input = random(random, 7);
+      @Nonnull final Tensor[] feedback = random(random, 7);
+      @Nonnull final Evaluation expected = evaluate(layer, TensorArray.create(input), TensorArray.create(feedback));
+      @Nonnull final TensorArray inputArray = TensorArray.wrap(input);
+      @Nonnull final TensorArray feedbackArray = TensorArray.wrap(feedback);
+      @Nonnull final Evaluation actual = evaluate(layer, ContiguousTensorList.pack(inputArray), ContiguousTensorList.pack(feedbackArray));
+      inputArray.freeRef();
+      feedbackArray.freeRef();
+      final String name = layer.getClass().getSimpleName();
+      Assert.assertTrue(name, actual.contiguous);
+      assertEquals(name, expected.output, actual.output);
+      assertEquals(name, expected.passback, actual.passback);
+      Assert.assertEquals(name, expected.weights.keySet(), actual.weights.keySet());
+      expected.weights.forEach((key, delta) -> Assert.assertArrayEquals(name, delta, actual.weights.get(key), 1e-12));
+    } finally {
+      layer.freeRef();
+    }
+  }
+
+  @Nonnull
+  private static Evaluation evaluate(@Nonnull final Layer layer, @Nonnull final TensorList input, @Nonnull final TensorList feedback) {
+    @Nonnull final Evaluation evaluation = new Evaluation();
+    @Nonnull final Result inputResult = new Result(input, (buffer, delta) -> evaluation.passback = copy(delta));
+    final Result result = layer.eval(inputResult);
+    @Nonnull final DeltaSet<UUID> buffer = new DeltaSet<>();
+    try {
+      evaluation.contiguous = result.getData() instanceof ContiguousTensorList;
+      evaluation.output = copy(result.getData());
+      result.accumulate(buffer, feedback);
+      buffer.getMap().forEach((key, delta) -> evaluation.weights.put(key, delta.getDelta().clone()));
+    } finally {
+      buffer.freeRef();
+      result.getData().freeRef();
+      result.freeRef();
+      inputResult.freeRef();
+      input.freeRef();
+    }
+    return evaluation;
+  }
+
+  @Nonnull
+  private static Tensor[] random(@Nonnull final Random random, final int items) {
+    return IntStream.range(0, items).mapToObj(i -> new Tensor(2, 3).set(() -> random.nextGaussian())).toArray(i -> new Tensor[i]);
+  }
+
+  @Nonnull
+  private static double[][] copy(@Nonnull final TensorList list) {
+    return list.stream().map(tensor -> {
+      final double[] data = tensor.getData().clone();
+      tensor.freeRef();
+      return data;
+    }).toArray(i -> new double[i][]);
+  }
+
+  private static void assertEquals(final String message, @Nonnull final double[][] expected, @Nonnull final double[][] actual) {
+    Assert.assertEquals(message, expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      Assert.assertArrayEquals(message, expected[i], actual[i], 1e-12);
+    }
+  }
+
+  private static class Evaluation {
+    /**
+     * Whether the layer returned a contiguous output.
+     */
+    boolean contiguous;
+    /**
+     * The Output.
+     */
+    double[][] output;
+    /**
+     * The Passback.
+     */
+    double[][] passback;
+    /**
+     * The Weights.
+     */
+    final Map<UUID, double[]> weights = new HashMap<>();
+  }
+}
@@ -20,7 +20,13 @@
 package com.simiacryptus.mindseye.layers.java;
 
 import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.Result;
+import com.simiacryptus.mindseye.lang.Tensor;
 import com.simiacryptus.mindseye.layers.LayerTestBase;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -81,6 +87,79 @@ public abstract class FullyConnectedLayerTest extends LayerTestBase {
     }
   }
 
+  /**
+   * Tests the single-GEMM batched evaluation mode
+   */
+  public static class Batched extends FullyConnectedLayerTest {
+    /**
+     * Instantiates a new Batched.
+     */
+    public Batched() {
+      super(3, 5);
+    }
+
+    @Nonnull
+    @Override
+    public Layer getLayer(final int[][] inputSize, Random random) {
+      return ((FullyConnectedLayer) super.getLayer(inputSize, random)).setBatched(true);
+    }
+  }
+
+  /**
+   * Tests the single-precision evaluation mode
+   */
+  public static class FloatPrecision extends FullyConnectedLayerTest {
+    /**
+     * Instantiates a new Float precision.
+     */
+    public FloatPrecision() {
+      super(3, 5);
+    }
+
+    @Nonnull
+    @Override
+    public Layer getLayer(final int[][] inputSize, Random random) {
+      return ((FullyConnectedLayer) super.getLayer(inputSize, random)).setPrecision(JavaPrecision.Float);
+    }
+
+    @Nullable
+    @Override
+    public Class<? extends Layer> getReferenceLayerClass() {
+      return null;
+    }
+
+    /**
+     * Test the single-precision copy of the weights is refreshed after the weights are changed in place.
+     */
+    @Test
+    @Category(TestCategories.UnitTest.class)
+    public void testWeightUpdate() {
+      @Nonnull FullyConnectedLayer layer = new FullyConnectedLayer(new int[]{3}, new int[]{5}).setPrecision(JavaPrecision.Float);
+      @Nonnull Tensor input = new Tensor(3).set(i -> i + 1);
+      try {
+        layer.set(() -> 1.0);
+        Assert.assertArrayEquals(new double[]{6, 6, 6, 6, 6}, eval(layer, input), 0.0);
+        layer.set(() -> 2.0);
+        Assert.assertArrayEquals(new double[]{12, 12, 12, 12, 12}, eval(layer, input), 0.0);
+      } finally {
+        input.freeRef();
+        layer.freeRef();
+      }
+    }
+
+    private static double[] eval(@Nonnull final Layer layer, @Nonnull final Tensor input) {
+      Result result = layer.eval(input);
+      Tensor output = result.getData().get(0);
+      try {
+        return output.getData().clone();
+      } finally {
+        output.freeRef();
+        result.getData().freeRef();
+        result.freeRef();
+      }
+    }
+  }
+
 //  /**
 //   * The type BigTests.
 //   */
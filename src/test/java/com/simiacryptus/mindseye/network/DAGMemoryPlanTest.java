@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.simiacryptus.mindseye.network;
+
+import com.simiacryptus.mindseye.lang.DeltaSet;
+import com.simiacryptus.mindseye.lang.Result;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.layers.java.FullyConnectedLayer;
+import com.simiacryptus.mindseye.layers.java.MeanSqLossLayer;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The type Dag memory plan test.
+ */
+public class DAGMemoryPlanTest {
+
+  /**
+   * Test evaluation under the plan matches ordinary evaluation, ignores consumers the head does not reach, and releases
+   * intermediate results once their final gradient has been delivered.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testFreeAtLastUse() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor input = new Tensor(4).set(() -> random.nextGaussian());
+    @Nonnull Tensor target = new Tensor(4).set(() -> random.nextGaussian());
+    @Nonnull AtomicReference<Result> intermediate = new AtomicReference<>();
+    @Nonnull FullyConnectedLayer first = new FullyConnectedLayer(new int[]{4}, new int[]{4}) {
+      @Nonnull
+      @Override
+      public Result eval(@Nonnull final Result... inObj) {
+        Result result = super.eval(inObj);
+        intermediate.set(result);
+        return result;
+      }
+    };
+    first.set(() -> random.nextGaussian());
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    try {
+      DAGNode firstNode = network.wrap(first, network.getInput(0));
+      firstNode.addRef();
+      firstNode.addRef();
+      // A consumer the head never reaches
+      network.wrap(new FullyConnectedLayer(new int[]{4}, new int[]{4}).set(() -> random.nextGaussian()), firstNode).freeRef();
+      DAGNode second = network.wrap(new FullyConnectedLayer(new int[]{4}, new int[]{4}).set(() -> random.nextGaussian()), firstNode);
+      network.wrap(new MeanSqLossLayer(), second, network.getInput(1)).freeRef();
+
+      DAGMemoryPlan plan = network.getMemoryPlan();
+      Assert.assertEquals(3, plan.getOrder().size());
+      Assert.assertEquals(Long.valueOf(1), plan.getConsumerCounts().get(firstNode.getId()));
+      Assert.assertEquals(2, plan.getPeakLive());
+
+      network.setFreeAtLastUse(false);
+      Result expected = network.eval(input, target);
+      @Nonnull DeltaSet<UUID> expectedDelta = new DeltaSet<>();
+      expected.accumulate(expectedDelta);
+      Assert.assertFalse(intermediate.get().isFinalized());
+      Tensor expectedOutput = expected.getData().get(0);
+
+      network.setFreeAtLastUse(true);
+      Result actual = network.eval(input, target);
+      @Nonnull DeltaSet<UUID> actualDelta = new DeltaSet<>();
+      actual.accumulate(actualDelta);
+      Assert.assertTrue(intermediate.get().isFinalized());
+      Tensor actualOutput = actual.getData().get(0);
+
+      Assert.assertArrayEquals(expectedOutput.getData(), actualOutput.getData(), 1e-12);
+      Assert.assertEquals(expectedDelta.getMap().keySet(), actualDelta.getMap().keySet());
+      for (@Nonnull UUID key : expectedDelta.getMap().keySet()) {
+        Assert.assertArrayEquals(expectedDelta.getMap().get(key).getDelta(), actualDelta.getMap().get(key).getDelta(), 1e-12);
+      }
+      expectedOutput.freeRef();
+      actualOutput.freeRef();
+      expectedDelta.freeRef();
+      actualDelta.freeRef();
+      expected.getData().freeRef();
+      expected.freeRef();
+      actual.getData().freeRef();
+      actual.freeRef();
+      firstNode.freeRef();
+    } finally {
+      network.freeRef();
+      input.freeRef();
+      target.freeRef();
+    }
+  }
+}
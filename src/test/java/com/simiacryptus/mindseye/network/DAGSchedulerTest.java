@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.simiacryptus.mindseye.network;
+
+import com.simiacryptus.mindseye.eval.ArrayTrainable;
+import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.Result;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.layers.java.BiasLayer;
+import com.simiacryptus.mindseye.layers.java.FullyConnectedLayer;
+import com.simiacryptus.mindseye.layers.java.MeanSqLossLayer;
+import com.simiacryptus.mindseye.layers.java.SumInputsLayer;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * The type Dag scheduler test.
+ */
+public class DAGSchedulerTest {
+
+  /**
+   * Test scheduled evaluation of a branching graph matches recursive evaluation, before and after the graph is rewired
+   * into a different shape with the same number of nodes.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testBranchingGraph() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor[][] data = IntStream.range(0, 10).mapToObj(i -> new Tensor[]{
+        new Tensor(4).set(() -> random.nextGaussian()),
+        new Tensor(4).set(() -> random.nextGaussian())
+    }).toArray(i -> new Tensor[i][]);
+    @Nonnull Layer left = new FullyConnectedLayer(new int[]{4}, new int[]{4}).set(() -> random.nextGaussian());
+    @Nonnull Layer right = new FullyConnectedLayer(new int[]{4}, new int[]{4}).set(() -> random.nextGaussian());
+    @Nonnull Layer sum = new SumInputsLayer();
+    @Nonnull Layer loss = new MeanSqLossLayer();
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    @Nonnull ExecutorService pool = Executors.newFixedThreadPool(4);
+    @Nonnull ArrayTrainable trainable = new ArrayTrainable(data, network);
+    try {
+      // Two independent branches joined by a sum
+      DAGNode input = network.getInput(0);
+      DAGNode leftNode = network.add(left, input);
+      DAGNode rightNode = network.add(right, network.getInput(0));
+      network.add(loss, network.add(sum, leftNode, rightNode), network.getInput(1)).freeRef();
+      compare(network, trainable, pool);
+      // Rewired as a chain: the node count is unchanged but the cached plan must not be reused
+      network.reset();
+      leftNode = network.add(left, network.getInput(0));
+      leftNode.addRef();
+      rightNode = network.add(right, leftNode);
+      network.add(loss, network.add(sum, leftNode, rightNode), network.getInput(1)).freeRef();
+      compare(network, trainable, pool);
+    } finally {
+      pool.shutdown();
+      trainable.freeRef();
+      network.freeRef();
+      Arrays.asList(left, right, sum, loss).forEach(Layer::freeRef);
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  /**
+   * Test a scheduled network still uses its frozen activation cache: the seeded prefix is not scheduled again, and the
+   * result matches an unscheduled, uncached evaluation.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testActivationCache() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor[][] data = IntStream.range(0, 10).mapToObj(i -> new Tensor[]{
+        new Tensor(4).set(() -> random.nextGaussian()),
+        new Tensor(3).set(() -> random.nextGaussian())
+    }).toArray(i -> new Tensor[i][]);
+    @Nonnull AtomicInteger prefixEvaluations = new AtomicInteger();
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    network.wrap(new MeanSqLossLayer(),
+        network.wrap(new BiasLayer(3).addWeights(() -> random.nextGaussian()),
+            network.wrap(new FullyConnectedLayer(new int[]{4}, new int[]{3}) {
+              @Override
+              public Result eval(@Nonnull final Result... inObj) {
+                prefixEvaluations.incrementAndGet();
+                return super.eval(inObj);
+              }
+            }.set(() -> random.nextGaussian()).freeze(), network.getInput(0))),
+        network.getInput(1)).freeRef();
+    @Nonnull FrozenActivationCache cache = new FrozenActivationCache(Long.MAX_VALUE);
+    @Nonnull ExecutorService pool = Executors.newFixedThreadPool(4);
+    @Nonnull ArrayTrainable trainable = new ArrayTrainable(data, network);
+    try {
+      PointSample expected = trainable.measure(new TrainingMonitor());
+      network.setActivationCache(cache);
+      network.setExecutor(pool);
+      prefixEvaluations.set(0);
+      for (int i = 0; i < 3; i++) {
+        PointSample actual = trainable.measure(new TrainingMonitor());
+        assertEquivalent(expected, actual);
+        actual.freeRef();
+      }
+      Assert.assertEquals(1, prefixEvaluations.get());
+      Assert.assertEquals(data.length, cache.size());
+      expected.freeRef();
+    } finally {
+      pool.shutdown();
+      network.setScheduler(null);
+      network.setActivationCache(null);
+      cache.freeRef();
+      trainable.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  private void compare(@Nonnull final PipelineNetwork network, @Nonnull final ArrayTrainable trainable, @Nonnull final ExecutorService pool) {
+    network.setScheduler(null);
+    PointSample expected = trainable.measure(new TrainingMonitor());
+    network.setExecutor(pool);
+    for (int i = 0; i < 3; i++) {
+      PointSample actual = trainable.measure(new TrainingMonitor());
+      assertEquivalent(expected, actual);
+      actual.freeRef();
+    }
+    expected.freeRef();
+    network.setScheduler(null);
+  }
+
+  private static void assertEquivalent(@Nonnull final PointSample expected, @Nonnull final PointSample actual) {
+    Assert.assertEquals(expected.sum, actual.sum, 1e-9);
+    Assert.assertEquals(expected.delta.getMap().keySet(), actual.delta.getMap().keySet());
+    for (@Nonnull UUID key : expected.delta.getMap().keySet()) {
+      Assert.assertArrayEquals(expected.delta.getMap().get(key).getDelta(), actual.delta.getMap().get(key).getDelta(), 1e-9);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.network;
+
+import com.simiacryptus.mindseye.eval.ArrayTrainable;
+import com.simiacryptus.mindseye.lang.ConstantResult;
+import com.simiacryptus.mindseye.lang.ContiguousTensorList;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.Result;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.lang.TensorArray;
+import com.simiacryptus.mindseye.layers.java.BiasLayer;
+import com.simiacryptus.mindseye.layers.java.FullyConnectedLayer;
+import com.simiacryptus.mindseye.layers.java.MeanSqLossLayer;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * The type Frozen activation cache test.
+ */
+public class FrozenActivationCacheTest {
+
+  private final Random random = new Random(0);
+  private final AtomicInteger prefixEvaluations = new AtomicInteger();
+  private final Tensor[][] data = IntStream.range(0, 20).mapToObj(i -> new Tensor[]{
+      new Tensor(6).set(() -> random.nextGaussian()),
+      new Tensor(3).set(() -> random.nextGaussian())
+  }).toArray(i -> new Tensor[i][]);
+  private final PipelineNetwork network = new PipelineNetwork(2);
+
+  {
+    network.wrap(new MeanSqLossLayer(),
+        network.wrap(new BiasLayer(3).addWeights(() -> random.nextGaussian()),
+            network.wrap(new FullyConnectedLayer(new int[]{6}, new int[]{3}) {
+              @Override
+              public Result eval(@Nonnull final Result... inObj) {
+                prefixEvaluations.addAndGet(inObj[0].getData().length());
+                return super.eval(inObj);
+              }
+            }.set(() -> random.nextGaussian()).freeze(), network.getInput(0))),
+        network.getInput(1)).freeRef();
+  }
+
+  /**
+   * Test evaluations seeded from the cache match uncached evaluations, including the gradient of the trainable suffix.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testCachedPrefix() {
+    test(new FrozenActivationCache(Long.MAX_VALUE), 20, 0, 0);
+  }
+
+  /**
+   * Test rows evicted from a small heap are spilled to disk and read back, and resampled batches reuse cached rows.
+   *
+   * @throws IOException the io exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testSpill() throws IOException {
+    @Nonnull File directory = Files.createTempDirectory("spill").toFile();
+    try {
+      test(new FrozenActivationCache(5 * 3 * 8).setSpillDirectory(directory), 5, 15, 0);
+    } finally {
+      Arrays.stream(directory.listFiles()).forEach(File::delete);
+      directory.delete();
+    }
+  }
+
+  /**
+   * Test the spilled rows stay within their budget: the least recently used are dropped and recomputed on their next
+   * use, and the spill file is compacted as rows are dropped.
+   *
+   * @throws IOException the io exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testSpillBudget() throws IOException {
+    @Nonnull File directory = Files.createTempDirectory("spill").toFile();
+    try {
+      @Nonnull FrozenActivationCache cache = new FrozenActivationCache(5 * 3 * 8).setSpillDirectory(directory).setMaxSpillBytes(8 * 3 * 8);
+      test(cache, 5, 0, 8);
+    } finally {
+      Arrays.stream(directory.listFiles()).forEach(File::delete);
+      directory.delete();
+    }
+  }
+
+  /**
+   * Test rows are recognized by content: freshly decoded copies of the same samples, and samples delivered as a
+   * contiguous block, are served from the cache without evaluating the prefix again.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testRecognizesContent() {
+    @Nonnull FrozenActivationCache cache = new FrozenActivationCache(Long.MAX_VALUE);
+    @Nonnull ArrayTrainable trainable = new ArrayTrainable(data, network);
+    @Nonnull Tensor[][] copies = Arrays.stream(data).map(row -> Arrays.stream(row).map(Tensor::copy).toArray(i -> new Tensor[i])).toArray(i -> new Tensor[i][]);
+    try {
+      PointSample expected = trainable.measure(new TrainingMonitor());
+      network.setActivationCache(cache);
+      trainable.measure(new TrainingMonitor()).freeRef();
+      prefixEvaluations.set(0);
+      trainable.setTrainingData(copies);
+      PointSample actual = trainable.measure(new TrainingMonitor());
+      Assert.assertEquals(expected.sum, actual.sum, 1e-9);
+      actual.freeRef();
+      expected.freeRef();
+      @Nonnull Result[] inputs = IntStream.range(0, 2).mapToObj(col -> {
+        @Nonnull TensorArray column = TensorArray.create(Arrays.stream(copies).map(row -> row[col]).toArray(i -> new Tensor[i]));
+        @Nonnull ConstantResult result = new ConstantResult(ContiguousTensorList.pack(column));
+        column.freeRef();
+        return result;
+      }).toArray(i -> new Result[i]);
+      Result result = network.eval(inputs);
+      result.getData().freeRef();
+      result.freeRef();
+      for (@Nonnull Result input : inputs) {
+        input.getData().freeRef();
+        input.freeRef();
+      }
+      Assert.assertEquals(0, prefixEvaluations.get());
+      Assert.assertEquals(data.length, cache.size());
+    } finally {
+      network.setActivationCache(null);
+      cache.freeRef();
+      trainable.freeRef();
+      network.freeRef();
+      Arrays.stream(copies).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  private void test(@Nonnull final FrozenActivationCache cache, final int heapRows, final int minSpilledRows, final int maxSpilledRows) {
+    @Nonnull ArrayTrainable trainable = new ArrayTrainable(data, network);
+    try {
+      PointSample expected = trainable.measure(new TrainingMonitor());
+      network.setActivationCache(cache);
+      for (int i = 0; i < 3; i++) {
+        PointSample actual = trainable.measure(new TrainingMonitor());
+        Assert.assertEquals(heapRows, cache.size());
+        Assert.assertTrue(cache.spilledSize() >= minSpilledRows);
+        if (0 < maxSpilledRows) Assert.assertTrue(cache.spilledSize() <= maxSpilledRows);
+        Assert.assertEquals(expected.sum, actual.sum, 1e-9);
+        Assert.assertEquals(expected.delta.getMap().size(), actual.delta.getMap().size());
+        Assert.assertEquals(expected.delta.getMagnitude(), actual.delta.getMagnitude(), 1e-9);
+        actual.freeRef();
+        @Nonnull List<Tensor[]> shuffled = new ArrayList<>(Arrays.asList(data));
+        Collections.shuffle(shuffled, random);
+        trainable.setTrainingData(shuffled.toArray(new Tensor[][]{}));
+      }
+      expected.freeRef();
+    } finally {
+      network.setActivationCache(null);
+      cache.freeRef();
+      trainable.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+}
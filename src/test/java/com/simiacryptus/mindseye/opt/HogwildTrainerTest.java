@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.opt;
+
+import com.simiacryptus.mindseye.eval.BasicTrainable;
+import com.simiacryptus.mindseye.eval.SampledArrayTrainable;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.lang.WeightSnapshot;
+import com.simiacryptus.mindseye.layers.java.FullyConnectedLayer;
+import com.simiacryptus.mindseye.layers.java.MeanSqLossLayer;
+import com.simiacryptus.mindseye.network.PipelineNetwork;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * The type Hogwild trainer test.
+ */
+public class HogwildTrainerTest {
+
+  /**
+   * Test concurrent workers fit a linear model and report progress.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testLinearRegression() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull FullyConnectedLayer truth = new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian());
+    @Nonnull Tensor[][] data = IntStream.range(0, 200).mapToObj(i -> {
+      @Nonnull Tensor input = new Tensor(6).set(() -> random.nextGaussian());
+      return new Tensor[]{input, truth.eval(input).getDataAndFree().getAndFree(0)};
+    }).toArray(i -> new Tensor[i][]);
+    @Nonnull FullyConnectedLayer layer = new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian());
+    @Nonnull PipelineNetwork network = network(layer);
+    @Nonnull AtomicInteger steps = new AtomicInteger();
+    try {
+      final double initial = loss(network, data);
+      final double reported = new HogwildTrainer(data, network, 10)
+          .setThreads(4)
+          .setRate(0.1)
+          .setMaxIterations(2000)
+          .setTimeout(1, TimeUnit.MINUTES)
+          .setReportInterval(Duration.ofMillis(10))
+          .setMonitor(new TrainingMonitor() {
+            @Override
+            public void onStepComplete(final Step currentPoint) {
+              steps.incrementAndGet();
+            }
+          })
+          .runAndFree();
+      final double trained = loss(network, data);
+      Assert.assertTrue(String.format("%s -> %s", initial, trained), trained < initial * 1e-2);
+      Assert.assertTrue(Double.isFinite(reported));
+      Assert.assertTrue(0 < steps.get());
+    } finally {
+      truth.freeRef();
+      layer.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  /**
+   * Test gradients containing non-finite values are discarded even when the loss itself is finite.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testNonFiniteGradientDiscarded() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor[][] data = IntStream.range(0, 20).mapToObj(i -> new Tensor[]{
+        new Tensor(6).set(() -> random.nextGaussian()),
+        new Tensor(3).set(() -> random.nextGaussian())
+    }).toArray(i -> new Tensor[i][]);
+    @Nonnull FullyConnectedLayer layer = new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian());
+    @Nonnull PipelineNetwork network = network(layer);
+    @Nonnull final double[] initial = layer.state().get(0).clone();
+    try {
+      new HogwildTrainer(i -> new SampledArrayTrainable(data, network, 5) {
+        @Override
+        public PointSample measure(final TrainingMonitor monitor) {
+          @Nonnull PointSample sample = super.measure(monitor);
+          sample.delta.getMap().values().forEach(delta -> delta.getDelta()[0] = Double.NaN);
+          return sample;
+        }
+      }).setThreads(2)
+          .setRate(0.1)
+          .setMaxIterations(100)
+          .setTimeout(1, TimeUnit.SECONDS)
+          .runAndFree();
+      Assert.assertArrayEquals(initial, layer.state().get(0), 0.0);
+    } finally {
+      layer.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  /**
+   * Test a snapshot captured before training still holds the captured weights afterwards: updates to an array the
+   * snapshot has not yet preserved take the array's monitor and copy it first.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testSnapshotDuringTraining() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor[][] data = IntStream.range(0, 20).mapToObj(i -> new Tensor[]{
+        new Tensor(6).set(() -> random.nextGaussian()),
+        new Tensor(3).set(() -> random.nextGaussian())
+    }).toArray(i -> new Tensor[i][]);
+    @Nonnull FullyConnectedLayer layer = new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian());
+    @Nonnull PipelineNetwork network = network(layer);
+    @Nonnull final double[] weights = layer.state().get(0);
+    @Nonnull final double[] initial = weights.clone();
+    @Nonnull WeightSnapshot snapshot = WeightSnapshot.capture(network);
+    try {
+      Assert.assertTrue(WeightSnapshot.isPending(weights));
+      new HogwildTrainer(data, network, 5)
+          .setThreads(4)
+          .setRate(0.1)
+          .setMaxIterations(200)
+          .setTimeout(1, TimeUnit.MINUTES)
+          .runAndFree();
+      Assert.assertFalse(WeightSnapshot.isPending(weights));
+      Assert.assertFalse(Arrays.equals(initial, weights));
+      Assert.assertArrayEquals(initial, snapshot.getData().get(layer.getId() + "/0"), 0.0);
+    } finally {
+      snapshot.freeRef();
+      layer.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  @Nonnull
+  private static PipelineNetwork network(@Nonnull final FullyConnectedLayer layer) {
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    network.wrap(new MeanSqLossLayer(), network.add(layer, network.getInput(0)), network.getInput(1)).freeRef();
+    return network;
+  }
+
+  private static double loss(@Nonnull final PipelineNetwork network, @Nonnull final Tensor[][] data) {
+    @Nonnull BasicTrainable trainable = new BasicTrainable(network);
+    trainable.setData(Arrays.asList(data));
+    PointSample sample = trainable.measure(new TrainingMonitor());
+    try {
+      return sample.getMean();
+    } finally {
+      sample.freeRef();
+      trainable.freeRef();
+    }
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.opt;
+
+import com.simiacryptus.mindseye.eval.ArrayTrainable;
+import com.simiacryptus.mindseye.eval.SampledArrayTrainable;
+import com.simiacryptus.mindseye.eval.Trainable;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.lang.WeightSnapshot;
+import com.simiacryptus.mindseye.layers.java.FullyConnectedLayer;
+import com.simiacryptus.mindseye.layers.java.MeanSqLossLayer;
+import com.simiacryptus.mindseye.network.PipelineNetwork;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * The type Validating trainer test.
+ */
+public class ValidatingTrainerTest {
+
+  /**
+   * Test validation overlapped with training reports the final weights and every epoch.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testAsyncValidation() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull FullyConnectedLayer truth = new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian());
+    @Nonnull Tensor[][] data = IntStream.range(0, 300).mapToObj(i -> {
+      @Nonnull Tensor input = new Tensor(6).set(() -> random.nextGaussian());
+      return new Tensor[]{input, truth.eval(input).getDataAndFree().getAndFree(0)};
+    }).toArray(i -> new Tensor[i][]);
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    network.wrap(new MeanSqLossLayer(),
+        network.wrap(new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian()), network.getInput(0)),
+        network.getInput(1)).freeRef();
+    @Nonnull Tensor[][] trainingData = Arrays.copyOfRange(data, 0, 200);
+    @Nonnull Tensor[][] validationData = Arrays.copyOfRange(data, 200, 300);
+    @Nonnull SampledArrayTrainable trainingSubject = new SampledArrayTrainable(trainingData, network, 100);
+    @Nonnull ArrayTrainable validationSubject = new ArrayTrainable(validationData, network);
+    @Nonnull List<String> log = new ArrayList<>();
+    try {
+      final double initial = measure(validationSubject);
+      final double result = new ValidatingTrainer(trainingSubject, validationSubject)
+          .setAsyncValidation(true)
+          .setMaxIterations(20)
+          .setTimeout(1, TimeUnit.MINUTES)
+          .setMonitor(new TrainingMonitor() {
+            @Override
+            public void log(final String msg) {
+              synchronized (log) {
+                log.add(msg);
+              }
+            }
+          })
+          .run();
+      Assert.assertTrue(String.format("%s -> %s", initial, result), result < initial);
+      Assert.assertEquals(measure(validationSubject), result, 1e-9 * Math.max(1, result));
+      final long epochs = log.stream().filter(x -> x.startsWith("Epoch parameters")).count();
+      final long results = log.stream().filter(x -> x.startsWith("Epoch ") && x.contains(" result apply ")).count();
+      Assert.assertTrue(0 < epochs);
+      Assert.assertEquals(epochs, results);
+    } finally {
+      trainingSubject.freeRef();
+      validationSubject.freeRef();
+      truth.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  /**
+   * Test each epoch is validated on a copy holding exactly that epoch's final weights, while the next epoch is already
+   * training on the live network.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testValidatesEpochWeights() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor[][] data = IntStream.range(0, 300).mapToObj(i -> new Tensor[]{
+        new Tensor(6).set(() -> random.nextGaussian()),
+        new Tensor(3).set(() -> random.nextGaussian())
+    }).toArray(i -> new Tensor[i][]);
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    network.wrap(new MeanSqLossLayer(),
+        network.wrap(new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian()), network.getInput(0)),
+        network.getInput(1)).freeRef();
+    // The weights at the start of each epoch, which are the final weights of the epoch before
+    @Nonnull List<Map<String, double[]>> epochStarts = new ArrayList<>();
+    @Nonnull List<Map<String, double[]>> validated = new ArrayList<>();
+    @Nonnull List<Boolean> overlapped = new ArrayList<>();
+    @Nonnull SampledArrayTrainable trainingSubject = new SampledArrayTrainable(Arrays.copyOfRange(data, 0, 200), network, 100) {
+      private long lastSeed = 0;
+
+      @Override
+      public boolean reseed(final long seed) {
+        if (seed != lastSeed) {
+          lastSeed = seed;
+          synchronized (epochStarts) {
+            epochStarts.add(copy(WeightSnapshot.getWeights(network)));
+            epochStarts.notifyAll();
+          }
+        }
+        return super.reseed(seed);
+      }
+    };
+    @Nonnull ArrayTrainable validationSubject = new ArrayTrainable(Arrays.copyOfRange(data, 200, 300), network);
+    try {
+      new ValidatingTrainer(trainingSubject, validationSubject) {
+        @Override
+        protected PointSample measureValidation(@Nonnull final Trainable subject) {
+          Assert.assertNotSame(network, subject.getLayer());
+          validated.add(copy(WeightSnapshot.getWeights(subject.getLayer())));
+          final int epoch = validated.size();
+          final long deadline = System.currentTimeMillis() + 2000;
+          synchronized (epochStarts) {
+            while (epochStarts.size() <= epoch && System.currentTimeMillis() < deadline) {
+              try {
+                epochStarts.wait(100);
+              } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+              }
+            }
+            overlapped.add(epochStarts.size() > epoch);
+          }
+          return super.measureValidation(subject);
+        }
+      }.setAsyncValidation(true)
+          .setMaxIterations(20)
+          .setTimeout(1, TimeUnit.MINUTES)
+          .run();
+      Assert.assertTrue(1 < validated.size());
+      for (int epoch = 1; epoch <= validated.size(); epoch++) {
+        final Map<String, double[]> expected = epoch < epochStarts.size() ? epochStarts.get(epoch) : copy(WeightSnapshot.getWeights(network));
+        final Map<String, double[]> actual = validated.get(epoch - 1);
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((key, weights) -> Assert.assertArrayEquals(weights, actual.get(key), 0.0));
+        if (epoch < validated.size()) Assert.assertTrue("Epoch " + epoch, overlapped.get(epoch - 1));
+      }
+    } finally {
+      trainingSubject.freeRef();
+      validationSubject.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  /**
+   * Test that when a validation arriving one epoch late shows convergence, the epoch trained meanwhile is not reported,
+   * and the result returned is that epoch's validation, matching the weights training stopped at.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testConvergenceDiscardsPendingEpoch() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor[][] data = IntStream.range(0, 300).mapToObj(i -> new Tensor[]{
+        new Tensor(6).set(() -> random.nextGaussian()),
+        new Tensor(3).set(() -> random.nextGaussian())
+    }).toArray(i -> new Tensor[i][]);
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    network.wrap(new MeanSqLossLayer(),
+        network.wrap(new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian()), network.getInput(0)),
+        network.getInput(1)).freeRef();
+    @Nonnull SampledArrayTrainable trainingSubject = new SampledArrayTrainable(Arrays.copyOfRange(data, 0, 200), network, 100);
+    @Nonnull ArrayTrainable validationSubject = new ArrayTrainable(Arrays.copyOfRange(data, 200, 300), network);
+    @Nonnull List<String> log = new ArrayList<>();
+    @Nonnull AtomicInteger validations = new AtomicInteger();
+    try {
+      // Each validation reports a worse loss than the last, so training converges once improvement goes stale
+      final double result = new ValidatingTrainer(trainingSubject, validationSubject) {
+        @Override
+        protected PointSample measureValidation(@Nonnull final Trainable subject) {
+          @Nonnull PointSample sample = super.measureValidation(subject);
+          try {
+            return new PointSample(sample.delta, sample.weights, validations.incrementAndGet() * 1e3 * sample.count, sample.rate, sample.count);
+          } finally {
+            sample.freeRef();
+          }
+        }
+      }.setAsyncValidation(true)
+          .setMaxTrainingSize(0)
+          .setPessimism(0)
+          .setTimeout(1, TimeUnit.MINUTES)
+          .setMonitor(new TrainingMonitor() {
+            @Override
+            public void log(final String msg) {
+              synchronized (log) {
+                log.add(msg);
+              }
+            }
+          })
+          .run();
+      final int converged = IntStream.range(0, log.size()).filter(i -> log.get(i).startsWith("Training converged")).findFirst().orElse(-1);
+      Assert.assertTrue(0 <= converged);
+      Assert.assertFalse(log.subList(converged, log.size()).stream().anyMatch(x -> x.contains(" result apply ")));
+      final long epochs = log.stream().filter(x -> x.startsWith("Epoch parameters")).count();
+      final long results = log.stream().filter(x -> x.startsWith("Epoch ") && x.contains(" result apply ")).count();
+      Assert.assertEquals(epochs - 1, results);
+      Assert.assertEquals(epochs, validations.get());
+      Assert.assertEquals(validations.get() * 1e3, result, 1e-9);
+    } finally {
+      trainingSubject.freeRef();
+      validationSubject.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  @Nonnull
+  private static Map<String, double[]> copy(@Nonnull final Map<String, double[]> weights) {
+    @Nonnull Map<String, double[]> copy = new LinkedHashMap<>();
+    weights.forEach((key, value) -> {
+      synchronized (value) {
+        copy.put(key, value.clone());
+      }
+    });
+    return copy;
+  }
+
+  private static double measure(@Nonnull final ArrayTrainable trainable) {
+    PointSample sample = trainable.measure(new TrainingMonitor());
+    try {
+      return sample.getMean();
+    } finally {
+      sample.freeRef();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.opt.line;
+
+import com.simiacryptus.mindseye.eval.ArrayTrainable;
+import com.simiacryptus.mindseye.lang.Layer;
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.layers.java.BiasLayer;
+import com.simiacryptus.mindseye.layers.java.FullyConnectedLayer;
+import com.simiacryptus.mindseye.layers.java.MeanSqLossLayer;
+import com.simiacryptus.mindseye.network.PipelineNetwork;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+import com.simiacryptus.mindseye.opt.orient.GradientDescent;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * The type Parallel line search test.
+ */
+public class ParallelLineSearchTest {
+
+  /**
+   * Test a parallel search decreases the loss and leaves the live network at the point it returns.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testStep() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor[][] data = data(random);
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    network.wrap(new MeanSqLossLayer(),
+        network.wrap(new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian()), network.getInput(0)),
+        network.getInput(1)).freeRef();
+    @Nonnull ArrayTrainable trainable = new ArrayTrainable(data, network, 10);
+    @Nonnull ParallelLineSearch search = new ParallelLineSearch(4).setAlpha(1e-3);
+    try {
+      step(trainable, search);
+    } finally {
+      trainable.freeRef();
+      network.freeRef();
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  /**
+   * Test a search made after the network is restructured probes the new structure rather than a stale copy.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testRestructuredNetwork() {
+    @Nonnull Random random = new Random(0);
+    @Nonnull Tensor[][] data = data(random);
+    @Nonnull Layer dense = new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian());
+    @Nonnull Layer bias = new BiasLayer(3).addWeights(() -> random.nextGaussian());
+    @Nonnull Layer loss = new MeanSqLossLayer();
+    @Nonnull PipelineNetwork network = new PipelineNetwork(2);
+    @Nonnull ArrayTrainable trainable = new ArrayTrainable(data, network, 10);
+    @Nonnull ParallelLineSearch search = new ParallelLineSearch(4).setAlpha(1e-3);
+    try {
+      network.add(loss, network.add(dense, network.getInput(0)), network.getInput(1)).freeRef();
+      step(trainable, search);
+      network.reset();
+      network.add(loss, network.add(bias, network.add(dense, network.getInput(0))), network.getInput(1)).freeRef();
+      step(trainable, search);
+    } finally {
+      trainable.freeRef();
+      network.freeRef();
+      Arrays.asList(dense, bias, loss).forEach(Layer::freeRef);
+      Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+    }
+  }
+
+  private static void step(@Nonnull final ArrayTrainable trainable, @Nonnull final ParallelLineSearch search) {
+    @Nonnull TrainingMonitor monitor = new TrainingMonitor();
+    @Nonnull GradientDescent orientation = new GradientDescent();
+    try {
+      PointSample origin = trainable.measure(monitor);
+      SimpleLineSearchCursor cursor = orientation.orient(trainable, origin, monitor);
+      PointSample point = search.step(cursor, monitor);
+      Assert.assertTrue(point.getMean() < origin.getMean());
+      Assert.assertTrue(point.rate > 0);
+      Assert.assertEquals(point.rate, search.getAlpha(), 0.0);
+      PointSample live = trainable.measure(monitor);
+      Assert.assertEquals(live.sum, point.sum, 1e-9 * Math.abs(live.sum));
+      Assert.assertEquals(live.delta.getMagnitude(), point.delta.getMagnitude(), 1e-9 * live.delta.getMagnitude());
+      live.freeRef();
+      point.freeRef();
+      cursor.freeRef();
+      origin.freeRef();
+    } finally {
+      orientation.freeRef();
+    }
+  }
+
+  @Nonnull
+  private static Tensor[][] data(@Nonnull final Random random) {
+    return IntStream.range(0, 29).mapToObj(i -> new Tensor[]{
+        new Tensor(6).set(() -> random.nextGaussian()),
+        new Tensor(3).set(() -> random.nextGaussian())
+    }).toArray(i -> new Tensor[i][]);
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.opt.orient;
+
+import com.simiacryptus.mindseye.eval.TrainableBase;
+import com.simiacryptus.mindseye.lang.*;
+import com.simiacryptus.mindseye.opt.TrainingMonitor;
+import com.simiacryptus.mindseye.opt.line.SimpleLineSearchCursor;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * The type Compact history test.
+ */
+public class CompactHistoryTest {
+  private final UUID[] keys = {UUID.randomUUID(), UUID.randomUUID()};
+  private final double[][] targets = {new double[7], new double[300]};
+  private PointSample[] samples;
+
+  /**
+   * Builds samples of a diagonal quadratic, with decreasing sums, on which the recursion is accepted.
+   */
+  @Before
+  public void setup() {
+    @Nonnull Random random = new Random(2);
+    @Nonnull double[][] curvature = Arrays.stream(targets).map(x -> random.doubles(x.length, -2.0, -1.0).toArray()).toArray(i -> new double[i][]);
+    samples = new PointSample[6];
+    for (int i = 0; i < samples.length; i++) {
+      @Nonnull StateSet<UUID> weights = new StateSet<>();
+      @Nonnull DeltaSet<UUID> gradient = new DeltaSet<>();
+      for (int k = 0; k < keys.length; k++) {
+        @Nonnull double[] w = random.doubles(targets[k].length, -1.0, 1.0).toArray();
+        @Nonnull double[] g = new double[w.length];
+        for (int j = 0; j < g.length; j++) {
+          g[j] = curvature[k][j] * w[j];
+        }
+        weights.get(keys[k], targets[k]).set(w).freeRef();
+        gradient.get(keys[k], targets[k]).set(g).freeRef();
+      }
+      samples[i] = new PointSample(gradient, weights, 10.0 - i, 0.0, 1);
+      gradient.freeRef();
+      weights.freeRef();
+    }
+  }
+
+  /**
+   * Releases the samples.
+   */
+  @After
+  public void cleanup() {
+    Arrays.stream(samples).forEach(ReferenceCounting::freeRef);
+  }
+
+  /**
+   * Test the compact history reproduces the full history's orientation at double precision, approximates it at float
+   * precision, and stores less at lower precision.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testOrientation() {
+    @Nonnull DeltaSet<UUID> expected = orient(new LBFGS());
+    @Nonnull DeltaSet<UUID> exact = orient(new LBFGS().setHistoryPrecision(SerialPrecision.Double));
+    @Nonnull DeltaSet<UUID> approximate = orient(new LBFGS().setHistoryPrecision(SerialPrecision.Float));
+    @Nonnull DeltaSet<UUID> exactError = exact.subtract(expected);
+    @Nonnull DeltaSet<UUID> approximateError = approximate.subtract(expected);
+    Assert.assertEquals(0.0, exactError.getMagnitude() / expected.getMagnitude(), 1e-9);
+    Assert.assertEquals(0.0, approximateError.getMagnitude() / expected.getMagnitude(), 1e-3);
+    exactError.freeRef();
+    approximateError.freeRef();
+    expected.freeRef();
+    exact.freeRef();
+    approximate.freeRef();
+  }
+
+  /**
+   * Test the ring buffer is bounded and its footprint scales with the precision.
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testStorage() {
+    @Nonnull CompactHistory full = new CompactHistory(SerialPrecision.Double);
+    @Nonnull CompactHistory quantized = new CompactHistory(SerialPrecision.Uniform8);
+    for (@Nonnull PointSample sample : samples) {
+      Assert.assertTrue(full.add(sample, 3));
+      Assert.assertTrue(quantized.add(sample, 3));
+    }
+    Assert.assertFalse(full.add(samples[0], 3));
+    Assert.assertEquals(3, full.size());
+    Assert.assertEquals(3, quantized.size());
+    final int parameters = Arrays.stream(targets).mapToInt(x -> x.length).sum();
+    Assert.assertEquals(16L * parameters + 3 * 16L * parameters, full.getBytes());
+    Assert.assertTrue(quantized.getBytes() < 16L * parameters + 3 * 3L * parameters);
+  }
+
+  @Nonnull
+  private DeltaSet<UUID> orient(@Nonnull final LBFGS lbfgs) {
+    @Nonnull TrainingMonitor monitor = new TrainingMonitor();
+    for (int i = 0; i < samples.length - 1; i++) {
+      lbfgs.addToHistory(samples[i], monitor);
+    }
+    @Nonnull TrainableBase subject = new TrainableBase() {
+      @Override
+      public PointSample measure(final TrainingMonitor monitor) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public Layer getLayer() {
+        return null;
+      }
+    };
+    SimpleLineSearchCursor cursor = lbfgs.orient(subject, samples[samples.length - 1], monitor);
+    Assert.assertEquals("LBFGS", cursor.getDirectionType().toString());
+    @Nonnull DeltaSet<UUID> direction = cursor.direction.copy();
+    cursor.freeRef();
+    subject.freeRef();
+    lbfgs.freeRef();
+    return direction;
+  }
+}
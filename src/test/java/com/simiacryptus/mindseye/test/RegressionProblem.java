@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.simiacryptus.mindseye.test;
+
+import com.simiacryptus.mindseye.lang.PointSample;
+import com.simiacryptus.mindseye.lang.ReferenceCountingBase;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.mindseye.layers.java.FullyConnectedLayer;
+import com.simiacryptus.mindseye.layers.java.MeanSqLossLayer;
+import com.simiacryptus.mindseye.network.PipelineNetwork;
+import org.junit.Assert;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * A small seeded regression problem for comparing evaluations of the same data: rows of a 6-element input and a
+ * 3-element target, fitted by one {@link FullyConnectedLayer} under a {@link MeanSqLossLayer}.
+ */
+public class RegressionProblem extends ReferenceCountingBase {
+  /**
+   * The Random, seeded with 0 and left positioned after the problem's data and weights.
+   */
+  @Nonnull
+  public final Random random = new Random(0);
+  /**
+   * The rows, each an input and a target.
+   */
+  @Nonnull
+  public final Tensor[][] data;
+  /**
+   * The trained layer.
+   */
+  @Nonnull
+  public final FullyConnectedLayer layer;
+  /**
+   * The network, taking the input and the target and returning the loss.
+   */
+  @Nonnull
+  public final PipelineNetwork network = new PipelineNetwork(2);
+
+  private RegressionProblem(final int rows) {
+    data = randomRows(random, rows);
+    layer = new FullyConnectedLayer(new int[]{6}, new int[]{3}).set(() -> random.nextGaussian());
+    network.wrap(new MeanSqLossLayer(), network.add(layer, network.getInput(0)), network.getInput(1)).freeRef();
+  }
+
+  /**
+   * Creates a problem whose targets are unrelated noise, for comparing evaluations.
+   *
+   * @param rows the rows
+   * @return the regression problem
+   */
+  @Nonnull
+  public static RegressionProblem random(final int rows) {
+    return new RegressionProblem(rows);
+  }
+
+  /**
+   * Creates rows of a 6-element gaussian input and a 3-element gaussian target.
+   *
+   * @param random the random
+   * @param rows   the rows
+   * @return the tensor [ ] [ ]
+   */
+  @Nonnull
+  public static Tensor[][] randomRows(@Nonnull final Random random, final int rows) {
+    return IntStream.range(0, rows).mapToObj(i -> new Tensor[]{
+        new Tensor(6).set(() -> random.nextGaussian()),
+        new Tensor(3).set(() -> random.nextGaussian())
+    }).toArray(i -> new Tensor[i][]);
+  }
+
+  /**
+   * Asserts two samples agree in count and loss, and in every layer's gradient element by element.
+   *
+   * @param expected  the expected
+   * @param actual    the actual
+   * @param tolerance the tolerance
+   */
+  public static void assertEquivalent(@Nonnull final PointSample expected, @Nonnull final PointSample actual, final double tolerance) {
+    Assert.assertEquals(expected.count, actual.count);
+    Assert.assertEquals(expected.sum, actual.sum, tolerance);
+    Assert.assertEquals(expected.delta.getMap().keySet(), actual.delta.getMap().keySet());
+    for (@Nonnull final UUID key : expected.delta.getMap().keySet()) {
+      Assert.assertArrayEquals(expected.delta.getMap().get(key).getDelta(), actual.delta.getMap().get(key).getDelta(), tolerance);
+    }
+  }
+
+  /**
+   * Gets a range of the rows, without adding references.
+   *
+   * @param from the from
+   * @param to   the to
+   * @return the tensor [ ] [ ]
+   */
+  @Nonnull
+  public Tensor[][] rows(final int from, final int to) {
+    return Arrays.copyOfRange(data, from, to);
+  }
+
+  @Override
+  protected void _free() {
+    layer.freeRef();
+    network.freeRef();
+    Arrays.stream(data).flatMap(Arrays::stream).forEach(Tensor::freeRef);
+  }
+}
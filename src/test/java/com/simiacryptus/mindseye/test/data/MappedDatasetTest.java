@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.mindseye.test.data;
+
+import com.simiacryptus.mindseye.lang.ContiguousTensorList;
+import com.simiacryptus.mindseye.lang.Tensor;
+import com.simiacryptus.util.test.LabeledObject;
+import com.simiacryptus.util.test.TestCategories;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The type Mapped dataset test.
+ */
+public class MappedDatasetTest {
+
+  /**
+   * Test records, labels and batches read back from a converted file.
+   *
+   * @throws IOException the io exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testRoundTrip() throws IOException {
+    @Nonnull File file = File.createTempFile("dataset", ".bin");
+    file.delete();
+    @Nonnull Random random = new Random(0);
+    @Nonnull List<LabeledObject<Tensor>> data = IntStream.range(0, 50)
+        .mapToObj(i -> new LabeledObject<>(new Tensor(4, 3, 2).set(() -> random.nextInt(256)), "label" + (i % 7)))
+        .collect(Collectors.toList());
+    try {
+      @Nonnull MappedDataset dataset = MappedDataset.cached(file, data::stream, new int[]{4, 3, 2}, MappedDataset.Encoding.UnsignedByte);
+      Assert.assertEquals(50, dataset.size());
+      Assert.assertArrayEquals(new int[]{4, 3, 2}, dataset.getDimensions());
+      Assert.assertEquals(7, dataset.getLabels().size());
+      for (int i = 0; i < data.size(); i++) {
+        Assert.assertEquals(data.get(i).label, dataset.getLabel(i));
+        Tensor tensor = dataset.get(i);
+        Assert.assertArrayEquals(data.get(i).data.getData(), tensor.getData(), 0.0);
+        tensor.freeRef();
+      }
+      @Nonnull ContiguousTensorList batch = dataset.getBatch(7, 3, 42);
+      Assert.assertArrayEquals(data.get(42).data.getData(),
+          Arrays.copyOfRange(batch.getData(), batch.offset(2), batch.offset(3)), 0.0);
+      batch.freeRef();
+      Assert.assertEquals(50, MappedDataset.cached(file, () -> {
+        throw new AssertionError("Converted twice");
+      }, new int[]{4, 3, 2}, MappedDataset.Encoding.UnsignedByte).size());
+    } finally {
+      data.forEach(x -> x.data.freeRef());
+      file.delete();
+    }
+  }
+
+  /**
+   * Test a source producing new tensors has each one freed once it is written.
+   *
+   * @throws IOException the io exception
+   */
+  @Test
+  @Category(TestCategories.UnitTest.class)
+  public void testWriteAndFree() throws IOException {
+    @Nonnull File file = File.createTempFile("dataset", ".bin");
+    file.delete();
+    @Nonnull List<Tensor> written = new ArrayList<>();
+    try {
+      @Nonnull MappedDataset dataset = MappedDataset.cachedAndFree(file, () -> IntStream.range(0, 10).mapToObj(i -> {
+        @Nonnull Tensor tensor = new Tensor(2, 2, 1).set(() -> i);
+        written.add(tensor);
+        return new LabeledObject<>(tensor, "label" + (i % 2));
+      }), new int[]{2, 2, 1}, MappedDataset.Encoding.UnsignedByte);
+      Assert.assertEquals(10, dataset.size());
+      Assert.assertEquals(10, written.size());
+      Assert.assertTrue(written.stream().allMatch(Tensor::isFinalized));
+      Tensor tensor = dataset.get(9);
+      Assert.assertArrayEquals(new double[]{9, 9, 9, 9}, tensor.getData(), 0.0);
+      tensor.freeRef();
+    } finally {
+      file.delete();
+    }
+  }
+}